@@ -0,0 +1,15 @@
+package com.j8a.sealed.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the result of a no-arg blueprint method in each generated wrapper. For expensive, pure methods called
+ * repeatedly on the same wrapped value.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface Memoize {
+}
@@ -10,4 +10,9 @@ import java.lang.annotation.Target;
 public @interface Sealed {
     String name();
     GenerationMode mode() default GenerationMode.BOTH;
+    boolean compact() default false;
+    boolean tagged() default false;
+    Specialization[] specializations() default {};
+    boolean offHeap() default false;
+    boolean pairs() default false;
 }
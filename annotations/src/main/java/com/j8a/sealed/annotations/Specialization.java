@@ -0,0 +1,7 @@
+package com.j8a.sealed.annotations;
+
+public enum Specialization {
+    INT,
+    LONG,
+    DOUBLE
+}
@@ -0,0 +1,182 @@
+package com.j8a.sealed.benchmarks;
+
+import com.j8a.sealed.benchmarks.model.Err;
+import com.j8a.sealed.benchmarks.model.Ok;
+import com.j8a.sealed.benchmarks.model.Outcome;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Compares a recursively built {@code flatMap} chain evaluated directly against the same chain evaluated through the
+ * generated {@code Step} trampoline.
+ * <p>
+ * Each configuration runs on a fresh thread with a fixed stack size, so the depth at which the direct chain overflows
+ * is reproducible. One CSV row is written per depth with the median cost per chain step of both strategies.
+ * <pre>
+ * java -cp ... com.j8a.sealed.benchmarks.FlatMapChainBenchmark \
+ *     --depths=10,100,1000,10000,100000 --stack-kb=512 --iterations=5 --out=flatmap-chain.csv
+ * </pre>
+ */
+public final class FlatMapChainBenchmark {
+
+    static final String HEADER = "depth,direct_ns_per_step,trampolined_ns_per_step,direct_outcome";
+
+    /** Chain steps evaluated per measured round, so shallow chains are repeated enough to be timed. */
+    private static final long STEPS_PER_ROUND = 2_000_000;
+
+    private final int[] depths;
+    private final int stackKb;
+    private final int iterations;
+
+    FlatMapChainBenchmark(int[] depths, int stackKb, int iterations) {
+        this.depths = depths;
+        this.stackKb = stackKb;
+        this.iterations = iterations;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int[] depths = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+        int stackKb = 512;
+        int iterations = 5;
+        String out = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--depths=")) {
+                depths = Arrays.stream(arg.substring("--depths=".length()).split(","))
+                        .map(String::trim).mapToInt(Integer::parseInt).toArray();
+            } else if (arg.startsWith("--stack-kb=")) {
+                stackKb = Integer.parseInt(arg.substring("--stack-kb=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        List<String> rows = new FlatMapChainBenchmark(depths, stackKb, iterations).run(System.err);
+        if (out == null) {
+            rows.forEach(System.out::println);
+        } else {
+            Files.write(Paths.get(out), rows, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Runs every depth and returns the CSV lines, header first. Progress and the first overflowing depth go to
+     * {@code log}.
+     */
+    List<String> run(PrintStream log) throws InterruptedException {
+        List<String> rows = new ArrayList<>();
+        rows.add(HEADER);
+        Integer firstOverflow = null;
+        for (int depth : depths) {
+            double trampolined = onFixedStack(() -> measure(depth, false));
+            double direct = onFixedStack(() -> measure(depth, true));
+            boolean overflowed = Double.isNaN(direct);
+            if (overflowed && firstOverflow == null) {
+                firstOverflow = depth;
+            }
+
+            String row = depth + ","
+                    + (overflowed ? "" : String.format("%.2f", direct)) + ","
+                    + String.format("%.2f", trampolined) + ","
+                    + (overflowed ? "stack_overflow" : "ok");
+            log.println(row);
+            rows.add(row);
+        }
+        log.println(firstOverflow == null
+                ? "Direct chain did not overflow a " + stackKb + " KiB stack at any measured depth."
+                : "Direct chain first overflowed a " + stackKb + " KiB stack at depth " + firstOverflow + ".");
+        return rows;
+    }
+
+    /**
+     * Median nanoseconds per chain step, or {@code NaN} if the direct chain overflowed the stack.
+     */
+    private double measure(int depth, boolean direct) {
+        long repetitions = Math.max(1, STEPS_PER_ROUND / depth);
+        double[] samples = new double[iterations];
+        try {
+            // Warm-up rounds are discarded
+            for (int i = -2; i < iterations; i++) {
+                long start = System.nanoTime();
+                long checksum = 0;
+                for (long r = 0; r < repetitions; r++) {
+                    Outcome<Integer> outcome = direct ? direct(depth) : trampolined(depth).run();
+                    checksum += outcome.accept(VALUE);
+                }
+                long elapsed = System.nanoTime() - start;
+                if (checksum != (long) depth * repetitions) {
+                    throw new IllegalStateException("Chain of depth " + depth + " produced " + checksum / repetitions);
+                }
+                if (i >= 0) {
+                    samples[i] = (double) elapsed / (repetitions * depth);
+                }
+            }
+        } catch (StackOverflowError e) {
+            return Double.NaN;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    /** Counts down recursively; every level adds one {@code flatMap} and one {@code map} frame. */
+    static Outcome<Integer> direct(int n) {
+        if (n == 0) {
+            return Outcome.wrap(new Ok<>(0));
+        }
+        return Outcome.wrap(new Ok<>(n)).flatMap(x -> direct(x - 1)).map(x -> x + 1);
+    }
+
+    /** The same chain described as steps; nothing recurses until {@code run()}, which loops. */
+    static Outcome.Step<Integer> trampolined(int n) {
+        if (n == 0) {
+            return Outcome.Step.done(Outcome.wrap(new Ok<>(0)));
+        }
+        return Outcome.wrap(new Ok<>(n)).step().flatMap(x -> trampolined(x - 1)).map(x -> x + 1);
+    }
+
+    private static final Outcome.Visitor<Integer, Integer> VALUE = new Outcome.Visitor<Integer, Integer>() {
+        @Override
+        public Integer onErr(Err err) {
+            return -1;
+        }
+
+        @Override
+        public Integer onOk(Ok<Integer> ok) {
+            return ok.get();
+        }
+    };
+
+    /** Runs {@code measurement} on a thread with the configured stack and rethrows whatever it failed with. */
+    private double onFixedStack(DoubleSupplier measurement) throws InterruptedException {
+        double[] result = new double[1];
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                result[0] = measurement.getAsDouble();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "flatmap-chain", stackKb * 1024L);
+        thread.start();
+        thread.join();
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        }
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        return result[0];
+    }
+}
@@ -0,0 +1,258 @@
+package com.j8a.sealed.benchmarks;
+
+import com.j8a.sealed.processor.SealedProcessor;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a set of in-memory sources with {@link SealedProcessor} through {@link javax.tools.JavaCompiler}, keeping
+ * every generated source and class file in memory and timing the processor separately from the rest of javac.
+ */
+public final class InMemoryCompilation {
+
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private final List<String> options = new ArrayList<>();
+    private final Map<String, byte[]> generatedSources = new LinkedHashMap<>();
+    private final Map<String, byte[]> classFiles = new LinkedHashMap<>();
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    private long processorNanos;
+    private long compileNanos;
+    private boolean success;
+
+    public InMemoryCompilation addSource(String qualifiedName, String content) {
+        sources.put(qualifiedName, content);
+        return this;
+    }
+
+    public InMemoryCompilation addOptions(String... compilerOptions) {
+        options.addAll(Arrays.asList(compilerOptions));
+        return this;
+    }
+
+    public InMemoryCompilation compile() {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler available, run on a JDK rather than a JRE.");
+        }
+
+        List<JavaFileObject> units = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            units.add(new SourceFile(source.getKey(), source.getValue()));
+        }
+
+        List<String> allOptions = new ArrayList<>(options);
+        allOptions.add("-classpath");
+        allOptions.add(System.getProperty("java.class.path"));
+
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        TimingProcessor processor = new TimingProcessor(new SealedProcessor());
+
+        long start = System.nanoTime();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, new MemoryFileManager(standard), diagnostics, allOptions, null, units);
+        task.setProcessors(Collections.singletonList(processor));
+        success = task.call();
+        compileNanos = System.nanoTime() - start;
+        processorNanos = processor.nanos;
+        return this;
+    }
+
+    public boolean succeeded() {
+        return success;
+    }
+
+    public long processorNanos() {
+        return processorNanos;
+    }
+
+    public long compileNanos() {
+        return compileNanos;
+    }
+
+    /**
+     * Generated sources keyed by qualified type name.
+     */
+    public Map<String, byte[]> generatedSources() {
+        return generatedSources;
+    }
+
+    /**
+     * All class files, keyed by binary name ({@code com.example.Shape$Visitor}).
+     */
+    public Map<String, byte[]> classFiles() {
+        return classFiles;
+    }
+
+    public List<Diagnostic<? extends JavaFileObject>> diagnostics() {
+        return diagnostics.getDiagnostics();
+    }
+
+    public String errors() {
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                sb.append(diagnostic.getMessage(null)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads the compiled classes, delegating everything else to the caller's class loader.
+     */
+    public ClassLoader classLoader() {
+        return new ClassLoader(InMemoryCompilation.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classFiles.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+    }
+
+    private static URI uri(String qualifiedName, JavaFileObject.Kind kind) {
+        return URI.create("mem:///" + qualifiedName.replace('.', '/') + kind.extension);
+    }
+
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String content;
+
+        SourceFile(String qualifiedName, String content) {
+            super(uri(qualifiedName, Kind.SOURCE), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    private static final class OutputFile extends SimpleJavaFileObject {
+        private final Map<String, byte[]> sink;
+        private final String name;
+
+        OutputFile(String name, Kind kind, Map<String, byte[]> sink) {
+            super(uri(name, kind), kind);
+            this.name = name;
+            this.sink = sink;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    sink.put(name, toByteArray());
+                }
+            };
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return new String(sink.get(name), StandardCharsets.UTF_8);
+        }
+    }
+
+    private final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        MemoryFileManager(StandardJavaFileManager delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new OutputFile(className, kind, kind == JavaFileObject.Kind.SOURCE ? generatedSources : classFiles);
+        }
+
+        @Override
+        public FileObject getFileForOutput(Location location, String packageName, String relativeName, FileObject sibling) {
+            String name = packageName.isEmpty() ? relativeName : packageName.replace('.', '/') + "/" + relativeName;
+            return new OutputFile(name, JavaFileObject.Kind.OTHER, new LinkedHashMap<String, byte[]>());
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            return a.toUri().equals(b.toUri());
+        }
+    }
+
+    /**
+     * Accumulates the wall time spent inside the delegate's {@code init} and {@code process} calls.
+     */
+    private static final class TimingProcessor implements Processor {
+        private final Processor delegate;
+        private long nanos;
+
+        TimingProcessor(Processor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            delegate.init(processingEnv);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation, ExecutableElement member, String userText) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.j8a.sealed.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies that C2 inlines the generated methods the library relies on being free: the delegated blueprint methods and
+ * {@code accept} of the per-leaf wrappers, the {@code apply} of a staged matcher, and the tagged wrapper's switch.
+ * <p>
+ * Runs {@link InliningWorkload} in a forked JVM with {@code -XX:+PrintCompilation -XX:+PrintInlining} and reads the
+ * inlining tree of every C2 compilation of its callers. A check fails when C2 never inlined the expected generated
+ * method into the caller, or when that method is larger than the forked JVM's {@code FreqInlineSize}, the limit for
+ * inlining hot methods. Megamorphic call sites inside generated code are reported but allowed, since the matcher
+ * workload dispatches over sixteen kinds on purpose. Exits with status 1 on failure.
+ * <pre>
+ * java -cp ... com.j8a.sealed.benchmarks.InliningCheck [--jvm-arg=-XX:FreqInlineSize=100 ...]
+ * </pre>
+ */
+public final class InliningCheck {
+
+    /** A generated method that must be inlined into a workload caller. */
+    static final class Expectation {
+        final String caller;
+        final Pattern callee;
+        final String description;
+
+        Expectation(String caller, String callee, String description) {
+            this.caller = caller;
+            this.callee = Pattern.compile(callee);
+            this.description = description;
+        }
+    }
+
+    private static final String MODEL = Pattern.quote("com.j8a.sealed.benchmarks.model.");
+
+    static final List<Expectation> EXPECTATIONS = Collections.unmodifiableList(Arrays.asList(
+            new Expectation("delegate", MODEL + "Figure\\$CircleWrapper::area", "delegated blueprint method"),
+            new Expectation("delegate", MODEL + "Circle::area", "leaf method behind the delegation"),
+            new Expectation("accept", MODEL + "Figure\\$CircleWrapper::accept", "wrapper accept"),
+            new Expectation("match", MODEL + "Event\\$MatcherBuilder\\$\\d+::apply", "staged matcher apply"),
+            new Expectation("taggedDelegate", MODEL + "TaggedFigure\\$Wrapper::area", "tagged wrapper over six kinds")));
+
+    /** The generated roots the workload uses and their nested types. */
+    private static final Pattern GENERATED = Pattern.compile(MODEL + "(Figure|TaggedFigure|Event)(\\$[\\w$]+)?::.*");
+
+    // "    261  287 %     4       com.example.Caller::method @ 11 (53 bytes)"
+    private static final Pattern TASK = Pattern.compile("^\\s*\\d+\\s+\\d+\\s+[%sbn! ]*?([0-4])\\s+([\\w.$]+)::([\\w$<>]+)\\b.*\\(\\d+ bytes\\)(.*)$");
+    // "        @ 27   com.example.Callee::method (11 bytes)   inline (hot)"
+    private static final Pattern CALL = Pattern.compile("^\\s*@ \\d+\\s+(\\S+::\\S+) \\((\\d+) bytes\\)\\s*(.*)$");
+    // "FreqInlineSize=325", possibly after a fragment of compiler output: the compiler threads share stdout
+    private static final Pattern FREQ_INLINE_SIZE = Pattern.compile(Pattern.quote(InliningWorkload.FREQ_INLINE_SIZE) + "(\\d+)");
+
+    private final List<String> jvmArgs;
+
+    InliningCheck(List<String> jvmArgs) {
+        this.jvmArgs = jvmArgs;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> jvmArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--jvm-arg=")) {
+                jvmArgs.add(arg.substring("--jvm-arg=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        List<String> failures = new InliningCheck(jvmArgs).run(System.err);
+        failures.forEach(System.out::println);
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the workload and returns one message per failed check, empty when every check passed. Passed checks and
+     * megamorphic generated call sites go to {@code log}.
+     */
+    List<String> run(PrintStream log) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-XX:+UnlockDiagnosticVMOptions");
+        command.add("-XX:+PrintCompilation");
+        command.add("-XX:+PrintInlining");
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(InliningWorkload.class.getName());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        if (!process.waitFor(2, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Inlining workload did not finish");
+        }
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("Inlining workload failed with status " + process.exitValue() + ":\n"
+                    + String.join("\n", lines.subList(Math.max(0, lines.size() - 20), lines.size())));
+        }
+        return analyze(lines, log);
+    }
+
+    /**
+     * Checks every {@link #EXPECTATIONS expectation} against a {@code PrintInlining} log of {@link InliningWorkload}.
+     */
+    static List<String> analyze(List<String> lines, PrintStream log) {
+        int freqInlineSize = -1;
+        for (String line : lines) {
+            Matcher freq = FREQ_INLINE_SIZE.matcher(line);
+            if (freq.find()) {
+                freqInlineSize = Integer.parseInt(freq.group(1));
+            }
+        }
+        if (freqInlineSize < 0) {
+            throw new IllegalStateException("No " + InliningWorkload.FREQ_INLINE_SIZE + " line in the workload output");
+        }
+
+        // Call sites of the C2 compilations of each caller, as {callee, bytes, decision}
+        String workload = InliningWorkload.class.getName();
+        List<String[]> calls = new ArrayList<>();
+        List<String> callers = new ArrayList<>();
+        String current = null;
+        for (String line : lines) {
+            Matcher task = TASK.matcher(line);
+            if (task.matches()) {
+                // A line reporting a state change, such as "made not entrant", does not start a new inlining tree
+                if (!task.group(4).contains("made")) {
+                    current = task.group(1).equals("4") && task.group(2).equals(workload) ? task.group(3) : null;
+                    if (current != null) callers.add(current);
+                }
+                continue;
+            }
+            Matcher call = CALL.matcher(line);
+            if (current != null && call.matches()) {
+                calls.add(new String[]{current, call.group(1), call.group(2), call.group(3).trim()});
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (Expectation expectation : EXPECTATIONS) {
+            String label = expectation.description + " into InliningWorkload::" + expectation.caller;
+            if (!callers.contains(expectation.caller)) {
+                failures.add("Not checked, C2 never compiled InliningWorkload::" + expectation.caller);
+                continue;
+            }
+            String inlined = null;
+            String rejected = null;
+            String tooLarge = null;
+            for (String[] call : calls) {
+                if (!call[0].equals(expectation.caller) || !expectation.callee.matcher(call[1]).matches()) continue;
+                int bytes = Integer.parseInt(call[2]);
+                if (bytes > freqInlineSize) {
+                    tooLarge = call[1] + " has " + bytes + " bytes, above FreqInlineSize=" + freqInlineSize;
+                } else if (isInlined(call[3])) {
+                    inlined = call[1] + " (" + bytes + " bytes)";
+                } else {
+                    rejected = call[1] + ": " + call[3];
+                }
+            }
+            if (tooLarge != null) {
+                failures.add("Too large: " + label + ", " + tooLarge);
+            } else if (inlined == null) {
+                failures.add("Not inlined: " + label + (rejected == null ? ", call site not found" : ", " + rejected));
+            } else {
+                log.println("Inlined: " + label + ", " + inlined);
+            }
+        }
+
+        for (String[] call : calls) {
+            if (GENERATED.matcher(call[1]).matches() && call[3].startsWith("virtual call")) {
+                log.println("Megamorphic: " + call[1] + " in InliningWorkload::" + call[0]);
+            }
+        }
+        return failures;
+    }
+
+    private static boolean isInlined(String decision) {
+        return decision.startsWith("inline") || decision.equals("accessor") || decision.startsWith("intrinsic");
+    }
+}
@@ -0,0 +1,113 @@
+package com.j8a.sealed.benchmarks;
+
+import com.j8a.sealed.benchmarks.model.Circle;
+import com.j8a.sealed.benchmarks.model.Event;
+import com.j8a.sealed.benchmarks.model.Figure;
+import com.j8a.sealed.benchmarks.model.Hexagon;
+import com.j8a.sealed.benchmarks.model.Octagon;
+import com.j8a.sealed.benchmarks.model.Pentagon;
+import com.j8a.sealed.benchmarks.model.Square;
+import com.j8a.sealed.benchmarks.model.TaggedFigure;
+import com.j8a.sealed.benchmarks.model.Triangle;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+
+/**
+ * The callers {@link InliningCheck} inspects, run in the forked JVM until C2 has compiled them. Each caller exercises
+ * one generated method the way application code would: {@link #delegate} a delegated blueprint method, {@link #accept}
+ * a wrapper's {@code accept}, {@link #match} a staged matcher's {@code apply}, and {@link #taggedDelegate} the
+ * tagged wrapper over six kinds at one call site.
+ * <p>
+ * Prints {@code FreqInlineSize=<n>} first so the checker judges sizes against the forked JVM's own threshold.
+ */
+public final class InliningWorkload {
+
+    static final String FREQ_INLINE_SIZE = "FreqInlineSize=";
+
+    /** Calls per caller, far above the C2 compile threshold with or without tiered compilation. */
+    private static final int ROUNDS = 20_000;
+
+    private static final Figure.Visitor<Integer> SIDES = new Figure.Visitor<Integer>() {
+        @Override public Integer onCircle(Circle circle) { return 0; }
+        @Override public Integer onSquare(Square square) { return 4; }
+        @Override public Integer onTriangle(Triangle triangle) { return 3; }
+        @Override public Integer onPentagon(Pentagon pentagon) { return 5; }
+        @Override public Integer onHexagon(Hexagon hexagon) { return 6; }
+        @Override public Integer onOctagon(Octagon octagon) { return 8; }
+    };
+
+    private InliningWorkload() {
+    }
+
+    public static void main(String[] args) {
+        HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        System.out.println(FREQ_INLINE_SIZE + hotSpot.getVMOption("FreqInlineSize").getValue());
+        System.out.flush();
+
+        Figure[] circles = new Figure[64];
+        TaggedFigure[] mixed = new TaggedFigure[64];
+        Event[] events = new Event[64];
+        for (int i = 0; i < circles.length; i++) {
+            circles[i] = Figure.wrap(new Circle(i));
+            mixed[i] = TaggedFigure.wrapAny(figure(i % 6, i));
+            events[i] = Event.wrapAny(LoadHarness.message(i % 16, i, i));
+        }
+        Function<Event, Integer> route = new LoadHarness.EventWorkload().route();
+
+        double sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            sink += delegate(circles);
+            sink += accept(circles);
+            sink += match(route, events);
+            sink += taggedDelegate(mixed);
+        }
+        // Keeps the loops alive and tells the parent the run finished
+        System.out.println("done " + (sink != 0));
+    }
+
+    static double delegate(Figure[] figures) {
+        double sum = 0;
+        for (Figure figure : figures) {
+            sum += figure.area();
+        }
+        return sum;
+    }
+
+    static double accept(Figure[] figures) {
+        long sides = 0;
+        for (Figure figure : figures) {
+            sides += figure.accept(SIDES);
+        }
+        return sides;
+    }
+
+    static double match(Function<Event, Integer> route, Event[] events) {
+        long queues = 0;
+        for (Event event : events) {
+            queues += route.apply(event);
+        }
+        return queues;
+    }
+
+    static double taggedDelegate(TaggedFigure[] figures) {
+        double sum = 0;
+        for (TaggedFigure figure : figures) {
+            sum += figure.area();
+        }
+        return sum;
+    }
+
+    /** The six figure leaves by index. */
+    private static Object figure(int index, double side) {
+        switch (index) {
+            case 0: return new Circle(side);
+            case 1: return new Square(side);
+            case 2: return new Triangle(side);
+            case 3: return new Pentagon(side);
+            case 4: return new Hexagon(side);
+            default: return new Octagon(side);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.j8a.sealed.benchmarks;
+
+/**
+ * Log-linear histogram of non-negative {@code long} values, such as latencies in nanoseconds.
+ * <p>
+ * Values below {@code 2^SUB_BITS} get a bucket each. Above that, every power-of-two range is split into
+ * {@code 2^SUB_BITS} equal buckets, so a recorded value is known to within {@code 1 / 2^SUB_BITS} (about 1.6%) at any
+ * magnitude, with a fixed 30 KiB of counts. Not thread-safe: record into one histogram per thread and {@link #add}
+ * them afterwards.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+    private long total;
+    private long max;
+    private double sum;
+
+    void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /** Adds the counts of {@code other} to this histogram. */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * The value at or below which {@code percentile} percent of the recorded values fall, rounded up to the end of its
+     * bucket and capped at {@link #max()}. {@code 0} when empty.
+     */
+    long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Bucket b >= 1 covers [2^(b + SUB_BITS - 1), 2^(b + SUB_BITS)) in steps of 2^(b - 1)
+        int bucket = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> (bucket - 1)) - SUB_BUCKETS;
+        return (bucket << SUB_BITS) + sub;
+    }
+
+    /** The largest value recorded into bucket {@code index}. */
+    static long highestEquivalent(int index) {
+        int bucket = index >>> SUB_BITS;
+        int sub = index & (SUB_BUCKETS - 1);
+        if (bucket == 0) {
+            return sub;
+        }
+        long lowest = (long) (sub + SUB_BUCKETS) << (bucket - 1);
+        return lowest + (1L << (bucket - 1)) - 1;
+    }
+}
@@ -0,0 +1,360 @@
+package com.j8a.sealed.benchmarks;
+
+import com.j8a.sealed.benchmarks.model.CartUpdated;
+import com.j8a.sealed.benchmarks.model.CouponApplied;
+import com.j8a.sealed.benchmarks.model.CustomerRegistered;
+import com.j8a.sealed.benchmarks.model.CustomerUpdated;
+import com.j8a.sealed.benchmarks.model.Err;
+import com.j8a.sealed.benchmarks.model.Event;
+import com.j8a.sealed.benchmarks.model.Heartbeat;
+import com.j8a.sealed.benchmarks.model.Ok;
+import com.j8a.sealed.benchmarks.model.OrderCancelled;
+import com.j8a.sealed.benchmarks.model.OrderPlaced;
+import com.j8a.sealed.benchmarks.model.Outcome;
+import com.j8a.sealed.benchmarks.model.PaymentAuthorized;
+import com.j8a.sealed.benchmarks.model.PaymentCaptured;
+import com.j8a.sealed.benchmarks.model.PaymentRefunded;
+import com.j8a.sealed.benchmarks.model.PriceChanged;
+import com.j8a.sealed.benchmarks.model.ReviewPosted;
+import com.j8a.sealed.benchmarks.model.ShipmentCreated;
+import com.j8a.sealed.benchmarks.model.ShipmentDelivered;
+import com.j8a.sealed.benchmarks.model.StockReleased;
+import com.j8a.sealed.benchmarks.model.StockReserved;
+import com.j8a.sealed.benchmarks.model.TaggedEvent;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Drives the sixteen-leaf {@code Event} hierarchy like a message router: every operation wraps a decoded message with
+ * {@code wrapAny}, routes it through a staged matcher, calls the delegated {@code weight()}, and validates the result
+ * with {@code map}/{@code flatMap} on {@code Outcome}.
+ * <p>
+ * Each thread replays its own pool of messages drawn from a skewed mix of leaves, runs a warm-up period, then times
+ * every operation into its own {@link LatencyHistogram}. The histograms are merged per mode, and one CSV row per mode
+ * reports throughput and latency percentiles. Modes are {@code wrappers} ({@code Event}) and {@code tagged}
+ * ({@code TaggedEvent}); run one mode per JVM to compare JVM flags.
+ * <pre>
+ * java -cp ... com.j8a.sealed.benchmarks.LoadHarness \
+ *     --modes=wrappers,tagged --threads=4 --mix=zipf:1.2 --warmup-ms=5000 --duration-ms=20000 --out=load.csv
+ * </pre>
+ * Mixes are {@code uniform}, {@code zipf:<exponent>} (leaves ranked in {@code @Permits} order) and
+ * {@code hot:<share>} (the first leaf takes {@code share}, the rest split the remainder). Latencies include two
+ * {@code System.nanoTime()} calls, about 20-40 ns on common platforms.
+ */
+public final class LoadHarness {
+
+    static final String HEADER = "mode,mix,threads,operations,seconds,ops_per_sec,mean_ns,p50_ns,p99_ns,p999_ns,max_ns";
+
+    private static final int LEAVES = 16;
+
+    private final int threads;
+    private final long warmupMs;
+    private final long durationMs;
+    private final String mix;
+    private final double[] cumulative;
+    private final int poolSize;
+    private final long seed;
+
+    /** Keeps the JIT from discarding the work. */
+    private final AtomicLong sink = new AtomicLong();
+
+    LoadHarness(int threads, long warmupMs, long durationMs, String mix, int poolSize, long seed) {
+        if (threads < 1 || poolSize < 1) {
+            throw new IllegalArgumentException("threads and pool size must be positive");
+        }
+        this.threads = threads;
+        this.warmupMs = warmupMs;
+        this.durationMs = durationMs;
+        this.mix = mix;
+        this.cumulative = cumulative(weights(mix));
+        this.poolSize = poolSize;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> modes = Arrays.asList("wrappers", "tagged");
+        int threads = Runtime.getRuntime().availableProcessors();
+        long warmupMs = 5_000;
+        long durationMs = 20_000;
+        String mix = "zipf:1.2";
+        int poolSize = 65_536;
+        String out = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--modes=")) {
+                modes = Arrays.asList(arg.substring("--modes=".length()).split(","));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--warmup-ms=")) {
+                warmupMs = Long.parseLong(arg.substring("--warmup-ms=".length()));
+            } else if (arg.startsWith("--duration-ms=")) {
+                durationMs = Long.parseLong(arg.substring("--duration-ms=".length()));
+            } else if (arg.startsWith("--mix=")) {
+                mix = arg.substring("--mix=".length());
+            } else if (arg.startsWith("--pool=")) {
+                poolSize = Integer.parseInt(arg.substring("--pool=".length()));
+            } else if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        List<String> rows = new LoadHarness(threads, warmupMs, durationMs, mix, poolSize, 42).run(modes, System.err);
+        if (out == null) {
+            rows.forEach(System.out::println);
+        } else {
+            Files.write(Paths.get(out), rows, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Runs every mode in turn and returns the CSV lines, header first. Each row also goes to {@code log}.
+     */
+    List<String> run(List<String> modes, PrintStream log) throws InterruptedException {
+        List<String> rows = new ArrayList<>();
+        rows.add(HEADER);
+        for (String mode : modes) {
+            String row = measure(mode.trim());
+            log.println(row);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private String measure(String mode) throws InterruptedException {
+        Supplier<Workload> workloads;
+        switch (mode) {
+            case "wrappers": workloads = EventWorkload::new; break;
+            case "tagged": workloads = TaggedEventWorkload::new; break;
+            default: throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        LatencyHistogram[] histograms = new LatencyHistogram[threads];
+        long[] window = new long[2];
+        // The last thread to arrive fixes the shared timeline
+        CyclicBarrier start = new CyclicBarrier(threads, () -> {
+            window[0] = System.nanoTime() + warmupMs * 1_000_000;
+            window[1] = window[0] + durationMs * 1_000_000;
+        });
+        Thread[] workers = new Thread[threads];
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    histograms[index] = drive(workloads.get(), pool(seed + index), start, window);
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        if (failure[0] == null) failure[0] = e;
+                    }
+                    start.reset();
+                }
+            }, "load-" + mode + "-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure[0] != null) {
+            throw new IllegalStateException("Load thread failed in mode " + mode, failure[0]);
+        }
+
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            merged.add(histogram);
+        }
+        double seconds = durationMs / 1000.0;
+        return String.format(Locale.ROOT, "%s,%s,%d,%d,%.3f,%.0f,%.1f,%d,%d,%d,%d",
+                mode, mix, threads, merged.count(), seconds, merged.count() / seconds, merged.mean(),
+                merged.percentile(50), merged.percentile(99), merged.percentile(99.9), merged.max());
+    }
+
+    private LatencyHistogram drive(Workload workload, Object[] pool, CyclicBarrier start, long[] window)
+            throws InterruptedException, BrokenBarrierException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long checksum = 0;
+        int next = 0;
+        start.await();
+
+        while (System.nanoTime() < window[0]) {
+            checksum += workload.process(pool[next]);
+            next = next + 1 == pool.length ? 0 : next + 1;
+        }
+        long before = System.nanoTime();
+        while (before < window[1]) {
+            checksum += workload.process(pool[next]);
+            next = next + 1 == pool.length ? 0 : next + 1;
+            long after = System.nanoTime();
+            histogram.record(after - before);
+            before = after;
+        }
+        sink.addAndGet(checksum);
+        return histogram;
+    }
+
+    /** Messages as a decoder would hand them over, leaves drawn from the mix. */
+    Object[] pool(long poolSeed) {
+        SplittableRandom random = new SplittableRandom(poolSeed);
+        Object[] pool = new Object[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            int leaf = Arrays.binarySearch(cumulative, random.nextDouble());
+            leaf = Math.min(leaf < 0 ? -leaf - 1 : leaf, LEAVES - 1);
+            pool[i] = message(leaf, random.nextLong(), random.nextInt(10_000));
+        }
+        return pool;
+    }
+
+    static double[] weights(String mix) {
+        double[] weights = new double[LEAVES];
+        if (mix.equals("uniform")) {
+            Arrays.fill(weights, 1);
+        } else if (mix.startsWith("zipf:")) {
+            double exponent = Double.parseDouble(mix.substring("zipf:".length()));
+            for (int i = 0; i < LEAVES; i++) {
+                weights[i] = 1 / Math.pow(i + 1, exponent);
+            }
+        } else if (mix.startsWith("hot:")) {
+            double share = Double.parseDouble(mix.substring("hot:".length()));
+            if (share < 0 || share > 1) {
+                throw new IllegalArgumentException("Hot share must be within [0, 1]: " + share);
+            }
+            Arrays.fill(weights, (1 - share) / (LEAVES - 1));
+            weights[0] = share;
+        } else {
+            throw new IllegalArgumentException("Unknown mix: " + mix);
+        }
+        return weights;
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double[] cumulative = new double[weights.length];
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += weights[i];
+            cumulative[i] = running / total;
+        }
+        return cumulative;
+    }
+
+    /** The leaf at {@code index} in {@code @Permits} order. */
+    static Object message(int index, long id, int amount) {
+        switch (index) {
+            case 0: return new OrderPlaced(id, amount);
+            case 1: return new OrderCancelled(id, amount);
+            case 2: return new PaymentAuthorized(id, amount);
+            case 3: return new PaymentCaptured(id, amount);
+            case 4: return new PaymentRefunded(id, amount);
+            case 5: return new ShipmentCreated(id, amount);
+            case 6: return new ShipmentDelivered(id, amount);
+            case 7: return new StockReserved(id, amount);
+            case 8: return new StockReleased(id, amount);
+            case 9: return new CustomerRegistered(id, amount);
+            case 10: return new CustomerUpdated(id, amount);
+            case 11: return new CartUpdated(id, amount);
+            case 12: return new PriceChanged(id, amount);
+            case 13: return new CouponApplied(id, amount);
+            case 14: return new ReviewPosted(id, amount);
+            case 15: return new Heartbeat(id, amount);
+            default: throw new IllegalArgumentException("No leaf " + index);
+        }
+    }
+
+    /** One routed message, with the same steps for both representations. */
+    interface Workload {
+        long process(Object message);
+    }
+
+    private static final Outcome.Visitor<Integer, Long> SETTLE = new Outcome.Visitor<Integer, Long>() {
+        @Override public Long onOk(Ok<Integer> ok) { return (long) ok.get(); }
+        @Override public Long onErr(Err err) { return -1L; }
+    };
+
+    private static final Err REJECTED = new Err("rejected");
+
+    static Outcome<Integer> validate(int weight, int route) {
+        return Outcome.wrap(new Ok<>(weight))
+                .map(value -> value + route)
+                .flatMap(value -> value % 97 == 0 ? Outcome.wrap(REJECTED) : Outcome.wrap(new Ok<>(value)));
+    }
+
+    /** Routes to one of four queues, so the matcher does some work per leaf. */
+    static final class EventWorkload implements Workload {
+        private final Function<Event, Integer> route = Event.returning(Integer.class)
+                .onCartUpdated(e -> 1)
+                .onCouponApplied(e -> 1)
+                .onCustomerRegistered(e -> 2)
+                .onCustomerUpdated(e -> 2)
+                .onHeartbeat(e -> 0)
+                .onOrderCancelled(e -> 3)
+                .onOrderPlaced(e -> (int) (e.id() & 3))
+                .onPaymentAuthorized(e -> 3)
+                .onPaymentCaptured(e -> 3)
+                .onPaymentRefunded(e -> 3)
+                .onPriceChanged(e -> 1)
+                .onReviewPosted(e -> 2)
+                .onShipmentCreated(e -> (int) (e.id() & 1))
+                .onShipmentDelivered(e -> 0)
+                .onStockReleased(e -> 1)
+                .onStockReserved(e -> 1)
+                .asFunction();
+
+        Function<Event, Integer> route() {
+            return route;
+        }
+
+        @Override
+        public long process(Object message) {
+            Event event = Event.wrapAny(message);
+            int queue = route.apply(event);
+            return validate(event.weight(), queue).accept(SETTLE);
+        }
+    }
+
+    /** {@link EventWorkload} over {@code TaggedEvent}. */
+    static final class TaggedEventWorkload implements Workload {
+        private final Function<TaggedEvent, Integer> route = TaggedEvent.returning(Integer.class)
+                .onCartUpdated(e -> 1)
+                .onCouponApplied(e -> 1)
+                .onCustomerRegistered(e -> 2)
+                .onCustomerUpdated(e -> 2)
+                .onHeartbeat(e -> 0)
+                .onOrderCancelled(e -> 3)
+                .onOrderPlaced(e -> (int) (e.id() & 3))
+                .onPaymentAuthorized(e -> 3)
+                .onPaymentCaptured(e -> 3)
+                .onPaymentRefunded(e -> 3)
+                .onPriceChanged(e -> 1)
+                .onReviewPosted(e -> 2)
+                .onShipmentCreated(e -> (int) (e.id() & 1))
+                .onShipmentDelivered(e -> 0)
+                .onStockReleased(e -> 1)
+                .onStockReserved(e -> 1)
+                .asFunction();
+
+        @Override
+        public long process(Object message) {
+            TaggedEvent event = TaggedEvent.wrapAny(message);
+            int queue = route.apply(event);
+            return validate(event.weight(), queue).accept(SETTLE);
+        }
+    }
+}
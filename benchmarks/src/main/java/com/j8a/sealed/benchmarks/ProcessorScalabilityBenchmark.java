@@ -0,0 +1,136 @@
+package com.j8a.sealed.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how {@code SealedProcessor} scales with hierarchy width and blueprint size.
+ * <p>
+ * For every combination of permitted-class count and blueprint-method count a hierarchy is synthesized, compiled
+ * in-process, and one CSV row is written with the median processor time and the size of what was generated.
+ * <pre>
+ * java -cp ... com.j8a.sealed.benchmarks.ProcessorScalabilityBenchmark \
+ *     --leaves=2,8,32,128,512 --methods=0,4,16,64 --iterations=5 --out=processor-scalability.csv
+ * </pre>
+ */
+public final class ProcessorScalabilityBenchmark {
+
+    static final String HEADER = "leaves,methods,processor_ms,compile_ms,generated_source_bytes,nested_types,class_file_bytes";
+
+    private final int[] leafCounts;
+    private final int[] methodCounts;
+    private final int iterations;
+
+    ProcessorScalabilityBenchmark(int[] leafCounts, int[] methodCounts, int iterations) {
+        this.leafCounts = leafCounts;
+        this.methodCounts = methodCounts;
+        this.iterations = iterations;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] leaves = {2, 4, 8, 16, 32, 64, 128, 256, 512};
+        int[] methods = {0, 1, 4, 16, 64};
+        int iterations = 3;
+        String out = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--leaves=")) {
+                leaves = parseInts(arg.substring("--leaves=".length()));
+            } else if (arg.startsWith("--methods=")) {
+                methods = parseInts(arg.substring("--methods=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        List<String> rows = new ProcessorScalabilityBenchmark(leaves, methods, iterations).run(System.err);
+        if (out == null) {
+            rows.forEach(System.out::println);
+        } else {
+            Files.write(Paths.get(out), rows, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Runs every configuration and returns the CSV lines, header first. Progress goes to {@code log}.
+     */
+    List<String> run(PrintStream log) {
+        // One throw-away compilation so the first row does not pay for loading javac
+        measure(leafCounts[0], methodCounts[0]);
+
+        List<String> rows = new ArrayList<>();
+        rows.add(HEADER);
+        for (int leafCount : leafCounts) {
+            for (int methodCount : methodCounts) {
+                long[] processor = new long[iterations];
+                long[] compile = new long[iterations];
+                InMemoryCompilation last = null;
+                for (int i = 0; i < iterations; i++) {
+                    last = measure(leafCount, methodCount);
+                    processor[i] = last.processorNanos();
+                    compile[i] = last.compileNanos();
+                }
+                String row = toRow(leafCount, methodCount, median(processor), median(compile), last);
+                log.println(row);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static InMemoryCompilation measure(int leafCount, int methodCount) {
+        InMemoryCompilation compilation = new InMemoryCompilation();
+        SyntheticHierarchy.addTo(compilation, leafCount, methodCount);
+        compilation.compile();
+        if (!compilation.succeeded()) {
+            throw new IllegalStateException("Synthetic hierarchy with " + leafCount + " leaves and " + methodCount
+                    + " methods failed to compile:\n" + compilation.errors());
+        }
+        return compilation;
+    }
+
+    private static String toRow(int leafCount, int methodCount, long processorNanos, long compileNanos, InMemoryCompilation compilation) {
+        long sourceBytes = 0;
+        for (byte[] source : compilation.generatedSources().values()) {
+            sourceBytes += source.length;
+        }
+
+        String root = SyntheticHierarchy.ROOT;
+        int nestedTypes = 0;
+        long classBytes = 0;
+        for (Map.Entry<String, byte[]> classFile : compilation.classFiles().entrySet()) {
+            if (classFile.getKey().equals(root) || classFile.getKey().startsWith(root + "$")) {
+                classBytes += classFile.getValue().length;
+                if (!classFile.getKey().equals(root)) {
+                    nestedTypes++;
+                }
+            }
+        }
+
+        return leafCount + "," + methodCount + ","
+                + String.format("%.3f", processorNanos / 1e6) + ","
+                + String.format("%.3f", compileNanos / 1e6) + ","
+                + sourceBytes + "," + nestedTypes + "," + classBytes;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
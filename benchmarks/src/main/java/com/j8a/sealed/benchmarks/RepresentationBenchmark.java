@@ -0,0 +1,205 @@
+package com.j8a.sealed.benchmarks;
+
+import com.j8a.sealed.benchmarks.model.Circle;
+import com.j8a.sealed.benchmarks.model.Figure;
+import com.j8a.sealed.benchmarks.model.Hexagon;
+import com.j8a.sealed.benchmarks.model.Octagon;
+import com.j8a.sealed.benchmarks.model.Pentagon;
+import com.j8a.sealed.benchmarks.model.Square;
+import com.j8a.sealed.benchmarks.model.TaggedFigure;
+import com.j8a.sealed.benchmarks.model.Triangle;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Compares the default representation, one wrapper class per leaf, against {@code @Sealed(tagged = true)}, a single
+ * wrapper class switching on a kind tag.
+ * <p>
+ * Both hierarchies wrap the same six leaves, mixed uniformly at random, so every call site in the default
+ * representation sees six receiver classes. Each operation has its own loop per representation to keep the type
+ * profiles apart. One CSV row is written per representation and operation with the median cost per call.
+ * <pre>
+ * java -cp ... com.j8a.sealed.benchmarks.RepresentationBenchmark --size=100000 --iterations=5 --out=representation.csv
+ * </pre>
+ */
+public final class RepresentationBenchmark {
+
+    static final String HEADER = "representation,operation,ns_per_call";
+
+    /** Calls measured per round, so small arrays are traversed enough times to be timed. */
+    private static final long CALLS_PER_ROUND = 20_000_000;
+
+    private static final Figure.Visitor<Integer> FIGURE_SIDES = new Figure.Visitor<Integer>() {
+        @Override public Integer onCircle(Circle circle) { return 0; }
+        @Override public Integer onSquare(Square square) { return 4; }
+        @Override public Integer onTriangle(Triangle triangle) { return 3; }
+        @Override public Integer onPentagon(Pentagon pentagon) { return 5; }
+        @Override public Integer onHexagon(Hexagon hexagon) { return 6; }
+        @Override public Integer onOctagon(Octagon octagon) { return 8; }
+    };
+
+    private static final TaggedFigure.Visitor<Integer> TAGGED_SIDES = new TaggedFigure.Visitor<Integer>() {
+        @Override public Integer onCircle(Circle circle) { return 0; }
+        @Override public Integer onSquare(Square square) { return 4; }
+        @Override public Integer onTriangle(Triangle triangle) { return 3; }
+        @Override public Integer onPentagon(Pentagon pentagon) { return 5; }
+        @Override public Integer onHexagon(Hexagon hexagon) { return 6; }
+        @Override public Integer onOctagon(Octagon octagon) { return 8; }
+    };
+
+    private final Figure[] figures;
+    private final TaggedFigure[] tagged;
+    private final int iterations;
+
+    RepresentationBenchmark(int size, int iterations, long seed) {
+        this.figures = new Figure[size];
+        this.tagged = new TaggedFigure[size];
+        this.iterations = iterations;
+
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            double side = 1 + random.nextInt(10);
+            switch (random.nextInt(6)) {
+                case 0: figures[i] = Figure.wrap(new Circle(side)); tagged[i] = TaggedFigure.wrap(new Circle(side)); break;
+                case 1: figures[i] = Figure.wrap(new Square(side)); tagged[i] = TaggedFigure.wrap(new Square(side)); break;
+                case 2: figures[i] = Figure.wrap(new Triangle(side)); tagged[i] = TaggedFigure.wrap(new Triangle(side)); break;
+                case 3: figures[i] = Figure.wrap(new Pentagon(side)); tagged[i] = TaggedFigure.wrap(new Pentagon(side)); break;
+                case 4: figures[i] = Figure.wrap(new Hexagon(side)); tagged[i] = TaggedFigure.wrap(new Hexagon(side)); break;
+                default: figures[i] = Figure.wrap(new Octagon(side)); tagged[i] = TaggedFigure.wrap(new Octagon(side)); break;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = 100_000;
+        int iterations = 5;
+        String out = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--size=")) {
+                size = Integer.parseInt(arg.substring("--size=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        List<String> rows = new RepresentationBenchmark(size, iterations, 42).run(System.err);
+        if (out == null) {
+            rows.forEach(System.out::println);
+        } else {
+            Files.write(Paths.get(out), rows, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Runs every operation on both representations and returns the CSV lines, header first. Each row also goes to
+     * {@code log}. Fails if the representations disagree on a result.
+     */
+    List<String> run(PrintStream log) {
+        List<String> rows = new ArrayList<>();
+        rows.add(HEADER);
+        measurePair(rows, log, "delegate", () -> delegate(figures), () -> delegate(tagged));
+        measurePair(rows, log, "accept", () -> accept(figures), () -> accept(tagged));
+        measurePair(rows, log, "kind", () -> kind(figures), () -> kind(tagged));
+        return rows;
+    }
+
+    private void measurePair(List<String> rows, PrintStream log, String operation, DoubleSupplier wrappers, DoubleSupplier tags) {
+        double wrappersResult = wrappers.getAsDouble();
+        double tagsResult = tags.getAsDouble();
+        if (wrappersResult != tagsResult) {
+            throw new IllegalStateException(operation + ": wrapper classes computed " + wrappersResult + " but tagged computed " + tagsResult);
+        }
+        for (String row : new String[]{
+                "wrapper_classes," + operation + "," + String.format("%.2f", measure(wrappers)),
+                "tagged," + operation + "," + String.format("%.2f", measure(tags))}) {
+            log.println(row);
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Median nanoseconds per call over {@code iterations} rounds, after two discarded warm-up rounds.
+     */
+    private double measure(DoubleSupplier pass) {
+        long passes = Math.max(1, CALLS_PER_ROUND / figures.length);
+        double[] samples = new double[iterations];
+        double sink = 0;
+        for (int i = -2; i < iterations; i++) {
+            long start = System.nanoTime();
+            for (long p = 0; p < passes; p++) {
+                sink += pass.getAsDouble();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (i >= 0) {
+                samples[i] = (double) elapsed / (passes * figures.length);
+            }
+        }
+        if (sink == -1) {
+            throw new AssertionError(sink);
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private static double delegate(Figure[] values) {
+        double sum = 0;
+        for (Figure value : values) {
+            sum += value.area();
+        }
+        return sum;
+    }
+
+    private static double delegate(TaggedFigure[] values) {
+        double sum = 0;
+        for (TaggedFigure value : values) {
+            sum += value.area();
+        }
+        return sum;
+    }
+
+    private static double accept(Figure[] values) {
+        long sides = 0;
+        for (Figure value : values) {
+            sides += value.accept(FIGURE_SIDES);
+        }
+        return sides;
+    }
+
+    private static double accept(TaggedFigure[] values) {
+        long sides = 0;
+        for (TaggedFigure value : values) {
+            sides += value.accept(TAGGED_SIDES);
+        }
+        return sides;
+    }
+
+    private static double kind(Figure[] values) {
+        long ordinals = 0;
+        for (Figure value : values) {
+            ordinals += value.kind().ordinal();
+        }
+        return ordinals;
+    }
+
+    private static double kind(TaggedFigure[] values) {
+        long ordinals = 0;
+        for (TaggedFigure value : values) {
+            ordinals += value.kind().ordinal();
+        }
+        return ordinals;
+    }
+}
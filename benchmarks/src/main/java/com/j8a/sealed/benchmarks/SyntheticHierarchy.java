@@ -0,0 +1,45 @@
+package com.j8a.sealed.benchmarks;
+
+/**
+ * Source generator for benchmark hierarchies: a blueprint {@code bench.BenchDef} generating {@code bench.Bench},
+ * permitting {@code Leaf0..LeafN-1}, each implementing {@code m0..mM-1}.
+ */
+final class SyntheticHierarchy {
+
+    static final String ROOT = "bench.Bench";
+
+    private SyntheticHierarchy() {
+    }
+
+    static void addTo(InMemoryCompilation compilation, int leafCount, int methodCount) {
+        StringBuilder permits = new StringBuilder();
+        for (int i = 0; i < leafCount; i++) {
+            if (i > 0) permits.append(", ");
+            permits.append("Leaf").append(i).append(".class");
+        }
+
+        StringBuilder blueprint = new StringBuilder()
+                .append("package bench;\n")
+                .append("import com.j8a.sealed.annotations.Sealed;\n")
+                .append("import com.j8a.sealed.annotations.Permits;\n")
+                .append("@Sealed(name = \"Bench\")\n")
+                .append("@Permits(classes = {").append(permits).append("})\n")
+                .append("public interface BenchDef {\n");
+        for (int m = 0; m < methodCount; m++) {
+            blueprint.append("    int m").append(m).append("(int a, String b);\n");
+        }
+        blueprint.append("}\n");
+        compilation.addSource("bench.BenchDef", blueprint.toString());
+
+        for (int i = 0; i < leafCount; i++) {
+            StringBuilder leaf = new StringBuilder()
+                    .append("package bench;\n")
+                    .append("public final class Leaf").append(i).append(" {\n");
+            for (int m = 0; m < methodCount; m++) {
+                leaf.append("    public int m").append(m).append("(int a, String b) { return a + ").append(m).append("; }\n");
+            }
+            leaf.append("}\n");
+            compilation.addSource("bench.Leaf" + i, leaf.toString());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Circle {
+    private final double size;
+
+    public Circle(double size) {
+        this.size = size;
+    }
+
+    public double area() {
+        return Math.PI * size * size;
+    }
+}
@@ -0,0 +1,19 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class CustomerRegistered {
+    private final long id;
+    private final int amount;
+
+    public CustomerRegistered(long id, int amount) {
+        this.id = id;
+        this.amount = amount;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int weight() {
+        return amount * 10 + (int) (id & 9);
+    }
+}
@@ -0,0 +1,18 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Err {
+    private final String message;
+
+    public Err(String message) {
+        this.message = message;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "Err(" + message + ")";
+    }
+}
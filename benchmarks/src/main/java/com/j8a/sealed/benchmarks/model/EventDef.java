@@ -0,0 +1,18 @@
+package com.j8a.sealed.benchmarks.model;
+
+import com.j8a.sealed.annotations.Permits;
+import com.j8a.sealed.annotations.Sealed;
+
+/**
+ * Sixteen-leaf message hierarchy for {@code LoadHarness}, in the default representation with one wrapper class per
+ * leaf.
+ */
+@Sealed(name = "Event")
+@Permits(classes = {
+        OrderPlaced.class, OrderCancelled.class, PaymentAuthorized.class, PaymentCaptured.class,
+        PaymentRefunded.class, ShipmentCreated.class, ShipmentDelivered.class, StockReserved.class,
+        StockReleased.class, CustomerRegistered.class, CustomerUpdated.class, CartUpdated.class,
+        PriceChanged.class, CouponApplied.class, ReviewPosted.class, Heartbeat.class})
+public interface EventDef {
+    int weight();
+}
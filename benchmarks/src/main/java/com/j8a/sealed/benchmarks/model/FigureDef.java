@@ -0,0 +1,14 @@
+package com.j8a.sealed.benchmarks.model;
+
+import com.j8a.sealed.annotations.Permits;
+import com.j8a.sealed.annotations.Sealed;
+
+/**
+ * Six-leaf benchmark hierarchy with one wrapper class per leaf, the default representation. Compact, as only the visitor
+ * is used.
+ */
+@Sealed(name = "Figure", compact = true)
+@Permits(classes = {Circle.class, Square.class, Triangle.class, Pentagon.class, Hexagon.class, Octagon.class})
+public interface FigureDef {
+    double area();
+}
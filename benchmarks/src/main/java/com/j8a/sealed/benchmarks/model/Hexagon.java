@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Hexagon {
+    private final double size;
+
+    public Hexagon(double size) {
+        this.size = size;
+    }
+
+    public double area() {
+        return size * size * 2.598076211353316;
+    }
+}
@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Octagon {
+    private final double size;
+
+    public Octagon(double size) {
+        this.size = size;
+    }
+
+    public double area() {
+        return size * size * 4.82842712474619;
+    }
+}
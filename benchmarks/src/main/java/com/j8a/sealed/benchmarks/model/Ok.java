@@ -0,0 +1,18 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Ok<T> {
+    private final T value;
+
+    public Ok(T value) {
+        this.value = value;
+    }
+
+    public T get() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "Ok(" + value + ")";
+    }
+}
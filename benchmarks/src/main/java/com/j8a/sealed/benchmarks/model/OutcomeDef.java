@@ -0,0 +1,12 @@
+package com.j8a.sealed.benchmarks.model;
+
+import com.j8a.sealed.annotations.Permits;
+import com.j8a.sealed.annotations.Sealed;
+
+/**
+ * Generic benchmark hierarchy, the generated {@code Outcome<T>} mirrors the usual {@code Result<T>} shape.
+ */
+@Sealed(name = "Outcome")
+@Permits(classes = {Ok.class, Err.class})
+public interface OutcomeDef<T> {
+}
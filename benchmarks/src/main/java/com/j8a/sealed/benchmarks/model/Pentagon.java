@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Pentagon {
+    private final double size;
+
+    public Pentagon(double size) {
+        this.size = size;
+    }
+
+    public double area() {
+        return size * size * 1.720477400588967;
+    }
+}
@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Square {
+    private final double size;
+
+    public Square(double size) {
+        this.size = size;
+    }
+
+    public double area() {
+        return size * size;
+    }
+}
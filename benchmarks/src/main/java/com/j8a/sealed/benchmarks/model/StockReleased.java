@@ -0,0 +1,19 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class StockReleased {
+    private final long id;
+    private final int amount;
+
+    public StockReleased(long id, int amount) {
+        this.id = id;
+        this.amount = amount;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int weight() {
+        return amount * 9 + (int) (id & 2);
+    }
+}
@@ -0,0 +1,17 @@
+package com.j8a.sealed.benchmarks.model;
+
+import com.j8a.sealed.annotations.Permits;
+import com.j8a.sealed.annotations.Sealed;
+
+/**
+ * The leaves of {@link EventDef} in the tagged representation.
+ */
+@Sealed(name = "TaggedEvent", tagged = true)
+@Permits(classes = {
+        OrderPlaced.class, OrderCancelled.class, PaymentAuthorized.class, PaymentCaptured.class,
+        PaymentRefunded.class, ShipmentCreated.class, ShipmentDelivered.class, StockReserved.class,
+        StockReleased.class, CustomerRegistered.class, CustomerUpdated.class, CartUpdated.class,
+        PriceChanged.class, CouponApplied.class, ReviewPosted.class, Heartbeat.class})
+public interface TaggedEventDef {
+    int weight();
+}
@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+import com.j8a.sealed.annotations.Permits;
+import com.j8a.sealed.annotations.Sealed;
+
+/**
+ * The leaves of {@link FigureDef} in the tagged representation, a single wrapper class switching on a kind tag.
+ */
+@Sealed(name = "TaggedFigure", compact = true, tagged = true)
+@Permits(classes = {Circle.class, Square.class, Triangle.class, Pentagon.class, Hexagon.class, Octagon.class})
+public interface TaggedFigureDef {
+    double area();
+}
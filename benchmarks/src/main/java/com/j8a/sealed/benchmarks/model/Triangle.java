@@ -0,0 +1,13 @@
+package com.j8a.sealed.benchmarks.model;
+
+public final class Triangle {
+    private final double size;
+
+    public Triangle(double size) {
+        this.size = size;
+    }
+
+    public double area() {
+        return size * size * 0.4330127018922193;
+    }
+}
@@ -0,0 +1,24 @@
+package com.j8a.sealed.benchmarks;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FlatMapChainBenchmarkTest {
+
+    @Test
+    public void testTrampolineSurvivesDepthThatOverflowsDirectChain() throws InterruptedException {
+        FlatMapChainBenchmark benchmark = new FlatMapChainBenchmark(new int[]{10, 200_000}, 256, 1);
+        List<String> rows = benchmark.run(new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(3, rows.size());
+        assertEquals(FlatMapChainBenchmark.HEADER, rows.get(0));
+        assertEquals("ok", rows.get(1).split(",")[3]);
+        assertEquals("stack_overflow", rows.get(2).split(",", -1)[3]);
+        assertEquals("", rows.get(2).split(",", -1)[1]);
+    }
+}
@@ -0,0 +1,119 @@
+package com.j8a.sealed.benchmarks;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class InliningCheckTest {
+
+    private static final String CALLER = "com.j8a.sealed.benchmarks.InliningWorkload::";
+    private static final String MODEL = "com.j8a.sealed.benchmarks.model.";
+
+    @Test
+    public void testInlinedCalleesPass() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> failures = InliningCheck.analyze(log(126, "inline (hot)"), new PrintStream(out, true));
+
+        assertEquals(Collections.emptyList(), failures);
+        String report = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(report, report.contains("Inlined: tagged wrapper over six kinds into InliningWorkload::taggedDelegate"));
+        assertTrue(report, report.contains("Megamorphic: " + MODEL + "Event::accept in InliningWorkload::match"));
+    }
+
+    @Test
+    public void testCalleeAboveFreqInlineSizeFails() {
+        List<String> failures = InliningCheck.analyze(log(400, "hot method too big"), new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(1, failures.size());
+        assertEquals("Too large: tagged wrapper over six kinds into InliningWorkload::taggedDelegate, "
+                + MODEL + "TaggedFigure$Wrapper::area has 400 bytes, above FreqInlineSize=325", failures.get(0));
+    }
+
+    @Test
+    public void testRejectedAndUncompiledCallersFail() {
+        List<String> lines = new ArrayList<>(log(126, "inline (hot)"));
+        lines.replaceAll(line -> line.replace("Circle::area (14 bytes)   inline (hot)", "Circle::area (14 bytes)   too big"));
+        lines.removeIf(line -> line.contains(CALLER + "accept "));
+        List<String> failures = InliningCheck.analyze(lines, new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(Arrays.asList(
+                "Not inlined: leaf method behind the delegation into InliningWorkload::delegate, " + MODEL + "Circle::area: too big",
+                "Not checked, C2 never compiled InliningWorkload::accept"), failures);
+    }
+
+    @Test
+    public void testStateChangeLinesDoNotStartACompilation() {
+        List<String> lines = new ArrayList<>(log(126, "inline (hot)"));
+        // C1 compilations and deoptimizations of a caller must not capture the inlining tree that follows them
+        lines.add("    900  400       3       " + CALLER + "delegate (30 bytes)   made not entrant");
+        lines.add("                              @ 11   " + MODEL + "Figure$CircleWrapper::area (11 bytes)   callee is too large");
+        lines.add("    910  401       3       " + CALLER + "delegate (30 bytes)");
+        lines.add("                              @ 11   " + MODEL + "Figure$CircleWrapper::area (11 bytes)   callee is too large");
+        List<String> failures = InliningCheck.analyze(lines, new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(Collections.emptyList(), failures);
+    }
+
+    @Test
+    public void testFreqInlineSizeAfterCompilerOutputIsRead() {
+        List<String> lines = new ArrayList<>(log(400, "hot method too big"));
+        // The workload's println can land behind a call site the compiler threads have not finished printing
+        lines.set(0, "                              @ 127  FreqInlineSize=325");
+        List<String> failures = InliningCheck.analyze(lines, new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0), failures.get(0).endsWith("above FreqInlineSize=325"));
+    }
+
+    @Test
+    public void testForkedWorkloadInlinesGeneratedMethods() throws Exception {
+        assumeTrue("Needs a HotSpot-based JVM for -XX:+PrintInlining", hotSpotDiagnosticsAvailable());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> failures = new InliningCheck(Collections.emptyList()).run(new PrintStream(out, true));
+
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), Collections.emptyList(), failures);
+    }
+
+    /**
+     * Whether this JVM has HotSpot's diagnostic MXBean, as every HotSpot build does whatever its {@code java.vm.name}
+     * ("OpenJDK 64-Bit Server VM", "Java HotSpot(TM) ..."). The forked workload runs on the same JVM.
+     */
+    private static boolean hotSpotDiagnosticsAvailable() {
+        try {
+            return ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class) != null;
+        } catch (IllegalArgumentException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /** A PrintInlining log of C2 compiling every caller, with the tagged wrapper's size and decision given. */
+    private static List<String> log(int taggedBytes, String taggedDecision) {
+        return Arrays.asList(
+                "FreqInlineSize=325",
+                "    512  301 %     4       " + CALLER + "delegate @ 4 (30 bytes)",
+                "                              @ 11   " + MODEL + "Figure::area (0 bytes)   virtual call",
+                "    530  310       4       " + CALLER + "delegate (30 bytes)",
+                "                              @ 11   " + MODEL + "Figure$CircleWrapper::area (11 bytes)   inline (hot)",
+                "                                @ 7   " + MODEL + "Circle::area (14 bytes)   inline (hot)",
+                "    540  311       4       " + CALLER + "accept (34 bytes)",
+                "                              @ 14   " + MODEL + "Figure$CircleWrapper::accept (14 bytes)   inline (hot)",
+                "    550  312       4       " + CALLER + "match (40 bytes)",
+                "                              @ 16   " + MODEL + "Event$MatcherBuilder$1::apply (15 bytes)   inline (hot)",
+                "                                @ 5   " + MODEL + "Event::accept (0 bytes)   virtual call",
+                "    560  313       4       " + CALLER + "taggedDelegate (30 bytes)",
+                "                              @ 11   " + MODEL + "TaggedFigure$Wrapper::area (" + taggedBytes + " bytes)   " + taggedDecision,
+                "done true");
+    }
+}
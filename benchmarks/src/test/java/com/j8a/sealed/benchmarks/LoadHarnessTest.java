@@ -0,0 +1,84 @@
+package com.j8a.sealed.benchmarks;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadHarnessTest {
+
+    @Test
+    public void testEveryModeReportsOrderedPercentiles() throws InterruptedException {
+        LoadHarness harness = new LoadHarness(2, 50, 200, "zipf:1.2", 1_024, 7);
+        List<String> rows = harness.run(Arrays.asList("wrappers", "tagged"), new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(3, rows.size());
+        assertEquals(LoadHarness.HEADER, rows.get(0));
+        for (String row : rows.subList(1, 3)) {
+            String[] columns = row.split(",");
+            assertEquals(LoadHarness.HEADER.split(",").length, columns.length);
+            assertTrue(row, Long.parseLong(columns[3]) > 0);
+            long p50 = Long.parseLong(columns[7]);
+            long p99 = Long.parseLong(columns[8]);
+            long p999 = Long.parseLong(columns[9]);
+            long max = Long.parseLong(columns[10]);
+            assertTrue(row, p50 <= p99 && p99 <= p999 && p999 <= max);
+        }
+        assertTrue(rows.get(1).startsWith("wrappers,zipf:1.2,2,"));
+        assertTrue(rows.get(2).startsWith("tagged,zipf:1.2,2,"));
+    }
+
+    @Test
+    public void testHotMixSkewsThePool() {
+        Object[] pool = new LoadHarness(1, 0, 0, "hot:0.9", 10_000, 3).pool(3);
+
+        long hot = Arrays.stream(pool).filter(message -> message.getClass() == LoadHarness.message(0, 0, 0).getClass()).count();
+        assertTrue(String.valueOf(hot), hot > 8_500 && hot < 9_500);
+    }
+
+    @Test
+    public void testHistogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000, histogram.max());
+        assertEquals(50_000.5, histogram.mean(), 1e-9);
+        assertWithin(50_000, histogram.percentile(50));
+        assertWithin(99_000, histogram.percentile(99));
+        assertWithin(99_900, histogram.percentile(99.9));
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(100_000, histogram.percentile(100));
+    }
+
+    @Test
+    public void testHistogramBucketsCoverEveryValue() {
+        long[] values = {0, 1, 63, 64, 65, 127, 128, 1_000_003, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.highestEquivalent(index));
+            assertTrue(value + " in too high a bucket", index == 0 || value > LatencyHistogram.highestEquivalent(index - 1));
+        }
+
+        LatencyHistogram merged = new LatencyHistogram();
+        LatencyHistogram other = new LatencyHistogram();
+        merged.record(10);
+        other.record(Long.MAX_VALUE);
+        merged.add(other);
+        assertEquals(2, merged.count());
+        assertEquals(10, merged.percentile(50));
+        assertEquals(Long.MAX_VALUE, merged.percentile(100));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        // Rounded up to the end of a bucket, at most 1/64 above the true value
+        assertTrue(expected + " vs " + actual, actual >= expected && actual <= expected + expected / 64 + 1);
+    }
+}
@@ -0,0 +1,30 @@
+package com.j8a.sealed.benchmarks;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessorScalabilityBenchmarkTest {
+
+    @Test
+    public void testProducesOneRowPerConfiguration() {
+        ProcessorScalabilityBenchmark benchmark = new ProcessorScalabilityBenchmark(new int[]{2, 4}, new int[]{0, 3}, 1);
+        List<String> rows = benchmark.run(new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(5, rows.size());
+        assertEquals(ProcessorScalabilityBenchmark.HEADER, rows.get(0));
+
+        String[] narrow = rows.get(1).split(",");
+        String[] wide = rows.get(3).split(",");
+        assertEquals("2", narrow[0]);
+        assertEquals("4", wide[0]);
+        assertTrue("Generated source should be reported", Long.parseLong(narrow[4]) > 0);
+        assertTrue("Wider hierarchies emit more nested types", Integer.parseInt(wide[5]) > Integer.parseInt(narrow[5]));
+        assertTrue("Class file bytes should be reported", Long.parseLong(wide[6]) > Long.parseLong(narrow[6]));
+    }
+}
@@ -0,0 +1,25 @@
+package com.j8a.sealed.benchmarks;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RepresentationBenchmarkTest {
+
+    @Test
+    public void testBothRepresentationsAreMeasuredForEveryOperation() {
+        RepresentationBenchmark benchmark = new RepresentationBenchmark(1_000, 1, 7);
+        List<String> rows = benchmark.run(new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(7, rows.size());
+        assertEquals(RepresentationBenchmark.HEADER, rows.get(0));
+        assertTrue(rows.get(1).startsWith("wrapper_classes,delegate,"));
+        assertTrue(rows.get(2).startsWith("tagged,delegate,"));
+        assertTrue(rows.get(6).startsWith("tagged,kind,"));
+    }
+}
@@ -0,0 +1,388 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+
+import javax.lang.model.element.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates {@code Root.Arena}, an off-heap store for {@code @Sealed(offHeap = true)} hierarchies.
+ * <p>
+ * Every value is packed into a fixed-size record: a one-byte kind tag followed by the primitive constructor arguments
+ * of its leaf. Records live in direct {@link ByteBuffer} slabs, which are added one at a time as the arena grows.
+ * Reads go through one reusable view per leaf, so visiting a stored value does not allocate.
+ */
+final class ArenaGenerator {
+
+    static final int DEFAULT_RECORDS_PER_SLAB = 1 << 16;
+
+    /**
+     * One stored constructor argument: its name (also the name of the accessor reading it), primitive type and offset
+     * within the record.
+     */
+    static final class Field {
+        final String name;
+        final TypeName type;
+        final int offset;
+
+        Field(String name, TypeName type, int offset) {
+            this.name = name;
+            this.type = type;
+            this.offset = offset;
+        }
+    }
+
+    private final HierarchyModel model;
+    private final Map<Leaf, List<Field>> layouts;
+    private final int stride;
+    private final ClassName arenaName;
+
+    ArenaGenerator(HierarchyModel model, Map<Leaf, List<Field>> layouts) {
+        this.model = model;
+        this.layouts = layouts;
+        this.arenaName = model.rootClassName.nestedClass("Arena");
+        int stride = 1;
+        for (List<Field> fields : layouts.values()) {
+            for (Field field : fields) {
+                stride = Math.max(stride, field.offset + size(field.type));
+            }
+        }
+        this.stride = stride;
+    }
+
+    /**
+     * Bytes per record, tag included.
+     */
+    int stride() {
+        return stride;
+    }
+
+    static int size(TypeName type) {
+        if (type.equals(TypeName.BOOLEAN) || type.equals(TypeName.BYTE)) return 1;
+        if (type.equals(TypeName.SHORT) || type.equals(TypeName.CHAR)) return 2;
+        if (type.equals(TypeName.INT) || type.equals(TypeName.FLOAT)) return 4;
+        return 8;
+    }
+
+    TypeSpec generate() {
+        TypeName rootType = model.rootType();
+        ClassName kindName = model.rootClassName.nestedClass("Kind");
+        ClassName visitorName = arenaName.nestedClass("Visitor");
+        TypeVariableName rType = TypeVariableName.get("R");
+
+        TypeSpec.Builder arena = TypeSpec.classBuilder("Arena")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(AutoCloseable.class)
+                .addJavadoc("Off-heap storage for $L values, $L bytes per value. Values are addressed by the index returned from\n"
+                        + "{@code add}. Not thread-safe: use one arena per writer, and do not share views across threads.\n",
+                        model.rootClassName.simpleName(), stride);
+
+        arena.addField(FieldSpec.builder(int.class, "STRIDE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", stride).build());
+        arena.addField(FieldSpec.builder(ArrayTypeName.of(kindName), "KINDS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.values()", kindName).build());
+        arena.addField(FieldSpec.builder(model.nested("Visitor2", arenaName, ClassName.get(Void.class)), "WRITER",
+                        Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", writer())
+                .build());
+        arena.addField(int.class, "recordsPerSlab", Modifier.PRIVATE, Modifier.FINAL);
+        arena.addField(long.class, "maxRecords", Modifier.PRIVATE, Modifier.FINAL);
+        arena.addField(FieldSpec.builder(ArrayTypeName.of(ByteBuffer.class), "slabs", Modifier.PRIVATE)
+                .initializer("new $T[4]", ByteBuffer.class).build());
+        arena.addField(int.class, "slabCount", Modifier.PRIVATE);
+        arena.addField(long.class, "size", Modifier.PRIVATE);
+        for (Leaf leaf : model.leaves) {
+            ClassName view = arenaName.nestedClass(leaf.name + "View");
+            arena.addField(FieldSpec.builder(view, viewField(leaf), Modifier.PRIVATE, Modifier.FINAL)
+                    .initializer("new $T()", view).build());
+        }
+
+        arena.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("this($L, $T.MAX_VALUE)", DEFAULT_RECORDS_PER_SLAB, Long.class)
+                .build());
+        arena.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addJavadoc("@param recordsPerSlab values per direct buffer; the arena grows by one slab at a time\n"
+                        + "@param maxRecords capacity limit, after which {@code add} throws {@link IllegalStateException}\n")
+                .addParameter(int.class, "recordsPerSlab")
+                .addParameter(long.class, "maxRecords")
+                .beginControlFlow("if (recordsPerSlab <= 0 || (long) recordsPerSlab * STRIDE > $T.MAX_VALUE)", Integer.class)
+                .addStatement("throw new $T(\"recordsPerSlab out of range: \" + recordsPerSlab)", IllegalArgumentException.class)
+                .endControlFlow()
+                .addStatement("if (maxRecords < 0) throw new $T(\"maxRecords < 0\")", IllegalArgumentException.class)
+                .addStatement("this.recordsPerSlab = recordsPerSlab")
+                .addStatement("this.maxRecords = maxRecords")
+                .build());
+
+        arena.addMethod(MethodSpec.methodBuilder("size")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(long.class)
+                .addStatement("return size")
+                .build());
+        arena.addMethod(MethodSpec.methodBuilder("capacity")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(long.class)
+                .addStatement("return (long) slabCount * recordsPerSlab")
+                .build());
+        arena.addMethod(MethodSpec.methodBuilder("reserve")
+                .addJavadoc("Allocates slabs up front until {@code records} values fit.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(long.class, "records")
+                .addStatement("if (records > maxRecords) throw new $T(\"Arena is limited to \" + maxRecords + \" records\")", IllegalStateException.class)
+                .addStatement("while (capacity() < records) grow()")
+                .build());
+
+        // Appending
+        arena.addMethod(MethodSpec.methodBuilder("add")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(long.class)
+                .addParameter(rootType, "value")
+                .addStatement("long index = size")
+                .addStatement("value.accept(WRITER, this)")
+                .addStatement("return index")
+                .build());
+        for (Leaf leaf : model.leaves) {
+            MethodSpec.Builder add = MethodSpec.methodBuilder("add")
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(long.class)
+                    .addParameter(leaf.type, "value")
+                    .addStatement("if (value == null) throw new $T(\"Source cannot be null\")", NullPointerException.class)
+                    .addStatement("$T slab = slabForAppend()", ByteBuffer.class)
+                    .addStatement("int offset = (int) (size % recordsPerSlab) * STRIDE")
+                    .addStatement("slab.put(offset, (byte) $L)", model.leaves.indexOf(leaf));
+            for (Field field : layouts.get(leaf)) {
+                add.addStatement(write(field, CodeBlock.of("value.$L()", field.name)));
+            }
+            arena.addMethod(add.addStatement("return size++").build());
+        }
+
+        // Reading
+        arena.addMethod(MethodSpec.methodBuilder("kind")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(kindName)
+                .addParameter(long.class, "index")
+                .addStatement("return KINDS[slab(index).get(offset(index)) & 0xFF]")
+                .build());
+
+        MethodSpec.Builder get = MethodSpec.methodBuilder("get")
+                .addJavadoc("Copies a value back onto the heap.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(rootType)
+                .addParameter(long.class, "index")
+                .addStatement("return accept(index, MATERIALIZE)");
+        arena.addMethod(get.build());
+
+        MethodSpec.Builder accept = MethodSpec.methodBuilder("accept")
+                .addJavadoc("Dispatches to {@code visitor} with this arena's view of the value. The view is reused by the next\n"
+                        + "{@code accept}, so copy out what must outlive the call.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(long.class, "index")
+                .addParameter(ParameterizedTypeName.get(visitorName, rType), "visitor")
+                .addStatement("$T slab = slab(index)", ByteBuffer.class)
+                .addStatement("int offset = offset(index)")
+                .beginControlFlow("switch (slab.get(offset) & 0xFF)");
+        for (int i = 0; i < model.leaves.size(); i++) {
+            Leaf leaf = model.leaves.get(i);
+            accept.addCode("case $L:\n$>", i)
+                    .addStatement("return visitor.on$L($L.at(slab, offset, index))", leaf.name, viewField(leaf))
+                    .addCode("$<");
+        }
+        arena.addMethod(accept.addCode("default:\n$>")
+                .addStatement("throw new $T(\"Corrupt kind tag at \" + index)", IllegalStateException.class)
+                .addCode("$<")
+                .endControlFlow()
+                .build());
+
+        arena.addMethod(MethodSpec.methodBuilder("clear")
+                .addJavadoc("Forgets all values but keeps the slabs for reuse.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("size = 0")
+                .build());
+        arena.addMethod(MethodSpec.methodBuilder("close")
+                .addJavadoc("Releases the slabs. Their native memory is returned once the buffers are collected; any later access\n"
+                        + "throws {@link IllegalStateException}.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addStatement("slabs = null")
+                .addStatement("slabCount = 0")
+                .addStatement("size = 0")
+                .build());
+
+        // Slab addressing
+        arena.addMethod(MethodSpec.methodBuilder("slab")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(ByteBuffer.class)
+                .addParameter(long.class, "index")
+                .addStatement("if (slabs == null) throw new $T(\"Arena is closed\")", IllegalStateException.class)
+                .addStatement("if (index < 0 || index >= size) throw new $T(\"Index \" + index + \" out of bounds for size \" + size)",
+                        IndexOutOfBoundsException.class)
+                .addStatement("return slabs[(int) (index / recordsPerSlab)]")
+                .build());
+        arena.addMethod(MethodSpec.methodBuilder("offset")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(int.class)
+                .addParameter(long.class, "index")
+                .addStatement("return (int) (index % recordsPerSlab) * STRIDE")
+                .build());
+        arena.addMethod(MethodSpec.methodBuilder("slabForAppend")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(ByteBuffer.class)
+                .addStatement("if (slabs == null) throw new $T(\"Arena is closed\")", IllegalStateException.class)
+                .addStatement("if (size == maxRecords) throw new $T(\"Arena is limited to \" + maxRecords + \" records\")", IllegalStateException.class)
+                .addStatement("if (size == capacity()) grow()")
+                .addStatement("return slabs[(int) (size / recordsPerSlab)]")
+                .build());
+        arena.addMethod(MethodSpec.methodBuilder("grow")
+                .addModifiers(Modifier.PRIVATE)
+                .addStatement("if (slabs == null) throw new $T(\"Arena is closed\")", IllegalStateException.class)
+                .addStatement("if (slabCount == slabs.length) slabs = $T.copyOf(slabs, slabCount * 2)", Arrays.class)
+                .addStatement("slabs[slabCount++] = $T.allocateDirect(recordsPerSlab * STRIDE).order($T.nativeOrder())",
+                        ByteBuffer.class, ByteOrder.class)
+                .build());
+
+        // Visitor over views, and the views themselves
+        TypeSpec.Builder visitor = TypeSpec.interfaceBuilder("Visitor")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(rType);
+        for (Leaf leaf : model.leaves) {
+            visitor.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(rType)
+                    .addParameter(arenaName.nestedClass(leaf.name + "View"), leaf.parameterName())
+                    .build());
+        }
+        arena.addType(visitor.build());
+
+        TypeSpec.Builder materialize = TypeSpec.anonymousClassBuilder("")
+                .addSuperinterface(ParameterizedTypeName.get(visitorName, rootType));
+        for (Leaf leaf : model.leaves) {
+            materialize.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(rootType)
+                    .addParameter(arenaName.nestedClass(leaf.name + "View"), "view")
+                    .addStatement("return wrap(view.materialize())")
+                    .build());
+        }
+        arena.addField(FieldSpec.builder(ParameterizedTypeName.get(visitorName, rootType), "MATERIALIZE",
+                        Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", materialize.build())
+                .build());
+
+        for (Leaf leaf : model.leaves) {
+            arena.addType(view(leaf));
+        }
+        return arena.build();
+    }
+
+    private TypeSpec writer() {
+        TypeSpec.Builder writer = TypeSpec.anonymousClassBuilder("")
+                .addSuperinterface(model.nested("Visitor2", arenaName, ClassName.get(Void.class)));
+        for (Leaf leaf : model.leaves) {
+            writer.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(Void.class)
+                    .addParameter(leaf.type, leaf.parameterName())
+                    .addParameter(arenaName, "arena")
+                    .addStatement("arena.add($L)", leaf.parameterName())
+                    .addStatement("return null")
+                    .build());
+        }
+        return writer.build();
+    }
+
+    /**
+     * A flyweight over one record. Accessors read straight from the slab, {@code materialize()} rebuilds the leaf.
+     */
+    private TypeSpec view(Leaf leaf) {
+        List<Field> fields = layouts.get(leaf);
+        TypeSpec.Builder view = TypeSpec.classBuilder(leaf.name + "View")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(ByteBuffer.class, "slab", Modifier.PRIVATE)
+                .addField(int.class, "offset", Modifier.PRIVATE)
+                .addField(long.class, "index", Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(MethodSpec.methodBuilder("at")
+                        .addModifiers(Modifier.PRIVATE)
+                        .returns(arenaName.nestedClass(leaf.name + "View"))
+                        .addParameter(ByteBuffer.class, "slab")
+                        .addParameter(int.class, "offset")
+                        .addParameter(long.class, "index")
+                        .addStatement("this.slab = slab")
+                        .addStatement("this.offset = offset")
+                        .addStatement("this.index = index")
+                        .addStatement("return this")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("index")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return index")
+                        .build());
+
+        StringBuilder args = new StringBuilder();
+        CodeBlock.Builder toString = CodeBlock.builder().add("return $S", leaf.name + "View[");
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            view.addMethod(MethodSpec.methodBuilder(field.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(field.type)
+                    .addStatement("return $L", read(field))
+                    .build());
+            if (i > 0) args.append(", ");
+            args.append(field.name).append("()");
+            toString.add(" + $S + $L()", (i > 0 ? ", " : "") + field.name + "=", field.name);
+        }
+        view.addMethod(MethodSpec.methodBuilder("materialize")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(leaf.type)
+                .addStatement("return new $T($L)", leaf.type, args)
+                .build());
+        view.addMethod(MethodSpec.methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("$L + $S", toString.build(), "]")
+                .build());
+        return view.build();
+    }
+
+    private CodeBlock write(Field field, CodeBlock value) {
+        int at = field.offset;
+        if (field.type.equals(TypeName.BOOLEAN)) return CodeBlock.of("slab.put(offset + $L, (byte) ($L ? 1 : 0))", at, value);
+        if (field.type.equals(TypeName.BYTE)) return CodeBlock.of("slab.put(offset + $L, $L)", at, value);
+        return CodeBlock.of("slab.put$L(offset + $L, $L)", accessorSuffix(field.type), at, value);
+    }
+
+    private CodeBlock read(Field field) {
+        int at = field.offset;
+        if (field.type.equals(TypeName.BOOLEAN)) return CodeBlock.of("slab.get(offset + $L) != 0", at);
+        if (field.type.equals(TypeName.BYTE)) return CodeBlock.of("slab.get(offset + $L)", at);
+        return CodeBlock.of("slab.get$L(offset + $L)", accessorSuffix(field.type), at);
+    }
+
+    private static String accessorSuffix(TypeName type) {
+        String name = type.toString();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String viewField(Leaf leaf) {
+        return leaf.parameterName() + "View";
+    }
+}
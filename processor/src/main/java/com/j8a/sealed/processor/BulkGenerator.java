@@ -0,0 +1,166 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Generates static bulk variants of the no-arg blueprint methods returning a primitive, such as
+ * {@code Shape.area(Shape[] in, double[] out)} and {@code Shape.parallelArea(in, out)}.
+ * <p>
+ * The root methods check their arguments and hand ranges of {@code in} to a package-private kernel on {@code Wrapper},
+ * {@code bulkArea(in, out, from, to)}. The kernel groups the range by kind with a counting sort, then runs one loop per
+ * kind that unwraps each element and calls the leaf's own method, so every loop body has a single receiver class. The
+ * parallel variant splits {@code in} into chunks of at least {@value #PARALLEL_THRESHOLD} elements on the common pool.
+ */
+final class BulkGenerator {
+
+    /** Arrays shorter than this are never split, and no chunk is smaller. */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private final HierarchyModel model;
+    private final List<ExecutableElement> methods;
+    private final ClassName wrapper;
+    private final TypeName anyRoot;
+
+    BulkGenerator(HierarchyModel model, List<ExecutableElement> methods) {
+        this.model = model;
+        this.methods = methods;
+        this.wrapper = model.rootClassName.nestedClass("Wrapper");
+        this.anyRoot = wildcard(model.rootClassName, model.typeVariables.size());
+    }
+
+    /** The bulk and parallel bulk method of {@code area()}: {@code area} and {@code parallelArea}. */
+    static List<String> names(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        return Arrays.asList(name, "parallel" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+    }
+
+    void generate(TypeSpec.Builder rootBuilder) {
+        for (ExecutableElement method : methods) {
+            List<String> names = names(method);
+            ArrayTypeName out = ArrayTypeName.of(TypeName.get(method.getReturnType()));
+            String kernel = kernelName(method);
+
+            rootBuilder.addMethod(MethodSpec.methodBuilder(names.get(0))
+                    .addJavadoc("Stores {@code $L()} of every element of {@code in} at the same index of {@code out}. Calls each\n"
+                            + "permitted class's own method in one loop per kind, bypassing the wrappers.\n", names.get(0))
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(ArrayTypeName.of(anyRoot), "in")
+                    .addParameter(out, "out")
+                    .addCode(checkLengths())
+                    .addStatement("$T.$L(in, out, 0, in.length)", wrapper, kernel)
+                    .build());
+
+            rootBuilder.addMethod(MethodSpec.methodBuilder(names.get(1))
+                    .addJavadoc("Like {@link #$L($T[], $T)}, split into chunks on the common fork-join pool. Arrays shorter than\n"
+                            + "$L elements are processed on the calling thread.\n",
+                            names.get(0), model.rootClassName, out, PARALLEL_THRESHOLD)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(ArrayTypeName.of(anyRoot), "in")
+                    .addParameter(out, "out")
+                    .addCode(checkLengths())
+                    .addStatement("int chunk = $T.bulkChunk(in.length)", wrapper)
+                    .beginControlFlow("if (chunk >= in.length)")
+                    .addStatement("$T.$L(in, out, 0, in.length)", wrapper, kernel)
+                    .addStatement("return")
+                    .endControlFlow()
+                    .addStatement("$T.range(0, (in.length + chunk - 1) / chunk).parallel()\n"
+                            + ".forEach(c -> $T.$L(in, out, c * chunk, $T.min(in.length, (c + 1) * chunk)))",
+                            IntStream.class, wrapper, kernel, Math.class)
+                    .build());
+        }
+    }
+
+    /** The members to add to {@code Wrapper}: one kernel per method and the shared chunk size. */
+    List<MethodSpec> wrapperMethods() {
+        List<MethodSpec> kernels = new ArrayList<>();
+        for (ExecutableElement method : methods) {
+            kernels.add(kernel(method));
+        }
+        kernels.add(MethodSpec.methodBuilder("bulkChunk")
+                .addJavadoc("Elements per parallel bulk task: about four tasks per worker, at least $L.\n", PARALLEL_THRESHOLD)
+                .addModifiers(Modifier.STATIC)
+                .returns(int.class)
+                .addParameter(int.class, "length")
+                .addStatement("return $T.max($L, length / (4 * $T.getCommonPoolParallelism()))",
+                        Math.class, PARALLEL_THRESHOLD, ForkJoinPool.class)
+                .build());
+        return kernels;
+    }
+
+    private MethodSpec kernel(ExecutableElement method) {
+        int kinds = model.leaves.size();
+        MethodSpec.Builder kernel = MethodSpec.methodBuilder(kernelName(method))
+                .addModifiers(Modifier.STATIC)
+                .addParameter(ArrayTypeName.of(anyRoot), "in")
+                .addParameter(ArrayTypeName.of(TypeName.get(method.getReturnType())), "out")
+                .addParameter(int.class, "from")
+                .addParameter(int.class, "to")
+                // Counting sort of the range by kind: starts[k] is where kind k begins in order
+                .addStatement("int[] kinds = new int[to - from]")
+                .addStatement("int[] starts = new int[$L]", kinds + 1)
+                .beginControlFlow("for (int i = from; i < to; i++)")
+                .addStatement("int kind = in[i].kind().ordinal()")
+                .addStatement("kinds[i - from] = kind")
+                .addStatement("starts[kind + 1]++")
+                .endControlFlow()
+                .beginControlFlow("for (int k = 0; k < $L; k++)", kinds)
+                .addStatement("starts[k + 1] += starts[k]")
+                .endControlFlow()
+                .addStatement("int[] next = starts.clone()")
+                .addStatement("int[] order = new int[to - from]")
+                .beginControlFlow("for (int i = 0; i < kinds.length; i++)")
+                .addStatement("order[next[kinds[i]]++] = from + i")
+                .endControlFlow();
+
+        for (int k = 0; k < kinds; k++) {
+            Leaf leaf = model.leaves.get(k);
+            TypeName leafType = leaf.isGeneric() ? wildcard(leaf.rawType(), leaf.element.getTypeParameters().size()) : leaf.type;
+            kernel.addCode(CodeBlock.builder()
+                    .beginControlFlow("for (int j = starts[$L]; j < starts[$L]; j++)", k, k + 1)
+                    .addStatement("int i = order[j]")
+                    .addStatement("out[i] = (($T) unwrap(in[i])).$L()", leafType, method.getSimpleName())
+                    .endControlFlow()
+                    .build());
+        }
+        return kernel.build();
+    }
+
+    private CodeBlock checkLengths() {
+        return CodeBlock.builder()
+                .beginControlFlow("if (out.length < in.length)")
+                .addStatement("throw new $T(\"out has \" + out.length + \" elements, in has \" + in.length)",
+                        IllegalArgumentException.class)
+                .endControlFlow()
+                .build();
+    }
+
+    private static String kernelName(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        return "bulk" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static TypeName wildcard(ClassName type, int typeVariables) {
+        if (typeVariables == 0) {
+            return type;
+        }
+        TypeName[] wildcards = new TypeName[typeVariables];
+        Arrays.fill(wildcards, WildcardTypeName.subtypeOf(Object.class));
+        return ParameterizedTypeName.get(type, wildcards);
+    }
+}
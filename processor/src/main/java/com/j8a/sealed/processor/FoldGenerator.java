@@ -0,0 +1,307 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates {@code fold}, {@code nodes()} and {@code stream()} for recursive hierarchies, whose leaves expose child
+ * roots through accessors.
+ * <p>
+ * Both walk the tree with an explicit stack held in a generated {@code Traversal}, so depth is bounded by the heap rather
+ * than the thread stack. {@code fold} runs post-order and keeps folded results on a second array stack; a leaf's
+ * algebra function is called once all of its children are folded. The size of each collection child is recorded on a
+ * third stack when it is pushed, so {@code combine} never reads an accessor again.
+ */
+final class FoldGenerator {
+
+    /**
+     * A child accessor of a leaf: {@code Expr left()} or, when {@code collection} is set, {@code List<Expr> args()}.
+     */
+    static final class Child {
+        final String accessor;
+        final boolean collection;
+
+        Child(String accessor, boolean collection) {
+            this.accessor = accessor;
+            this.collection = collection;
+        }
+    }
+
+    private final HierarchyModel model;
+    private final Map<Leaf, List<Child>> children;
+    private final ClassName root;
+    private final ClassName algebra;
+    private final ClassName traversal;
+    private final TypeVariableName rType = TypeVariableName.get("R");
+
+    FoldGenerator(HierarchyModel model, Map<Leaf, List<Child>> children) {
+        this.model = model;
+        this.children = children;
+        this.root = model.rootClassName;
+        this.algebra = root.nestedClass("Algebra");
+        this.traversal = root.nestedClass("Traversal");
+    }
+
+    void generate(TypeSpec.Builder rootBuilder) {
+        rootBuilder.addType(generateAlgebra());
+        rootBuilder.addType(generateTraversal());
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("fold")
+                .addJavadoc("Folds this tree bottom-up: every node is passed to the algebra with the results of its children.\n"
+                        + "Uses an explicit stack, so trees of any depth fold without a {@code StackOverflowError}.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(ParameterizedTypeName.get(algebra, rType), "algebra")
+                .addStatement("return new $T(this).fold(algebra)", traversal)
+                .build());
+        rootBuilder.addMethod(MethodSpec.methodBuilder("nodes")
+                .addJavadoc("This node and all of its descendants in pre-order, children in accessor order. Each iterator\n"
+                        + "walks the tree afresh.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .returns(ParameterizedTypeName.get(ClassName.get(Iterable.class), root))
+                .addStatement("return () -> new $T(this)", traversal)
+                .build());
+        rootBuilder.addMethod(MethodSpec.methodBuilder("stream")
+                .addJavadoc("The nodes of {@link #nodes()} as a sequential stream.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), root))
+                .addStatement("return $T.stream($T.spliteratorUnknownSize(new $T(this), $T.ORDERED | $T.NONNULL), false)",
+                        StreamSupport.class, Spliterators.class, traversal, Spliterator.class, Spliterator.class)
+                .build());
+    }
+
+    private TypeSpec generateAlgebra() {
+        TypeSpec.Builder builder = TypeSpec.interfaceBuilder("Algebra")
+                .addJavadoc("One function per permitted class for {@link $T#fold}. Each receives the node and the folded results\n"
+                        + "of its children, one parameter per child accessor.\n", root)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(rType);
+        for (Leaf leaf : model.leaves) {
+            MethodSpec.Builder method = MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(rType)
+                    .addParameter(leaf.type, leafParameter(leaf));
+            for (Child child : children.get(leaf)) {
+                method.addParameter(child.collection ? ParameterizedTypeName.get(ClassName.get(List.class), rType) : rType, child.accessor);
+            }
+            builder.addMethod(method.build());
+        }
+        return builder.build();
+    }
+
+    private TypeSpec generateTraversal() {
+        boolean collections = children.values().stream().flatMap(List::stream).anyMatch(child -> child.collection);
+        MethodSpec.Builder pushChildren = MethodSpec.methodBuilder("pushChildren")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(root, "node")
+                .beginControlFlow("switch (node.kind())");
+        MethodSpec.Builder combine = MethodSpec.methodBuilder("combine")
+                .addModifiers(Modifier.PRIVATE)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                .addTypeVariable(rType)
+                .addParameter(root, "node")
+                .addParameter(ParameterizedTypeName.get(algebra, rType), "algebra")
+                .beginControlFlow("switch (node.kind())");
+
+        for (Leaf leaf : model.leaves) {
+            List<Child> leafChildren = children.get(leaf);
+            if (leafChildren.isEmpty()) {
+                combine.addCode("case $L:\n$>", leaf.constantName())
+                        .addStatement("addResult(algebra.on$L(($T) Wrapper.unwrap(node)))", leaf.name, leaf.type)
+                        .addStatement("break")
+                        .addCode("$<");
+                continue;
+            }
+
+            pushChildren.beginControlFlow("case $L:", leaf.constantName())
+                    .addStatement("$T value = ($T) Wrapper.unwrap(node)", leaf.type, leaf.type);
+            for (int i = leafChildren.size() - 1; i >= 0; i--) {
+                Child child = leafChildren.get(i);
+                String source = leaf.name + "." + child.accessor + "()";
+                if (child.collection) {
+                    pushChildren.addStatement("$T $LArray = value.$L().toArray()", Object[].class, child.accessor, child.accessor)
+                            .addStatement("for (int i = $LArray.length - 1; i >= 0; i--) push(($T) $LArray[i], $S)",
+                                    child.accessor, root, child.accessor, source + " element")
+                            .addStatement("if (sizes != null) pushSize($LArray.length)", child.accessor);
+                } else {
+                    pushChildren.addStatement("push(value.$L(), $S)", child.accessor, source);
+                }
+            }
+            pushChildren.addStatement("break").endControlFlow();
+
+            // Results of the children sit on top of the result stack, in accessor order. Collection sizes were pushed
+            // last accessor first, so they pop in accessor order
+            combine.beginControlFlow("case $L:", leaf.constantName())
+                    .addStatement("$T value = ($T) Wrapper.unwrap(node)", leaf.type, leaf.type);
+            int singles = 0;
+            StringBuilder collectionSizes = new StringBuilder();
+            for (Child child : leafChildren) {
+                if (child.collection) {
+                    combine.addStatement("int $LSize = sizes[--sizeTop]", child.accessor);
+                    collectionSizes.append(" - ").append(child.accessor).append("Size");
+                } else {
+                    singles++;
+                }
+            }
+            combine.addStatement("int base = resultTop - $L$L", singles, collectionSizes);
+            CodeBlock.Builder args = CodeBlock.builder().add("value");
+            StringBuilder offset = new StringBuilder("base");
+            int constant = 0;
+            for (Child child : leafChildren) {
+                String at = constant == 0 ? offset.toString() : offset + " + " + constant;
+                if (child.collection) {
+                    args.add(", this.<$T>slice($L, $LSize)", rType, at, child.accessor);
+                    offset.append(" + ").append(child.accessor).append("Size");
+                } else {
+                    args.add(", ($T) results[$L]", rType, at);
+                    constant++;
+                }
+            }
+            combine.addStatement("$T result = algebra.on$L($L)", rType, leaf.name, args.build())
+                    .addStatement("$T.fill(results, base, resultTop, null)", Arrays.class)
+                    .addStatement("resultTop = base")
+                    .addStatement("addResult(result)")
+                    .addStatement("break")
+                    .endControlFlow();
+        }
+        pushChildren.addCode("default:\n$>")
+                .addStatement("break")
+                .addCode("$<")
+                .endControlFlow();
+        combine.addCode("default:\n$>")
+                .addStatement("throw new $T(node.kind())", AssertionError.class)
+                .addCode("$<")
+                .endControlFlow();
+
+        TypeSpec.Builder traversalBuilder = TypeSpec.classBuilder("Traversal")
+                .addJavadoc("Explicit-stack walk behind {@code fold} and {@code nodes()}.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Iterator.class), root))
+                .addField(ArrayTypeName.of(root), "nodes", Modifier.PRIVATE)
+                .addField(boolean[].class, "expanded", Modifier.PRIVATE)
+                .addField(int.class, "top", Modifier.PRIVATE)
+                .addField(Object[].class, "results", Modifier.PRIVATE)
+                .addField(int.class, "resultTop", Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(root, "start")
+                        .addStatement("this.nodes = new $T[16]", root)
+                        .addStatement("this.expanded = new boolean[16]")
+                        .addStatement("push(start, \"root\")")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("hasNext")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(boolean.class)
+                        .addStatement("return top > 0")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("next")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(root)
+                        .addStatement("if (top == 0) throw new $T()", NoSuchElementException.class)
+                        .addStatement("$T node = nodes[--top]", root)
+                        .addStatement("nodes[top] = null")
+                        .addStatement("pushChildren(node)")
+                        .addStatement("return node")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("fold")
+                        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                        .addTypeVariable(rType)
+                        .returns(rType)
+                        .addParameter(ParameterizedTypeName.get(algebra, rType), "algebra")
+                        .addStatement("results = new $T[16]", Object.class)
+                        .addCode(collections ? "sizes = new int[16];\n" : "")
+                        .beginControlFlow("while (top > 0)")
+                        .addStatement("int i = top - 1")
+                        .addStatement("$T node = nodes[i]", root)
+                        .beginControlFlow("if (!expanded[i])")
+                        .addStatement("expanded[i] = true")
+                        .addStatement("pushChildren(node)")
+                        .nextControlFlow("else")
+                        .addStatement("nodes[i] = null")
+                        .addStatement("top = i")
+                        .addStatement("combine(node, algebra)")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return ($T) results[0]", rType)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("push")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(root, "node")
+                        .addParameter(String.class, "source")
+                        .addStatement("if (node == null) throw new $T(source + \" is null\")", NullPointerException.class)
+                        .beginControlFlow("if (top == nodes.length)")
+                        .addStatement("nodes = $T.copyOf(nodes, top * 2)", Arrays.class)
+                        .addStatement("expanded = $T.copyOf(expanded, top * 2)", Arrays.class)
+                        .endControlFlow()
+                        .addStatement("nodes[top] = node")
+                        .addStatement("expanded[top++] = false")
+                        .build())
+                .addMethod(pushChildren.build())
+                .addMethod(combine.build())
+                .addMethod(MethodSpec.methodBuilder("addResult")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(Object.class, "result")
+                        .addStatement("if (resultTop == results.length) results = $T.copyOf(results, resultTop * 2)", Arrays.class)
+                        .addStatement("results[resultTop++] = result")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("slice")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                        .addTypeVariable(rType)
+                        .returns(ParameterizedTypeName.get(ClassName.get(List.class), rType))
+                        .addParameter(int.class, "from")
+                        .addParameter(int.class, "size")
+                        .addStatement("return ($T) ($T) $T.unmodifiableList($T.asList($T.copyOfRange(results, from, from + size)))",
+                                ParameterizedTypeName.get(ClassName.get(List.class), rType),
+                                ParameterizedTypeName.get(ClassName.get(List.class), WildcardTypeName.subtypeOf(Object.class)),
+                                Collections.class, Arrays.class, Arrays.class)
+                        .build());
+        if (collections) {
+            traversalBuilder.addField(int[].class, "sizes", Modifier.PRIVATE)
+                    .addField(int.class, "sizeTop", Modifier.PRIVATE)
+                    .addMethod(MethodSpec.methodBuilder("pushSize")
+                            .addModifiers(Modifier.PRIVATE)
+                            .addParameter(int.class, "size")
+                            .addStatement("if (sizeTop == sizes.length) sizes = $T.copyOf(sizes, sizeTop * 2)", Arrays.class)
+                            .addStatement("sizes[sizeTop++] = size")
+                            .build());
+        }
+        return traversalBuilder.build();
+    }
+
+    private String leafParameter(Leaf leaf) {
+        String name = leaf.parameterName();
+        for (Child child : children.get(leaf)) {
+            if (child.accessor.equals(name)) {
+                return name + "Node";
+            }
+        }
+        return name;
+    }
+
+    static boolean isReserved(String methodName) {
+        return methodName.equals("fold") || methodName.equals("nodes") || methodName.equals("stream");
+    }
+}
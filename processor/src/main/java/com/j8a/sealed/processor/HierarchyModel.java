@@ -0,0 +1,227 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.annotations.GenerationMode;
+import com.j8a.sealed.annotations.Specialization;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeVariableName;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything resolved about one {@code @Sealed} hierarchy during a processing round.
+ * <p>
+ * Validation and generation both read from this model, so blueprint members and leaf type names are computed once per
+ * hierarchy instead of once per generated type.
+ */
+final class HierarchyModel {
+
+    /** Minimum share of recorded dispatches for a leaf to get a fast path. */
+    static final double HOT_LEAF_SHARE = 0.2;
+    static final int MAX_HOT_LEAVES = 3;
+
+    final TypeElement blueprint;
+    final String packageName;
+    final ClassName rootClassName;
+    final GenerationMode mode;
+    final boolean compact;
+    final boolean tagged;
+    final boolean offHeap;
+    final boolean pairs;
+    final List<Specialization> specializations;
+    final List<TypeVariableName> typeVariables;
+    final List<ExecutableElement> blueprintMethods;
+    final List<Leaf> leaves;
+    final Map<String, Long> frequencies;
+
+    HierarchyModel(TypeElement blueprint, String packageName, String rootName, GenerationMode mode, boolean compact,
+                   boolean tagged, boolean offHeap, boolean pairs, List<Specialization> specializations, List<TypeVariableName> typeVariables,
+                   List<ExecutableElement> blueprintMethods, List<Leaf> leaves, Map<String, Long> frequencies) {
+        this.blueprint = blueprint;
+        this.packageName = packageName;
+        this.rootClassName = ClassName.get(packageName, rootName);
+        this.mode = mode;
+        this.compact = compact;
+        this.tagged = tagged;
+        this.offHeap = offHeap;
+        this.pairs = pairs;
+        this.specializations = Collections.unmodifiableList(specializations);
+        this.typeVariables = Collections.unmodifiableList(typeVariables);
+        this.blueprintMethods = Collections.unmodifiableList(blueprintMethods);
+        this.leaves = Collections.unmodifiableList(leaves);
+        this.frequencies = Collections.unmodifiableMap(frequencies);
+    }
+
+    boolean isGeneric() {
+        return !typeVariables.isEmpty();
+    }
+
+    boolean generatesFunctions() {
+        return mode == GenerationMode.FUNCTION || mode == GenerationMode.BOTH;
+    }
+
+    boolean generatesConsumers() {
+        return mode == GenerationMode.CONSUMER || mode == GenerationMode.BOTH;
+    }
+
+    /**
+     * The root type as seen by clients, e.g. {@code Shape} or {@code Result<T>}.
+     */
+    TypeName rootType() {
+        return parameterized(rootClassName);
+    }
+
+    /**
+     * A nested type of the root, parameterized with the root's type variables followed by {@code extra}.
+     */
+    TypeName nested(String simpleName, TypeName... extra) {
+        return parameterized(rootClassName.nestedClass(simpleName), extra);
+    }
+
+    /**
+     * The single generic permitted class, or {@code null} when the root is not generic.
+     */
+    Leaf genericLeaf() {
+        for (Leaf leaf : leaves) {
+            if (leaf.nested == null && leaf.isGeneric()) return leaf;
+        }
+        return null;
+    }
+
+    /**
+     * Leaves by descending recorded frequency, alphabetical among equals (and without a profile).
+     */
+    List<Leaf> dispatchOrder() {
+        List<Leaf> ordered = new ArrayList<>(leaves);
+        ordered.sort(Comparator.comparingLong((Leaf leaf) -> frequency(leaf)).reversed());
+        return ordered;
+    }
+
+    /**
+     * Leaves that get a profile-guided fast path: the most frequent ones, each with at least {@link #HOT_LEAF_SHARE}
+     * of the recorded dispatches.
+     */
+    List<Leaf> hotLeaves() {
+        long total = 0;
+        for (Leaf leaf : leaves) {
+            total += frequency(leaf);
+        }
+        List<Leaf> hot = new ArrayList<>();
+        for (Leaf leaf : dispatchOrder()) {
+            if (total == 0 || hot.size() == MAX_HOT_LEAVES || frequency(leaf) < total * HOT_LEAF_SHARE) break;
+            hot.add(leaf);
+        }
+        return hot;
+    }
+
+    long frequency(Leaf leaf) {
+        Long frequency = frequencies.get(leaf.constantName());
+        return frequency == null ? 0 : frequency;
+    }
+
+    boolean hasNestedLeaves() {
+        for (Leaf leaf : leaves) {
+            if (leaf.nested != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * All concrete permitted classes reachable from this root, nested hierarchies expanded in place. This is the order
+     * of the generated {@code LeafKind} constants.
+     */
+    List<Leaf> flattenedLeaves() {
+        List<Leaf> flattened = new ArrayList<>();
+        for (Leaf leaf : leaves) {
+            if (leaf.nested != null) {
+                flattened.addAll(leaf.nested.flattenedLeaves());
+            } else {
+                flattened.add(leaf);
+            }
+        }
+        return flattened;
+    }
+
+    TypeName parameterized(ClassName className, TypeName... extra) {
+        List<TypeName> args = new ArrayList<>(typeVariables);
+        Collections.addAll(args, extra);
+        if (args.isEmpty()) {
+            return className;
+        }
+        return ParameterizedTypeName.get(className, args.toArray(new TypeName[0]));
+    }
+
+    /**
+     * A permitted class together with the type name used for it throughout the generated code.
+     * <p>
+     * When the permitted type is itself a {@code @Sealed} blueprint, the leaf stands for that blueprint's generated
+     * root and {@link #nested} describes its hierarchy.
+     */
+    static final class Leaf {
+        final TypeElement element;
+        final String name;
+        final TypeName type;
+        final HierarchyModel nested;
+
+        Leaf(HierarchyModel nested) {
+            this.element = nested.blueprint;
+            this.name = nested.rootClassName.simpleName();
+            this.type = nested.rootClassName;
+            this.nested = nested;
+        }
+
+        Leaf(TypeElement element, List<TypeVariableName> rootTypeVars) {
+            this.element = element;
+            this.nested = null;
+            this.name = element.getSimpleName().toString();
+            if (!element.getTypeParameters().isEmpty()) {
+                // If permitted is generic, it should match root's type variables (assumed based on validation)
+                this.type = ParameterizedTypeName.get(ClassName.get(element), rootTypeVars.toArray(new TypeName[0]));
+            } else {
+                this.type = TypeName.get(element.asType());
+            }
+        }
+
+        boolean isGeneric() {
+            return !element.getTypeParameters().isEmpty();
+        }
+
+        /**
+         * The erased leaf type, usable in class literals and {@code instanceof}.
+         */
+        ClassName rawType() {
+            return nested != null ? nested.rootClassName : ClassName.get(element);
+        }
+
+        String parameterName() {
+            return parameterName(name);
+        }
+
+        static String parameterName(String name) {
+            return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+
+        /**
+         * Enum constant name for this leaf, {@code OrderEvent} becomes {@code ORDER_EVENT}.
+         */
+        String constantName() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                boolean boundary = i > 0 && Character.isUpperCase(c)
+                        && (Character.isLowerCase(name.charAt(i - 1))
+                            || (i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1))));
+                if (boundary && sb.charAt(sb.length() - 1) != '_') sb.append('_');
+                sb.append(Character.toUpperCase(c));
+            }
+            return sb.toString();
+        }
+    }
+}
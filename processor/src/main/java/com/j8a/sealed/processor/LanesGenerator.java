@@ -0,0 +1,263 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates {@code Root.Lanes}: one bounded, preallocated multi-producer single-consumer ring buffer per kind, drained in
+ * batches into a {@code Visitor}.
+ * <p>
+ * Producers claim a slot by advancing the ring's {@code tail} with a compare-and-set, then publish the value into it
+ * with an ordered store. The consumer reads a slot until it sees a value, clears it and advances {@code head}, which
+ * producers read to detect a full ring. Nothing is allocated or locked per message. Each kind drains in its own method,
+ * so the visitor call in every loop has one target.
+ */
+final class LanesGenerator {
+
+    /** Nanoseconds a {@code PARK} wait sleeps; producers never signal, so the consumer wakes on this timeout. */
+    static final long PARK_NANOS = 50_000;
+
+    private final HierarchyModel model;
+    private final ClassName lanes;
+    private final ClassName ring;
+    private final ClassName wait;
+
+    LanesGenerator(HierarchyModel model) {
+        this.model = model;
+        this.lanes = model.rootClassName.nestedClass("Lanes");
+        this.ring = lanes.nestedClass("Ring");
+        this.wait = lanes.nestedClass("Wait");
+    }
+
+    void generate(TypeSpec.Builder rootBuilder) {
+        ClassName root = model.rootClassName;
+        ClassName kind = root.nestedClass("Kind");
+        TypeName visitor = ParameterizedTypeName.get(root.nestedClass("Visitor"), WildcardTypeName.subtypeOf(Object.class));
+        int kinds = model.leaves.size();
+
+        TypeSpec.Builder builder = TypeSpec.classBuilder("Lanes")
+                .addJavadoc("Bounded lock-free queues from many producers to one consumer, one ring buffer per kind. Producers\n"
+                        + "{@link #offer} or {@link #put}; a single consumer thread drains every lane in batches into a\n"
+                        + "{@link Visitor}, calling its {@code onX} method for the values of each kind in turn. Values of one kind\n"
+                        + "are drained in the order producers claimed their slots.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addType(TypeSpec.enumBuilder("Wait")
+                        .addJavadoc("How {@link #put} and {@link #awaitDrain} wait: busy-spin, {@code Thread.yield()}, or park for\n"
+                                + "$L microseconds at a time.\n"
+                                + "<p>\n"
+                                + "Nothing ever unparks a waiting thread: producers do not signal the consumer, nor the consumer a\n"
+                                + "producer waiting on a full ring. With {@code PARK} a waiter only notices progress when its park\n"
+                                + "times out, so each wait adds up to $L microseconds of latency, the floor for an idle consumer.\n"
+                                + "Use {@code SPIN} or {@code YIELD} when that matters more than the CPU they burn.\n",
+                                PARK_NANOS / 1000, PARK_NANOS / 1000)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addEnumConstant("SPIN")
+                        .addEnumConstant("YIELD")
+                        .addEnumConstant("PARK")
+                        .build())
+                .addField(FieldSpec.builder(long.class, "PARK_NANOS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", PARK_NANOS).build())
+                .addField(ArrayTypeName.of(ring), "rings", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(wait, "wait", Modifier.PRIVATE, Modifier.FINAL);
+
+        builder.addMethod(MethodSpec.constructorBuilder()
+                .addJavadoc("Lanes holding up to {@code capacity} values per kind, rounded up to a power of two.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "capacity")
+                .addParameter(wait, "wait")
+                .beginControlFlow("if (capacity < 1 || capacity > 1 << 30)")
+                .addStatement("throw new $T(\"Capacity out of range: \" + capacity)", IllegalArgumentException.class)
+                .endControlFlow()
+                .addStatement("this.wait = $T.requireNonNull(wait, \"wait\")", Objects.class)
+                .addStatement("int size = capacity == 1 ? 1 : $T.highestOneBit(capacity - 1) << 1", Integer.class)
+                .addStatement("this.rings = new $T[$L]", ring, kinds)
+                .beginControlFlow("for (int kind = 0; kind < rings.length; kind++)")
+                .addStatement("rings[kind] = new Ring(size)")
+                .endControlFlow()
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("offer")
+                .addJavadoc("Adds the value of {@code root} to its kind's lane. Returns {@code false} if that lane is full.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addParameter(root, "root")
+                .addStatement("return rings[root.kind().ordinal()].offer($T.unwrap(root))", root.nestedClass("Wrapper"))
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("put")
+                .addJavadoc("Adds the value of {@code root} to its kind's lane, waiting while the lane is full.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(root, "root")
+                .addException(InterruptedException.class)
+                .addStatement("$T ring = rings[root.kind().ordinal()]", ring)
+                .addStatement("Object value = $T.unwrap(root)", root.nestedClass("Wrapper"))
+                .beginControlFlow("while (!ring.offer(value))")
+                .addStatement("idle()")
+                .endControlFlow()
+                .build());
+
+        MethodSpec.Builder drain = MethodSpec.methodBuilder("drain")
+                .addJavadoc("Drains up to {@code batch} values from each lane into {@code visitor}, kind by kind, and returns how\n"
+                        + "many were drained. Returns without waiting. Only one thread may drain at a time.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(visitor, "visitor")
+                .addParameter(int.class, "batch")
+                .addStatement("int drained = 0");
+        for (Leaf leaf : model.leaves) {
+            drain.addStatement("drained += drain$L(visitor, batch)", leaf.name);
+        }
+        builder.addMethod(drain.addStatement("return drained").build());
+
+        builder.addMethod(MethodSpec.methodBuilder("awaitDrain")
+                .addJavadoc("Like {@link #drain}, but waits until at least one value was drained.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(visitor, "visitor")
+                .addParameter(int.class, "batch")
+                .addException(InterruptedException.class)
+                .addStatement("int drained")
+                .beginControlFlow("while ((drained = drain(visitor, batch)) == 0)")
+                .addStatement("idle()")
+                .endControlFlow()
+                .addStatement("return drained")
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("depth")
+                .addJavadoc("Values waiting in the lane of {@code kind}, including slots claimed by producers still writing them.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(kind, "kind")
+                .addStatement("return rings[kind.ordinal()].depth()")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("depth")
+                .addJavadoc("Values waiting in all lanes.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("int depth = 0")
+                .beginControlFlow("for ($T ring : rings)", ring)
+                .addStatement("depth += ring.depth()")
+                .endControlFlow()
+                .addStatement("return depth")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("peakDepth")
+                .addJavadoc("The largest depth of the lane of {@code kind} seen by the consumer when it started draining it.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(kind, "kind")
+                .addStatement("return rings[kind.ordinal()].peak")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("capacity")
+                .addJavadoc("The capacity of each lane.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("return rings[0].slots.length()")
+                .build());
+
+        for (int i = 0; i < kinds; i++) {
+            Leaf leaf = model.leaves.get(i);
+            builder.addMethod(MethodSpec.methodBuilder("drain" + leaf.name)
+                    .addModifiers(Modifier.PRIVATE)
+                    .returns(int.class)
+                    .addParameter(visitor, "visitor")
+                    .addParameter(int.class, "batch")
+                    .addStatement("$T ring = rings[$L]", ring, i)
+                    .addStatement("ring.observeDepth()")
+                    .addStatement("int drained = 0")
+                    .addStatement("Object value")
+                    .beginControlFlow("while (drained < batch && (value = ring.poll()) != null)")
+                    .addStatement("drained++")
+                    .addStatement("visitor.on$L(($T) value)", leaf.name, leaf.type)
+                    .endControlFlow()
+                    .addStatement("return drained")
+                    .build());
+        }
+
+        builder.addMethod(MethodSpec.methodBuilder("idle")
+                .addModifiers(Modifier.PRIVATE)
+                .addException(InterruptedException.class)
+                .beginControlFlow("if ($T.interrupted())", Thread.class)
+                .addStatement("throw new $T()", InterruptedException.class)
+                .endControlFlow()
+                .beginControlFlow("if (wait == $T.YIELD)", wait)
+                .addStatement("$T.yield()", Thread.class)
+                .nextControlFlow("else if (wait == $T.PARK)", wait)
+                .addStatement("$T.parkNanos(this, PARK_NANOS)", LockSupport.class)
+                .endControlFlow()
+                .build());
+
+        builder.addType(generateRing());
+        rootBuilder.addType(builder.build());
+    }
+
+    /**
+     * One lane. {@code tail} counts claimed slots and {@code head} consumed ones; a slot is {@code null} until its
+     * producer has written it. {@code next} is the consumer's copy of {@code head}, read without a barrier.
+     */
+    private TypeSpec generateRing() {
+        return TypeSpec.classBuilder("Ring")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(ParameterizedTypeName.get(AtomicReferenceArray.class, Object.class), "slots", Modifier.FINAL)
+                .addField(int.class, "mask", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(AtomicLong.class, "tail", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class).build())
+                .addField(FieldSpec.builder(AtomicLong.class, "head", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class).build())
+                .addField(long.class, "next", Modifier.PRIVATE)
+                .addField(int.class, "peak", Modifier.VOLATILE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "capacity")
+                        .addStatement("this.slots = new $T<>(capacity)", AtomicReferenceArray.class)
+                        .addStatement("this.mask = capacity - 1")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("offer")
+                        .returns(boolean.class)
+                        .addParameter(Object.class, "value")
+                        .beginControlFlow("while (true)")
+                        .addStatement("long claimed = tail.get()")
+                        .beginControlFlow("if (claimed - head.get() > mask)")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .beginControlFlow("if (tail.compareAndSet(claimed, claimed + 1))")
+                        .addStatement("slots.lazySet((int) claimed & mask, value)")
+                        .addStatement("return true")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("poll")
+                        .returns(Object.class)
+                        .addStatement("int index = (int) next & mask")
+                        .addStatement("Object value = slots.get(index)")
+                        .beginControlFlow("if (value != null)")
+                        .addStatement("slots.lazySet(index, null)")
+                        .addStatement("head.lazySet(++next)")
+                        .endControlFlow()
+                        .addStatement("return value")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("depth")
+                        .returns(int.class)
+                        // head first: tail only grows, so the difference cannot be negative
+                        .addStatement("long consumed = head.get()")
+                        .addStatement("return (int) $T.min(tail.get() - consumed, mask + 1L)", Math.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("observeDepth")
+                        .addStatement("int depth = depth()")
+                        .beginControlFlow("if (depth > peak)")
+                        .addStatement("peak = depth")
+                        .endControlFlow()
+                        .build())
+                .build();
+    }
+}
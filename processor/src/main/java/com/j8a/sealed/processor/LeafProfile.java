@@ -0,0 +1,64 @@
+package com.j8a.sealed.processor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leaf dispatch counts recorded by an instrumented build, read from the file named by {@code -Aj8a.sealed.profile}.
+ * <p>
+ * One {@code <qualified root>.<KIND>=<count>} entry per line, e.g. {@code com.example.Shape.CIRCLE=9500}. Blank lines
+ * and lines starting with {@code #} are ignored, and counts for the same key are summed so profiles of several runs
+ * can simply be concatenated.
+ */
+final class LeafProfile {
+
+    static final LeafProfile EMPTY = new LeafProfile(Collections.<String, Long>emptyMap());
+
+    private final Map<String, Long> counts;
+
+    private LeafProfile(Map<String, Long> counts) {
+        this.counts = counts;
+    }
+
+    static LeafProfile parse(List<String> lines) {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            int separator = line.lastIndexOf('=');
+            int kindStart = line.lastIndexOf('.', separator);
+            if (separator < 0 || kindStart < 0) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": expected '<qualified root>.<KIND>=<count>' but was '" + line + "'");
+            }
+            long count;
+            try {
+                count = Long.parseLong(line.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": invalid count in '" + line + "'");
+            }
+            if (count < 0) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": negative count in '" + line + "'");
+            }
+            counts.merge(line.substring(0, separator).trim(), count, Long::sum);
+        }
+        return new LeafProfile(counts);
+    }
+
+    /**
+     * Recorded counts for the kinds of one root, keyed by kind constant. Empty when the profile does not cover it.
+     */
+    Map<String, Long> frequencies(String qualifiedRoot) {
+        Map<String, Long> frequencies = new HashMap<>();
+        String prefix = qualifiedRoot + ".";
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            String kind = entry.getKey().startsWith(prefix) ? entry.getKey().substring(prefix.length()) : null;
+            if (kind != null && kind.indexOf('.') < 0) {
+                frequencies.put(kind, entry.getValue());
+            }
+        }
+        return frequencies;
+    }
+}
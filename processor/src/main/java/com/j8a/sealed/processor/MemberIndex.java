@@ -0,0 +1,61 @@
+package com.j8a.sealed.processor;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash index over all methods of a type (declared and inherited), keyed by simple name and by erased signature.
+ * <p>
+ * Built once per type and round so that validating a blueprint against a permitted class is a single lookup per
+ * blueprint method instead of a scan over every member of the permitted class.
+ */
+final class MemberIndex {
+
+    private final Map<String, List<ExecutableElement>> byName = new HashMap<>();
+    private final Map<String, ExecutableElement> bySignature = new HashMap<>();
+
+    MemberIndex(TypeElement type, Elements elementUtils, Types typeUtils) {
+        for (ExecutableElement method : ElementFilter.methodsIn(elementUtils.getAllMembers(type))) {
+            byName.computeIfAbsent(method.getSimpleName().toString(), k -> new ArrayList<>()).add(method);
+
+            // Prefer a public member when several share an erased signature, it is the one delegation can use.
+            String key = signatureOf(method, typeUtils);
+            ExecutableElement existing = bySignature.get(key);
+            if (existing == null || (!existing.getModifiers().contains(Modifier.PUBLIC) && method.getModifiers().contains(Modifier.PUBLIC))) {
+                bySignature.put(key, method);
+            }
+        }
+    }
+
+    List<ExecutableElement> named(CharSequence name) {
+        List<ExecutableElement> methods = byName.get(name.toString());
+        return methods == null ? Collections.<ExecutableElement>emptyList() : methods;
+    }
+
+    ExecutableElement withSignature(String signature) {
+        return bySignature.get(signature);
+    }
+
+    /**
+     * Renders {@code name(erasedParam, ...)}. Used both as the index key and in diagnostics.
+     */
+    static String signatureOf(ExecutableElement method, Types typeUtils) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.getSimpleName()).append("(");
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(typeUtils.erasure(method.getParameters().get(i).asType()).toString());
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+}
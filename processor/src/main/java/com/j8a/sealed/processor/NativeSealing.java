@@ -0,0 +1,70 @@
+package com.j8a.sealed.processor;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import javax.lang.model.element.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Turns a generated root into a native {@code sealed} hierarchy behind {@code -Aj8a.sealed.native=true}.
+ * <p>
+ * The root interface and every abstract class among its nested implementations get the {@code sealed} modifier. No
+ * {@code permits} clause is needed: the permitted subtypes of a sealed type without one are those declared in the same
+ * compilation unit, which are exactly the nested wrappers. The final wrappers need no change.
+ * <p>
+ * From source version {@value #MIN_PATTERN_SWITCH_VERSION} the matcher terminals switch over the sealed root with type
+ * patterns instead of calling {@code accept}. On 17 to 20 pattern matching in {@code switch} is a preview feature, so
+ * they keep visitor dispatch.
+ */
+final class NativeSealing {
+
+    /** {@code SourceVersion.RELEASE_17}, compared by ordinal because this processor is built against Java 8. */
+    static final int MIN_SOURCE_VERSION = 17;
+
+    /** {@code SourceVersion.RELEASE_21}, the first release with pattern matching in {@code switch}. */
+    static final int MIN_PATTERN_SWITCH_VERSION = 21;
+
+    private NativeSealing() {
+    }
+
+    /**
+     * A copy of {@code rootSpec} with the root and each abstract nested type that has nested subtypes declared
+     * {@code sealed}.
+     */
+    static TypeSpec seal(ClassName rootClassName, TypeSpec rootSpec) {
+        // Looked up by name: Modifier.SEALED does not exist in the Java 8 API this processor is built against
+        Modifier sealed = Modifier.valueOf("SEALED");
+        Set<String> parents = new HashSet<>();
+        collect(rootClassName, rootClassName, false, rootSpec, parents);
+
+        TypeSpec.Builder root = rootSpec.toBuilder().addModifiers(sealed);
+        root.typeSpecs.replaceAll(nested -> parents.contains(nested.name)
+                ? nested.toBuilder().addModifiers(sealed).build()
+                : nested);
+        return root.build();
+    }
+
+    /** Adds the simple names of {@code parent} and of every abstract nested subtype that is extended in turn. */
+    private static void collect(ClassName rootClassName, ClassName parent, boolean viaSuperclass, TypeSpec rootSpec,
+                                Set<String> parents) {
+        for (TypeSpec nested : rootSpec.typeSpecs) {
+            boolean extendsParent = viaSuperclass
+                    ? rawName(nested.superclass).equals(parent)
+                    : nested.superinterfaces.stream().anyMatch(type -> rawName(type).equals(parent));
+            if (!extendsParent) continue;
+
+            parents.add(parent.simpleName());
+            if (nested.modifiers.contains(Modifier.ABSTRACT)) {
+                collect(rootClassName, rootClassName.nestedClass(nested.name), true, rootSpec, parents);
+            }
+        }
+    }
+
+    private static TypeName rawName(TypeName type) {
+        return type instanceof ParameterizedTypeName ? ((ParameterizedTypeName) type).rawType : type;
+    }
+}
@@ -0,0 +1,495 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Generates the pattern DSL: {@code Pattern}, one {@code XPattern} per leaf with sub-pattern accessors, {@code Cases} and
+ * {@code Decision}.
+ * <p>
+ * A pattern is a conjunction of kind tests keyed by column, the accessor path from the matched value ({@code ""} for the
+ * value itself, {@code "Order.payment()"} below it), plus guards. Sub-patterns of other hierarchies are copied in through
+ * their public {@code embedInto}, so the tests stay in JDK types. {@code Decision} compiles the cases into a tree that
+ * reads every column at most once per match and only runs guards once all kind tests of a case have passed.
+ */
+final class PatternGenerator {
+
+    /**
+     * A leaf accessor whose result is itself a root with patterns, e.g. {@code Payment payment()}.
+     */
+    static final class Sub {
+        final String accessor;
+        final ClassName root;
+
+        Sub(String accessor, ClassName root) {
+            this.accessor = accessor;
+            this.root = root;
+        }
+    }
+
+    /** Names the static factories must not take, since {@code Pattern} already declares them. */
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+            "any", "where", "embedInto", "handler", "toString", "hashCode", "equals", "getClass", "notify", "notifyAll", "wait"));
+
+    private static final TypeName TESTS = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class),
+            ParameterizedTypeName.get(ClassName.get(ToIntFunction.class), ClassName.OBJECT));
+    private static final TypeName KINDS = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class),
+            ClassName.get(Integer.class));
+    private static final TypeName GUARDS = ParameterizedTypeName.get(ClassName.get(List.class),
+            ParameterizedTypeName.get(ClassName.get(Predicate.class), ClassName.OBJECT));
+
+    private final HierarchyModel model;
+    private final Map<Leaf, List<Sub>> subs;
+    private final ClassName root;
+    private final ClassName pattern;
+    private final ClassName cases;
+    private final ClassName decision;
+    private final TypeVariableName tType = TypeVariableName.get("T");
+    private final TypeVariableName rType = TypeVariableName.get("R");
+
+    PatternGenerator(HierarchyModel model, Map<Leaf, List<Sub>> subs) {
+        this.model = model;
+        this.subs = subs;
+        this.root = model.rootClassName;
+        this.pattern = root.nestedClass("Pattern");
+        this.cases = root.nestedClass("Cases");
+        this.decision = root.nestedClass("Decision");
+    }
+
+    /**
+     * Why a hierarchy gets no {@code Pattern}, or {@code null} when it gets one. {@code leafNames} are the simple names of
+     * its leaves, as in {@link Leaf#name}. Roots that reference this one through sub-patterns decide with the same
+     * check, before the model of this hierarchy exists.
+     */
+    static String skipReason(boolean generic, boolean compact, Collection<String> leafNames) {
+        if (generic) return "generic roots are not supported";
+        if (compact) return "compact mode";
+        for (String name : leafNames) {
+            String factory = Leaf.parameterName(name);
+            if (RESERVED.contains(factory)) return "'" + factory + "()' would clash with a member of Pattern";
+        }
+        return null;
+    }
+
+    void generate(TypeSpec.Builder rootBuilder) {
+        rootBuilder.addType(generatePattern());
+        for (Leaf leaf : model.leaves) {
+            if (!subs.get(leaf).isEmpty()) {
+                rootBuilder.addType(generateLeafPattern(leaf));
+            }
+        }
+        rootBuilder.addType(generateCases());
+        rootBuilder.addType(generateDecision());
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("cases")
+                .addJavadoc("Starts a list of pattern cases, tried in order and compiled into a decision tree by {@code build()}.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(rType)
+                .returns(ParameterizedTypeName.get(cases, rType))
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), rType), "resultType")
+                .addStatement("return new $T<>()", cases)
+                .build());
+    }
+
+    private TypeSpec generatePattern() {
+        ParameterizedTypeName self = ParameterizedTypeName.get(pattern, tType);
+        TypeSpec.Builder builder = TypeSpec.classBuilder("Pattern")
+                .addJavadoc("A structural pattern over {@code $T}: a kind, sub-patterns over accessors returning sealed roots, and\n"
+                        + "guards. Patterns are immutable. {@code T} is what a matching case's handler receives.\n", root)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(tType);
+
+        builder.addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(ToIntFunction.class), ClassName.OBJECT),
+                        "KIND_OF", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("value -> value == null ? -1 : (($T) value).kind().ordinal()", root)
+                .build());
+        builder.addField(String.class, "description", Modifier.FINAL);
+        builder.addField(FieldSpec.builder(boolean.class, "leaf", Modifier.FINAL)
+                .addJavadoc("Whether guards and handlers receive the unwrapped leaf rather than the root.\n")
+                .build());
+        builder.addField(FieldSpec.builder(TESTS, "columns", Modifier.FINAL)
+                .addJavadoc("Column to the function reading its kind ordinal, {@code -1} for {@code null}, parents first.\n")
+                .build());
+        builder.addField(FieldSpec.builder(KINDS, "kinds", Modifier.FINAL)
+                .addJavadoc("Column to the kind ordinal required there.\n")
+                .build());
+        builder.addField(FieldSpec.builder(GUARDS, "guards", Modifier.FINAL)
+                .addJavadoc("Guards over the matched value, run in order once every kind test has passed.\n")
+                .build());
+
+        builder.addMethod(MethodSpec.constructorBuilder()
+                .addParameter(String.class, "description")
+                .addParameter(boolean.class, "leaf")
+                .addParameter(TESTS, "columns")
+                .addParameter(KINDS, "kinds")
+                .addParameter(GUARDS, "guards")
+                .addStatement("this.description = description")
+                .addStatement("this.leaf = leaf")
+                .addStatement("this.columns = columns")
+                .addStatement("this.kinds = kinds")
+                .addStatement("this.guards = guards")
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("any")
+                .addJavadoc("Matches every value, including {@code null}. The handler receives the root.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(ParameterizedTypeName.get(pattern, root))
+                .addStatement("return new $T<>($S, false, new $T<>(), new $T<>(), new $T<>())",
+                        pattern, "any()", LinkedHashMap.class, LinkedHashMap.class, ArrayList.class)
+                .build());
+        for (Leaf leaf : model.leaves) {
+            String factory = leaf.parameterName();
+            MethodSpec.Builder method = MethodSpec.methodBuilder(factory)
+                    .addJavadoc("Matches {@code $L} values. The handler receives the unwrapped {@code $L}.\n", leaf.name, leaf.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addStatement("$T columns = new $T<>()", TESTS, LinkedHashMap.class)
+                    .addStatement("$T kinds = new $T<>()", KINDS, LinkedHashMap.class)
+                    .addStatement("columns.put($S, KIND_OF)", "")
+                    .addStatement("kinds.put($S, $T.$L.ordinal())", "", root.nestedClass("Kind"), leaf.constantName());
+            if (subs.get(leaf).isEmpty()) {
+                method.returns(ParameterizedTypeName.get(pattern, leaf.type))
+                        .addStatement("return new $T<>($S, true, columns, kinds, new $T<>())", pattern, factory + "()", ArrayList.class);
+            } else {
+                ClassName leafPattern = root.nestedClass(leaf.name + "Pattern");
+                method.returns(leafPattern)
+                        .addStatement("return new $T($S, columns, kinds, new $T<>())", leafPattern, factory + "()", ArrayList.class);
+            }
+            builder.addMethod(method.build());
+        }
+
+        builder.addMethod(MethodSpec.methodBuilder("where")
+                .addJavadoc("This pattern, also requiring {@code guard} to accept the value.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(self)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Predicate.class), WildcardTypeName.supertypeOf(tType)), "guard")
+                .addStatement("return new $T<>(description + $S, leaf, columns, kinds, withGuard(guard))", pattern, ".where(..)")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("withGuard")
+                .addAnnotation(unchecked())
+                .returns(GUARDS)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Predicate.class), WildcardTypeName.supertypeOf(tType)), "guard")
+                .addStatement("$T.requireNonNull(guard, $S)", Objects.class, "guard")
+                .addStatement("$T guards = new $T<>(this.guards)", GUARDS, ArrayList.class)
+                .addStatement("guards.add(leaf ? value -> guard.test(($T) Wrapper.unwrap(($T) value)) : value -> guard.test(($T) value))",
+                        tType, root, tType)
+                .addStatement("return guards")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("handler")
+                .addAnnotation(unchecked())
+                .addTypeVariable(rType)
+                .returns(ParameterizedTypeName.get(ClassName.get(Function.class), ClassName.OBJECT, rType))
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Function.class),
+                        WildcardTypeName.supertypeOf(tType), WildcardTypeName.subtypeOf(rType)), "handler")
+                .addStatement("$T.requireNonNull(handler, $S)", Objects.class, "handler")
+                .addStatement("return leaf ? value -> handler.apply(($T) Wrapper.unwrap(($T) value)) : value -> handler.apply(($T) value)",
+                        tType, root, tType)
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("embedInto")
+                .addJavadoc("Adds the tests of this pattern to those of an enclosing pattern, as a sub-pattern at {@code column}.\n"
+                        + "{@code select} extracts the value matched here from the enclosing value. Called by the generated\n"
+                        + "sub-pattern methods of hierarchies with accessors returning {@code $T}.\n"
+                        + "\n"
+                        + "@throws IllegalArgumentException if the enclosing pattern already requires another kind at a column\n", root)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "column")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Function.class), ClassName.OBJECT, WildcardTypeName.subtypeOf(Object.class)), "select")
+                .addParameter(TESTS, "columns")
+                .addParameter(KINDS, "kinds")
+                .addParameter(GUARDS, "guards")
+                .beginControlFlow("for ($T.Entry<String, $T<Object>> test : this.columns.entrySet())", Map.class, ToIntFunction.class)
+                .addStatement("$T<Object> discriminator = test.getValue()", ToIntFunction.class)
+                .addStatement("String path = test.getKey().isEmpty() ? column : column + \".\" + test.getKey()")
+                .addStatement("Integer kind = this.kinds.get(test.getKey())")
+                .addStatement("Integer previous = kinds.put(path, kind)")
+                .beginControlFlow("if (previous != null && !previous.equals(kind))")
+                .addStatement("throw new $T(path + \" is already matched by another pattern\")", IllegalArgumentException.class)
+                .endControlFlow()
+                .addStatement("columns.put(path, value -> discriminator.applyAsInt(select.apply(value)))")
+                .endControlFlow()
+                .beginControlFlow("for ($T<Object> guard : this.guards)", Predicate.class)
+                .addStatement("guards.add(value -> guard.test(select.apply(value)))")
+                .endControlFlow()
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("return description")
+                .build());
+        return builder.build();
+    }
+
+    private TypeSpec generateLeafPattern(Leaf leaf) {
+        ClassName leafPattern = root.nestedClass(leaf.name + "Pattern");
+        TypeSpec.Builder builder = TypeSpec.classBuilder(leafPattern.simpleName())
+                .addJavadoc("A pattern over {@code $L} values with sub-patterns for its accessors returning sealed roots.\n", leaf.name)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .superclass(ParameterizedTypeName.get(pattern, leaf.type));
+
+        builder.addMethod(MethodSpec.constructorBuilder()
+                .addParameter(String.class, "description")
+                .addParameter(TESTS, "columns")
+                .addParameter(KINDS, "kinds")
+                .addParameter(GUARDS, "guards")
+                .addStatement("super(description, true, columns, kinds, guards)")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("where")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(leafPattern)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Predicate.class), WildcardTypeName.supertypeOf(leaf.type)), "guard")
+                .addStatement("return new $T(description + $S, columns, kinds, withGuard(guard))", leafPattern, ".where(..)")
+                .build());
+        for (Sub sub : subs.get(leaf)) {
+            String column = leaf.name + "." + sub.accessor + "()";
+            builder.addMethod(MethodSpec.methodBuilder(sub.accessor)
+                    .addJavadoc("This pattern, also requiring {@code $L()} to match {@code pattern}.\n", sub.accessor)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(leafPattern)
+                    .addParameter(ParameterizedTypeName.get(sub.root.nestedClass("Pattern"), WildcardTypeName.subtypeOf(Object.class)), "pattern")
+                    .addStatement("$T columns = new $T<>(this.columns)", TESTS, LinkedHashMap.class)
+                    .addStatement("$T kinds = new $T<>(this.kinds)", KINDS, LinkedHashMap.class)
+                    .addStatement("$T guards = new $T<>(this.guards)", GUARDS, ArrayList.class)
+                    .addStatement("pattern.embedInto($S, value -> (($T) Wrapper.unwrap(($T) value)).$L(), columns, kinds, guards)",
+                            column, leaf.type, root, sub.accessor)
+                    .addStatement("return new $T(description + $S + pattern + \")\", columns, kinds, guards)", leafPattern,
+                            "." + sub.accessor + "(")
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private TypeSpec generateCases() {
+        TypeName handler = ParameterizedTypeName.get(ClassName.get(Function.class), ClassName.OBJECT, WildcardTypeName.subtypeOf(rType));
+        return TypeSpec.classBuilder("Cases")
+                .addJavadoc("Pattern cases in priority order. {@link #build()} compiles them into a {@link Decision}.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(rType)
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(List.class),
+                                ParameterizedTypeName.get(pattern, WildcardTypeName.subtypeOf(Object.class))), "patterns",
+                                Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>()", ArrayList.class)
+                        .build())
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(List.class), handler), "handlers",
+                                Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>()", ArrayList.class)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder().build())
+                .addMethod(MethodSpec.methodBuilder("when")
+                        .addJavadoc("Adds a case, tried after every case added before it.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addTypeVariable(tType)
+                        .returns(ParameterizedTypeName.get(cases, rType))
+                        .addParameter(ParameterizedTypeName.get(pattern, tType), "pattern")
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(Function.class),
+                                WildcardTypeName.supertypeOf(tType), WildcardTypeName.subtypeOf(rType)), "handler")
+                        .addStatement("handlers.add(pattern.handler(handler))")
+                        .addStatement("patterns.add(pattern)")
+                        .addStatement("return this")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("build")
+                        .addJavadoc("Compiles the cases added so far into a decision tree.\n"
+                                + "\n"
+                                + "@throws IllegalStateException if a case can never be selected because earlier cases match\n"
+                                + "    everything it matches\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(ParameterizedTypeName.get(decision, rType))
+                        .addStatement("return new $T<>(new $T<>(patterns), new $T<>(handlers))", decision, ArrayList.class, ArrayList.class)
+                        .build())
+                .build();
+    }
+
+    private TypeSpec generateDecision() {
+        ClassName node = decision.nestedClass("Node");
+        TypeName wildcardPattern = ParameterizedTypeName.get(pattern, WildcardTypeName.subtypeOf(Object.class));
+        TypeName patterns = ParameterizedTypeName.get(ClassName.get(List.class), wildcardPattern);
+        TypeName handlers = ParameterizedTypeName.get(ClassName.get(List.class),
+                ParameterizedTypeName.get(ClassName.get(Function.class), ClassName.OBJECT, WildcardTypeName.subtypeOf(rType)));
+        TypeName rows = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(Integer.class));
+        TypeName strings = ParameterizedTypeName.get(ClassName.get(List.class), ClassName.get(String.class));
+
+        TypeSpec nodeSpec = TypeSpec.classBuilder("Node")
+                .addJavadoc("Either a test, which reads one column and branches on its kind ordinal, or a case whose guards\n"
+                        + "still have to pass. {@code otherwise} is taken for unlisted kinds and failed guards; {@code null}\n"
+                        + "means no case matches.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(ParameterizedTypeName.get(ClassName.get(ToIntFunction.class), ClassName.OBJECT), "discriminator", Modifier.FINAL)
+                .addField(ArrayTypeName.of(node), "branches", Modifier.FINAL)
+                .addField(int.class, "row", Modifier.FINAL)
+                .addField(GUARDS, "guards", Modifier.FINAL)
+                .addField(node, "otherwise", Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(ToIntFunction.class), ClassName.OBJECT), "discriminator")
+                        .addParameter(ArrayTypeName.of(node), "branches")
+                        .addParameter(int.class, "row")
+                        .addParameter(GUARDS, "guards")
+                        .addParameter(node, "otherwise")
+                        .addStatement("this.discriminator = discriminator")
+                        .addStatement("this.branches = branches")
+                        .addStatement("this.row = row")
+                        .addStatement("this.guards = guards")
+                        .addStatement("this.otherwise = otherwise")
+                        .build())
+                .build();
+
+        CodeBlock compile = CodeBlock.builder()
+                .addStatement("if (rows.isEmpty()) return null")
+                .addStatement("int first = rows.get(0)")
+                .addStatement("$T pattern = patterns.get(first)", wildcardPattern)
+                .beginControlFlow("for (String column : pattern.kinds.keySet())")
+                .addStatement("if (decided.contains(column)) continue")
+                .add("// Rows not testing the column go everywhere, the others only to the branch of their kind\n")
+                .addStatement("$T untested = new $T<>()", rows, ArrayList.class)
+                .addStatement("int width = 0")
+                .beginControlFlow("for (int row : rows)")
+                .addStatement("Integer kind = patterns.get(row).kinds.get(column)")
+                .addStatement("if (kind == null) untested.add(row)")
+                .addStatement("else width = $T.max(width, kind + 1)", Math.class)
+                .endControlFlow()
+                .addStatement("$T tested = new $T<>(decided)", ParameterizedTypeName.get(ClassName.get(Set.class), ClassName.get(String.class)), HashSet.class)
+                .addStatement("tested.add(column)")
+                .addStatement("$T otherwise = compile(untested, tested, reached)", node)
+                .addStatement("$T[] branches = new $T[width]", node, node)
+                .beginControlFlow("for (int kind = 0; kind < width; kind++)")
+                .addStatement("$T matching = new $T<>()", rows, ArrayList.class)
+                .addStatement("boolean listed = false")
+                .beginControlFlow("for (int row : rows)")
+                .addStatement("Integer required = patterns.get(row).kinds.get(column)")
+                .addStatement("if (required == null || required == kind) matching.add(row)")
+                .addStatement("listed |= required != null && required == kind")
+                .endControlFlow()
+                .addStatement("branches[kind] = listed ? compile(matching, tested, reached) : otherwise")
+                .endControlFlow()
+                .addStatement("return new $T(pattern.columns.get(column), branches, -1, null, otherwise)", node)
+                .endControlFlow()
+                .addStatement("reached[first] = true")
+                .addStatement("$T next = pattern.guards.isEmpty() ? null : compile(rows.subList(1, rows.size()), decided, reached)", node)
+                .addStatement("return new $T(null, null, first, pattern.guards, next)", node)
+                .build();
+
+        return TypeSpec.classBuilder("Decision")
+                .addJavadoc("Cases compiled into a decision tree. A match reads each column, such as the kind of the value or of\n"
+                        + "one of its sub-patterned accessors, at most once, and runs the guards of a case only after all of its\n"
+                        + "kind tests have passed.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(rType)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(Function.class), root, rType))
+                .addType(nodeSpec)
+                .addField(patterns, "patterns", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(handlers, "handlers", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(node, "tree", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(strings, "overlaps", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(patterns, "patterns")
+                        .addParameter(handlers, "handlers")
+                        .addStatement("this.patterns = patterns")
+                        .addStatement("this.handlers = handlers")
+                        .addStatement("$T all = new $T<>()", rows, ArrayList.class)
+                        .beginControlFlow("for (int i = 0; i < patterns.size(); i++)")
+                        .addStatement("all.add(i)")
+                        .endControlFlow()
+                        .addStatement("boolean[] reached = new boolean[patterns.size()]")
+                        .addStatement("this.tree = compile(all, new $T<>(), reached)", HashSet.class)
+                        .addStatement("$T unreachable = new $T<>()", strings, ArrayList.class)
+                        .addStatement("$T overlaps = new $T<>()", strings, ArrayList.class)
+                        .beginControlFlow("for (int i = 0; i < patterns.size(); i++)")
+                        .beginControlFlow("if (!reached[i])")
+                        .addStatement("unreachable.add(\"case \" + i + \" \" + patterns.get(i))")
+                        .endControlFlow()
+                        .beginControlFlow("for (int j = 0; j < i; j++)")
+                        .beginControlFlow("if (compatible(patterns.get(j), patterns.get(i)))")
+                        .addStatement("overlaps.add(\"case \" + i + \" \" + patterns.get(i) + \" overlaps case \" + j + \" \" + patterns.get(j))")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .endControlFlow()
+                        .beginControlFlow("if (!unreachable.isEmpty())")
+                        .addStatement("throw new $T(\"Unreachable: \" + String.join(\", \", unreachable))", IllegalStateException.class)
+                        .endControlFlow()
+                        .addStatement("this.overlaps = $T.unmodifiableList(overlaps)", Collections.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("compile")
+                        .addJavadoc("The tree deciding between {@code rows}, all consistent with the kinds read on the way here.\n")
+                        .addModifiers(Modifier.PRIVATE)
+                        .returns(node)
+                        .addParameter(rows, "rows")
+                        .addParameter(ParameterizedTypeName.get(ClassName.get(Set.class), ClassName.get(String.class)), "decided")
+                        .addParameter(boolean[].class, "reached")
+                        .addCode(compile)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("compatible")
+                        .addJavadoc("Whether some value can match both patterns, ignoring guards.\n")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .returns(boolean.class)
+                        .addParameter(wildcardPattern, "a")
+                        .addParameter(wildcardPattern, "b")
+                        .beginControlFlow("for ($T.Entry<String, Integer> test : a.kinds.entrySet())", Map.class)
+                        .addStatement("Integer kind = b.kinds.get(test.getKey())")
+                        .addStatement("if (kind != null && !kind.equals(test.getValue())) return false")
+                        .endControlFlow()
+                        .addStatement("return true")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("apply")
+                        .addJavadoc("Runs the handler of the first case matching {@code value}.\n"
+                                + "\n"
+                                + "@throws IllegalArgumentException if no case matches\n")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(rType)
+                        .addParameter(root, "value")
+                        .addStatement("$T node = tree", node)
+                        .beginControlFlow("while (node != null)")
+                        .beginControlFlow("if (node.discriminator != null)")
+                        .addStatement("int kind = node.discriminator.applyAsInt(value)")
+                        .addStatement("node = kind >= 0 && kind < node.branches.length ? node.branches[kind] : node.otherwise")
+                        .addStatement("continue")
+                        .endControlFlow()
+                        .addStatement("boolean accepted = true")
+                        .beginControlFlow("for (int i = 0; accepted && i < node.guards.size(); i++)")
+                        .addStatement("accepted = node.guards.get(i).test(value)")
+                        .endControlFlow()
+                        .addStatement("if (accepted) return handlers.get(node.row).apply(value)")
+                        .addStatement("node = node.otherwise")
+                        .endControlFlow()
+                        .addStatement("throw new $T(\"No case matches \" + value)", IllegalArgumentException.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("overlaps")
+                        .addJavadoc("Pairs of cases some value could match both of, ignoring guards, e.g.\n"
+                                + "{@code \"case 2 any() overlaps case 0 order()\"}. The earlier case wins for such values.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(strings)
+                        .addStatement("return overlaps")
+                        .build())
+                .build();
+    }
+
+    private static AnnotationSpec unchecked() {
+        return AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+    }
+}
@@ -0,0 +1,114 @@
+package com.j8a.sealed.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What the processor did for each hierarchy, written to {@link #RESOURCE} behind {@code -Aj8a.sealed.report=true}.
+ * <p>
+ * Entries accumulate across rounds and are written once, in the last round. Timings are wall-clock and include the
+ * compiler work the processor triggers (element resolution, writing the source file).
+ */
+final class ProcessingReport {
+
+    static final String RESOURCE = "META-INF/j8a-sealed/report.json";
+
+    private final List<Hierarchy> hierarchies = new ArrayList<>();
+
+    Hierarchy add(String root) {
+        Hierarchy hierarchy = new Hierarchy(root);
+        hierarchies.add(hierarchy);
+        return hierarchy;
+    }
+
+    boolean isEmpty() {
+        return hierarchies.isEmpty();
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"hierarchies\": [");
+        for (int i = 0; i < hierarchies.size(); i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            hierarchies.get(i).appendTo(json);
+        }
+        return json.append(hierarchies.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    static final class Hierarchy {
+        final String root;
+        boolean valid;
+        int leaves;
+        long validationNanos;
+        long generationNanos;
+        int types;
+        int methods;
+        long sourceBytes;
+        /** Feature name to {@code null} when generated, or the reason it was skipped. */
+        private final Map<String, String> features = new LinkedHashMap<>();
+
+        private Hierarchy(String root) {
+            this.root = root;
+        }
+
+        void generated(String feature) {
+            features.put(feature, null);
+        }
+
+        void skipped(String feature, String reason) {
+            features.put(feature, reason);
+        }
+
+        private void appendTo(StringBuilder json) {
+            json.append("    {\n")
+                .append("      \"root\": ").append(quote(root)).append(",\n")
+                .append("      \"valid\": ").append(valid).append(",\n")
+                .append("      \"leaves\": ").append(leaves).append(",\n")
+                .append("      \"validationMillis\": ").append(millis(validationNanos)).append(",\n")
+                .append("      \"generationMillis\": ").append(millis(generationNanos)).append(",\n")
+                .append("      \"types\": ").append(types).append(",\n")
+                .append("      \"methods\": ").append(methods).append(",\n")
+                .append("      \"sourceBytes\": ").append(sourceBytes).append(",\n")
+                .append("      \"features\": [");
+            boolean first = true;
+            for (Map.Entry<String, String> feature : features.entrySet()) {
+                json.append(first ? "\n" : ",\n")
+                    .append("        {\"name\": ").append(quote(feature.getKey()))
+                    .append(", \"generated\": ").append(feature.getValue() == null);
+                if (feature.getValue() != null) {
+                    json.append(", \"reason\": ").append(quote(feature.getValue()));
+                }
+                json.append("}");
+                first = false;
+            }
+            json.append(features.isEmpty() ? "]\n" : "\n      ]\n").append("    }");
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
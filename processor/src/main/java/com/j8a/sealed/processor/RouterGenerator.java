@@ -0,0 +1,274 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Generates {@code Root.Router}, which delivers published roots to handlers registered per kind.
+ * <p>
+ * Handlers live in one array per kind inside an {@code AtomicReferenceArray}. Registration copies the kind's array and
+ * swaps it in with a compare-and-set, so {@code publish} is a volatile read and a loop: no lock in any mode. Only
+ * synchronous delivery is allocation-free; the executor modes allocate the task or queue node that carries each value,
+ * since {@code Executor} accepts nothing else. Ordered
+ * delivery gives each kind a {@code Lane}, a queue drained by at most one task at a time, so the values of a kind reach
+ * the handlers in publish order while different kinds run in parallel.
+ */
+final class RouterGenerator {
+
+    private final HierarchyModel model;
+    private final ClassName router;
+    private final ClassName lane;
+    private final TypeName handler = ParameterizedTypeName.get(Consumer.class, Object.class);
+
+    RouterGenerator(HierarchyModel model) {
+        this.model = model;
+        this.router = model.rootClassName.nestedClass("Router");
+        this.lane = router.nestedClass("Lane");
+    }
+
+    void generate(TypeSpec.Builder rootBuilder) {
+        int kinds = model.leaves.size();
+        ClassName root = model.rootClassName;
+        ClassName kind = root.nestedClass("Kind");
+        TypeName handlers = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), ArrayTypeName.of(handler));
+
+        TypeSpec.Builder builder = TypeSpec.classBuilder("Router")
+                .addJavadoc("Delivers published values to the handlers registered for their kind. Registration is lock-free\n"
+                        + "copy-on-write, and {@code publish} takes no locks in any mode.\n"
+                        + "<p>\n"
+                        + "{@code publish} is allocation-free only with {@link #synchronous()}. {@link #onExecutor} allocates\n"
+                        + "a task per value, and {@link #orderedPerKind} a queue node per value.\n"
+                        + "<p>\n"
+                        + "Handlers receive the unwrapped value and run in registration order.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                // Handlers of every kind share one array type, each registered through its kind's typed method
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                .addField(FieldSpec.builder(ArrayTypeName.of(handler), "NONE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T[0]", Consumer.class).build())
+                .addField(constant("SYNCHRONOUS", 0))
+                .addField(constant("EXECUTOR", 1))
+                .addField(constant("ORDERED", 2))
+                .addField(int.class, "delivery", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(Executor.class, "executor", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(handlers, "handlers", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>($L)", AtomicReferenceArray.class, kinds).build())
+                .addField(ArrayTypeName.of(lane), "lanes", Modifier.PRIVATE, Modifier.FINAL);
+
+        builder.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "delivery")
+                .addParameter(Executor.class, "executor")
+                .addStatement("this.delivery = delivery")
+                .addStatement("this.executor = executor")
+                .addStatement("this.lanes = new $T[delivery == ORDERED ? $L : 0]", lane, kinds)
+                .beginControlFlow("for (int kind = 0; kind < $L; kind++)", kinds)
+                .addStatement("handlers.set(kind, NONE)")
+                .beginControlFlow("if (delivery == ORDERED)")
+                .addStatement("lanes[kind] = new Lane(kind)")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("synchronous")
+                .addJavadoc("Delivers on the publishing thread before {@code publish} returns. A throwing handler's exception\n"
+                        + "propagates to the publisher, and the handlers after it are not called.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(router)
+                .addStatement("return new Router(SYNCHRONOUS, null)")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("onExecutor")
+                .addJavadoc("Delivers each value in its own task on {@code executor}, in no particular order. Allocates the\n"
+                        + "task on every {@code publish}.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(router)
+                .addParameter(Executor.class, "executor")
+                .addStatement("return new Router(EXECUTOR, $T.requireNonNull(executor))", Objects.class)
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("orderedPerKind")
+                .addJavadoc("Delivers on {@code executor} with at most one task per kind at a time, so values of one kind reach\n"
+                        + "the handlers in publish order. Should the executor reject a task, the publisher delivers instead.\n"
+                        + "Allocates a queue node on every {@code publish}.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(router)
+                .addParameter(Executor.class, "executor")
+                .addStatement("return new Router(ORDERED, $T.requireNonNull(executor))", Objects.class)
+                .build());
+
+        for (int i = 0; i < kinds; i++) {
+            Leaf leaf = model.leaves.get(i);
+            TypeName typed = ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(leaf.type));
+            builder.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(router)
+                    .addParameter(typed, "handler")
+                    .addStatement("add($L, handler)", i)
+                    .addStatement("return this")
+                    .build());
+            builder.addMethod(MethodSpec.methodBuilder("remove" + leaf.name)
+                    .addJavadoc("Removes the first registration of {@code handler} for {@code $L}. Returns whether there was one.\n",
+                            leaf.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(boolean.class)
+                    .addParameter(typed, "handler")
+                    .addStatement("return remove($L, handler)", i)
+                    .build());
+        }
+
+        builder.addMethod(MethodSpec.methodBuilder("handlerCount")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(kind, "kind")
+                .addStatement("return handlers.get(kind.ordinal()).length")
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("publish")
+                .addJavadoc("Delivers the value of {@code root} to the handlers of its kind and returns how many there are.\n"
+                        + "Values without handlers are dropped. The executor modes deliver to the handlers registered when\n"
+                        + "the task runs.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(root, "root")
+                .addStatement("int kind = root.kind().ordinal()")
+                .addStatement("Object value = $T.unwrap(root)", root.nestedClass("Wrapper"))
+                .beginControlFlow("if (delivery == SYNCHRONOUS)")
+                .addStatement("return deliver(kind, value)")
+                .endControlFlow()
+                .addStatement("int count = handlers.get(kind).length")
+                .beginControlFlow("if (count == 0)")
+                .addStatement("return 0")
+                .endControlFlow()
+                .beginControlFlow("if (delivery == EXECUTOR)")
+                .addStatement("executor.execute(() -> deliverQuietly(kind, value))")
+                .nextControlFlow("else")
+                .addStatement("lanes[kind].offer(value)")
+                .endControlFlow()
+                .addStatement("return count")
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("add")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "kind")
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Consumer.class), WildcardTypeName.subtypeOf(Object.class)), "handler")
+                .addStatement("$T.requireNonNull(handler, \"handler\")", Objects.class)
+                .beginControlFlow("while (true)")
+                .addStatement("$T current = handlers.get(kind)", ArrayTypeName.of(handler))
+                .addStatement("$T next = $T.copyOf(current, current.length + 1)", ArrayTypeName.of(handler), Arrays.class)
+                .addStatement("next[current.length] = ($T) handler", handler)
+                .beginControlFlow("if (handlers.compareAndSet(kind, current, next))")
+                .addStatement("return")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("remove")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(boolean.class)
+                .addParameter(int.class, "kind")
+                .addParameter(Object.class, "handler")
+                .beginControlFlow("while (true)")
+                .addStatement("$T current = handlers.get(kind)", ArrayTypeName.of(handler))
+                .addStatement("int index = 0")
+                .beginControlFlow("while (index < current.length && !current[index].equals(handler))")
+                .addStatement("index++")
+                .endControlFlow()
+                .beginControlFlow("if (index == current.length)")
+                .addStatement("return false")
+                .endControlFlow()
+                .addStatement("$T next = current.length == 1 ? NONE : new $T[current.length - 1]", ArrayTypeName.of(handler), Consumer.class)
+                .addStatement("$T.arraycopy(current, 0, next, 0, index)", System.class)
+                .addStatement("$T.arraycopy(current, index + 1, next, index, current.length - index - 1)", System.class)
+                .beginControlFlow("if (handlers.compareAndSet(kind, current, next))")
+                .addStatement("return true")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("deliver")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(int.class)
+                .addParameter(int.class, "kind")
+                .addParameter(Object.class, "value")
+                .addStatement("$T current = handlers.get(kind)", ArrayTypeName.of(handler))
+                .beginControlFlow("for ($T handler : current)", handler)
+                .addStatement("handler.accept(value)")
+                .endControlFlow()
+                .addStatement("return current.length")
+                .build());
+        builder.addMethod(MethodSpec.methodBuilder("deliverQuietly")
+                .addJavadoc("Delivers to every handler, passing exceptions to the current thread's uncaught exception handler.\n")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(int.class, "kind")
+                .addParameter(Object.class, "value")
+                .beginControlFlow("for ($T handler : handlers.get(kind))", handler)
+                .beginControlFlow("try")
+                .addStatement("handler.accept(value)")
+                .nextControlFlow("catch ($T e)", RuntimeException.class)
+                .addStatement("$T thread = $T.currentThread()", Thread.class, Thread.class)
+                .addStatement("thread.getUncaughtExceptionHandler().uncaughtException(thread, e)")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+
+        builder.addType(generateLane());
+        rootBuilder.addType(builder.build());
+    }
+
+    private static FieldSpec constant(String name, int value) {
+        return FieldSpec.builder(int.class, name, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL).initializer("$L", value).build();
+    }
+
+    /**
+     * The queue of one kind in ordered delivery. {@code pending} counts queued values; the publisher that raises it from
+     * zero schedules the drain, which delivers one value per decrement until it returns to zero.
+     */
+    private TypeSpec generateLane() {
+        return TypeSpec.classBuilder("Lane")
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .addSuperinterface(Runnable.class)
+                .addField(int.class, "kind", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(ConcurrentLinkedQueue.class, Object.class), "queue",
+                        Modifier.PRIVATE, Modifier.FINAL).initializer("new $T<>()", ConcurrentLinkedQueue.class).build())
+                .addField(FieldSpec.builder(AtomicInteger.class, "pending", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", AtomicInteger.class).build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "kind")
+                        .addStatement("this.kind = kind")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("offer")
+                        .addParameter(Object.class, "value")
+                        .addStatement("queue.offer(value)")
+                        .beginControlFlow("if (pending.getAndIncrement() == 0)")
+                        .beginControlFlow("try")
+                        .addStatement("executor.execute(this)")
+                        .nextControlFlow("catch ($T e)", RejectedExecutionException.class)
+                        .addStatement("run()")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("run")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .beginControlFlow("do")
+                        .addStatement("deliverQuietly(kind, queue.poll())")
+                        .endControlFlow("while (pending.decrementAndGet() != 0)")
+                        .build())
+                .build();
+    }
+}
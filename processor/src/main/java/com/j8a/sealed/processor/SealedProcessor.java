@@ -2,31 +2,77 @@ package com.j8a.sealed.processor;
 
 import com.google.auto.service.AutoService;
 import com.j8a.sealed.annotations.GenerationMode;
+import com.j8a.sealed.annotations.Memoize;
 import com.j8a.sealed.annotations.Permits;
 import com.j8a.sealed.annotations.Sealed;
+import com.j8a.sealed.annotations.Specialization;
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
 import com.squareup.javapoet.*;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.MirroredTypesException;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
-import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @AutoService(Processor.class)
 public class SealedProcessor extends AbstractProcessor {
 
+    /** Path of a leaf-frequency profile used to order dispatch and emit fast paths for the hottest leaves. */
+    static final String PROFILE_OPTION = "j8a.sealed.profile";
+    /** When {@code true}, every root gets a {@code Profile} class counting dispatches per kind. */
+    static final String INSTRUMENT_OPTION = "j8a.sealed.instrument";
+    /** When {@code true} and compiling for Java 17 or later, generated roots are declared {@code sealed}. */
+    static final String NATIVE_OPTION = "j8a.sealed.native";
+    /** When {@code true}, a {@link ProcessingReport} is written to the class output. */
+    static final String REPORT_OPTION = "j8a.sealed.report";
+
+    /** A comparator takes one parameter per leaf, and a method has at most 255 parameters. */
+    static final int MAX_COMPARATOR_LEAVES = 255;
+    /** Pair matchers need one stage per leaf pair, so wider hierarchies do not get them even when requested. */
+    static final int MAX_PAIR_LEAVES = 8;
+    /** The tagged wrapper stores the kind ordinal in a {@code byte}. */
+    static final int MAX_TAGGED_LEAVES = 256;
+    /** An arena record starts with a one-byte kind tag. */
+    static final int MAX_ARENA_LEAVES = 256;
+
     private Types typeUtils;
     private Elements elementUtils;
     private Filer filer;
     private Messager messager;
+    private LeafProfile profile;
+    private boolean instrument;
+    private boolean nativeSealed;
+    private String nativeSkipReason;
+    private boolean patternSwitch;
+    private ProcessingReport report;
+
+    // Report entry of the hierarchy being processed, or a detached one when no report is written
+    private ProcessingReport.Hierarchy reporting;
+
+    // Per-round state, reset at the start of every round
+    private TypeElement objectElement;
+    private final Map<TypeElement, MemberIndex> memberIndexes = new HashMap<>();
+    // Roots generated this round, by qualified name, to whether they get a Pattern
+    private final Map<String, Boolean> roundRoots = new HashMap<>();
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
@@ -35,6 +81,41 @@ public class SealedProcessor extends AbstractProcessor {
         elementUtils = processingEnv.getElementUtils();
         filer = processingEnv.getFiler();
         messager = processingEnv.getMessager();
+
+        Map<String, String> options = processingEnv.getOptions();
+        instrument = Boolean.parseBoolean(options.get(INSTRUMENT_OPTION));
+        nativeSealed = Boolean.parseBoolean(options.get(NATIVE_OPTION));
+        nativeSkipReason = nativeSealed ? null : "-A" + NATIVE_OPTION + " is not set";
+        if (nativeSealed && processingEnv.getSourceVersion().ordinal() < NativeSealing.MIN_SOURCE_VERSION) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "Ignoring -A" + NATIVE_OPTION + ": sealed types need source version "
+                    + NativeSealing.MIN_SOURCE_VERSION + " or later, but this compilation targets " + processingEnv.getSourceVersion() + ".");
+            nativeSealed = false;
+            nativeSkipReason = "source version " + processingEnv.getSourceVersion() + " is below " + NativeSealing.MIN_SOURCE_VERSION;
+        }
+        patternSwitch = nativeSealed && processingEnv.getSourceVersion().ordinal() >= NativeSealing.MIN_PATTERN_SWITCH_VERSION;
+        report = Boolean.parseBoolean(options.get(REPORT_OPTION)) ? new ProcessingReport() : null;
+        profile = LeafProfile.EMPTY;
+        String profilePath = options.get(PROFILE_OPTION);
+        if (profilePath != null && instrument) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "Ignoring -A" + PROFILE_OPTION + " while instrumenting: "
+                    + "fast paths would bypass the counters.");
+        } else if (profilePath != null) {
+            try {
+                profile = LeafProfile.parse(Files.readAllLines(Paths.get(profilePath), StandardCharsets.UTF_8));
+            } catch (IOException | IllegalArgumentException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Cannot read leaf profile '" + profilePath + "': " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new LinkedHashSet<>();
+        options.add(PROFILE_OPTION);
+        options.add(INSTRUMENT_OPTION);
+        options.add(NATIVE_OPTION);
+        options.add(REPORT_OPTION);
+        return options;
     }
 
     @Override
@@ -42,6 +123,7 @@ public class SealedProcessor extends AbstractProcessor {
         Set<String> annotations = new LinkedHashSet<>();
         annotations.add(Sealed.class.getCanonicalName());
         annotations.add(Permits.class.getCanonicalName());
+        annotations.add(Memoize.class.getCanonicalName());
         return annotations;
     }
 
@@ -52,6 +134,18 @@ public class SealedProcessor extends AbstractProcessor {
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        objectElement = elementUtils.getTypeElement("java.lang.Object");
+        memberIndexes.clear();
+        roundRoots.clear();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Sealed.class)) {
+            if (element.getKind() == ElementKind.INTERFACE) {
+                Sealed sealed = element.getAnnotation(Sealed.class);
+                roundRoots.put(qualifiedRoot((TypeElement) element),
+                        PatternGenerator.skipReason(!((TypeElement) element).getTypeParameters().isEmpty(), sealed.compact(),
+                                leafNames((TypeElement) element)) == null);
+            }
+        }
+
         for (Element element : roundEnv.getElementsAnnotatedWith(Sealed.class)) {
             if (element.getKind() != ElementKind.INTERFACE) {
                 error(element, "@Sealed can only be applied to interfaces.");
@@ -67,11 +161,22 @@ public class SealedProcessor extends AbstractProcessor {
             }
         }
 
+        if (roundEnv.processingOver() && report != null && !report.isEmpty()) {
+            writeReport();
+        }
+
         for (Element element : roundEnv.getElementsAnnotatedWith(Permits.class)) {
             if (element.getAnnotation(Sealed.class) == null) {
                 error(element, "A @Permits annotation can only be used on an interface also annotated with @Sealed.");
             }
         }
+        for (Element element : roundEnv.getElementsAnnotatedWith(Memoize.class)) {
+            // Blueprint methods may be inherited, so any abstract interface method qualifies here
+            if (element.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                    || element.getModifiers().contains(Modifier.STATIC) || element.getModifiers().contains(Modifier.DEFAULT)) {
+                error(element, "A @Memoize annotation can only be used on an abstract method of a @Sealed interface or an interface it extends.");
+            }
+        }
 
         return true;
     }
@@ -80,17 +185,30 @@ public class SealedProcessor extends AbstractProcessor {
         Sealed sealedAnnotation = blueprintInterface.getAnnotation(Sealed.class);
         Permits permitsAnnotation = blueprintInterface.getAnnotation(Permits.class);
 
+        String qualifiedRoot = qualifiedRoot(blueprintInterface);
+        reporting = report != null ? report.add(qualifiedRoot) : new ProcessingReport().add(qualifiedRoot);
+        long start = System.nanoTime();
+        try {
+            processSealedInterface(blueprintInterface, sealedAnnotation, permitsAnnotation, start);
+        } finally {
+            if (reporting.validationNanos == 0) {
+                reporting.validationNanos = System.nanoTime() - start;
+            }
+        }
+    }
+
+    private void processSealedInterface(TypeElement blueprintInterface, Sealed sealedAnnotation, Permits permitsAnnotation,
+                                        long start) throws IOException {
+
         if (permitsAnnotation == null) {
             error(blueprintInterface, "A @Sealed interface must also be annotated with @Permits.");
             return;
         }
 
-        String rootInterfaceName = sealedAnnotation.name();
-        GenerationMode mode = sealedAnnotation.mode();
         boolean strict = permitsAnnotation.strict();
 
         List<TypeMirror> permittedTypes = getPermittedTypes(permitsAnnotation);
-        
+
         // Duplicate detection (Full qualified names)
         Set<String> qualifiedNames = new HashSet<>();
         for (TypeMirror tm : permittedTypes) {
@@ -112,12 +230,33 @@ public class SealedProcessor extends AbstractProcessor {
             permittedClasses.add((TypeElement) typeElement);
         }
 
+        // Blueprint members are resolved once and shared by validation and delegation
+        List<ExecutableElement> blueprintMethods = resolveBlueprintMethods(blueprintInterface);
+
         // Validation
-        if (!validatePermittedClasses(blueprintInterface, permittedClasses, strict)) {
+        if (!validatePermittedClasses(blueprintInterface, blueprintMethods, permittedClasses, strict)) {
+            return;
+        }
+
+        HierarchyModel model = buildModel(blueprintInterface, blueprintMethods, permittedClasses, new ArrayDeque<TypeElement>());
+        if (model == null || !validateGeneratedNames(model) || !validateMemoized(model)) {
             return;
         }
+        reporting.leaves = model.leaves.size();
+        reporting.validationNanos = System.nanoTime() - start;
 
-        generateRootInterface(blueprintInterface, rootInterfaceName, permittedClasses, mode);
+        long generationStart = System.nanoTime();
+        reportProfile(model);
+        generateRootInterface(model);
+        reporting.generationNanos = System.nanoTime() - generationStart;
+    }
+
+    private void writeReport() {
+        try (Writer writer = filer.createResource(StandardLocation.CLASS_OUTPUT, "", ProcessingReport.RESOURCE).openWriter()) {
+            writer.write(report.toJson());
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "Cannot write " + ProcessingReport.RESOURCE + ": " + e.getMessage());
+        }
     }
 
     private List<TypeMirror> getPermittedTypes(Permits permits) {
@@ -129,11 +268,196 @@ public class SealedProcessor extends AbstractProcessor {
         return Collections.emptyList();
     }
 
-    private boolean validatePermittedClasses(TypeElement blueprint, List<TypeElement> permittedClasses, boolean strict) {
+    /**
+     * The leaf names of a blueprint as {@link HierarchyModel.Leaf} will spell them, read straight from {@code @Permits}.
+     */
+    private List<String> leafNames(TypeElement blueprint) {
+        List<String> names = new ArrayList<>();
+        Permits permits = blueprint.getAnnotation(Permits.class);
+        if (permits != null) {
+            for (TypeMirror typeMirror : getPermittedTypes(permits)) {
+                Element permitted = typeUtils.asElement(typeMirror);
+                if (permitted instanceof TypeElement) {
+                    names.add(isNestedBlueprint((TypeElement) permitted)
+                            ? permitted.getAnnotation(Sealed.class).name() : permitted.getSimpleName().toString());
+                }
+            }
+        }
+        return names;
+    }
+
+    private static List<String> leafNames(HierarchyModel model) {
+        List<String> names = new ArrayList<>();
+        for (Leaf leaf : model.leaves) {
+            names.add(leaf.name);
+        }
+        return names;
+    }
+
+    private List<ExecutableElement> resolveBlueprintMethods(TypeElement blueprint) {
+        return ElementFilter.methodsIn(elementUtils.getAllMembers(blueprint)).stream()
+                .filter(m -> !m.getModifiers().contains(Modifier.STATIC))
+                .filter(m -> !m.getModifiers().contains(Modifier.DEFAULT))
+                .filter(m -> !m.getEnclosingElement().equals(objectElement))
+                .collect(Collectors.toList());
+    }
+
+    private MemberIndex memberIndex(TypeElement type) {
+        return memberIndexes.computeIfAbsent(type, t -> new MemberIndex(t, elementUtils, typeUtils));
+    }
+
+    private boolean isNestedBlueprint(TypeElement permitted) {
+        return permitted.getKind() == ElementKind.INTERFACE && permitted.getAnnotation(Sealed.class) != null;
+    }
+
+    /**
+     * Builds the model of a hierarchy. Permitted {@code @Sealed} blueprints are modelled recursively, {@code enclosing}
+     * holds the blueprints currently being expanded to detect cycles. Returns {@code null} after reporting an error.
+     */
+    private HierarchyModel buildModel(TypeElement blueprint, List<ExecutableElement> blueprintMethods,
+                                      List<TypeElement> permittedClasses, Deque<TypeElement> enclosing) {
+        Sealed sealedAnnotation = blueprint.getAnnotation(Sealed.class);
+        String packageName = elementUtils.getPackageOf(blueprint).getQualifiedName().toString();
+
+        List<TypeVariableName> typeVariables = new ArrayList<>();
+        for (TypeParameterElement tpe : blueprint.getTypeParameters()) {
+            typeVariables.add(TypeVariableName.get(tpe));
+        }
+
+        // Sort permitted classes alphabetically
+        List<Leaf> leaves = new ArrayList<>();
+        enclosing.push(blueprint);
+        for (TypeElement permitted : permittedClasses) {
+            if (isNestedBlueprint(permitted)) {
+                HierarchyModel nested = buildNestedModel(permitted, enclosing);
+                if (nested == null) {
+                    return null;
+                }
+                leaves.add(new Leaf(nested));
+            } else {
+                leaves.add(new Leaf(permitted, typeVariables));
+            }
+        }
+        enclosing.pop();
+        leaves.sort(Comparator.comparing(leaf -> leaf.name));
+
+        // Deduplicated, in declaration order of the enum
+        EnumSet<Specialization> specializations = EnumSet.noneOf(Specialization.class);
+        Collections.addAll(specializations, sealedAnnotation.specializations());
+
+        return new HierarchyModel(blueprint, packageName, sealedAnnotation.name(), sealedAnnotation.mode(), sealedAnnotation.compact(),
+                sealedAnnotation.tagged(), sealedAnnotation.offHeap(), sealedAnnotation.pairs(), new ArrayList<>(specializations), typeVariables, blueprintMethods, leaves,
+                profile.frequencies(qualifiedRoot(blueprint)));
+    }
+
+    /**
+     * The canonical name of the root generated from {@code blueprint}, without a leading dot in the default package. It
+     * keys the report, the round's roots and the leaf profile, which {@code Profile.writeTo} writes under the same name.
+     */
+    private String qualifiedRoot(TypeElement blueprint) {
+        String packageName = elementUtils.getPackageOf(blueprint).getQualifiedName().toString();
+        String name = blueprint.getAnnotation(Sealed.class).name();
+        return packageName.isEmpty() ? name : packageName + "." + name;
+    }
+
+    private HierarchyModel buildNestedModel(TypeElement nestedBlueprint, Deque<TypeElement> enclosing) {
+        if (enclosing.contains(nestedBlueprint)) {
+            error(enclosing.peekLast(), "Cyclic @Sealed nesting: '" + nestedBlueprint.getSimpleName() + "' permits a hierarchy that contains it.");
+            return null;
+        }
+
+        // Problems inside the nested hierarchy itself are reported when its own blueprint is processed
+        Permits permits = nestedBlueprint.getAnnotation(Permits.class);
+        if (permits == null) {
+            return null;
+        }
+        List<TypeElement> permittedClasses = new ArrayList<>();
+        for (TypeMirror typeMirror : getPermittedTypes(permits)) {
+            Element typeElement = typeUtils.asElement(typeMirror);
+            if (!(typeElement instanceof TypeElement)) {
+                return null;
+            }
+            permittedClasses.add((TypeElement) typeElement);
+        }
+        return buildModel(nestedBlueprint, resolveBlueprintMethods(nestedBlueprint), permittedClasses, enclosing);
+    }
+
+    /**
+     * Checks that the generated dispatch members do not collide with the blueprint or with each other.
+     */
+    private boolean validateGeneratedNames(HierarchyModel model) {
+        boolean valid = true;
+
+        Set<String> reserved = new HashSet<>(Collections.singletonList("kind()"));
+        if (model.hasNestedLeaves()) {
+            reserved.add("leafKind()");
+        }
+        if (generatesStep(model)) {
+            reserved.add("step()");
+        }
+        for (ExecutableElement method : model.blueprintMethods) {
+            String signature = formatMethodSignature(method);
+            if (reserved.contains(signature)) {
+                error(model.blueprint, String.format("Method '%s' in @Sealed interface '%s' clashes with the generated method of the same name. Please rename it.",
+                        signature, model.blueprint.getSimpleName()));
+                valid = false;
+            }
+        }
+
+        if (model.hasNestedLeaves()) {
+            Set<String> constants = new HashSet<>();
+            for (Leaf leaf : model.flattenedLeaves()) {
+                if (!constants.add(leaf.constantName())) {
+                    error(model.blueprint, "Permitted class '" + leaf.name + "' appears more than once across the nested hierarchies of '"
+                            + model.blueprint.getSimpleName() + "'. Leaf names must be unique to flatten dispatch.");
+                    valid = false;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Whether {@link #generateMapMethod} will add {@code step()} to the root: the same conditions as {@code map}.
+     */
+    private boolean generatesStep(HierarchyModel model) {
+        Leaf genericLeaf = model.genericLeaf();
+        return genericLeaf != null && model.typeVariables.size() == 1
+                && findGenericAccessor(genericLeaf.element) != null && hasGenericConstructor(genericLeaf.element);
+    }
+
+    /**
+     * Checks that every {@code @Memoize} blueprint method has a result to cache and nothing it depends on.
+     */
+    private boolean validateMemoized(HierarchyModel model) {
+        boolean valid = true;
+        for (ExecutableElement method : model.blueprintMethods) {
+            if (method.getAnnotation(Memoize.class) == null) {
+                continue;
+            }
+            String problem = null;
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                problem = "returns void";
+            } else if (!method.getParameters().isEmpty()) {
+                problem = "takes parameters";
+            } else if (!method.getTypeParameters().isEmpty()) {
+                problem = "declares type parameters";
+            }
+            if (problem != null) {
+                error(method, String.format("@Memoize method '%s' in '%s' %s. Only no-arg methods with a result can be memoized.",
+                        formatMethodSignature(method), model.blueprint.getSimpleName(), problem));
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private boolean validatePermittedClasses(TypeElement blueprint, List<ExecutableElement> blueprintMethods, List<TypeElement> permittedClasses, boolean strict) {
         boolean valid = true;
         Set<String> simpleNames = new HashSet<>();
-        
+
         List<TypeElement> genericPermitted = permittedClasses.stream()
+            .filter(pe -> !isNestedBlueprint(pe))
             .filter(pe -> !pe.getTypeParameters().isEmpty())
             .collect(Collectors.toList());
 
@@ -156,6 +480,7 @@ public class SealedProcessor extends AbstractProcessor {
             }
         }
 
+        PackageElement blueprintPackage = elementUtils.getPackageOf(blueprint);
         for (TypeElement permitted : permittedClasses) {
             // Accessibility check
             Set<Modifier> modifiers = permitted.getModifiers();
@@ -164,20 +489,34 @@ public class SealedProcessor extends AbstractProcessor {
                  valid = false;
             } else {
                  boolean isPublic = modifiers.contains(Modifier.PUBLIC);
-                 boolean samePackage = elementUtils.getPackageOf(permitted).equals(elementUtils.getPackageOf(blueprint));
-                 
+                 boolean samePackage = elementUtils.getPackageOf(permitted).equals(blueprintPackage);
+
                  if (!isPublic && !samePackage) {
                      error(permitted, "Permitted class '" + permitted.getSimpleName() + "' is not public and must be in the same package as the blueprint to be accessible.");
                      valid = false;
                  }
             }
 
+            if (isNestedBlueprint(permitted)) {
+                // A nested hierarchy is represented by its generated root, which is sealed by construction
+                String nestedRoot = permitted.getAnnotation(Sealed.class).name();
+                if (!simpleNames.add(nestedRoot)) {
+                    error(blueprint, "Duplicate simple name detected in permitted classes: " + nestedRoot + ". Rename one or use aliases (not supported yet).");
+                    valid = false;
+                }
+                if (!permitted.getTypeParameters().isEmpty()) {
+                    error(permitted, "Nested @Sealed hierarchy '" + permitted.getSimpleName() + "' cannot be generic.");
+                    valid = false;
+                }
+                continue;
+            }
+
             // Uniqueness check (simple name collision)
             if (!simpleNames.add(permitted.getSimpleName().toString())) {
                 error(blueprint, "Duplicate simple name detected in permitted classes: " + permitted.getSimpleName() + ". Rename one or use aliases (not supported yet).");
                 valid = false;
             }
-            
+
             // Abstract check
             if (permitted.getModifiers().contains(Modifier.ABSTRACT)) {
                  error(permitted, "Permitted classes cannot be abstract.");
@@ -194,45 +533,35 @@ public class SealedProcessor extends AbstractProcessor {
         }
 
         if (valid) {
-            valid = validateMethodsImplemented(blueprint, permittedClasses);
+            valid = validateMethodsImplemented(blueprint, blueprintMethods, permittedClasses);
         }
 
         return valid;
     }
 
-    private boolean validateMethodsImplemented(TypeElement blueprint, List<TypeElement> permittedClasses) {
+    private boolean validateMethodsImplemented(TypeElement blueprint, List<ExecutableElement> blueprintMethods, List<TypeElement> permittedClasses) {
         boolean valid = true;
-        List<ExecutableElement> blueprintMethods = ElementFilter.methodsIn(elementUtils.getAllMembers(blueprint)).stream()
-                .filter(m -> !m.getModifiers().contains(Modifier.STATIC))
-                .filter(m -> !m.getModifiers().contains(Modifier.DEFAULT))
-                .filter(m -> !m.getEnclosingElement().equals(elementUtils.getTypeElement("java.lang.Object")))
-                .collect(Collectors.toList());
+
+        // Signatures are rendered once per blueprint method, each permitted class then needs one lookup per method
+        List<String> blueprintSignatures = new ArrayList<>(blueprintMethods.size());
+        for (ExecutableElement blueprintMethod : blueprintMethods) {
+            blueprintSignatures.add(formatMethodSignature(blueprintMethod));
+        }
 
         for (TypeElement permitted : permittedClasses) {
-            List<ExecutableElement> permittedMethods = ElementFilter.methodsIn(elementUtils.getAllMembers(permitted));
-
-            for (ExecutableElement blueprintMethod : blueprintMethods) {
-                ExecutableElement signatureMatch = null;
-                boolean isPublicMatch = false;
-                List<ExecutableElement> nameMatches = new ArrayList<>();
-
-                for (ExecutableElement permittedClassMethod : permittedMethods) {
-                    if (blueprintMethod.getSimpleName().equals(permittedClassMethod.getSimpleName())) {
-                        nameMatches.add(permittedClassMethod);
-                        if (isSignatureMatch(blueprintMethod, permittedClassMethod)) {
-                            signatureMatch = permittedClassMethod;
-                            if (permittedClassMethod.getModifiers().contains(Modifier.PUBLIC)) {
-                                isPublicMatch = true;
-                                break;
-                            }
-                        }
-                    }
-                }
+            MemberIndex permittedMethods = memberIndex(permitted);
+
+            for (int m = 0; m < blueprintMethods.size(); m++) {
+                ExecutableElement blueprintMethod = blueprintMethods.get(m);
+                String signature = blueprintSignatures.get(m);
+                ExecutableElement signatureMatch = permittedMethods.withSignature(signature);
+                boolean isPublicMatch = signatureMatch != null && signatureMatch.getModifiers().contains(Modifier.PUBLIC);
 
                 if (!isPublicMatch) {
+                    List<ExecutableElement> nameMatches = permittedMethods.named(blueprintMethod.getSimpleName());
                     if (signatureMatch != null) {
                         error(permitted, String.format("Permitted class '%s' has a method '%s' matching @Sealed interface '%s', but it must be PUBLIC to be used for delegation. Please change the access modifier.",
-                                permitted.getSimpleName(), formatMethodSignature(blueprintMethod), blueprint.getSimpleName()));
+                                permitted.getSimpleName(), signature, blueprint.getSimpleName()));
                     } else if (!nameMatches.isEmpty()) {
                         StringBuilder nearMatches = new StringBuilder();
                         for (int i = 0; i < nameMatches.size(); i++) {
@@ -240,17 +569,17 @@ public class SealedProcessor extends AbstractProcessor {
                             nearMatches.append("'").append(formatMethodSignature(nameMatches.get(i))).append("'");
                         }
                         error(permitted, String.format("Permitted class '%s' has methods with the same name as '%s' in @Sealed interface '%s', but the signatures do not match. Found near matches: %s. Please implement with the exact signature.",
-                                permitted.getSimpleName(), formatMethodSignature(blueprintMethod), blueprint.getSimpleName(), nearMatches.toString()));
+                                permitted.getSimpleName(), signature, blueprint.getSimpleName(), nearMatches.toString()));
                     } else {
                         error(permitted, String.format("Permitted class '%s' is missing method '%s' defined in @Sealed interface '%s'. Please implement it with a matching signature.",
-                                permitted.getSimpleName(), formatMethodSignature(blueprintMethod), blueprint.getSimpleName()));
+                                permitted.getSimpleName(), signature, blueprint.getSimpleName()));
                     }
                     valid = false;
                 } else {
                     // It is a public signature match. Now verify return type.
                     if (!typeUtils.isAssignable(typeUtils.erasure(signatureMatch.getReturnType()), typeUtils.erasure(blueprintMethod.getReturnType()))) {
                         error(permitted, String.format("Permitted class '%s' implements '%s', but its return type is incompatible with @Sealed interface '%s'.",
-                                permitted.getSimpleName(), formatMethodSignature(blueprintMethod), blueprint.getSimpleName()));
+                                permitted.getSimpleName(), signature, blueprint.getSimpleName()));
                         valid = false;
                     }
                 }
@@ -259,257 +588,1237 @@ public class SealedProcessor extends AbstractProcessor {
         return valid;
     }
 
-    private boolean isSignatureMatch(ExecutableElement blueprintMethod, ExecutableElement permittedClassMethod) {
-        if (!blueprintMethod.getSimpleName().equals(permittedClassMethod.getSimpleName())) return false;
-        if (blueprintMethod.getParameters().size() != permittedClassMethod.getParameters().size()) return false;
-
-        for (int i = 0; i < blueprintMethod.getParameters().size(); i++) {
-            TypeMirror bpType = blueprintMethod.getParameters().get(i).asType();
-            TypeMirror pType = permittedClassMethod.getParameters().get(i).asType();
-
-            if (!typeUtils.isSameType(typeUtils.erasure(bpType), typeUtils.erasure(pType))) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     private String formatMethodSignature(ExecutableElement method) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(method.getSimpleName()).append("(");
-        for (int i = 0; i < method.getParameters().size(); i++) {
-            if (i > 0) sb.append(", ");
-            sb.append(typeUtils.erasure(method.getParameters().get(i).asType()).toString());
-        }
-        sb.append(")");
-        return sb.toString();
+        return MemberIndex.signatureOf(method, typeUtils);
     }
 
-    private void generateRootInterface(TypeElement blueprint, String rootName, List<TypeElement> permittedClasses, GenerationMode mode) throws IOException {
-        String packageName = elementUtils.getPackageOf(blueprint).getQualifiedName().toString();
-        ClassName rootClassName = ClassName.get(packageName, rootName);
-
-        List<TypeVariableName> typeVariables = new ArrayList<>();
-        for (TypeParameterElement tpe : blueprint.getTypeParameters()) {
-            typeVariables.add(TypeVariableName.get(tpe));
-        }
-
-        // Sort permitted classes alphabetically
-        permittedClasses.sort(Comparator.comparing(e -> e.getSimpleName().toString()));
+    private void generateRootInterface(HierarchyModel model) throws IOException {
+        ClassName rootClassName = model.rootClassName;
+        List<TypeVariableName> typeVariables = model.typeVariables;
 
-        TypeSpec.Builder rootBuilder = TypeSpec.interfaceBuilder(rootName)
+        TypeSpec.Builder rootBuilder = TypeSpec.interfaceBuilder(rootClassName.simpleName())
                 .addModifiers(Modifier.PUBLIC)
                 .addTypeVariables(typeVariables);
 
         if (typeVariables.isEmpty()) {
-            rootBuilder.addSuperinterface(ClassName.get(blueprint));
+            rootBuilder.addSuperinterface(ClassName.get(model.blueprint));
         } else {
-             rootBuilder.addSuperinterface(ParameterizedTypeName.get(ClassName.get(blueprint), typeVariables.toArray(new TypeName[0])));
+             rootBuilder.addSuperinterface(ParameterizedTypeName.get(ClassName.get(model.blueprint), typeVariables.toArray(new TypeName[0])));
         }
 
         // 1. Generate Visitor Interface
-        ClassName visitorClassName = rootClassName.nestedClass("Visitor");
-        TypeSpec visitorInterface = generateVisitorInterface(visitorClassName, permittedClasses, typeVariables);
-        rootBuilder.addType(visitorInterface);
+        rootBuilder.addType(generateVisitorInterface(model));
 
         // 2. Generate accept(Visitor) method in Root
         TypeVariableName rType = TypeVariableName.get("R");
-        
-        TypeName visitorType;
-        if (typeVariables.isEmpty()) {
-             visitorType = ParameterizedTypeName.get(visitorClassName, rType);
-        } else {
-             List<TypeName> visitorTypeArgs = new ArrayList<>(typeVariables);
-             visitorTypeArgs.add(rType);
-             visitorType = ParameterizedTypeName.get(visitorClassName, visitorTypeArgs.toArray(new TypeName[0]));
-        }
 
         MethodSpec acceptMethod = MethodSpec.methodBuilder("accept")
                 .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
                 .addTypeVariable(rType)
                 .returns(rType)
-                .addParameter(visitorType, "visitor")
+                .addParameter(model.nested("Visitor", rType), "visitor")
                 .build();
         rootBuilder.addMethod(acceptMethod);
 
+        // Context-passing visitor, so reusable handlers need not capture per-call state
+        rootBuilder.addType(generateContextVisitorInterface(model));
+        TypeVariableName cType = TypeVariableName.get("C");
+        rootBuilder.addMethod(MethodSpec.methodBuilder("accept")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addTypeVariable(cType)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("Visitor2", cType, rType), "visitor")
+                .addParameter(cType, "context")
+                .build());
+
+        // Kind tag and, for nested hierarchies, flattened dispatch over all transitive leaves
+        generateKind(rootBuilder, model);
+        if (model.hasNestedLeaves()) {
+            generateFlattenedDispatch(rootBuilder, model);
+        }
+
         // 3. Generate Wrapper classes
-        rootBuilder.addType(generateAbstractWrapper(rootClassName, typeVariables));
-        for (TypeElement permitted : permittedClasses) {
-            rootBuilder.addType(generateWrapperClass(permitted, rootClassName, visitorClassName, blueprint, typeVariables));
+        if (model.tagged) {
+            if (model.leaves.size() > MAX_TAGGED_LEAVES) {
+                error(model.blueprint, String.format("Tagged representation supports at most %d permitted classes, but '%s' has %d.",
+                        MAX_TAGGED_LEAVES, rootClassName.simpleName(), model.leaves.size()));
+                return;
+            }
+        }
+        List<ExecutableElement> bulkMethods = resolveBulkMethods(model);
+        BulkGenerator bulk = bulkMethods.isEmpty() ? null : new BulkGenerator(model, bulkMethods);
+        TypeSpec wrapper = model.tagged ? generateTaggedWrapper(model) : generateAbstractWrapper(model);
+        rootBuilder.addType(bulk == null ? wrapper : wrapper.toBuilder().addMethods(bulk.wrapperMethods()).build());
+        if (!model.tagged) {
+            for (Leaf leaf : model.leaves) {
+                rootBuilder.addType(generateWrapperClass(model, leaf));
+            }
         }
 
         // 4. Generate wrap() methods (Factories)
-        for (TypeElement permitted : permittedClasses) {
-            rootBuilder.addMethod(generateWrapMethod(permitted, rootClassName, typeVariables));
+        for (Leaf leaf : model.leaves) {
+            rootBuilder.addMethod(generateWrapMethod(model, leaf));
         }
-        
-        // 5. Generate map() method if applicable
-        if (!typeVariables.isEmpty()) {
-             generateMapMethod(rootBuilder, rootClassName, permittedClasses, typeVariables);
+        for (Leaf leaf : model.leaves) {
+            if (leaf.nested != null) {
+                generateFlattenedWrapMethods(rootBuilder, model, leaf);
+            }
         }
 
-        // 6. Generate DSL Entry Points and Interfaces
-        if (mode == GenerationMode.FUNCTION || mode == GenerationMode.BOTH) {
-            generateFunctionDSL(rootBuilder, rootClassName, permittedClasses, typeVariables);
+        // Dynamic wrapping of untyped values
+        generateWrapAnyMethods(rootBuilder, model);
+        generateKindUtilities(rootBuilder, model);
+        if (bulk != null) {
+            bulk.generate(rootBuilder);
+            reporting.generated("bulk methods");
         }
-        if (mode == GenerationMode.CONSUMER || mode == GenerationMode.BOTH) {
-            generateConsumerDSL(rootBuilder, rootClassName, permittedClasses, typeVariables);
+        Map<Leaf, List<FoldGenerator.Child>> children = resolveChildren(model);
+        if (children != null) {
+            new FoldGenerator(model, children).generate(rootBuilder);
+            reporting.generated("fold");
         }
-
-        if (!typeVariables.isEmpty()) {
-            generateClassOfValue(rootBuilder, rootClassName, typeVariables, mode);
+        // Patterns, router and lanes are generated with the matchers below, since compact mode leaves them all out
+        Map<Leaf, List<PatternGenerator.Sub>> subs = resolveSubPatterns(model);
+        if (subs != null) {
+            reporting.generated("patterns");
+        }
+        if (model.isGeneric()) {
+            reporting.skipped("router", "generic roots are not supported");
+            reporting.skipped("lanes", "generic roots are not supported");
+        } else if (model.compact) {
+            reporting.skipped("router", "compact mode");
+            reporting.skipped("lanes", "compact mode");
+        } else {
+            reporting.generated("router");
+            reporting.generated("lanes");
+        }
+        if (instrument) {
+            rootBuilder.addType(generateProfileClass(model));
         }
 
-        JavaFile.builder(packageName, rootBuilder.build())
-                .skipJavaLangImports(true)
-                .build()
-                .writeTo(filer);
-    }
+        // Lazy leaves: kind known up front, value materialized on first dispatch
+        rootBuilder.addType(generateLazyClass(model));
+        for (Leaf leaf : model.leaves) {
+            rootBuilder.addMethod(generateLazyMethod(model, leaf));
+        }
 
-    private void generateMapMethod(TypeSpec.Builder rootBuilder, ClassName rootClassName, List<TypeElement> permittedClasses, List<TypeVariableName> rootTypeVars) {
-        // Only verify if we have exactly one generic permitted class (enforced by validation)
-        TypeElement genericPermitted = permittedClasses.stream()
-                .filter(pe -> !pe.getTypeParameters().isEmpty())
-                .findFirst()
-                .orElse(null);
-        
-        if (genericPermitted == null || rootTypeVars.size() != 1) {
-             // Should not happen based on current logic but safe guard
-             return;
+        // 5. Generate map() method if applicable
+        if (model.isGeneric()) {
+             generateMapMethod(rootBuilder, model);
+        } else {
+            reporting.skipped("map/flatMap", "root is not generic");
         }
 
-        // Find accessor and constructor
-        String accessorName = null;
-        for (ExecutableElement method : ElementFilter.methodsIn(genericPermitted.getEnclosedElements())) {
-            if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC)) {
-                 TypeMirror returnType = method.getReturnType();
-                 if (returnType.getKind() == javax.lang.model.type.TypeKind.TYPEVAR) {
-                     if (returnType.toString().equals(genericPermitted.getTypeParameters().get(0).getSimpleName().toString())) {
-                         accessorName = method.getSimpleName().toString();
-                         break;
-                     }
-                 }
+        // Primitive specializations (IntResult, ...) are separate top-level types
+        List<TypeSpec> specializations = new ArrayList<>();
+        if (!model.specializations.isEmpty()) {
+            if (!generateSpecializations(rootBuilder, model, specializations)) {
+                return;
             }
-        }
-        
-        boolean hasConstructor = false;
-        for (ExecutableElement constructor : ElementFilter.constructorsIn(genericPermitted.getEnclosedElements())) {
-             if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().size() == 1) {
-                 TypeMirror paramType = constructor.getParameters().get(0).asType();
-                 if (paramType.getKind() == javax.lang.model.type.TypeKind.TYPEVAR) {
-                      if (paramType.toString().equals(genericPermitted.getTypeParameters().get(0).getSimpleName().toString())) {
-                          hasConstructor = true;
-                          break;
-                      }
-                 }
-             }
+            reporting.generated("specializations");
+        } else {
+            reporting.skipped("specializations", "none requested");
         }
 
-        if (accessorName == null || !hasConstructor) {
-             warning(genericPermitted, "Could not generate 'map'/'flatMap' methods. Requires a public accessor returning the type parameter and a public constructor accepting it.");
-             return;
+        if (model.offHeap) {
+            Map<Leaf, List<ArenaGenerator.Field>> layouts = resolveArenaLayouts(model);
+            if (layouts == null) {
+                return;
+            }
+            ArenaGenerator arena = new ArenaGenerator(model, layouts);
+            rootBuilder.addType(arena.generate());
+            note(model.blueprint, String.format("Off-heap arena: '%s' values take %d bytes each.",
+                    model.rootClassName.simpleName(), arena.stride()));
+            reporting.generated("off-heap arena");
+        } else {
+            reporting.skipped("off-heap arena", "offHeap is false");
         }
 
-        // 1. Generate flatMap
-        generateFlatMapMethod(rootBuilder, rootClassName, permittedClasses, rootTypeVars, genericPermitted, accessorName);
+        // 6. Generate DSL Entry Points and Interfaces
+        if (model.compact) {
+            generateCompactDSL(rootBuilder, model);
+            reporting.skipped("staged matchers", "compact mode");
+            reporting.skipped("pair matchers", "compact mode");
+        } else {
+            generateFullModeTypes(rootBuilder, model, subs);
+            reporting.generated("staged matchers");
+            if (hasPairDSL(model)) {
+                reporting.generated("pair matchers");
+            } else if (!model.pairs) {
+                reporting.skipped("pair matchers", "pairs is false");
+            } else {
+                note(model.blueprint, String.format("Pair matchers skipped for '%s': %d permitted classes exceed %d.",
+                        model.rootClassName.simpleName(), model.leaves.size(), MAX_PAIR_LEAVES));
+                reporting.skipped("pair matchers", model.leaves.size() + " permitted classes exceed " + MAX_PAIR_LEAVES);
+            }
+        }
 
-        // 2. Generate map using flatMap
-        TypeVariableName tType = rootTypeVars.get(0);
-        TypeVariableName uType = TypeVariableName.get("U");
-        
-        ParameterizedTypeName returnType = ParameterizedTypeName.get(rootClassName, uType);
-        ParameterizedTypeName mapperType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), 
-                WildcardTypeName.supertypeOf(tType), 
-                WildcardTypeName.subtypeOf(uType));
+        TypeSpec rootSpec = rootBuilder.build();
+        if (model.compact) {
+            reportCompactSavings(model, rootSpec);
+        }
 
-        MethodSpec mapMethod = MethodSpec.methodBuilder("map")
-                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
-                .addTypeVariable(uType)
-                .returns(returnType)
-                .addParameter(mapperType, "mapper")
-                .addStatement("return this.flatMap(val -> $T.wrap(new $T<>(mapper.apply(val))))", 
-                        rootClassName, ClassName.get(genericPermitted))
+        if (nativeSealed) {
+            rootSpec = NativeSealing.seal(model.rootClassName, rootSpec);
+            reporting.generated("native sealed");
+        } else {
+            reporting.skipped("native sealed", nativeSkipReason);
+        }
+        JavaFile rootFile = JavaFile.builder(model.packageName, rootSpec)
+                .skipJavaLangImports(true)
                 .build();
-        
-        rootBuilder.addMethod(mapMethod);
+        rootFile.writeTo(filer);
+        countGenerated(rootSpec, rootFile.toString());
+        for (TypeSpec specialization : specializations) {
+            JavaFile specializationFile = JavaFile.builder(model.packageName, specialization)
+                    .skipJavaLangImports(true)
+                    .build();
+            specializationFile.writeTo(filer);
+            countGenerated(specialization, specializationFile.toString());
+        }
+        reporting.valid = true;
     }
 
-    private void generateFlatMapMethod(TypeSpec.Builder rootBuilder, ClassName rootClassName, List<TypeElement> permittedClasses, List<TypeVariableName> rootTypeVars, TypeElement genericPermitted, String accessorName) {
-        TypeVariableName tType = rootTypeVars.get(0);
-        TypeVariableName uType = TypeVariableName.get("U");
-        
-        ParameterizedTypeName returnType = ParameterizedTypeName.get(rootClassName, uType);
-        ParameterizedTypeName mapperType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), 
-                WildcardTypeName.supertypeOf(tType), 
-                returnType);
+    private void countGenerated(TypeSpec topLevel, String source) {
+        reporting.types += 1 + countNestedTypes(topLevel);
+        reporting.methods += countMethods(topLevel);
+        reporting.sourceBytes += source.getBytes(StandardCharsets.UTF_8).length;
+    }
 
-        MethodSpec.Builder flatMapBuilder = MethodSpec.methodBuilder("flatMap")
-                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
-                .addTypeVariable(uType)
-                .returns(returnType)
-                .addParameter(mapperType, "mapper");
+    private static int countMethods(TypeSpec type) {
+        int count = type.methodSpecs.size();
+        for (TypeSpec nested : type.typeSpecs) {
+            count += countMethods(nested);
+        }
+        return count;
+    }
 
-        ClassName visitorClassName = rootClassName.nestedClass("Visitor");
-        ParameterizedTypeName visitorType = ParameterizedTypeName.get(visitorClassName, tType, returnType);
+    /**
+     * Validates the requested specializations, adds the {@code mapToInt}-style entry points to the root and collects the
+     * specialized types into {@code out}. Returns {@code false} after reporting an error.
+     */
+    private boolean generateSpecializations(TypeSpec.Builder rootBuilder, HierarchyModel model, List<TypeSpec> out) {
+        Leaf genericLeaf = model.genericLeaf();
+        if (genericLeaf == null || model.typeVariables.size() != 1 || !model.typeVariables.get(0).bounds.isEmpty()) {
+            error(model.blueprint, "Primitive specializations require a @Sealed interface with one unbounded type parameter and a generic permitted class.");
+            return false;
+        }
+        String accessorName = findGenericAccessor(genericLeaf.element);
+        if (accessorName == null || !hasGenericConstructor(genericLeaf.element)) {
+            error(genericLeaf.element, "Primitive specializations require a public accessor returning the type parameter and a public constructor accepting it.");
+            return false;
+        }
 
-        TypeSpec.Builder visitorImpl = TypeSpec.anonymousClassBuilder("")
-                .addSuperinterface(visitorType);
-        
-        for (TypeElement permitted : permittedClasses) {
-            MethodSpec.Builder onMethod = MethodSpec.methodBuilder("on" + permitted.getSimpleName())
-                    .addModifiers(Modifier.PUBLIC)
-                    .addAnnotation(Override.class)
-                    .returns(returnType);
-            
-            TypeName permittedTypeInput;
-            if (!permitted.getTypeParameters().isEmpty()) {
-                 permittedTypeInput = ParameterizedTypeName.get(ClassName.get(permitted), tType);
-            } else {
-                 permittedTypeInput = TypeName.get(permitted.asType());
-            }
-            
-            onMethod.addParameter(permittedTypeInput, "val");
+        SpecializationGenerator generator = new SpecializationGenerator(model, genericLeaf, accessorName);
+        for (Specialization specialization : model.specializations) {
+            rootBuilder.addMethod(generator.rootMapMethod(specialization));
+            out.add(generator.generate(specialization));
+        }
+        return true;
+    }
 
-            if (permitted.equals(genericPermitted)) {
-                onMethod.addStatement("return mapper.apply(val.$L())", accessorName);
-            } else {
-                onMethod.addStatement("return $T.<$T>wrap(val)", rootClassName, uType);
+    /**
+     * Record layout per leaf for the off-heap arena, or {@code null} after reporting why the hierarchy cannot be stored.
+     * Each leaf needs a public constructor whose parameters are all primitives, each readable through a public no-arg
+     * accessor of the same name and type.
+     */
+    private Map<Leaf, List<ArenaGenerator.Field>> resolveArenaLayouts(HierarchyModel model) {
+        if (model.isGeneric() || model.hasNestedLeaves() || model.leaves.size() > MAX_ARENA_LEAVES) {
+            error(model.blueprint, String.format("Off-heap arenas require a non-generic hierarchy of at most %d permitted classes without nested @Sealed types.",
+                    MAX_ARENA_LEAVES));
+            return null;
+        }
+        Map<Leaf, List<ArenaGenerator.Field>> layouts = new LinkedHashMap<>();
+        for (Leaf leaf : model.leaves) {
+            List<ArenaGenerator.Field> fields = null;
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(leaf.element.getEnclosedElements())) {
+                if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                    fields = arenaFields(leaf.element, constructor);
+                    if (fields != null) break;
+                }
             }
-            
-            visitorImpl.addMethod(onMethod.build());
+            if (fields == null) {
+                error(leaf.element, "Off-heap arenas require a public constructor with primitive parameters, each readable "
+                        + "through a public accessor of the same name: " + leaf.name);
+                return null;
+            }
+            layouts.put(leaf, fields);
         }
-
-        flatMapBuilder.addStatement("return this.accept($L)", visitorImpl.build());
-        rootBuilder.addMethod(flatMapBuilder.build());
+        return layouts;
     }
 
-    private TypeSpec generateVisitorInterface(ClassName visitorClassName, List<TypeElement> permittedClasses, List<TypeVariableName> rootTypeVars) {
-        TypeVariableName rType = TypeVariableName.get("R");
-        TypeSpec.Builder visitorBuilder = TypeSpec.interfaceBuilder(visitorClassName.simpleName())
-                .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
-        
-        visitorBuilder.addTypeVariables(rootTypeVars);
-        visitorBuilder.addTypeVariable(rType);
+    /**
+     * Child accessors per leaf for {@code fold}: public no-arg methods returning the root or a {@code Collection} of it.
+     * {@code null}, with the reason recorded, when no leaf has any or the hierarchy cannot be folded.
+     */
+    private Map<Leaf, List<FoldGenerator.Child>> resolveChildren(HierarchyModel model) {
+        Map<Leaf, List<FoldGenerator.Child>> children = new LinkedHashMap<>();
+        boolean recursive = false;
+        TypeMirror collection = typeUtils.erasure(elementUtils.getTypeElement("java.util.Collection").asType());
+        for (Leaf leaf : model.leaves) {
+            List<FoldGenerator.Child> leafChildren = new ArrayList<>();
+            if (leaf.nested == null) {
+                for (ExecutableElement method : ElementFilter.methodsIn(leaf.element.getEnclosedElements())) {
+                    if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)
+                            || !method.getParameters().isEmpty()) {
+                        continue;
+                    }
+                    TypeMirror type = method.getReturnType();
+                    String accessor = method.getSimpleName().toString();
+                    if (isRootType(type, model)) {
+                        leafChildren.add(new FoldGenerator.Child(accessor, false));
+                    } else if (type.getKind() == TypeKind.DECLARED
+                            && typeUtils.isAssignable(typeUtils.erasure(type), collection)
+                            && ((DeclaredType) type).getTypeArguments().size() == 1
+                            && isRootType(((DeclaredType) type).getTypeArguments().get(0), model)) {
+                        leafChildren.add(new FoldGenerator.Child(accessor, true));
+                    }
+                }
+            }
+            recursive |= !leafChildren.isEmpty();
+            children.put(leaf, leafChildren);
+        }
 
-        for (TypeElement permitted : permittedClasses) {
-            TypeName paramType;
-            if (!permitted.getTypeParameters().isEmpty()) {
-                // If permitted is generic, it should match root's type variables (assumed based on validation)
-                paramType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
+        if (!recursive) {
+            reporting.skipped("fold", "no permitted class has an accessor returning " + model.rootClassName.simpleName());
+            return null;
+        }
+        String skipped = null;
+        if (model.isGeneric()) {
+            skipped = "generic roots are not supported";
+        }
+        for (ExecutableElement method : model.blueprintMethods) {
+            if (FoldGenerator.isReserved(method.getSimpleName().toString())) {
+                skipped = "the blueprint declares '" + method.getSimpleName() + "'";
+            }
+        }
+        if (skipped != null) {
+            note(model.blueprint, String.format("Fold skipped for '%s': %s.", model.rootClassName.simpleName(), skipped));
+            reporting.skipped("fold", skipped);
+            return null;
+        }
+        return children;
+    }
+
+    /**
+     * Blueprint methods that get static bulk variants: no parameters, no type parameters and a primitive result. Methods
+     * whose bulk names are taken by another blueprint method are left out with a note.
+     */
+    private List<ExecutableElement> resolveBulkMethods(HierarchyModel model) {
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : model.blueprintMethods) {
+            if (!method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()
+                    || !method.getReturnType().getKind().isPrimitive()) {
+                continue;
+            }
+            ExecutableElement clash = null;
+            for (ExecutableElement other : model.blueprintMethods) {
+                if (other != method && BulkGenerator.names(method).contains(other.getSimpleName().toString())) {
+                    clash = other;
+                }
+            }
+            if (clash != null) {
+                note(model.blueprint, String.format("Bulk methods skipped for '%s': '%s' is taken.",
+                        formatMethodSignature(method), formatMethodSignature(clash)));
+                continue;
+            }
+            methods.add(method);
+        }
+        if (methods.isEmpty()) {
+            reporting.skipped("bulk methods", "no no-arg blueprint method returns a primitive");
+        }
+        return methods;
+    }
+
+    /**
+     * Sub-pattern accessors per leaf: public no-arg methods returning a root that has a {@code Pattern}. {@code null},
+     * with the reason recorded, when this hierarchy gets no patterns.
+     */
+    private Map<Leaf, List<PatternGenerator.Sub>> resolveSubPatterns(HierarchyModel model) {
+        String skipped = PatternGenerator.skipReason(model.isGeneric(), model.compact, leafNames(model));
+        if (skipped != null) {
+            if (!model.isGeneric() && !model.compact) {
+                note(model.blueprint, String.format("Patterns skipped for '%s': %s.", model.rootClassName.simpleName(), skipped));
+            }
+            reporting.skipped("patterns", skipped);
+            return null;
+        }
+
+        return collectSubPatterns(model);
+    }
+
+    private Map<Leaf, List<PatternGenerator.Sub>> collectSubPatterns(HierarchyModel model) {
+        Map<Leaf, List<PatternGenerator.Sub>> subs = new LinkedHashMap<>();
+        for (Leaf leaf : model.leaves) {
+            List<PatternGenerator.Sub> leafSubs = new ArrayList<>();
+            if (leaf.nested == null) {
+                for (ExecutableElement method : ElementFilter.methodsIn(leaf.element.getEnclosedElements())) {
+                    if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)
+                            || !method.getParameters().isEmpty()) {
+                        continue;
+                    }
+                    ClassName subRoot = patternRoot(method.getReturnType(), model);
+                    if (subRoot != null) {
+                        leafSubs.add(new PatternGenerator.Sub(method.getSimpleName().toString(), subRoot));
+                    }
+                }
+            }
+            subs.put(leaf, leafSubs);
+        }
+        return subs;
+    }
+
+    /**
+     * The root {@code type} names if it has a {@code Pattern}: this root, another root generated this round, or a
+     * root compiled earlier. {@code null} otherwise.
+     */
+    private ClassName patternRoot(TypeMirror type, HierarchyModel model) {
+        if (isRootType(type, model)) {
+            return model.rootClassName;
+        }
+        if (type.getKind() == TypeKind.ERROR) {
+            // Unresolved until generated, so match the name as written against this round's roots
+            String name = type.toString();
+            String match = null;
+            for (Map.Entry<String, Boolean> root : roundRoots.entrySet()) {
+                String qualified = root.getKey();
+                if (root.getValue() && (qualified.equals(name) || qualified.endsWith("." + name))) {
+                    if (match != null) return null;
+                    match = qualified;
+                }
+            }
+            return match == null ? null : ClassName.bestGuess(match);
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) typeUtils.asElement(type);
+        Boolean generated = roundRoots.get(element.getQualifiedName().toString());
+        if (generated != null) {
+            return generated ? ClassName.get(element) : null;
+        }
+        for (TypeElement member : ElementFilter.typesIn(element.getEnclosedElements())) {
+            if (member.getSimpleName().contentEquals("Pattern") && element.getKind() == ElementKind.INTERFACE
+                    && ElementFilter.methodsIn(member.getEnclosedElements()).stream()
+                        .anyMatch(method -> method.getSimpleName().contentEquals("embedInto"))) {
+                return ClassName.get(element);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether {@code type} is the generated root. In the round that generates it the root is still an error type, known
+     * only by the name written in the source.
+     */
+    private boolean isRootType(TypeMirror type, HierarchyModel model) {
+        if (type.getKind() == TypeKind.ERROR) {
+            String name = type.toString();
+            return name.equals(model.rootClassName.simpleName()) || name.equals(model.rootClassName.canonicalName());
+        }
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) typeUtils.asElement(type)).getQualifiedName().contentEquals(model.rootClassName.canonicalName());
+    }
+
+    private List<ArenaGenerator.Field> arenaFields(TypeElement leaf, ExecutableElement constructor) {
+        List<ArenaGenerator.Field> fields = new ArrayList<>();
+        int offset = 1; // after the kind tag
+        for (VariableElement param : constructor.getParameters()) {
+            String name = param.getSimpleName().toString();
+            TypeMirror type = param.asType();
+            if (!type.getKind().isPrimitive() || name.equals("index") || name.equals("materialize")) {
+                return null;
+            }
+            boolean readable = false;
+            for (ExecutableElement method : ElementFilter.methodsIn(leaf.getEnclosedElements())) {
+                readable |= method.getSimpleName().contentEquals(name) && method.getParameters().isEmpty()
+                        && method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC)
+                        && typeUtils.isSameType(method.getReturnType(), type);
+            }
+            if (!readable) {
+                return null;
+            }
+            TypeName typeName = TypeName.get(type);
+            fields.add(new ArenaGenerator.Field(name, typeName, offset));
+            offset += ArenaGenerator.size(typeName);
+        }
+        return fields;
+    }
+
+    /**
+     * Name of the public accessor returning the generic leaf's type parameter, or {@code null}.
+     */
+    private String findGenericAccessor(TypeElement genericPermitted) {
+        for (ExecutableElement method : ElementFilter.methodsIn(genericPermitted.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC)) {
+                 TypeMirror returnType = method.getReturnType();
+                 if (returnType.getKind() == javax.lang.model.type.TypeKind.TYPEVAR) {
+                     if (returnType.toString().equals(genericPermitted.getTypeParameters().get(0).getSimpleName().toString())) {
+                         return method.getSimpleName().toString();
+                     }
+                 }
+            }
+        }
+        return null;
+    }
+
+    private boolean hasGenericConstructor(TypeElement genericPermitted) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(genericPermitted.getEnclosedElements())) {
+             if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().size() == 1) {
+                 TypeMirror paramType = constructor.getParameters().get(0).asType();
+                 if (paramType.getKind() == javax.lang.model.type.TypeKind.TYPEVAR) {
+                      if (paramType.toString().equals(genericPermitted.getTypeParameters().get(0).getSimpleName().toString())) {
+                          return true;
+                      }
+                 }
+             }
+        }
+        return false;
+    }
+
+    private void generateMapMethod(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        // Only verify if we have exactly one generic permitted class (enforced by validation)
+        Leaf genericLeaf = model.genericLeaf();
+
+        if (genericLeaf == null || model.typeVariables.size() != 1) {
+             // Should not happen based on current logic but safe guard
+             return;
+        }
+        TypeElement genericPermitted = genericLeaf.element;
+
+        // Find accessor and constructor
+        String accessorName = findGenericAccessor(genericPermitted);
+        boolean hasConstructor = hasGenericConstructor(genericPermitted);
+
+        if (accessorName == null || !hasConstructor) {
+             warning(genericPermitted, "Could not generate 'map'/'flatMap' methods. Requires a public accessor returning the type parameter and a public constructor accepting it.");
+             reporting.skipped("map/flatMap", genericPermitted.getSimpleName() + " lacks a public accessor returning the type parameter or a public constructor accepting it");
+             return;
+        }
+        reporting.generated("map/flatMap");
+
+        // 1. Generate flatMap
+        generateFlatMapMethod(rootBuilder, model, genericLeaf, accessorName);
+
+        // 2. Generate map using flatMap
+        TypeVariableName tType = model.typeVariables.get(0);
+        TypeVariableName uType = TypeVariableName.get("U");
+
+        ParameterizedTypeName returnType = ParameterizedTypeName.get(model.rootClassName, uType);
+        ParameterizedTypeName mapperType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                WildcardTypeName.supertypeOf(tType),
+                WildcardTypeName.subtypeOf(uType));
+
+        MethodSpec mapMethod = MethodSpec.methodBuilder("map")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .addTypeVariable(uType)
+                .returns(returnType)
+                .addParameter(mapperType, "mapper")
+                .addStatement("return this.flatMap(val -> $T.wrap(new $T<>(mapper.apply(val))))",
+                        model.rootClassName, ClassName.get(genericPermitted))
+                .build();
+
+        rootBuilder.addMethod(mapMethod);
+
+        // 3. Trampolined evaluation for chains too deep for the direct flatMap
+        generateStep(rootBuilder, model, genericLeaf, accessorName);
+    }
+
+    /**
+     * Emits {@code Step<T>}, a description of a {@code flatMap} chain that {@code run()} evaluates in a loop with an
+     * explicit continuation stack, plus the {@code step()} and {@code suspend(Supplier)} entry points on the root.
+     */
+    private void generateStep(TypeSpec.Builder rootBuilder, HierarchyModel model, Leaf genericLeaf, String accessorName) {
+        TypeVariableName tType = model.typeVariables.get(0);
+        TypeVariableName sType = TypeVariableName.get("S");
+        TypeVariableName uType = TypeVariableName.get("U");
+        ClassName stepName = model.rootClassName.nestedClass("Step");
+        ClassName doneName = stepName.nestedClass("Done");
+        ClassName suspendName = stepName.nestedClass("Suspend");
+        ClassName flatMappedName = stepName.nestedClass("FlatMapped");
+        TypeName stepOfT = ParameterizedTypeName.get(stepName, tType);
+        TypeName stepOfU = ParameterizedTypeName.get(stepName, uType);
+        TypeName stepOfObject = ParameterizedTypeName.get(stepName, ClassName.get(Object.class));
+        TypeName rootOfT = ParameterizedTypeName.get(model.rootClassName, tType);
+        TypeName rootOfObject = ParameterizedTypeName.get(model.rootClassName, ClassName.get(Object.class));
+        TypeName thunkType = ParameterizedTypeName.get(ClassName.get(Supplier.class), stepOfT);
+        TypeName continuationType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                ClassName.get(Object.class), stepOfObject);
+        TypeName valueVisitorType = ParameterizedTypeName.get(model.rootClassName.nestedClass("Visitor"),
+                ClassName.get(Object.class), ClassName.get(Object.class));
+        AnnotationSpec unchecked = AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+
+        TypeSpec.Builder step = TypeSpec.classBuilder("Step")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.ABSTRACT)
+                .addTypeVariable(tType);
+
+        // Extracts the generic leaf's value, or a marker for leaves that short-circuit the chain
+        TypeSpec.Builder valueVisitor = TypeSpec.anonymousClassBuilder("").addSuperinterface(valueVisitorType);
+        for (Leaf leaf : model.leaves) {
+            MethodSpec.Builder on = MethodSpec.methodBuilder("on" + leaf.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(Object.class);
+            if (leaf == genericLeaf) {
+                on.addParameter(ParameterizedTypeName.get(ClassName.get(leaf.element), ClassName.get(Object.class)), "val")
+                        .addStatement("return val.$L()", accessorName);
+            } else {
+                on.addParameter(leaf.type, "val")
+                        .addStatement("return SHORT_CIRCUIT");
+            }
+            valueVisitor.addMethod(on.build());
+        }
+        step.addField(FieldSpec.builder(Object.class, "SHORT_CIRCUIT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T()", Object.class)
+                .build());
+        step.addField(FieldSpec.builder(valueVisitorType, "VALUE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", valueVisitor.build())
+                .build());
+
+        step.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+
+        step.addMethod(MethodSpec.methodBuilder("done")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(tType)
+                .returns(stepOfT)
+                .addParameter(rootOfT, "result")
+                .addStatement("return new Done<>($T.requireNonNull(result))", Objects.class)
+                .build());
+        step.addMethod(MethodSpec.methodBuilder("suspend")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(tType)
+                .returns(stepOfT)
+                .addParameter(thunkType, "thunk")
+                .addStatement("return new Suspend<>($T.requireNonNull(thunk))", Objects.class)
+                .build());
+        step.addMethod(MethodSpec.methodBuilder("flatMap")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(uType)
+                .returns(stepOfU)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                        WildcardTypeName.supertypeOf(tType), stepOfU), "mapper")
+                .addStatement("return new FlatMapped<>(this, $T.requireNonNull(mapper))", Objects.class)
+                .build());
+        step.addMethod(MethodSpec.methodBuilder("map")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(uType)
+                .returns(stepOfU)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                        WildcardTypeName.supertypeOf(tType), WildcardTypeName.subtypeOf(uType)), "mapper")
+                .addStatement("return flatMap(val -> done($T.wrap(new $T<>(mapper.apply(val)))))",
+                        model.rootClassName, ClassName.get(genericLeaf.element))
+                .build());
+
+        // Non-generic leaves carry no value of T, so a short-circuiting result is returned as is
+        step.addMethod(MethodSpec.methodBuilder("run")
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addAnnotation(unchecked)
+                .returns(rootOfT)
+                .addStatement("$T current = ($T) this", stepOfObject, stepOfObject)
+                .addStatement("$T<$T> continuations = new $T<>()", ArrayDeque.class, continuationType, ArrayDeque.class)
+                .beginControlFlow("while (true)")
+                .beginControlFlow("if (current instanceof FlatMapped)")
+                .addStatement("$T flatMapped = ($T) current",
+                        ParameterizedTypeName.get(flatMappedName, ClassName.get(Object.class), ClassName.get(Object.class)),
+                        ParameterizedTypeName.get(flatMappedName, ClassName.get(Object.class), ClassName.get(Object.class)))
+                .addStatement("continuations.push(($T) flatMapped.mapper)", continuationType)
+                .addStatement("current = flatMapped.source")
+                .nextControlFlow("else if (current instanceof Suspend)")
+                .addStatement("current = (($T) current).thunk.get()", ParameterizedTypeName.get(suspendName, ClassName.get(Object.class)))
+                .nextControlFlow("else")
+                .addStatement("$T result = (($T) current).result", rootOfObject, ParameterizedTypeName.get(doneName, ClassName.get(Object.class)))
+                .addStatement("if (continuations.isEmpty()) return ($T) result", rootOfT)
+                .addStatement("$T value = result.accept(VALUE)", Object.class)
+                .addStatement("if (value == SHORT_CIRCUIT) return ($T) result", rootOfT)
+                .addStatement("current = continuations.pop().apply(value)")
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+
+        step.addType(TypeSpec.classBuilder("Done")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(tType)
+                .superclass(stepOfT)
+                .addField(rootOfT, "result", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(rootOfT, "result")
+                        .addStatement("this.result = result")
+                        .build())
+                .build());
+        step.addType(TypeSpec.classBuilder("Suspend")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(tType)
+                .superclass(stepOfT)
+                .addField(thunkType, "thunk", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(thunkType, "thunk")
+                        .addStatement("this.thunk = thunk")
+                        .build())
+                .build());
+        TypeName mapperType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                WildcardTypeName.supertypeOf(sType), stepOfT);
+        step.addType(TypeSpec.classBuilder("FlatMapped")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(sType)
+                .addTypeVariable(tType)
+                .superclass(stepOfT)
+                .addField(ParameterizedTypeName.get(stepName, sType), "source", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(mapperType, "mapper", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(ParameterizedTypeName.get(stepName, sType), "source")
+                        .addParameter(mapperType, "mapper")
+                        .addStatement("this.source = source")
+                        .addStatement("this.mapper = mapper")
+                        .build())
+                .build());
+
+        rootBuilder.addType(step.build());
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("step")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .returns(stepOfT)
+                .addStatement("return Step.done(this)")
+                .build());
+        rootBuilder.addMethod(MethodSpec.methodBuilder("suspend")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(tType)
+                .returns(stepOfT)
+                .addParameter(thunkType, "thunk")
+                .addStatement("return Step.suspend(thunk)")
+                .build());
+    }
+
+    private void generateFlatMapMethod(TypeSpec.Builder rootBuilder, HierarchyModel model, Leaf genericLeaf, String accessorName) {
+        TypeVariableName tType = model.typeVariables.get(0);
+        TypeVariableName uType = TypeVariableName.get("U");
+
+        ParameterizedTypeName returnType = ParameterizedTypeName.get(model.rootClassName, uType);
+        ParameterizedTypeName mapperType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                WildcardTypeName.supertypeOf(tType),
+                returnType);
+
+        MethodSpec.Builder flatMapBuilder = MethodSpec.methodBuilder("flatMap")
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .addTypeVariable(uType)
+                .returns(returnType)
+                .addParameter(mapperType, "mapper");
+
+        TypeSpec.Builder visitorImpl = TypeSpec.anonymousClassBuilder("")
+                .addSuperinterface(model.nested("Visitor", returnType));
+
+        for (Leaf leaf : model.leaves) {
+            MethodSpec.Builder onMethod = MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .returns(returnType);
+
+            onMethod.addParameter(leaf.type, "val");
+
+            if (leaf == genericLeaf) {
+                onMethod.addStatement("return mapper.apply(val.$L())", accessorName);
             } else {
-                paramType = TypeName.get(permitted.asType());
+                onMethod.addStatement("return $T.<$T>wrap(val)", model.rootClassName, uType);
             }
 
-            visitorBuilder.addMethod(MethodSpec.methodBuilder("on" + permitted.getSimpleName())
+            visitorImpl.addMethod(onMethod.build());
+        }
+
+        flatMapBuilder.addStatement("return this.accept($L)", visitorImpl.build());
+        rootBuilder.addMethod(flatMapBuilder.build());
+    }
+
+    private TypeSpec generateVisitorInterface(HierarchyModel model) {
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeSpec.Builder visitorBuilder = TypeSpec.interfaceBuilder("Visitor")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+
+        visitorBuilder.addTypeVariables(model.typeVariables);
+        visitorBuilder.addTypeVariable(rType);
+
+        for (Leaf leaf : model.leaves) {
+            visitorBuilder.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
                     .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
                     .returns(rType)
-                    .addParameter(paramType, String.valueOf(Character.toLowerCase(permitted.getSimpleName().charAt(0))) + permitted.getSimpleName().toString().substring(1))
+                    .addParameter(leaf.type, leaf.parameterName())
                     .build());
         }
         return visitorBuilder.build();
     }
 
-    private TypeSpec generateAbstractWrapper(ClassName rootClassName, List<TypeVariableName> rootTypeVars) {
+    private TypeSpec generateContextVisitorInterface(HierarchyModel model) {
+        TypeVariableName cType = TypeVariableName.get("C");
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeSpec.Builder visitorBuilder = TypeSpec.interfaceBuilder("Visitor2")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .addTypeVariable(cType)
+                .addTypeVariable(rType);
+
+        for (Leaf leaf : model.leaves) {
+            visitorBuilder.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(rType)
+                    .addParameter(leaf.type, leaf.parameterName())
+                    .addParameter(cType, "context")
+                    .build());
+        }
+        return visitorBuilder.build();
+    }
+
+    /**
+     * Emits the {@code Kind} enum. Each constant carries its permitted type, and {@code Kind.of(Class)} resolves runtime
+     * classes through a {@link ClassValue}, so subclasses of non-final leaves are resolved once per class.
+     */
+    private void generateKind(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        ClassName kindName = model.rootClassName.nestedClass("Kind");
+        TypeName anyClass = ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class));
+
+        TypeSpec.Builder kindBuilder = TypeSpec.enumBuilder("Kind")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+        for (Leaf leaf : model.leaves) {
+            kindBuilder.addEnumConstant(leaf.constantName(), TypeSpec.anonymousClassBuilder("$T.class", leaf.rawType()).build());
+        }
+
+        // The most specific permitted supertype wins, nested hierarchies match through their own index
+        CodeBlock.Builder compute = CodeBlock.builder()
+                .addStatement("$T match = null", kindName)
+                .beginControlFlow("for ($T kind : values())", kindName)
+                .beginControlFlow("if (kind.type.isAssignableFrom(type) && (match == null || match.type.isAssignableFrom(kind.type)))")
+                .addStatement("match = kind")
+                .endControlFlow()
+                .endControlFlow();
+        for (Leaf leaf : model.leaves) {
+            if (leaf.nested != null) {
+                // Qualified, since a constant spelled like the nested root (B for B) shadows its simple name here
+                compute.beginControlFlow("if (match == null && $L.Kind.of(type) != null)", leaf.nested.rootClassName.canonicalName())
+                        .addStatement("match = $L", leaf.constantName())
+                        .endControlFlow();
+            }
+        }
+        compute.addStatement("return match");
+
+        TypeSpec byClass = TypeSpec.anonymousClassBuilder("")
+                .superclass(ParameterizedTypeName.get(ClassName.get(ClassValue.class), kindName))
+                .addMethod(MethodSpec.methodBuilder("computeValue")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(kindName)
+                        .addParameter(anyClass, "type")
+                        .addCode(compute.build())
+                        .build())
+                .build();
+
+        kindBuilder.addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(ClassValue.class), kindName), "BY_CLASS",
+                        Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", byClass)
+                .build());
+        kindBuilder.addField(anyClass, "type", Modifier.PRIVATE, Modifier.FINAL);
+        kindBuilder.addMethod(MethodSpec.constructorBuilder()
+                .addParameter(anyClass, "type")
+                .addStatement("this.type = type")
+                .build());
+        kindBuilder.addMethod(MethodSpec.methodBuilder("type")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(anyClass)
+                .addStatement("return type")
+                .build());
+        kindBuilder.addMethod(MethodSpec.methodBuilder("of")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(kindName)
+                .addParameter(anyClass, "type")
+                .addStatement("return BY_CLASS.get(type)")
+                .build());
+        rootBuilder.addType(kindBuilder.build());
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("kind")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(model.rootClassName.nestedClass("Kind"))
+                .build());
+    }
+
+    /**
+     * Emits {@code LeafKind} and {@code LeafVisitor} over every transitive leaf. {@code LeafVisitor} extends the visitors
+     * of the nested roots, so a nested wrapper forwards it unchanged and a single dispatch inside the nested hierarchy
+     * reaches the concrete leaf.
+     */
+    private void generateFlattenedDispatch(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        ClassName leafKindName = model.rootClassName.nestedClass("LeafKind");
+        TypeSpec.Builder leafKind = TypeSpec.enumBuilder("LeafKind")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+        for (Leaf leaf : model.flattenedLeaves()) {
+            leafKind.addEnumConstant(leaf.constantName());
+        }
+
+        for (Leaf leaf : model.leaves) {
+            if (leaf.nested == null) continue;
+
+            // Nested kinds map onto a contiguous range of LeafKind constants
+            ClassName nestedKind = leaf.nested.rootClassName.nestedClass(leaf.nested.hasNestedLeaves() ? "LeafKind" : "Kind");
+            String table = leaf.constantName() + "_KINDS";
+            CodeBlock.Builder constants = CodeBlock.builder().add("{");
+            List<Leaf> nestedLeaves = leaf.nested.flattenedLeaves();
+            for (int i = 0; i < nestedLeaves.size(); i++) {
+                constants.add(i > 0 ? ", $L" : "$L", nestedLeaves.get(i).constantName());
+            }
+            leafKind.addField(FieldSpec.builder(ArrayTypeName.of(leafKindName), table, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer(constants.add("}").build())
+                    .build());
+            leafKind.addMethod(MethodSpec.methodBuilder("of")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(leafKindName)
+                    .addParameter(nestedKind, "kind")
+                    .addStatement("return $L[kind.ordinal()]", table)
+                    .build());
+        }
+        rootBuilder.addType(leafKind.build());
+
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeSpec.Builder leafVisitor = TypeSpec.interfaceBuilder("LeafVisitor")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .addTypeVariable(rType);
+        for (Leaf leaf : model.leaves) {
+            if (leaf.nested != null) {
+                String nestedVisitor = leaf.nested.hasNestedLeaves() ? "LeafVisitor" : "Visitor";
+                leafVisitor.addSuperinterface(leaf.nested.nested(nestedVisitor, rType));
+            } else {
+                leafVisitor.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                        .returns(rType)
+                        .addParameter(leaf.type, leaf.parameterName())
+                        .build());
+            }
+        }
+        rootBuilder.addType(leafVisitor.build());
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("leafKind")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(leafKindName)
+                .build());
+        rootBuilder.addMethod(MethodSpec.methodBuilder("acceptLeaf")
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("LeafVisitor", rType), "visitor")
+                .build());
+    }
+
+    /**
+     * {@code wrap} overloads for the leaves of a nested hierarchy, so they can be lifted into this root in one call.
+     */
+    private void generateFlattenedWrapMethods(TypeSpec.Builder rootBuilder, HierarchyModel model, Leaf nestedLeaf) {
+        for (Leaf leaf : nestedLeaf.nested.flattenedLeaves()) {
+            rootBuilder.addMethod(MethodSpec.methodBuilder("wrap")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables)
+                    .returns(model.rootType())
+                    .addParameter(leaf.type, "s")
+                    .addStatement("return wrap($T.wrap(s))", nestedLeaf.type)
+                    .build());
+        }
+    }
+
+    private TypeName lazyWildcard(HierarchyModel model) {
+        ClassName lazyName = model.rootClassName.nestedClass("Lazy");
+        if (!model.isGeneric()) {
+            return lazyName;
+        }
+        TypeName[] wildcards = new TypeName[model.typeVariables.size()];
+        Arrays.fill(wildcards, WildcardTypeName.subtypeOf(Object.class));
+        return ParameterizedTypeName.get(lazyName, wildcards);
+    }
+
+    /**
+     * A root whose kind is fixed at construction and whose wrapper is produced by a supplier on first use. The supplier
+     * runs at most once; {@code kind()} and {@code toString()} never trigger it.
+     */
+    private TypeSpec generateLazyClass(HierarchyModel model) {
+        TypeName rootType = model.rootType();
+        ClassName kindName = model.rootClassName.nestedClass("Kind");
+        TypeName supplierType = ParameterizedTypeName.get(ClassName.get(Supplier.class), WildcardTypeName.subtypeOf(rootType));
+
+        TypeSpec.Builder lazyBuilder = TypeSpec.classBuilder("Lazy")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariables(model.typeVariables)
+                .addSuperinterface(rootType);
+
+        lazyBuilder.addField(kindName, "kind", Modifier.PRIVATE, Modifier.FINAL);
+        lazyBuilder.addField(supplierType, "supplier", Modifier.PRIVATE);
+        lazyBuilder.addField(rootType, "target", Modifier.PRIVATE, Modifier.VOLATILE);
+
+        lazyBuilder.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(kindName, "kind")
+                .addParameter(supplierType, "supplier")
+                .addStatement("this.kind = kind")
+                .addStatement("this.supplier = supplier")
+                .build());
+
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("isMaterialized")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return target != null")
+                .build());
+
+        // Double-checked so materialized reads cost one volatile load; the supplier is dropped once used
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("target")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(rootType)
+                .addStatement("$T result = target", rootType)
+                .beginControlFlow("if (result == null)")
+                .beginControlFlow("synchronized (this)")
+                .addStatement("result = target")
+                .beginControlFlow("if (result == null)")
+                .addStatement("result = supplier.get()")
+                .addStatement("target = result")
+                .addStatement("supplier = null")
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return result")
+                .build());
+
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("kind")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(kindName)
+                .addStatement("return kind")
+                .build());
+
+        TypeVariableName rType = TypeVariableName.get("R");
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("accept")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("Visitor", rType), "visitor")
+                .addStatement("return target().accept(visitor)")
+                .build());
+
+        TypeVariableName cType = TypeVariableName.get("C");
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("accept")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addTypeVariable(cType)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("Visitor2", cType, rType), "visitor")
+                .addParameter(cType, "context")
+                .addStatement("return target().accept(visitor, context)")
+                .build());
+
+        if (model.hasNestedLeaves()) {
+            lazyBuilder.addMethod(MethodSpec.methodBuilder("leafKind")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .returns(model.rootClassName.nestedClass("LeafKind"))
+                    .addStatement("return target().leafKind()")
+                    .build());
+            lazyBuilder.addMethod(MethodSpec.methodBuilder("acceptLeaf")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .addTypeVariable(rType)
+                    .returns(rType)
+                    .addParameter(model.nested("LeafVisitor", rType), "visitor")
+                    .addStatement("return target().acceptLeaf(visitor)")
+                    .build());
+        }
+
+        for (ExecutableElement method : model.blueprintMethods) {
+            MethodSpec.Builder override = MethodSpec.overriding(method);
+            StringBuilder args = new StringBuilder();
+            for (VariableElement param : method.getParameters()) {
+                if (args.length() > 0) args.append(", ");
+                args.append(param.getSimpleName());
+            }
+
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                override.addStatement("target().$L($L)", method.getSimpleName(), args.toString());
+            } else {
+                override.addStatement("return target().$L($L)", method.getSimpleName(), args.toString());
+            }
+            lazyBuilder.addMethod(override.build());
+        }
+
+        // Equality is the materialized wrapper's, which unwraps a Lazy argument in turn
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("equals")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(boolean.class)
+                .addParameter(Object.class, "o")
+                .addStatement("return this == o || target().equals(o)")
+                .build());
+
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("hashCode")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(int.class)
+                .addStatement("return target().hashCode()")
+                .build());
+
+        lazyBuilder.addMethod(MethodSpec.methodBuilder("toString")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(String.class)
+                .addStatement("$T result = target", rootType)
+                .addStatement("return result != null ? result.toString() : \"Lazy(\" + kind + \")\"")
+                .build());
+
+        return lazyBuilder.build();
+    }
+
+    private void generateWrapAnyMethods(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        TypeName rootType = model.rootType();
+
+        MethodSpec.Builder wrapAny = MethodSpec.methodBuilder("wrapAny")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .returns(rootType)
+                .addParameter(Object.class, "value")
+                .addStatement("if (value == null) throw new NullPointerException(\"Source cannot be null\")")
+                .addStatement("if (value instanceof $T) return ($T) value", model.rootClassName, rootType);
+        // Exact class checks for the profile-hot leaves skip the ClassValue lookup
+        for (Leaf leaf : model.hotLeaves()) {
+            if (leaf.nested == null) {
+                wrapAny.addStatement("if (value.getClass() == $T.class) return $L",
+                        leaf.rawType(), newWrapper(model, leaf, CodeBlock.of("($T) value", leaf.type)));
+            }
+        }
+        wrapAny.addStatement("$T kind = Kind.of(value.getClass())", model.rootClassName.nestedClass("Kind"))
+                .beginControlFlow("if (kind == null)")
+                .addStatement("throw new $T(\"Not a permitted class of $L: \" + value.getClass().getName())",
+                        IllegalArgumentException.class, model.rootClassName.simpleName())
+                .endControlFlow()
+                .beginControlFlow("switch (kind)");
+        if (model.isGeneric()) {
+            wrapAny.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+        }
+        for (Leaf leaf : model.dispatchOrder()) {
+            wrapAny.addCode("case $L:\n", leaf.constantName()).addCode("$>");
+            if (leaf.nested != null) {
+                wrapAny.addStatement("return $L", newWrapper(model, leaf,
+                        CodeBlock.of("value instanceof $T ? ($T) value : $T.wrapAny(value)", leaf.type, leaf.type, leaf.type)));
+            } else {
+                wrapAny.addStatement("return $L", newWrapper(model, leaf, CodeBlock.of("($T) value", leaf.type)));
+            }
+            wrapAny.addCode("$<");
+        }
+        wrapAny.addCode("default:\n$>")
+                .addStatement("throw new $T(kind)", AssertionError.class)
+                .addCode("$<")
+                .endControlFlow();
+        rootBuilder.addMethod(wrapAny.build());
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("tryWrap")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), rootType))
+                .addParameter(Object.class, "value")
+                .beginControlFlow("if (value == null || !(value instanceof $T || Kind.of(value.getClass()) != null))", model.rootClassName)
+                .addStatement("return $T.empty()", Optional.class)
+                .endControlFlow()
+                .addStatement("return $T.of($L(value))", Optional.class, model.isGeneric() ? model.rootClassName.simpleName() + ".<" + typeArgs(model) + ">wrapAny" : "wrapAny")
+                .build());
+    }
+
+    /**
+     * Bulk helpers keyed on {@code kind()}: a stable counting sort, a kind-first comparator and grouping into one array
+     * per kind. None of them unwraps or materializes a lazy value except the comparator, which has to compare leaves.
+     */
+    private void generateKindUtilities(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        TypeName rootType = model.rootType();
+        TypeName rootArray = ArrayTypeName.of(rootType);
+        int kinds = model.leaves.size();
+        AnnotationSpec unchecked = AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+
+        rootBuilder.addMethod(MethodSpec.methodBuilder("sortByKind")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .addParameter(rootArray, "values")
+                .addStatement("int[] offsets = new int[$L]", kinds + 1)
+                .addStatement("for ($T value : values) offsets[value.kind().ordinal() + 1]++", rootType)
+                .addStatement("for (int k = 1; k < offsets.length; k++) offsets[k] += offsets[k - 1]")
+                .addStatement("$T source = values.clone()", rootArray)
+                .addStatement("for ($T value : source) values[offsets[value.kind().ordinal()]++] = value", rootType)
+                .build());
+
+        MethodSpec.Builder groupByKind = MethodSpec.methodBuilder("groupByKind")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .returns(ArrayTypeName.of(rootArray))
+                .addParameter(rootArray, "values")
+                .addStatement("int[] counts = new int[$L]", kinds)
+                .addStatement("for ($T value : values) counts[value.kind().ordinal()]++", rootType);
+        if (model.isGeneric()) {
+            groupByKind.addAnnotation(unchecked)
+                    .addStatement("$T groups = ($T) new $T[$L][]", ArrayTypeName.of(rootArray), ArrayTypeName.of(rootArray), model.rootClassName, kinds)
+                    .addStatement("for (int k = 0; k < $L; k++) groups[k] = ($T) new $T[counts[k]]", kinds, rootArray, model.rootClassName);
+        } else {
+            groupByKind.addStatement("$T[][] groups = new $T[$L][]", rootType, rootType, kinds)
+                    .addStatement("for (int k = 0; k < $L; k++) groups[k] = new $T[counts[k]]", kinds, rootType);
+        }
+        rootBuilder.addMethod(groupByKind
+                .addStatement("$T.fill(counts, 0)", Arrays.class)
+                .beginControlFlow("for ($T value : values)", rootType)
+                .addStatement("int k = value.kind().ordinal()")
+                .addStatement("groups[k][counts[k]++] = value")
+                .endControlFlow()
+                .addStatement("return groups")
+                .build());
+
+        if (kinds > MAX_COMPARATOR_LEAVES) {
+            note(model.blueprint, String.format("Comparator skipped for '%s': %d permitted classes exceed %d.",
+                    model.rootClassName.simpleName(), kinds, MAX_COMPARATOR_LEAVES));
+            reporting.skipped("comparator", kinds + " permitted classes exceed " + MAX_COMPARATOR_LEAVES);
+            return;
+        }
+        reporting.generated("comparator");
+        MethodSpec.Builder comparator = MethodSpec.methodBuilder("comparator")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .returns(ParameterizedTypeName.get(ClassName.get(Comparator.class), rootType));
+        StringBuilder byKind = new StringBuilder();
+        for (Leaf leaf : model.leaves) {
+            comparator.addParameter(ParameterizedTypeName.get(ClassName.get(Comparator.class), WildcardTypeName.supertypeOf(leaf.type)),
+                    leaf.parameterName() + "Order");
+            if (byKind.length() > 0) byKind.append(", ");
+            byKind.append(leaf.parameterName()).append("Order");
+        }
+        rootBuilder.addMethod(comparator
+                .addStatement("$T[] byKind = {$L}", ParameterizedTypeName.get(ClassName.get(Comparator.class), WildcardTypeName.subtypeOf(Object.class)), byKind)
+                .beginControlFlow("return (a, b) ->")
+                .addStatement("int ka = a.kind().ordinal()")
+                .addStatement("int kb = b.kind().ordinal()")
+                .addStatement("if (ka != kb || byKind[ka] == null) return $T.compare(ka, kb)", Integer.class)
+                .addStatement("@SuppressWarnings(\"unchecked\") $T leaves = ($T) byKind[ka]",
+                        ParameterizedTypeName.get(Comparator.class, Object.class), ParameterizedTypeName.get(Comparator.class, Object.class))
+                .addStatement("return leaves.compare(Wrapper.unwrap(a), Wrapper.unwrap(b))")
+                .addCode("$<};\n")
+                .build());
+    }
+
+    private static String typeArgs(HierarchyModel model) {
+        return model.typeVariables.stream().map(tv -> tv.name).collect(Collectors.joining(", "));
+    }
+
+    private MethodSpec generateLazyMethod(HierarchyModel model, Leaf leaf) {
+        TypeName supplierType = ParameterizedTypeName.get(ClassName.get(Supplier.class), WildcardTypeName.subtypeOf(leaf.type));
+        String lazyInstance = model.isGeneric() ? "new Lazy<>" : "new Lazy";
+
+        return MethodSpec.methodBuilder("lazy" + leaf.name)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .returns(model.rootType())
+                .addParameter(supplierType, "supplier")
+                .addStatement("if (supplier == null) throw new NullPointerException(\"Supplier cannot be null\")")
+                .addStatement("return $L(Kind.$L, () -> $L)", lazyInstance, leaf.constantName(),
+                        newWrapper(model, leaf, CodeBlock.of("supplier.get()")))
+                .build();
+    }
+
+    private TypeSpec generateAbstractWrapper(HierarchyModel model) {
+        List<TypeVariableName> rootTypeVars = model.typeVariables;
         TypeVariableName vType = TypeVariableName.get("V");
         // Avoid collision with root type vars
         while (rootTypeVars.contains(vType)) {
@@ -521,12 +1830,7 @@ public class SealedProcessor extends AbstractProcessor {
 
         wrapperBuilder.addTypeVariables(rootTypeVars);
         wrapperBuilder.addTypeVariable(vType);
-
-        if (rootTypeVars.isEmpty()) {
-            wrapperBuilder.addSuperinterface(rootClassName);
-        } else {
-            wrapperBuilder.addSuperinterface(ParameterizedTypeName.get(rootClassName, rootTypeVars.toArray(new TypeName[0])));
-        }
+        wrapperBuilder.addSuperinterface(model.rootType());
 
         wrapperBuilder.addField(vType, "value", Modifier.PROTECTED, Modifier.FINAL);
 
@@ -537,7 +1841,7 @@ public class SealedProcessor extends AbstractProcessor {
                 .build());
 
         // Construct wildcard type for equals cast: Wrapper<?, ?, ...>
-        ClassName wrapperName = rootClassName.nestedClass("Wrapper");
+        ClassName wrapperName = model.rootClassName.nestedClass("Wrapper");
         TypeName[] wildcards = new TypeName[rootTypeVars.size() + 1];
         Arrays.fill(wildcards, WildcardTypeName.subtypeOf(Object.class));
         ParameterizedTypeName wildcardWrapper = ParameterizedTypeName.get(wrapperName, wildcards);
@@ -548,16 +1852,39 @@ public class SealedProcessor extends AbstractProcessor {
                 .returns(boolean.class)
                 .addParameter(Object.class, "o")
                 .addStatement("if (this == o) return true")
+                .addStatement("if (o instanceof Lazy) o = (($T) o).target()", lazyWildcard(model))
                 .addStatement("if (o == null || getClass() != o.getClass()) return false")
                 .addStatement("$T that = ($T) o", wildcardWrapper, wildcardWrapper)
                 .addStatement("return $T.equals(value, that.value)", Objects.class)
                 .build());
 
+        TypeName[] rootWildcards = new TypeName[rootTypeVars.size()];
+        Arrays.fill(rootWildcards, WildcardTypeName.subtypeOf(Object.class));
+        TypeName anyRoot = model.isGeneric() ? ParameterizedTypeName.get(model.rootClassName, rootWildcards) : model.rootClassName;
+        addValueMembers(wrapperBuilder, model, anyRoot, wildcardWrapper);
+
+        return wrapperBuilder.build();
+    }
+
+    /**
+     * The members both wrapper representations derive from {@code value} alone: the static {@code unwrap} and the
+     * {@code hashCode} and {@code toString} of the wrapped value, which is never null.
+     */
+    private void addValueMembers(TypeSpec.Builder wrapperBuilder, HierarchyModel model, TypeName anyRoot, TypeName wildcardWrapper) {
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("unwrap")
+                .addJavadoc("The wrapped value of a root created by {@code wrap}, {@code wrapAny} or {@code lazyX}.\n")
+                .addModifiers(Modifier.STATIC)
+                .returns(Object.class)
+                .addParameter(anyRoot, "root")
+                .addStatement("if (root instanceof Lazy) root = (($T) root).target()", lazyWildcard(model))
+                .addStatement("return (($T) root).value", wildcardWrapper)
+                .build());
+
         wrapperBuilder.addMethod(MethodSpec.methodBuilder("hashCode")
                 .addModifiers(Modifier.PUBLIC)
                 .addAnnotation(Override.class)
                 .returns(int.class)
-                .addStatement("return $T.hash(value)", Objects.class)
+                .addStatement("return value.hashCode()")
                 .build());
 
         wrapperBuilder.addMethod(MethodSpec.methodBuilder("toString")
@@ -566,68 +1893,86 @@ public class SealedProcessor extends AbstractProcessor {
                 .returns(String.class)
                 .addStatement("return value.toString()")
                 .build());
-
-        return wrapperBuilder.build();
     }
 
-    private TypeSpec generateWrapperClass(TypeElement permitted, ClassName rootClassName, ClassName visitorClassName, TypeElement blueprint, List<TypeVariableName> rootTypeVars) {
-        String wrapperName = permitted.getSimpleName() + "Wrapper";
-        
-        TypeName permittedType;
-        if (!permitted.getTypeParameters().isEmpty()) {
-             permittedType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
-        } else {
-             permittedType = TypeName.get(permitted.asType());
-        }
-
-        TypeSpec.Builder wrapperBuilder = TypeSpec.classBuilder(wrapperName)
+    private TypeSpec generateWrapperClass(HierarchyModel model, Leaf leaf) {
+        TypeSpec.Builder wrapperBuilder = TypeSpec.classBuilder(leaf.name + "Wrapper")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
 
         // Add Root Type Vars to Wrapper
-        wrapperBuilder.addTypeVariables(rootTypeVars);
+        wrapperBuilder.addTypeVariables(model.typeVariables);
 
         // Extend Wrapper abstract class
-        ClassName wrapperBase = rootClassName.nestedClass("Wrapper");
-        
-        List<TypeName> wrapperArgs = new ArrayList<>(rootTypeVars);
-        wrapperArgs.add(permittedType);
-        
-        wrapperBuilder.superclass(ParameterizedTypeName.get(wrapperBase, wrapperArgs.toArray(new TypeName[0])));
+        wrapperBuilder.superclass(model.nested("Wrapper", leaf.type));
 
         // Constructor
         wrapperBuilder.addMethod(MethodSpec.constructorBuilder()
                 .addModifiers(Modifier.PRIVATE)
-                .addParameter(permittedType, "value")
+                .addParameter(leaf.type, "value")
                 .addStatement("super(value)")
                 .build());
 
         // accept implementation
         TypeVariableName rType = TypeVariableName.get("R");
-        
-        TypeName visitorType;
-        if (rootTypeVars.isEmpty()) {
-             visitorType = ParameterizedTypeName.get(visitorClassName, rType);
-        } else {
-             List<TypeName> visitorTypeArgs = new ArrayList<>(rootTypeVars);
-             visitorTypeArgs.add(rType);
-             visitorType = ParameterizedTypeName.get(visitorClassName, visitorTypeArgs.toArray(new TypeName[0]));
-        }
 
         wrapperBuilder.addMethod(MethodSpec.methodBuilder("accept")
                 .addModifiers(Modifier.PUBLIC)
                 .addAnnotation(Override.class)
                 .addTypeVariable(rType)
                 .returns(rType)
-                .addParameter(visitorType, "visitor")
-                .addStatement("return visitor.on$L(value)", permitted.getSimpleName())
+                .addParameter(model.nested("Visitor", rType), "visitor")
+                .addCode(recordDispatch(leaf))
+                .addStatement("return visitor.on$L(value)", leaf.name)
+                .build());
+
+        TypeVariableName cType = TypeVariableName.get("C");
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("accept")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addTypeVariable(cType)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("Visitor2", cType, rType), "visitor")
+                .addParameter(cType, "context")
+                .addCode(recordDispatch(leaf))
+                .addStatement("return visitor.on$L(value, context)", leaf.name)
+                .build());
+
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("kind")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(model.rootClassName.nestedClass("Kind"))
+                .addStatement("return Kind.$L", leaf.constantName())
                 .build());
 
+        if (model.hasNestedLeaves()) {
+            MethodSpec.Builder leafKind = MethodSpec.methodBuilder("leafKind")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .returns(model.rootClassName.nestedClass("LeafKind"));
+            MethodSpec.Builder acceptLeaf = MethodSpec.methodBuilder("acceptLeaf")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .addTypeVariable(rType)
+                    .returns(rType)
+                    .addParameter(model.nested("LeafVisitor", rType), "visitor")
+                    .addCode(recordDispatch(leaf));
+            if (leaf.nested == null) {
+                leafKind.addStatement("return LeafKind.$L", leaf.constantName());
+                acceptLeaf.addStatement("return visitor.on$L(value)", leaf.name);
+            } else if (leaf.nested.hasNestedLeaves()) {
+                leafKind.addStatement("return LeafKind.of(value.leafKind())");
+                acceptLeaf.addStatement("return value.acceptLeaf(visitor)");
+            } else {
+                leafKind.addStatement("return LeafKind.of(value.kind())");
+                acceptLeaf.addStatement("return value.accept(visitor)");
+            }
+            wrapperBuilder.addMethod(leafKind.build());
+            wrapperBuilder.addMethod(acceptLeaf.build());
+        }
+
         // Delegate methods
-        List<ExecutableElement> blueprintMethods = ElementFilter.methodsIn(elementUtils.getAllMembers(blueprint));
-        for (ExecutableElement method : blueprintMethods) {
-            if (method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.DEFAULT)) continue;
-             if (method.getEnclosingElement().equals(elementUtils.getTypeElement("java.lang.Object"))) continue;
-            
+        for (ExecutableElement method : model.blueprintMethods) {
             // Generate delegation
             MethodSpec.Builder override = MethodSpec.overriding(method);
             StringBuilder args = new StringBuilder();
@@ -635,207 +1980,735 @@ public class SealedProcessor extends AbstractProcessor {
                 if (args.length() > 0) args.append(", ");
                 args.append(param.getSimpleName());
             }
-            
+
             if (method.getReturnType().getKind() == javax.lang.model.type.TypeKind.VOID) {
                 override.addStatement("value.$L($L)", method.getSimpleName(), args.toString());
+            } else if (method.getAnnotation(Memoize.class) != null) {
+                override.addCode(memoized(wrapperBuilder, method, CodeBlock.builder()
+                        .addStatement("result = value.$L()", method.getSimpleName()).build()));
             } else {
                 override.addStatement("return value.$L($L)", method.getSimpleName(), args.toString());
             }
-            wrapperBuilder.addMethod(override.build());
+            wrapperBuilder.addMethod(override.build());
+        }
+
+        return wrapperBuilder.build();
+    }
+
+    /**
+     * The single wrapper of the tagged representation: the kind ordinal in a {@code byte} and the value as an
+     * {@code Object}. Every call site sees one receiver class, and each method switches on the tag instead of relying
+     * on a virtual call.
+     */
+    private TypeSpec generateTaggedWrapper(HierarchyModel model) {
+        ClassName wrapperName = model.rootClassName.nestedClass("Wrapper");
+        TypeName[] wildcards = new TypeName[model.typeVariables.size()];
+        Arrays.fill(wildcards, WildcardTypeName.subtypeOf(Object.class));
+        TypeName wildcardWrapper = model.isGeneric() ? ParameterizedTypeName.get(wrapperName, wildcards) : wrapperName;
+        TypeName anyRoot = model.isGeneric() ? ParameterizedTypeName.get(model.rootClassName, wildcards) : model.rootClassName;
+        ClassName kindName = model.rootClassName.nestedClass("Kind");
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeVariableName cType = TypeVariableName.get("C");
+
+        TypeSpec.Builder wrapperBuilder = TypeSpec.classBuilder("Wrapper")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariables(model.typeVariables)
+                .addSuperinterface(model.rootType())
+                .addField(FieldSpec.builder(ArrayTypeName.of(kindName), "KINDS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.values()", kindName).build())
+                .addField(byte.class, "tag", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(Object.class, "value", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(byte.class, "tag")
+                        .addParameter(Object.class, "value")
+                        .addStatement("this.tag = tag")
+                        .addStatement("this.value = $T.requireNonNull(value)", Objects.class)
+                        .build());
+        if (model.isGeneric()) {
+            // The generic leaf is read back from Object
+            wrapperBuilder.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+        }
+
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("accept")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("Visitor", rType), "visitor")
+                .addCode(tagSwitch(model, leaf -> CodeBlock.builder()
+                        .add(recordDispatch(leaf))
+                        .addStatement("return visitor.on$L(($T) value)", leaf.name, leaf.type)
+                        .build()))
+                .build());
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("accept")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .addTypeVariable(cType)
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(model.nested("Visitor2", cType, rType), "visitor")
+                .addParameter(cType, "context")
+                .addCode(tagSwitch(model, leaf -> CodeBlock.builder()
+                        .add(recordDispatch(leaf))
+                        .addStatement("return visitor.on$L(($T) value, context)", leaf.name, leaf.type)
+                        .build()))
+                .build());
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("kind")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(kindName)
+                .addStatement("return KINDS[tag & 0xFF]")
+                .build());
+
+        if (model.hasNestedLeaves()) {
+            wrapperBuilder.addMethod(MethodSpec.methodBuilder("leafKind")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .returns(model.rootClassName.nestedClass("LeafKind"))
+                    .addCode(tagSwitch(model, leaf -> {
+                        if (leaf.nested == null) {
+                            return CodeBlock.builder().addStatement("return LeafKind.$L", leaf.constantName()).build();
+                        }
+                        String nestedKind = leaf.nested.hasNestedLeaves() ? "leafKind" : "kind";
+                        return CodeBlock.builder().addStatement("return LeafKind.of((($T) value).$L())", leaf.type, nestedKind).build();
+                    }))
+                    .build());
+            wrapperBuilder.addMethod(MethodSpec.methodBuilder("acceptLeaf")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .addTypeVariable(rType)
+                    .returns(rType)
+                    .addParameter(model.nested("LeafVisitor", rType), "visitor")
+                    .addCode(tagSwitch(model, leaf -> {
+                        CodeBlock.Builder code = CodeBlock.builder().add(recordDispatch(leaf));
+                        if (leaf.nested == null) {
+                            return code.addStatement("return visitor.on$L(($T) value)", leaf.name, leaf.type).build();
+                        }
+                        String nestedAccept = leaf.nested.hasNestedLeaves() ? "acceptLeaf" : "accept";
+                        return code.addStatement("return (($T) value).$L(visitor)", leaf.type, nestedAccept).build();
+                    }))
+                    .build());
+        }
+
+        for (ExecutableElement method : model.blueprintMethods) {
+            String args = method.getParameters().stream()
+                    .map(param -> param.getSimpleName().toString())
+                    .collect(Collectors.joining(", "));
+            boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+            if (!isVoid && method.getAnnotation(Memoize.class) != null) {
+                wrapperBuilder.addMethod(MethodSpec.overriding(method)
+                        .addCode(memoized(wrapperBuilder, method, tagSwitch(model, leaf -> CodeBlock.builder()
+                                .addStatement("result = (($T) value).$L()", leaf.type, method.getSimpleName())
+                                .addStatement("break").build())))
+                        .build());
+                continue;
+            }
+            wrapperBuilder.addMethod(MethodSpec.overriding(method)
+                    .addCode(tagSwitch(model, leaf -> isVoid
+                            ? CodeBlock.builder().addStatement("(($T) value).$L($L)", leaf.type, method.getSimpleName(), args)
+                                    .addStatement("return").build()
+                            : CodeBlock.builder().addStatement("return (($T) value).$L($L)", leaf.type, method.getSimpleName(), args)
+                                    .build()))
+                    .build());
+        }
+
+        wrapperBuilder.addMethod(MethodSpec.methodBuilder("equals")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(boolean.class)
+                .addParameter(Object.class, "o")
+                .addStatement("if (this == o) return true")
+                .addStatement("if (o instanceof Lazy) o = (($T) o).target()", lazyWildcard(model))
+                .addStatement("if (!(o instanceof Wrapper)) return false")
+                .addStatement("$T that = ($T) o", wildcardWrapper, wildcardWrapper)
+                .addStatement("return tag == that.tag && value.equals(that.value)")
+                .build());
+        addValueMembers(wrapperBuilder, model, anyRoot, wildcardWrapper);
+
+        return wrapperBuilder.build();
+    }
+
+    /**
+     * {@code switch (tag & 0xFF)} with one case per leaf, in {@code Kind} order. Each case must return, throw or {@code break}.
+     */
+    private CodeBlock tagSwitch(HierarchyModel model, java.util.function.Function<Leaf, CodeBlock> body) {
+        CodeBlock.Builder code = CodeBlock.builder().beginControlFlow("switch (tag & 0xFF)");
+        for (int i = 0; i < model.leaves.size(); i++) {
+            code.add("case $L:\n$>", i).add(body.apply(model.leaves.get(i))).add("$<");
+        }
+        return code.add("default:\n$>")
+                .addStatement("throw new $T(tag)", AssertionError.class)
+                .add("$<")
+                .endControlFlow()
+                .build();
+    }
+
+    /**
+     * The body of a {@code @Memoize} method, which caches the result of {@code compute}, a block assigning
+     * {@code result}, in a field of {@code wrapper}. Primitives use the racy single-check idiom: the field holds the
+     * result or zero, with a second flag for a result that is zero itself. {@code long} and {@code double} fields are
+     * volatile so they cannot be read torn. References use a volatile field and recompute {@code null} results. A
+     * race can compute a result more than once, which is harmless for the pure methods this is meant for.
+     */
+    private CodeBlock memoized(TypeSpec.Builder wrapper, ExecutableElement method, CodeBlock compute) {
+        TypeName type = TypeName.get(method.getReturnType());
+        String field = method.getSimpleName() + "Memo";
+        CodeBlock.Builder code = CodeBlock.builder().addStatement("$T result = $L", type, field);
+        if (!type.isPrimitive()) {
+            wrapper.addField(type, field, Modifier.PRIVATE, Modifier.VOLATILE);
+            return code.beginControlFlow("if (result == null)")
+                    .add(compute)
+                    .addStatement("$L = result", field)
+                    .endControlFlow()
+                    .addStatement("return result")
+                    .build();
+        }
+
+        FieldSpec.Builder memo = FieldSpec.builder(type, field, Modifier.PRIVATE);
+        if (type.equals(TypeName.LONG) || type.equals(TypeName.DOUBLE)) {
+            memo.addModifiers(Modifier.VOLATILE);
+        }
+        wrapper.addField(memo.build());
+        wrapper.addField(boolean.class, field + "IsDefault", Modifier.PRIVATE);
+        // Raw bits keep -0.0 apart from the default +0.0
+        CodeBlock isDefault;
+        if (type.equals(TypeName.BOOLEAN)) {
+            isDefault = CodeBlock.of("!result");
+        } else if (type.equals(TypeName.FLOAT)) {
+            isDefault = CodeBlock.of("$T.floatToRawIntBits(result) == 0", Float.class);
+        } else if (type.equals(TypeName.DOUBLE)) {
+            isDefault = CodeBlock.of("$T.doubleToRawLongBits(result) == 0", Double.class);
+        } else {
+            isDefault = CodeBlock.of("result == 0");
+        }
+        return code.beginControlFlow("if ($L && !$LIsDefault)", isDefault, field)
+                .add(compute)
+                .beginControlFlow("if ($L)", isDefault)
+                .addStatement("$LIsDefault = true", field)
+                .nextControlFlow("else")
+                .addStatement("$L = result", field)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return result")
+                .build();
+    }
+
+    /**
+     * A new wrapper around {@code value}: the leaf's own wrapper class, or the tagged wrapper with the leaf's ordinal.
+     */
+    private CodeBlock newWrapper(HierarchyModel model, Leaf leaf, CodeBlock value) {
+        String diamond = model.isGeneric() ? "<>" : "";
+        if (model.tagged) {
+            return CodeBlock.of("new Wrapper$L((byte) $L, $L)", diamond, model.leaves.indexOf(leaf), value);
+        }
+        return CodeBlock.of("new $LWrapper$L($L)", leaf.name, diamond, value);
+    }
+
+    private MethodSpec generateWrapMethod(HierarchyModel model, Leaf leaf) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder("wrap")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .returns(model.rootType());
+
+        builder.addParameter(leaf.type, "s");
+
+        builder.addStatement("if (s == null) throw new $T(\"Source cannot be null\")", NullPointerException.class);
+
+        builder.addStatement("return $L", newWrapper(model, leaf, CodeBlock.of("s")));
+
+        return builder.build();
+    }
+
+    // --- Profile-Guided Dispatch ---
+
+    /**
+     * One exact wrapper type check per profile-hot leaf, tested before the virtual {@code accept} so the common leaves
+     * skip the megamorphic call. {@code handle} renders the call for a leaf from its name and value expression.
+     */
+    private CodeBlock hotLeafChecks(HierarchyModel model, String handle, boolean returnsValue) {
+        CodeBlock.Builder code = CodeBlock.builder();
+        if (model.tagged) {
+            // A single wrapper class keeps accept monomorphic already
+            return code.build();
+        }
+        for (Leaf leaf : model.hotLeaves()) {
+            ClassName wrapper = model.rootClassName.nestedClass(leaf.name + "Wrapper");
+            CodeBlock call = CodeBlock.of(handle, leaf.name, CodeBlock.of("(($T) root).value", model.parameterized(wrapper)));
+            if (returnsValue) {
+                code.add("if (root instanceof $T) return $L;\n", wrapper, call);
+            } else {
+                code.add("if (root instanceof $T) { $L; return; }\n", wrapper, call);
+            }
+        }
+        return code.build();
+    }
+
+    /**
+     * Whether the matcher terminals switch over the root with type patterns instead of calling {@code accept}: the
+     * root is natively sealed on source version 21 or later. The single tagged wrapper has nothing to switch on, and
+     * instrumented builds keep {@code accept} so that every dispatch is counted.
+     */
+    private boolean usesPatternSwitch(HierarchyModel model) {
+        return patternSwitch && !model.tagged && !instrument;
+    }
+
+    /**
+     * The cases of a pattern {@code switch} over the sealed root, one per leaf wrapper calling {@code handle}, plus
+     * {@code Lazy}, which calls {@code self} again with its target. Exhaustive without a default.
+     */
+    private CodeBlock patternSwitchCases(HierarchyModel model, String handle, String self) {
+        CodeBlock.Builder cases = CodeBlock.builder();
+        for (Leaf leaf : model.leaves) {
+            TypeName wrapper = model.parameterized(model.rootClassName.nestedClass(leaf.name + "Wrapper"));
+            cases.add("case $T w -> $L;\n", wrapper, CodeBlock.of(handle, leaf.name, "w.value"));
+        }
+        cases.add("case $T l -> $L(l.target());\n", model.parameterized(model.rootClassName.nestedClass("Lazy")), self);
+        return cases.build();
+    }
+
+    /**
+     * {@code return <params> -> <dispatch>;}, with the hot leaf checks in front of the dispatch when there is a profile.
+     */
+    private CodeBlock dispatchLambda(HierarchyModel model, String params, String handle, String dispatch, boolean returnsValue) {
+        CodeBlock checks = hotLeafChecks(model, handle, returnsValue);
+        if (checks.isEmpty()) {
+            return CodeBlock.builder().addStatement("return $L -> $L", params, dispatch).build();
+        }
+        return CodeBlock.builder()
+                .add("return $L -> {\n$>", params)
+                .add(checks)
+                .addStatement(returnsValue ? "return $L" : "$L", dispatch)
+                .add("$<};\n")
+                .build();
+    }
+
+    private CodeBlock recordDispatch(Leaf leaf) {
+        return instrument ? CodeBlock.builder().addStatement("Profile.record(Kind.$L)", leaf.constantName()).build() : CodeBlock.of("");
+    }
+
+    /**
+     * Per-kind dispatch counters behind {@code -Aj8a.sealed.instrument=true}. {@code writeTo} emits the format read
+     * back by {@code -Aj8a.sealed.profile}.
+     */
+    private TypeSpec generateProfileClass(HierarchyModel model) {
+        ClassName kindName = model.rootClassName.nestedClass("Kind");
+        return TypeSpec.classBuilder("Profile")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addJavadoc("Dispatch counts per kind, recorded by every {@code accept}. Generated because the build ran with\n"
+                        + "{@code -A$L=true}.\n", INSTRUMENT_OPTION)
+                .addField(FieldSpec.builder(ArrayTypeName.of(LongAdder.class), "COUNTS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T[$L]", LongAdder.class, model.leaves.size())
+                        .build())
+                .addStaticBlock(CodeBlock.builder()
+                        .beginControlFlow("for (int i = 0; i < COUNTS.length; i++)")
+                        .addStatement("COUNTS[i] = new $T()", LongAdder.class)
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(MethodSpec.methodBuilder("record")
+                        .addModifiers(Modifier.STATIC)
+                        .addParameter(kindName, "kind")
+                        .addStatement("COUNTS[kind.ordinal()].increment()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("count")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(long.class)
+                        .addParameter(kindName, "kind")
+                        .addStatement("return COUNTS[kind.ordinal()].sum()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("reset")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addStatement("for ($T counter : COUNTS) counter.reset()", LongAdder.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("writeTo")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addException(IOException.class)
+                        .addParameter(Appendable.class, "out")
+                        .beginControlFlow("for ($T kind : $T.values())", kindName, kindName)
+                        .addStatement("out.append($S).append(kind.name()).append('=').append(String.valueOf(count(kind))).append('\\n')",
+                                model.rootClassName.canonicalName() + ".")
+                        .endControlFlow()
+                        .build())
+                .build();
+    }
+
+    private void reportProfile(HierarchyModel model) {
+        Set<String> constants = new HashSet<>();
+        for (Leaf leaf : model.leaves) {
+            constants.add(leaf.constantName());
+        }
+        for (String kind : new TreeSet<>(model.frequencies.keySet())) {
+            if (!constants.contains(kind)) {
+                warning(model.blueprint, "Leaf profile entry '" + model.rootClassName.canonicalName() + "." + kind
+                        + "' does not match a kind of " + model.rootClassName.simpleName() + ".");
+            }
         }
 
-        return wrapperBuilder.build();
+        List<Leaf> hot = model.hotLeaves();
+        if (model.tagged) {
+            reporting.skipped("profile fast paths", "tagged representation dispatches on one wrapper class");
+            return;
+        }
+        if (hot.isEmpty()) {
+            reporting.skipped("profile fast paths", model.frequencies.isEmpty() ? "no profile entries" : "no leaf reaches "
+                    + Math.round(HierarchyModel.HOT_LEAF_SHARE * 100) + "% of recorded dispatches");
+            return;
+        }
+        reporting.generated("profile fast paths");
+        long total = 0;
+        for (Leaf leaf : model.leaves) {
+            total += model.frequency(leaf);
+        }
+        StringBuilder summary = new StringBuilder();
+        for (Leaf leaf : hot) {
+            if (summary.length() > 0) summary.append(", ");
+            summary.append(String.format(Locale.ROOT, "%s (%.1f%%)", leaf.name, 100.0 * model.frequency(leaf) / total));
+        }
+        note(model.blueprint, "Profile: '" + model.rootClassName.simpleName() + "' dispatches " + summary + " on a fast path.");
     }
 
-    private MethodSpec generateWrapMethod(TypeElement permitted, ClassName rootClassName, List<TypeVariableName> rootTypeVars) {
-        TypeName returnType;
-        if (rootTypeVars.isEmpty()) {
-            returnType = rootClassName;
-        } else {
-            returnType = ParameterizedTypeName.get(rootClassName, rootTypeVars.toArray(new TypeName[0]));
+    // --- Compact DSL Generation ---
+
+    /**
+     * Compact mode drops the staged matcher interfaces and builders. The {@code Visitor} interface already forces every
+     * permitted class to be handled, so the entry points simply adapt a visitor to {@code Function}/{@code Consumer}.
+     */
+    private void generateCompactDSL(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        TypeName rootType = model.rootType();
+
+        if (model.generatesFunctions()) {
+            TypeVariableName rType = TypeVariableName.get("R");
+            rootBuilder.addMethod(MethodSpec.methodBuilder("asFunction")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables)
+                    .addTypeVariable(rType)
+                    .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), rootType, rType))
+                    .addParameter(model.nested("Visitor", rType), "visitor")
+                    .addStatement("$T.requireNonNull(visitor)", Objects.class)
+                    .addCode(dispatchLambda(model, "root", "visitor.on$L($L)", "root.accept(visitor)", true))
+                    .build());
         }
 
-        MethodSpec.Builder builder = MethodSpec.methodBuilder("wrap")
-                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                .addTypeVariables(rootTypeVars)
-                .returns(returnType);
+        if (model.generatesConsumers()) {
+            rootBuilder.addMethod(MethodSpec.methodBuilder("asConsumer")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables)
+                    .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class), rootType))
+                    .addParameter(model.nested("Visitor", ClassName.get(Void.class)), "visitor")
+                    .addStatement("$T.requireNonNull(visitor)", Objects.class)
+                    .addCode(dispatchLambda(model, "root", "visitor.on$L($L)", "root.accept(visitor)", false))
+                    .build());
+        }
 
-        TypeName paramType;
-        if (!permitted.getTypeParameters().isEmpty()) {
-            paramType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
-        } else {
-            paramType = TypeName.get(permitted.asType());
+        TypeVariableName cType = TypeVariableName.get("C");
+        if (model.generatesFunctions()) {
+            TypeVariableName rType = TypeVariableName.get("R");
+            rootBuilder.addMethod(MethodSpec.methodBuilder("asBiFunction")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables)
+                    .addTypeVariable(cType)
+                    .addTypeVariable(rType)
+                    .returns(ParameterizedTypeName.get(ClassName.get(BiFunction.class), rootType, cType, rType))
+                    .addParameter(model.nested("Visitor2", cType, rType), "visitor")
+                    .addStatement("$T.requireNonNull(visitor)", Objects.class)
+                    .addCode(dispatchLambda(model, "(root, context)", "visitor.on$L($L, context)", "root.accept(visitor, context)", true))
+                    .build());
         }
 
-        builder.addParameter(paramType, "s");
+        if (model.generatesConsumers()) {
+            rootBuilder.addMethod(MethodSpec.methodBuilder("asBiConsumer")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables)
+                    .addTypeVariable(cType)
+                    .returns(ParameterizedTypeName.get(ClassName.get(BiConsumer.class), rootType, cType))
+                    .addParameter(model.nested("Visitor2", cType, ClassName.get(Void.class)), "visitor")
+                    .addStatement("$T.requireNonNull(visitor)", Objects.class)
+                    .addCode(dispatchLambda(model, "(root, context)", "visitor.on$L($L, context)", "root.accept(visitor, context)", false))
+                    .build());
+        }
+    }
 
-        builder.addStatement("if (s == null) throw new $T(\"Source cannot be null\")", NullPointerException.class);
-        
-        if (rootTypeVars.isEmpty()) {
-             builder.addStatement("return new $LWrapper(s)", permitted.getSimpleName());
-        } else {
-             // For generic wrapper, we infer the diamonds
-             builder.addStatement("return new $LWrapper<>(s)", permitted.getSimpleName());
+    /**
+     * The nested types compact mode leaves out: patterns, router and lanes, the staged, context and pair matchers, and
+     * {@code ClassOfValue}. Compact mode builds them into a scratch root only to count them.
+     */
+    private void generateFullModeTypes(TypeSpec.Builder rootBuilder, HierarchyModel model,
+                                       Map<Leaf, List<PatternGenerator.Sub>> subs) {
+        if (subs != null) {
+            new PatternGenerator(model, subs).generate(rootBuilder);
         }
-        
-        return builder.build();
+        if (!model.isGeneric()) {
+            new RouterGenerator(model).generate(rootBuilder);
+            new LanesGenerator(model).generate(rootBuilder);
+        }
+        if (model.generatesFunctions()) {
+            generateFunctionDSL(rootBuilder, model);
+            generateContextDSL(rootBuilder, model, true);
+            if (hasPairDSL(model)) generatePairDSL(rootBuilder, model, true);
+        }
+        if (model.generatesConsumers()) {
+            generateConsumerDSL(rootBuilder, model);
+            generateContextDSL(rootBuilder, model, false);
+            if (hasPairDSL(model)) generatePairDSL(rootBuilder, model, false);
+        }
+        if (model.isGeneric()) {
+            generateClassOfValue(rootBuilder, model);
+        }
+    }
+
+    private void reportCompactSavings(HierarchyModel model, TypeSpec rootSpec) {
+        TypeSpec.Builder full = TypeSpec.interfaceBuilder(model.rootClassName.simpleName());
+        boolean patterns = PatternGenerator.skipReason(model.isGeneric(), false, leafNames(model)) == null;
+        generateFullModeTypes(full, model, patterns ? collectSubPatterns(model) : null);
+        int skipped = countNestedTypes(full.build());
+
+        int emitted = countNestedTypes(rootSpec);
+        note(model.blueprint, String.format("Compact mode: '%s' emits %d nested types instead of %d (%d fewer).",
+                model.rootClassName.simpleName(), emitted, emitted + skipped, skipped));
+    }
+
+    private static int countNestedTypes(TypeSpec type) {
+        int count = 0;
+        for (TypeSpec nested : type.typeSpecs) {
+            count += 1 + countNestedTypes(nested);
+        }
+        return count;
     }
 
     // --- Functional DSL Generation ---
 
-    private void generateFunctionDSL(TypeSpec.Builder rootBuilder, ClassName rootClassName, List<TypeElement> permittedClasses, List<TypeVariableName> rootTypeVars) {
+    private void generateFunctionDSL(TypeSpec.Builder rootBuilder, HierarchyModel model) {
         TypeVariableName rType = TypeVariableName.get("R");
-        ClassName firstStage = rootClassName.nestedClass("MatcherStage0");
-        
-        TypeName returnType;
-         if (rootTypeVars.isEmpty()) {
-             returnType = ParameterizedTypeName.get(firstStage, rType);
-        } else {
-             List<TypeName> args = new ArrayList<>(rootTypeVars);
-             args.add(rType);
-             returnType = ParameterizedTypeName.get(firstStage, args.toArray(new TypeName[0]));
-        }
+        List<Leaf> leaves = model.leaves;
 
         MethodSpec.Builder returningBuilder = MethodSpec.methodBuilder("returning")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                .addTypeVariables(rootTypeVars)
+                .addTypeVariables(model.typeVariables)
                 .addTypeVariable(rType)
-                .returns(returnType)
+                .returns(model.nested("MatcherStage0", rType))
                 .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), rType), "resultType");
 
         returningBuilder.addStatement("return new MatcherBuilder<>()");
 
-        if (rootTypeVars.isEmpty()) {
+        if (!model.isGeneric()) {
             rootBuilder.addMethod(returningBuilder.build());
         }
 
         // Generate Interfaces
-        for (int i = 0; i < permittedClasses.size(); i++) {
-            TypeElement currentClass = permittedClasses.get(i);
-            ClassName currentStage = rootClassName.nestedClass("MatcherStage" + i);
-            ClassName nextStage = (i == permittedClasses.size() - 1) 
-                    ? rootClassName.nestedClass("MatcherTerminal") 
-                    : rootClassName.nestedClass("MatcherStage" + (i + 1));
-            
-            TypeSpec.Builder stageBuilder = TypeSpec.interfaceBuilder(currentStage.simpleName())
+        for (int i = 0; i < leaves.size(); i++) {
+            Leaf current = leaves.get(i);
+            String nextStage = (i == leaves.size() - 1) ? "MatcherTerminal" : "MatcherStage" + (i + 1);
+
+            TypeSpec.Builder stageBuilder = TypeSpec.interfaceBuilder("MatcherStage" + i)
                     .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                    .addTypeVariables(rootTypeVars)
+                    .addTypeVariables(model.typeVariables)
                     .addTypeVariable(rType);
-            
-             TypeName nextStageType;
-             if (rootTypeVars.isEmpty()) {
-                 nextStageType = ParameterizedTypeName.get(nextStage, rType);
-             } else {
-                 List<TypeName> args = new ArrayList<>(rootTypeVars);
-                 args.add(rType);
-                 nextStageType = ParameterizedTypeName.get(nextStage, args.toArray(new TypeName[0]));
-             }
-
-            TypeName paramType;
-            if (!currentClass.getTypeParameters().isEmpty()) {
-                 paramType = ParameterizedTypeName.get(ClassName.get(currentClass), rootTypeVars.toArray(new TypeName[0]));
-            } else {
-                 paramType = TypeName.get(currentClass.asType());
-            }
 
             TypeName funcType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
-                    paramType,
+                    current.type,
                     WildcardTypeName.subtypeOf(rType));
 
-            stageBuilder.addMethod(MethodSpec.methodBuilder("on" + currentClass.getSimpleName())
+            stageBuilder.addMethod(MethodSpec.methodBuilder("on" + current.name)
                     .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                    .returns(nextStageType)
+                    .returns(model.nested(nextStage, rType))
                     .addParameter(funcType, "func")
                     .build());
-            
+
             rootBuilder.addType(stageBuilder.build());
         }
 
         // Terminal Interface
-        ClassName terminalStage = rootClassName.nestedClass("MatcherTerminal");
-        TypeSpec.Builder terminalBuilder = TypeSpec.interfaceBuilder(terminalStage.simpleName())
+        TypeSpec.Builder terminalBuilder = TypeSpec.interfaceBuilder("MatcherTerminal")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                .addTypeVariables(rootTypeVars)
+                .addTypeVariables(model.typeVariables)
                 .addTypeVariable(rType);
-                
-        TypeName rootType;
-        if (rootTypeVars.isEmpty()) {
-             rootType = rootClassName;
-        } else {
-             rootType = ParameterizedTypeName.get(rootClassName, rootTypeVars.toArray(new TypeName[0]));
-        }
 
         terminalBuilder.addMethod(MethodSpec.methodBuilder("asFunction")
                         .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                        .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), rootType, rType))
+                        .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), model.rootType(), rType))
                         .build());
-                        
+        terminalBuilder.addMethod(memoizedTerminal(model, rType)
+                        .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                        .build());
+
         rootBuilder.addType(terminalBuilder.build());
+        rootBuilder.addType(generateMemoizedFunction(model, rType));
 
         // Builder Implementation
-        generateMatcherBuilder(rootBuilder, rootClassName, permittedClasses, true, rootTypeVars);
+        generateMatcherBuilder(rootBuilder, model, true);
     }
 
-    // --- Consumer DSL Generation ---
+    private MethodSpec.Builder memoizedTerminal(HierarchyModel model, TypeVariableName rType) {
+        return MethodSpec.methodBuilder("asMemoizedFunction")
+                .addJavadoc("Like {@link #asFunction()}, caching up to {@code maxEntries} results by value equality. Only the given\n"
+                        + "kinds are cached, or all kinds when none are given. Handlers must be pure.\n")
+                .returns(model.nested("MemoizedFunction", rType))
+                .addParameter(int.class, "maxEntries")
+                .addParameter(ArrayTypeName.of(model.rootClassName.nestedClass("Kind")), "memoized")
+                .varargs();
+    }
 
-    private void generateConsumerDSL(TypeSpec.Builder rootBuilder, ClassName rootClassName, List<TypeElement> permittedClasses, List<TypeVariableName> rootTypeVars) {
-        // Entry point: match()
-        ClassName firstStage = rootClassName.nestedClass("ConsumerMatcherStage0");
+    /**
+     * A {@code Function} caching results per root in a bounded LRU. The cache is split into up to 16 segments, each a
+     * synchronized access-ordered {@code LinkedHashMap}, so concurrent callers mostly lock different segments. Results
+     * are computed outside the lock; two threads missing on the same key may both compute it.
+     */
+    private TypeSpec generateMemoizedFunction(HierarchyModel model, TypeVariableName rType) {
+        TypeName rootType = model.rootType();
+        ClassName kindName = model.rootClassName.nestedClass("Kind");
+        TypeName functionType = ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), rootType, rType);
+        TypeName segmentType = ParameterizedTypeName.get(model.rootClassName.nestedClass("MemoizedFunction").nestedClass("Segment"), rType);
+        TypeName entryType = ParameterizedTypeName.get(ClassName.get(Map.Entry.class), ClassName.get(Object.class), rType);
+
+        TypeSpec segment = TypeSpec.classBuilder("Segment")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(rType)
+                .superclass(ParameterizedTypeName.get(ClassName.get(LinkedHashMap.class), ClassName.get(Object.class), rType))
+                .addField(int.class, "capacity", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "capacity")
+                        .addStatement("super(16, 0.75f, true)")
+                        .addStatement("this.capacity = capacity")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("removeEldestEntry")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(boolean.class)
+                        .addParameter(entryType, "eldest")
+                        .addStatement("return size() > capacity")
+                        .build())
+                .build();
 
-        TypeName returnType;
-        if (rootTypeVars.isEmpty()) {
-             returnType = firstStage;
-        } else {
-             returnType = ParameterizedTypeName.get(firstStage, rootTypeVars.toArray(new TypeName[0]));
-        }
+        return TypeSpec.classBuilder("MemoizedFunction")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariables(model.typeVariables)
+                .addTypeVariable(rType)
+                .addSuperinterface(functionType)
+                .addField(functionType, "delegate", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(boolean[].class, "memoized", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(ArrayTypeName.of(segmentType), "segments", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(LongAdder.class, "hits", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", LongAdder.class).build())
+                .addField(FieldSpec.builder(LongAdder.class, "misses", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", LongAdder.class).build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                        .addParameter(functionType, "delegate")
+                        .addParameter(int.class, "maxEntries")
+                        .addParameter(ArrayTypeName.of(kindName), "kinds")
+                        .addStatement("if (maxEntries <= 0) throw new $T(\"maxEntries must be positive: \" + maxEntries)", IllegalArgumentException.class)
+                        .addStatement("this.delegate = delegate")
+                        .addStatement("this.memoized = new boolean[$L]", model.leaves.size())
+                        .addStatement("if (kinds.length == 0) $T.fill(memoized, true)", Arrays.class)
+                        .addStatement("for ($T kind : kinds) memoized[kind.ordinal()] = true", kindName)
+                        .addStatement("int count = 1")
+                        .addStatement("while (count < 16 && count * 2 <= maxEntries) count *= 2")
+                        .addStatement("this.segments = new Segment[count]")
+                        .beginControlFlow("for (int i = 0; i < count; i++)")
+                        .addStatement("segments[i] = new Segment<>(maxEntries / count + (i < maxEntries % count ? 1 : 0))")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("apply")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(rType)
+                        .addParameter(rootType, "root")
+                        .addStatement("if (!memoized[root.kind().ordinal()]) return delegate.apply(root)")
+                        .addStatement("int h = root.hashCode()")
+                        .addStatement("$T segment = segments[(h ^ (h >>> 16)) & (segments.length - 1)]", segmentType)
+                        .beginControlFlow("synchronized (segment)")
+                        .addStatement("$T cached = segment.get(root)", rType)
+                        .beginControlFlow("if (cached != null || segment.containsKey(root))")
+                        .addStatement("hits.increment()")
+                        .addStatement("return cached")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("misses.increment()")
+                        .addStatement("$T result = delegate.apply(root)", rType)
+                        .beginControlFlow("synchronized (segment)")
+                        .addStatement("segment.put(root, result)")
+                        .endControlFlow()
+                        .addStatement("return result")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("hitCount")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return hits.sum()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("missCount")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return misses.sum()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("hitRate")
+                        .addJavadoc("Hits over cached lookups, {@code 0} before the first one. Kinds that are not memoized are not counted.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(double.class)
+                        .addStatement("long hits = hitCount()")
+                        .addStatement("long total = hits + missCount()")
+                        .addStatement("return total == 0 ? 0 : (double) hits / total")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("int size = 0")
+                        .beginControlFlow("for ($T segment : segments)", segmentType)
+                        .beginControlFlow("synchronized (segment)")
+                        .addStatement("size += segment.size()")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return size")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("clear")
+                        .addModifiers(Modifier.PUBLIC)
+                        .beginControlFlow("for ($T segment : segments)", segmentType)
+                        .beginControlFlow("synchronized (segment)")
+                        .addStatement("segment.clear()")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addType(segment)
+                .build();
+    }
+
+    // --- Consumer DSL Generation ---
+
+    private void generateConsumerDSL(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        List<Leaf> leaves = model.leaves;
 
+        // Entry point: match()
         MethodSpec.Builder matchBuilder = MethodSpec.methodBuilder("match")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                .addTypeVariables(rootTypeVars)
-                .returns(returnType);
+                .addTypeVariables(model.typeVariables)
+                .returns(model.nested("ConsumerMatcherStage0"));
 
-        if (rootTypeVars.isEmpty()) {
+        if (!model.isGeneric()) {
             matchBuilder.addStatement("return new ConsumerMatcherBuilder()");
         } else {
             matchBuilder.addStatement("return new ConsumerMatcherBuilder<>()");
         }
 
-        if (rootTypeVars.isEmpty()) {
+        if (!model.isGeneric()) {
             rootBuilder.addMethod(matchBuilder.build());
         }
 
         // Generate Interfaces for each stage
-        for (int i = 0; i < permittedClasses.size(); i++) {
-            TypeElement currentClass = permittedClasses.get(i);
-            ClassName currentStage = rootClassName.nestedClass("ConsumerMatcherStage" + i);
-            ClassName nextStage = (i == permittedClasses.size() - 1)
-                    ? rootClassName.nestedClass("ConsumerMatcherTerminal")
-                    : rootClassName.nestedClass("ConsumerMatcherStage" + (i + 1));
-
-            TypeSpec.Builder stageBuilder = TypeSpec.interfaceBuilder(currentStage.simpleName())
-                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                    .addTypeVariables(rootTypeVars);
-
-            TypeName nextStageType;
-            if (rootTypeVars.isEmpty()) {
-                nextStageType = nextStage;
-            } else {
-                nextStageType = ParameterizedTypeName.get(nextStage, rootTypeVars.toArray(new TypeName[0]));
-            }
+        for (int i = 0; i < leaves.size(); i++) {
+            Leaf current = leaves.get(i);
+            String nextStage = (i == leaves.size() - 1) ? "ConsumerMatcherTerminal" : "ConsumerMatcherStage" + (i + 1);
 
-            TypeName paramType;
-            if (!currentClass.getTypeParameters().isEmpty()) {
-                 paramType = ParameterizedTypeName.get(ClassName.get(currentClass), rootTypeVars.toArray(new TypeName[0]));
-            } else {
-                 paramType = TypeName.get(currentClass.asType());
-            }
+            TypeSpec.Builder stageBuilder = TypeSpec.interfaceBuilder("ConsumerMatcherStage" + i)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables);
 
             TypeName consType = ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class),
-                    paramType);
+                    current.type);
 
-            stageBuilder.addMethod(MethodSpec.methodBuilder("on" + currentClass.getSimpleName())
+            stageBuilder.addMethod(MethodSpec.methodBuilder("on" + current.name)
                     .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                    .returns(nextStageType)
+                    .returns(model.nested(nextStage))
                     .addParameter(consType, "cons")
                     .build());
 
@@ -843,154 +2716,64 @@ public class SealedProcessor extends AbstractProcessor {
         }
 
         // Terminal Interface
-        ClassName terminalStage = rootClassName.nestedClass("ConsumerMatcherTerminal");
-        
-        TypeName rootType;
-        if (rootTypeVars.isEmpty()) {
-             rootType = rootClassName;
-        } else {
-             rootType = ParameterizedTypeName.get(rootClassName, rootTypeVars.toArray(new TypeName[0]));
-        }
-
-        rootBuilder.addType(TypeSpec.interfaceBuilder(terminalStage.simpleName())
+        rootBuilder.addType(TypeSpec.interfaceBuilder("ConsumerMatcherTerminal")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                .addTypeVariables(rootTypeVars)
+                .addTypeVariables(model.typeVariables)
                 .addMethod(MethodSpec.methodBuilder("asConsumer")
                         .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
-                        .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class), rootType))
+                        .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class), model.rootType()))
                         .build())
                 .build());
 
         // Builder Implementation
-        generateMatcherBuilder(rootBuilder, rootClassName, permittedClasses, false, rootTypeVars);
+        generateMatcherBuilder(rootBuilder, model, false);
     }
 
-    private void generateMatcherBuilder(TypeSpec.Builder rootBuilder, ClassName rootClassName, List<TypeElement> permittedClasses, boolean isFunction, List<TypeVariableName> rootTypeVars) {
+    private void generateMatcherBuilder(TypeSpec.Builder rootBuilder, HierarchyModel model, boolean isFunction) {
         String builderName = isFunction ? "MatcherBuilder" : "ConsumerMatcherBuilder";
         TypeVariableName rType = TypeVariableName.get("R");
-        
+        TypeName[] stageArgs = isFunction ? new TypeName[]{rType} : new TypeName[0];
+        List<Leaf> leaves = model.leaves;
+
         TypeSpec.Builder builder = TypeSpec.classBuilder(builderName)
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
 
-        builder.addTypeVariables(rootTypeVars);
+        builder.addTypeVariables(model.typeVariables);
         if (isFunction) {
             builder.addTypeVariable(rType);
         }
 
         // Fields to store functions/consumers
-        for (TypeElement permitted : permittedClasses) {
-            TypeName permittedType;
-            if (!permitted.getTypeParameters().isEmpty()) {
-                 permittedType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
-            } else {
-                 permittedType = TypeName.get(permitted.asType());
-            }
-
-            TypeName type = isFunction 
-                    ? ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), 
-                        permittedType, WildcardTypeName.subtypeOf(rType))
-                    : ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class), 
-                        permittedType);
-            builder.addField(type, "on" + permitted.getSimpleName(), Modifier.PRIVATE);
+        for (Leaf leaf : leaves) {
+            builder.addField(handlerType(leaf, isFunction, rType), "on" + leaf.name, Modifier.PRIVATE);
         }
 
         // Implement interfaces
-        for (int i = 0; i < permittedClasses.size(); i++) {
+        for (int i = 0; i < leaves.size(); i++) {
             String stageName = (isFunction ? "MatcherStage" : "ConsumerMatcherStage") + i;
-            
-            TypeName interfaceType;
-            if (isFunction) {
-                if (rootTypeVars.isEmpty()) {
-                     interfaceType = ParameterizedTypeName.get(rootClassName.nestedClass(stageName), rType);
-                } else {
-                     List<TypeName> args = new ArrayList<>(rootTypeVars);
-                     args.add(rType);
-                     interfaceType = ParameterizedTypeName.get(rootClassName.nestedClass(stageName), args.toArray(new TypeName[0]));
-                }
-            } else {
-                if (rootTypeVars.isEmpty()) {
-                     interfaceType = rootClassName.nestedClass(stageName);
-                } else {
-                     interfaceType = ParameterizedTypeName.get(rootClassName.nestedClass(stageName), rootTypeVars.toArray(new TypeName[0]));
-                }
-            }
-            
-            builder.addSuperinterface(interfaceType);
-            
+            builder.addSuperinterface(model.nested(stageName, stageArgs));
+
             // Implement 'onX' method
-            TypeElement permitted = permittedClasses.get(i);
-            String nextStageName = (i == permittedClasses.size() - 1) 
-                    ? (isFunction ? "MatcherTerminal" : "ConsumerMatcherTerminal") 
+            Leaf leaf = leaves.get(i);
+            String nextStageName = (i == leaves.size() - 1)
+                    ? (isFunction ? "MatcherTerminal" : "ConsumerMatcherTerminal")
                     : (isFunction ? "MatcherStage" : "ConsumerMatcherStage") + (i + 1);
-            
-            TypeName returnType;
-            if (isFunction) {
-                 if (rootTypeVars.isEmpty()) {
-                     returnType = ParameterizedTypeName.get(rootClassName.nestedClass(nextStageName), rType);
-                 } else {
-                     List<TypeName> args = new ArrayList<>(rootTypeVars);
-                     args.add(rType);
-                     returnType = ParameterizedTypeName.get(rootClassName.nestedClass(nextStageName), args.toArray(new TypeName[0]));
-                 }
-            } else {
-                if (rootTypeVars.isEmpty()) {
-                     returnType = rootClassName.nestedClass(nextStageName);
-                } else {
-                     returnType = ParameterizedTypeName.get(rootClassName.nestedClass(nextStageName), rootTypeVars.toArray(new TypeName[0]));
-                }
-            }
-
-            TypeName permittedType;
-            if (!permitted.getTypeParameters().isEmpty()) {
-                 permittedType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
-            } else {
-                 permittedType = TypeName.get(permitted.asType());
-            }
-
-            TypeName paramType = isFunction
-                    ? ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), 
-                        permittedType, WildcardTypeName.subtypeOf(rType))
-                    : ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class), 
-                        permittedType);
 
-            MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder("on" + permitted.getSimpleName())
+            MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder("on" + leaf.name)
                     .addModifiers(Modifier.PUBLIC)
                     .addAnnotation(Override.class)
-                    .returns(returnType)
-                    .addParameter(paramType, isFunction ? "func" : "cons")
-                    .addStatement("this.on$L = $L", permitted.getSimpleName(), isFunction ? "func" : "cons")
+                    .returns(model.nested(nextStageName, stageArgs))
+                    .addParameter(handlerType(leaf, isFunction, rType), isFunction ? "func" : "cons")
+                    .addStatement("this.on$L = $L", leaf.name, isFunction ? "func" : "cons")
                     .addStatement("return this");
             builder.addMethod(methodBuilder.build());
         }
 
         // Implement Terminal Interface
         String terminalName = isFunction ? "MatcherTerminal" : "ConsumerMatcherTerminal";
-        
-        TypeName terminalType;
-        if (isFunction) {
-             if (rootTypeVars.isEmpty()) {
-                 terminalType = ParameterizedTypeName.get(rootClassName.nestedClass(terminalName), rType);
-             } else {
-                 List<TypeName> args = new ArrayList<>(rootTypeVars);
-                 args.add(rType);
-                 terminalType = ParameterizedTypeName.get(rootClassName.nestedClass(terminalName), args.toArray(new TypeName[0]));
-             }
-        } else {
-             if (rootTypeVars.isEmpty()) {
-                 terminalType = rootClassName.nestedClass(terminalName);
-             } else {
-                 terminalType = ParameterizedTypeName.get(rootClassName.nestedClass(terminalName), rootTypeVars.toArray(new TypeName[0]));
-             }
-        }
-        
-        builder.addSuperinterface(terminalType);
+        builder.addSuperinterface(model.nested(terminalName, stageArgs));
 
-        TypeName rootType;
-        if (rootTypeVars.isEmpty()) {
-             rootType = rootClassName;
-        } else {
-             rootType = ParameterizedTypeName.get(rootClassName, rootTypeVars.toArray(new TypeName[0]));
-        }
+        TypeName rootType = model.rootType();
 
         if (isFunction) {
             MethodSpec.Builder asFunc = MethodSpec.methodBuilder("asFunction")
@@ -999,40 +2782,38 @@ public class SealedProcessor extends AbstractProcessor {
                     .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class), rootType, rType))
                     .addCode("return new $T<$T, $T>() {\n", java.util.function.Function.class, rootType, rType)
                     .addCode("    @Override\n")
-                    .addCode("    public $T apply($T root) {\n", rType, rootType)
-                    .addCode("        return root.accept(new Visitor");
-            
-            // Generate Visitor type args <T, R>
-            if (!rootTypeVars.isEmpty()) {
-                asFunc.addCode("<");
-                for (int i = 0; i < rootTypeVars.size(); i++) {
-                    if (i > 0) asFunc.addCode(", ");
-                    asFunc.addCode("$T", rootTypeVars.get(i));
-                }
-                asFunc.addCode(", $T>", rType);
+                    .addCode("    public $T apply($T root) {\n", rType, rootType);
+
+            if (usesPatternSwitch(model)) {
+                asFunc.addCode("        return switch (root) {\n")
+                      .addCode("$>$>$>$>$>$L$<$<$<$<$<", patternSwitchCases(model, "on$L.apply($L)", "apply"))
+                      .addCode("        };\n");
             } else {
-                asFunc.addCode("<$T>", rType);
-            }
-            
-            asFunc.addCode("() {\n");
-            
-            for (TypeElement permitted : permittedClasses) {
-                 TypeName permittedType;
-                 if (!permitted.getTypeParameters().isEmpty()) {
-                      permittedType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
-                 } else {
-                      permittedType = TypeName.get(permitted.asType());
-                 }
+                asFunc.addCode("$>$>$>$>$L$<$<$<$<", hotLeafChecks(model, "on$L.apply($L)", true))
+                      .addCode("        return root.accept(new Visitor");
+
+                // Generate Visitor type args <T, R>
+                addVisitorTypeArguments(asFunc, model, rType);
+
+                asFunc.addCode("() {\n");
+
+                for (Leaf leaf : leaves) {
+                     asFunc.addCode("            @Override\n")
+                           .addCode("            public $T on$L($T val) { return on$L.apply(val); }\n",
+                                   rType, leaf.name, leaf.type, leaf.name);
+                }
 
-                 asFunc.addCode("            @Override\n")
-                       .addCode("            public $T on$L($T val) { return on$L.apply(val); }\n", 
-                               rType, permitted.getSimpleName(), permittedType, permitted.getSimpleName());
+                asFunc.addCode("        });\n");
             }
-            
-            asFunc.addCode("        });\n")
-                  .addCode("    }\n")
+
+            asFunc.addCode("    }\n")
                   .addCode("};\n");
             builder.addMethod(asFunc.build());
+            builder.addMethod(memoizedTerminal(model, rType)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .addStatement("return new MemoizedFunction<>(asFunction(), maxEntries, memoized)")
+                    .build());
         } else {
             MethodSpec.Builder asCons = MethodSpec.methodBuilder("asConsumer")
                     .addModifiers(Modifier.PUBLIC)
@@ -1040,38 +2821,31 @@ public class SealedProcessor extends AbstractProcessor {
                     .returns(ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class), rootType))
                     .addCode("return new $T<$T>() {\n", java.util.function.Consumer.class, rootType)
                     .addCode("    @Override\n")
-                    .addCode("    public void accept($T root) {\n", rootType)
-                    .addCode("        root.accept(new Visitor");
-
-            // Generate Visitor type args <T, Void>
-             if (!rootTypeVars.isEmpty()) {
-                asCons.addCode("<");
-                for (int i = 0; i < rootTypeVars.size(); i++) {
-                    if (i > 0) asCons.addCode(", ");
-                    asCons.addCode("$T", rootTypeVars.get(i));
-                }
-                asCons.addCode(", $T>", Void.class);
+                    .addCode("    public void accept($T root) {\n", rootType);
+
+            if (usesPatternSwitch(model)) {
+                asCons.addCode("        switch (root) {\n")
+                      .addCode("$>$>$>$>$>$L$<$<$<$<$<", patternSwitchCases(model, "on$L.accept($L)", "accept"))
+                      .addCode("        }\n");
             } else {
-                asCons.addCode("<$T>", Void.class);
-            }
+                asCons.addCode("$>$>$>$>$L$<$<$<$<", hotLeafChecks(model, "on$L.accept($L)", false))
+                      .addCode("        root.accept(new Visitor");
 
-            asCons.addCode("() {\n");
-            
-            for (TypeElement permitted : permittedClasses) {
-                 TypeName permittedType;
-                 if (!permitted.getTypeParameters().isEmpty()) {
-                      permittedType = ParameterizedTypeName.get(ClassName.get(permitted), rootTypeVars.toArray(new TypeName[0]));
-                 } else {
-                      permittedType = TypeName.get(permitted.asType());
-                 }
+                // Generate Visitor type args <T, Void>
+                addVisitorTypeArguments(asCons, model, ClassName.get(Void.class));
 
-                 asCons.addCode("            @Override\n")
-                       .addCode("            public $T on$L($T val) { on$L.accept(val); return null; }\n", 
-                               Void.class, permitted.getSimpleName(), permittedType, permitted.getSimpleName());
+                asCons.addCode("() {\n");
+
+                for (Leaf leaf : leaves) {
+                     asCons.addCode("            @Override\n")
+                           .addCode("            public $T on$L($T val) { on$L.accept(val); return null; }\n",
+                                   Void.class, leaf.name, leaf.type, leaf.name);
+                }
+
+                asCons.addCode("        });\n");
             }
-            
-            asCons.addCode("        });\n")
-                  .addCode("    }\n")
+
+            asCons.addCode("    }\n")
                   .addCode("};\n");
             builder.addMethod(asCons.build());
         }
@@ -1079,36 +2853,320 @@ public class SealedProcessor extends AbstractProcessor {
         rootBuilder.addType(builder.build());
     }
 
-    private void generateClassOfValue(TypeSpec.Builder rootBuilder, ClassName rootClassName, List<TypeVariableName> rootTypeVars, GenerationMode mode) {
+    // --- Context DSL Generation ---
+
+    /**
+     * Staged matchers over {@code BiFunction}/{@code BiConsumer} handlers. The terminal builds one {@code Visitor2} per
+     * matcher, so a matcher kept in a static field dispatches without allocating.
+     */
+    private void generateContextDSL(TypeSpec.Builder rootBuilder, HierarchyModel model, boolean isFunction) {
+        String prefix = isFunction ? "BiMatcher" : "BiConsumerMatcher";
+        TypeVariableName cType = TypeVariableName.get("C");
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeName[] stageArgs = isFunction ? new TypeName[]{cType, rType} : new TypeName[]{cType};
+        TypeName resultType = isFunction ? rType : ClassName.get(Void.class);
+        TypeName rootType = model.rootType();
+        List<Leaf> leaves = model.leaves;
+
+        // Generic roots expose the entry point on ClassOfValue instead
+        if (!model.isGeneric()) {
+            rootBuilder.addMethod(contextEntryPoint(model, isFunction).addModifiers(Modifier.STATIC).build());
+        }
+
+        TypeSpec.Builder builder = TypeSpec.classBuilder(prefix + "Builder")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariables(model.typeVariables)
+                .addTypeVariable(cType);
+        if (isFunction) {
+            builder.addTypeVariable(rType);
+        }
+
+        for (int i = 0; i < leaves.size(); i++) {
+            Leaf leaf = leaves.get(i);
+            String nextStage = i == leaves.size() - 1 ? prefix + "Terminal" : prefix + "Stage" + (i + 1);
+            TypeName handler = contextHandlerType(leaf, isFunction, cType, rType);
+
+            TypeSpec.Builder stage = TypeSpec.interfaceBuilder(prefix + "Stage" + i)
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariables(model.typeVariables)
+                    .addTypeVariable(cType);
+            if (isFunction) {
+                stage.addTypeVariable(rType);
+            }
+            stage.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(model.nested(nextStage, stageArgs))
+                    .addParameter(handler, "handler")
+                    .build());
+            rootBuilder.addType(stage.build());
+
+            builder.addSuperinterface(model.nested(prefix + "Stage" + i, stageArgs));
+            builder.addField(handler, "on" + leaf.name, Modifier.PRIVATE);
+            builder.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(Override.class)
+                    .returns(model.nested(nextStage, stageArgs))
+                    .addParameter(handler, "handler")
+                    .addStatement("this.on$L = handler", leaf.name)
+                    .addStatement("return this")
+                    .build());
+        }
+
+        String terminalMethod = isFunction ? "asBiFunction" : "asBiConsumer";
+        TypeName terminalType = isFunction
+                ? ParameterizedTypeName.get(ClassName.get(BiFunction.class), rootType, cType, rType)
+                : ParameterizedTypeName.get(ClassName.get(BiConsumer.class), rootType, cType);
+
+        TypeSpec.Builder terminal = TypeSpec.interfaceBuilder(prefix + "Terminal")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables)
+                .addTypeVariable(cType);
+        if (isFunction) {
+            terminal.addTypeVariable(rType);
+        }
+        terminal.addMethod(MethodSpec.methodBuilder(terminalMethod)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(terminalType)
+                .build());
+        rootBuilder.addType(terminal.build());
+
+        TypeName visitorType = model.nested("Visitor2", cType, resultType);
+        builder.addSuperinterface(model.nested(prefix + "Terminal", stageArgs));
+        MethodSpec.Builder asTerminal = MethodSpec.methodBuilder(terminalMethod)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(terminalType)
+                .addCode("$T visitor = new $T() {\n$>", visitorType, visitorType);
+        for (Leaf leaf : leaves) {
+            asTerminal.addCode("@Override\n");
+            if (isFunction) {
+                asTerminal.addCode("public $T on$L($T val, $T context) { return on$L.apply(val, context); }\n",
+                        rType, leaf.name, leaf.type, cType, leaf.name);
+            } else {
+                asTerminal.addCode("public $T on$L($T val, $T context) { on$L.accept(val, context); return null; }\n",
+                        Void.class, leaf.name, leaf.type, cType, leaf.name);
+            }
+        }
+        asTerminal.addCode("$<};\n")
+                .addCode(dispatchLambda(model, "(root, context)", isFunction ? "on$L.apply($L, context)" : "on$L.accept($L, context)",
+                        "root.accept(visitor, context)", isFunction));
+        builder.addMethod(asTerminal.build());
+
+        rootBuilder.addType(builder.build());
+    }
+
+    // --- Pair DSL Generation ---
+
+    /**
+     * Staged matchers over every (first, second) leaf pair, one stage per pair in row-major order. The first stage of a
+     * row also accepts a wildcard handler for the whole row. Handlers land in a flat table indexed by both kind
+     * ordinals, so dispatching a pair costs two {@code kind()} calls and one table lookup, without visitors.
+     */
+    private void generatePairDSL(TypeSpec.Builder rootBuilder, HierarchyModel model, boolean isFunction) {
+        String prefix = isFunction ? "Matcher2" : "ConsumerMatcher2";
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeName[] stageArgs = isFunction ? new TypeName[]{rType} : new TypeName[0];
+        TypeName rootType = model.rootType();
+        List<Leaf> leaves = model.leaves;
+        int n = leaves.size();
+
+        if (!model.isGeneric()) {
+            rootBuilder.addMethod(pairEntryPoint(model, isFunction).addModifiers(Modifier.STATIC).build());
+        }
+
+        TypeName cellType = isFunction
+                ? ParameterizedTypeName.get(ClassName.get(BiFunction.class), rootType, rootType, WildcardTypeName.subtypeOf(rType))
+                : ParameterizedTypeName.get(ClassName.get(BiConsumer.class), rootType, rootType);
+        String invoke = isFunction ? "apply" : "accept";
+
+        TypeSpec.Builder builder = TypeSpec.classBuilder(prefix + "Builder")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariables(model.typeVariables);
+        if (isFunction) {
+            builder.addTypeVariable(rType);
+        }
+        builder.addField(ArrayTypeName.of(cellType), "table", Modifier.PRIVATE, Modifier.FINAL);
+        builder.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build())
+                .addStatement("table = ($T) new $T[$L]", ArrayTypeName.of(cellType),
+                        isFunction ? BiFunction.class : BiConsumer.class, n * n)
+                .build());
+
+        for (int i = 0; i < n; i++) {
+            Leaf first = leaves.get(i);
+            for (int j = 0; j < n; j++) {
+                Leaf second = leaves.get(j);
+                int index = i * n + j;
+                String nextStage = index == n * n - 1 ? prefix + "Terminal" : prefix + "Stage" + (index + 1);
+                String nextRow = i == n - 1 ? prefix + "Terminal" : prefix + "Stage" + ((i + 1) * n);
+
+                TypeSpec.Builder stage = TypeSpec.interfaceBuilder(prefix + "Stage" + index)
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addTypeVariables(model.typeVariables);
+                if (isFunction) {
+                    stage.addTypeVariable(rType);
+                }
+                builder.addSuperinterface(model.nested(prefix + "Stage" + index, stageArgs));
+
+                List<MethodSpec.Builder> handlers = new ArrayList<>();
+                TypeName pairHandler = pairHandlerType(first.type, second.type, isFunction, rType);
+                handlers.add(MethodSpec.methodBuilder("on" + first.name + second.name)
+                        .returns(model.nested(nextStage, stageArgs))
+                        .addParameter(pairHandler, "handler")
+                        .addStatement("table[$L] = (a, b) -> handler.$L(($T) Wrapper.unwrap(a), ($T) Wrapper.unwrap(b))",
+                                index, invoke, first.type, second.type));
+                if (j == 0) {
+                    TypeName rowHandler = pairHandlerType(first.type, rootType, isFunction, rType);
+                    handlers.add(MethodSpec.methodBuilder("on" + first.name + "Any")
+                            .returns(model.nested(nextRow, stageArgs))
+                            .addParameter(rowHandler, "handler")
+                            .addStatement("$T.fill(table, $L, $L, ($T) (a, b) -> handler.$L(($T) Wrapper.unwrap(a), b))",
+                                    Arrays.class, index, index + n, cellType, invoke, first.type));
+                }
+
+                for (MethodSpec.Builder handler : handlers) {
+                    MethodSpec abstractSpec = handler.build();
+                    stage.addMethod(MethodSpec.methodBuilder(abstractSpec.name)
+                            .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                            .returns(abstractSpec.returnType)
+                            .addParameters(abstractSpec.parameters)
+                            .build());
+                    handler.addModifiers(Modifier.PUBLIC)
+                            .addAnnotation(Override.class)
+                            .addStatement("return this");
+                    if (model.isGeneric() && (first.isGeneric() || second.isGeneric())) {
+                        handler.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build());
+                    }
+                    builder.addMethod(handler.build());
+                }
+                rootBuilder.addType(stage.build());
+            }
+        }
+
+        String terminalMethod = isFunction ? "asBiFunction" : "asBiConsumer";
+        TypeName terminalType = isFunction
+                ? ParameterizedTypeName.get(ClassName.get(BiFunction.class), rootType, rootType, rType)
+                : ParameterizedTypeName.get(ClassName.get(BiConsumer.class), rootType, rootType);
+        TypeSpec.Builder terminal = TypeSpec.interfaceBuilder(prefix + "Terminal")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariables(model.typeVariables);
+        if (isFunction) {
+            terminal.addTypeVariable(rType);
+        }
+        terminal.addMethod(MethodSpec.methodBuilder(terminalMethod)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                .returns(terminalType)
+                .build());
+        rootBuilder.addType(terminal.build());
+
+        builder.addSuperinterface(model.nested(prefix + "Terminal", stageArgs));
+        builder.addMethod(MethodSpec.methodBuilder(terminalMethod)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(terminalType)
+                .addStatement("$T[] cells = table", cellType)
+                .addStatement("return (a, b) -> cells[a.kind().ordinal() * $L + b.kind().ordinal()].$L(a, b)", n, invoke)
+                .build());
+
+        rootBuilder.addType(builder.build());
+    }
+
+    private static boolean hasPairDSL(HierarchyModel model) {
+        return model.pairs && model.leaves.size() <= MAX_PAIR_LEAVES;
+    }
+
+    private MethodSpec.Builder pairEntryPoint(HierarchyModel model, boolean isFunction) {
+        TypeVariableName rType = TypeVariableName.get("R");
+        MethodSpec.Builder entry = MethodSpec.methodBuilder(isFunction ? "returning2" : "match2")
+                .addModifiers(Modifier.PUBLIC);
+        if (isFunction) {
+            entry.addTypeVariable(rType)
+                    .returns(model.nested("Matcher2Stage0", rType))
+                    .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), rType), "resultType");
+        } else {
+            entry.returns(model.nested("ConsumerMatcher2Stage0"));
+        }
+        return entry.addStatement("return new $LBuilder$L()", isFunction ? "Matcher2" : "ConsumerMatcher2",
+                isFunction || model.isGeneric() ? "<>" : "");
+    }
+
+    private TypeName pairHandlerType(TypeName first, TypeName second, boolean isFunction, TypeVariableName rType) {
+        return isFunction
+                ? ParameterizedTypeName.get(ClassName.get(BiFunction.class), first, second, WildcardTypeName.subtypeOf(rType))
+                : ParameterizedTypeName.get(ClassName.get(BiConsumer.class), first, second);
+    }
+
+    private MethodSpec.Builder contextEntryPoint(HierarchyModel model, boolean isFunction) {
+        String prefix = isFunction ? "BiMatcher" : "BiConsumerMatcher";
+        TypeVariableName cType = TypeVariableName.get("C");
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeName[] stageArgs = isFunction ? new TypeName[]{cType, rType} : new TypeName[]{cType};
+
+        MethodSpec.Builder entry = MethodSpec.methodBuilder(isFunction ? "returning" : "match")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(cType)
+                .returns(model.nested(prefix + "Stage0", stageArgs))
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), cType), "contextType");
+        if (isFunction) {
+            entry.addTypeVariable(rType)
+                    .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), rType), "resultType");
+        }
+        return entry.addStatement("return new $LBuilder<>()", prefix);
+    }
+
+    private TypeName contextHandlerType(Leaf leaf, boolean isFunction, TypeVariableName cType, TypeVariableName rType) {
+        return isFunction
+                ? ParameterizedTypeName.get(ClassName.get(BiFunction.class),
+                    leaf.type, WildcardTypeName.supertypeOf(cType), WildcardTypeName.subtypeOf(rType))
+                : ParameterizedTypeName.get(ClassName.get(BiConsumer.class),
+                    leaf.type, WildcardTypeName.supertypeOf(cType));
+    }
+
+    private TypeName handlerType(Leaf leaf, boolean isFunction, TypeVariableName rType) {
+        return isFunction
+                ? ParameterizedTypeName.get(ClassName.get(java.util.function.Function.class),
+                    leaf.type, WildcardTypeName.subtypeOf(rType))
+                : ParameterizedTypeName.get(ClassName.get(java.util.function.Consumer.class),
+                    leaf.type);
+    }
+
+    private void addVisitorTypeArguments(MethodSpec.Builder method, HierarchyModel model, TypeName resultType) {
+        method.addCode("<");
+        for (TypeVariableName typeVariable : model.typeVariables) {
+            method.addCode("$T, ", typeVariable);
+        }
+        method.addCode("$T>", resultType);
+    }
+
+    private void generateClassOfValue(TypeSpec.Builder rootBuilder, HierarchyModel model) {
+        List<TypeVariableName> rootTypeVars = model.typeVariables;
         TypeSpec.Builder covBuilder = TypeSpec.classBuilder("ClassOfValue")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
                 .addTypeVariables(rootTypeVars);
 
-        if (mode == GenerationMode.FUNCTION || mode == GenerationMode.BOTH) {
+        if (model.generatesFunctions()) {
             TypeVariableName rType = TypeVariableName.get("R");
-            ClassName firstStage = rootClassName.nestedClass("MatcherStage0");
-            List<TypeName> stageArgs = new ArrayList<>(rootTypeVars);
-            stageArgs.add(rType);
-            TypeName stageType = ParameterizedTypeName.get(firstStage, stageArgs.toArray(new TypeName[0]));
 
             covBuilder.addMethod(MethodSpec.methodBuilder("returning")
                     .addModifiers(Modifier.PUBLIC)
                     .addTypeVariable(rType)
-                    .returns(stageType)
+                    .returns(model.nested("MatcherStage0", rType))
                     .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), rType), "resultType")
                     .addStatement("return new MatcherBuilder<>()")
                     .build());
+            covBuilder.addMethod(contextEntryPoint(model, true).build());
+            if (hasPairDSL(model)) covBuilder.addMethod(pairEntryPoint(model, true).build());
         }
 
-        if (mode == GenerationMode.CONSUMER || mode == GenerationMode.BOTH) {
-            ClassName firstStage = rootClassName.nestedClass("ConsumerMatcherStage0");
-            TypeName stageType = ParameterizedTypeName.get(firstStage, rootTypeVars.toArray(new TypeName[0]));
-
+        if (model.generatesConsumers()) {
             covBuilder.addMethod(MethodSpec.methodBuilder("match")
                     .addModifiers(Modifier.PUBLIC)
-                    .returns(stageType)
+                    .returns(model.nested("ConsumerMatcherStage0"))
                     .addStatement("return new ConsumerMatcherBuilder<>()")
                     .build());
+            covBuilder.addMethod(contextEntryPoint(model, false).build());
+            if (hasPairDSL(model)) covBuilder.addMethod(pairEntryPoint(model, false).build());
         }
 
         rootBuilder.addType(covBuilder.build());
@@ -1116,7 +3174,7 @@ public class SealedProcessor extends AbstractProcessor {
         MethodSpec.Builder covMethod = MethodSpec.methodBuilder("classOfValue")
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                 .addTypeVariables(rootTypeVars)
-                .returns(ParameterizedTypeName.get(rootClassName.nestedClass("ClassOfValue"), rootTypeVars.toArray(new TypeName[0])));
+                .returns(model.nested("ClassOfValue"));
 
         for (TypeVariableName tVar : rootTypeVars) {
             covMethod.addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), tVar), "clazz" + tVar.name);
@@ -1125,7 +3183,7 @@ public class SealedProcessor extends AbstractProcessor {
         covMethod.addStatement("return new ClassOfValue<>()");
         rootBuilder.addMethod(covMethod.build());
     }
-    
+
     private void error(Element e, String msg) {
         messager.printMessage(Diagnostic.Kind.ERROR, msg, e);
     }
@@ -1133,4 +3191,8 @@ public class SealedProcessor extends AbstractProcessor {
     private void warning(Element e, String msg) {
         messager.printMessage(Diagnostic.Kind.WARNING, msg, e);
     }
-}
\ No newline at end of file
+
+    private void note(Element e, String msg) {
+        messager.printMessage(Diagnostic.Kind.NOTE, msg, e);
+    }
+}
@@ -0,0 +1,332 @@
+package com.j8a.sealed.processor;
+
+import com.j8a.sealed.annotations.Specialization;
+import com.j8a.sealed.processor.HierarchyModel.Leaf;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import javax.lang.model.element.Modifier;
+import java.util.Objects;
+
+/**
+ * Generates primitive specializations of a generic root, e.g. {@code IntResult} for {@code Result<T>}.
+ * <p>
+ * A specialization is an abstract class with one private case class per permitted class. The generic leaf's case holds
+ * the primitive directly, so chains of {@code map}/{@code mapToX}/{@code flatMap} never box; boxing happens only in
+ * {@code from(Result<Integer>)} and {@code boxed()}.
+ */
+final class SpecializationGenerator {
+
+    private static final String FUNCTION_PACKAGE = "java.util.function";
+
+    private final HierarchyModel model;
+    private final Leaf genericLeaf;
+    private final String accessorName;
+
+    SpecializationGenerator(HierarchyModel model, Leaf genericLeaf, String accessorName) {
+        this.model = model;
+        this.genericLeaf = genericLeaf;
+        this.accessorName = accessorName;
+    }
+
+    ClassName className(Specialization specialization) {
+        return ClassName.get(model.packageName, prefix(specialization) + model.rootClassName.simpleName());
+    }
+
+    /**
+     * The root's entry point into a specialization, e.g. {@code default IntResult mapToInt(ToIntFunction<? super T>)}.
+     * It dispatches through a shared {@code Visitor2}, passing the mapper as context, so it does not allocate a visitor.
+     */
+    MethodSpec rootMapMethod(Specialization specialization) {
+        TypeVariableName tType = model.typeVariables.get(0);
+        ClassName target = className(specialization);
+        TypeName mapperType = ParameterizedTypeName.get(ClassName.get(FUNCTION_PACKAGE, "To" + prefix(specialization) + "Function"),
+                WildcardTypeName.supertypeOf(tType));
+
+        return MethodSpec.methodBuilder("mapTo" + prefix(specialization))
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT)
+                .returns(target)
+                .addParameter(mapperType, "mapper")
+                .addStatement("return this.accept($T.<$T>mapping(), mapper)", target, tType)
+                .build();
+    }
+
+    TypeSpec generate(Specialization specialization) {
+        ClassName self = className(specialization);
+        TypeName primitive = primitive(specialization);
+        TypeName boxed = primitive.box();
+        TypeName boxedRoot = ParameterizedTypeName.get(model.rootClassName, boxed);
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeVariableName uType = TypeVariableName.get("U");
+
+        TypeSpec.Builder builder = TypeSpec.classBuilder(self)
+                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT);
+
+        // Boundary conversions: from the boxed root, and from any root through a primitive mapper
+        TypeName fromVisitor = ParameterizedTypeName.get(model.rootClassName.nestedClass("Visitor"), boxed, self);
+        TypeSpec.Builder from = TypeSpec.anonymousClassBuilder("").addSuperinterface(fromVisitor);
+        for (Leaf leaf : model.leaves) {
+            from.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(self)
+                    .addParameter(leafType(leaf, boxed), "val")
+                    .addStatement(leaf == genericLeaf ? "return wrap(val.$L())" : "return wrap(val)", accessorName)
+                    .build());
+        }
+        builder.addField(FieldSpec.builder(fromVisitor, "FROM", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", from.build())
+                .build());
+
+        TypeName objectMapper = ParameterizedTypeName.get(ClassName.get(FUNCTION_PACKAGE, "To" + prefix(specialization) + "Function"),
+                ClassName.get(Object.class));
+        TypeName mappingVisitor = ParameterizedTypeName.get(model.rootClassName.nestedClass("Visitor2"),
+                ClassName.get(Object.class), objectMapper, self);
+        TypeSpec.Builder mapping = TypeSpec.anonymousClassBuilder("").addSuperinterface(mappingVisitor);
+        for (Leaf leaf : model.leaves) {
+            mapping.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(self)
+                    .addParameter(leafType(leaf, ClassName.get(Object.class)), "val")
+                    .addParameter(objectMapper, "mapper")
+                    .addStatement(leaf == genericLeaf ? "return wrap(mapper.applyAs$L(val.$L()))" : "return wrap(val)",
+                            prefix(specialization), accessorName)
+                    .build());
+        }
+        builder.addField(FieldSpec.builder(mappingVisitor, "MAPPING", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", mapping.build())
+                .build());
+
+        builder.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PRIVATE)
+                .build());
+
+        // Factories
+        for (Leaf leaf : model.leaves) {
+            MethodSpec.Builder wrap = MethodSpec.methodBuilder("wrap")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(self);
+            if (leaf == genericLeaf) {
+                wrap.addParameter(primitive, "value")
+                        .addStatement("return new $LCase(value)", leaf.name);
+            } else {
+                wrap.addParameter(leaf.type, "value")
+                        .addStatement("if (value == null) throw new NullPointerException(\"Source cannot be null\")")
+                        .addStatement("return new $LCase(value)", leaf.name);
+            }
+            builder.addMethod(wrap.build());
+        }
+
+        builder.addMethod(MethodSpec.methodBuilder("from")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(self)
+                .addParameter(boxedRoot, "result")
+                .addStatement("return result.accept(FROM)")
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("mapping")
+                .addModifiers(Modifier.STATIC)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "{$S, $S}", "rawtypes", "unchecked").build())
+                .addTypeVariable(TypeVariableName.get("T"))
+                .returns(ParameterizedTypeName.get(model.rootClassName.nestedClass("Visitor2"), TypeVariableName.get("T"),
+                        ParameterizedTypeName.get(ClassName.get(FUNCTION_PACKAGE, "To" + prefix(specialization) + "Function"),
+                                WildcardTypeName.supertypeOf(TypeVariableName.get("T"))), self))
+                .addStatement("return ($T) MAPPING", model.rootClassName.nestedClass("Visitor2"))
+                .build());
+
+        // Abstract API
+        builder.addMethod(abstractMethod("kind").returns(model.rootClassName.nestedClass("Kind")).build());
+        builder.addMethod(abstractMethod("accept")
+                .addTypeVariable(rType)
+                .returns(rType)
+                .addParameter(ParameterizedTypeName.get(self.nestedClass("Visitor"), rType), "visitor")
+                .build());
+        builder.addMethod(abstractMethod("orElse").returns(primitive).addParameter(primitive, "other").build());
+        builder.addMethod(abstractMethod("map").returns(self).addParameter(unaryOperator(specialization), "mapper").build());
+        builder.addMethod(abstractMethod("flatMap").returns(self).addParameter(function(specialization, self), "mapper").build());
+        builder.addMethod(abstractMethod("mapToObj")
+                .addTypeVariable(uType)
+                .returns(ParameterizedTypeName.get(model.rootClassName, uType))
+                .addParameter(function(specialization, WildcardTypeName.subtypeOf(uType)), "mapper")
+                .build());
+        for (Specialization other : model.specializations) {
+            if (other == specialization) continue;
+            builder.addMethod(abstractMethod("mapTo" + prefix(other)).returns(className(other))
+                    .addParameter(conversion(specialization, other), "mapper").build());
+            builder.addMethod(abstractMethod("flatMapTo" + prefix(other)).returns(className(other))
+                    .addParameter(function(specialization, className(other)), "mapper").build());
+        }
+        builder.addMethod(abstractMethod("boxed").returns(boxedRoot).build());
+
+        // Visitor over the specialized cases
+        TypeSpec.Builder visitor = TypeSpec.interfaceBuilder("Visitor")
+                .addModifiers(Modifier.PUBLIC)
+                .addTypeVariable(rType);
+        for (Leaf leaf : model.leaves) {
+            visitor.addMethod(MethodSpec.methodBuilder("on" + leaf.name)
+                    .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                    .returns(rType)
+                    .addParameter(leaf == genericLeaf ? primitive : leaf.type, leaf == genericLeaf ? "value" : leaf.parameterName())
+                    .build());
+        }
+        builder.addType(visitor.build());
+
+        for (Leaf leaf : model.leaves) {
+            builder.addType(leaf == genericLeaf ? primitiveCase(specialization, self) : leafCase(specialization, self, leaf));
+        }
+
+        return builder.build();
+    }
+
+    private TypeSpec primitiveCase(Specialization specialization, ClassName self) {
+        TypeName primitive = primitive(specialization);
+        String name = genericLeaf.name;
+        ClassName leafClass = ClassName.get(genericLeaf.element);
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeVariableName uType = TypeVariableName.get("U");
+
+        TypeSpec.Builder builder = caseBuilder(name, self, primitive);
+        builder.addMethod(override("kind").returns(model.rootClassName.nestedClass("Kind"))
+                .addStatement("return $T.Kind.$L", model.rootClassName, genericLeaf.constantName()).build());
+        builder.addMethod(override("accept").addTypeVariable(rType).returns(rType)
+                .addParameter(ParameterizedTypeName.get(self.nestedClass("Visitor"), rType), "visitor")
+                .addStatement("return visitor.on$L(value)", name).build());
+        builder.addMethod(override("orElse").returns(primitive).addParameter(primitive, "other")
+                .addStatement("return value").build());
+        builder.addMethod(override("map").returns(self).addParameter(unaryOperator(specialization), "mapper")
+                .addStatement("return new $LCase(mapper.applyAs$L(value))", name, prefix(specialization)).build());
+        builder.addMethod(override("flatMap").returns(self).addParameter(function(specialization, self), "mapper")
+                .addStatement("return mapper.apply(value)").build());
+        builder.addMethod(override("mapToObj").addTypeVariable(uType)
+                .returns(ParameterizedTypeName.get(model.rootClassName, uType))
+                .addParameter(function(specialization, WildcardTypeName.subtypeOf(uType)), "mapper")
+                .addStatement("return $T.wrap(new $T<$T>(mapper.apply(value)))", model.rootClassName, leafClass, uType).build());
+        for (Specialization other : model.specializations) {
+            if (other == specialization) continue;
+            builder.addMethod(override("mapTo" + prefix(other)).returns(className(other))
+                    .addParameter(conversion(specialization, other), "mapper")
+                    .addStatement("return $T.wrap(mapper.applyAs$L(value))", className(other), prefix(other)).build());
+            builder.addMethod(override("flatMapTo" + prefix(other)).returns(className(other))
+                    .addParameter(function(specialization, className(other)), "mapper")
+                    .addStatement("return mapper.apply(value)").build());
+        }
+        builder.addMethod(override("boxed").returns(ParameterizedTypeName.get(model.rootClassName, primitive.box()))
+                .addStatement("return $T.wrap(new $T<$T>(value))", model.rootClassName, leafClass, primitive.box()).build());
+
+        ClassName boxedClass = (ClassName) primitive.box();
+        builder.addMethod(override("equals").returns(boolean.class).addParameter(Object.class, "o")
+                .addStatement("if (this == o) return true")
+                .addStatement("if (!(o instanceof $LCase)) return false", name)
+                .addStatement("return $T.compare(value, (($LCase) o).value) == 0", boxedClass, name).build());
+        builder.addMethod(override("hashCode").returns(int.class)
+                .addStatement("return $T.hashCode(value)", boxedClass).build());
+        builder.addMethod(override("toString").returns(String.class)
+                .addStatement("return $S + value + $S", name + "(", ")").build());
+        return builder.build();
+    }
+
+    private TypeSpec leafCase(Specialization specialization, ClassName self, Leaf leaf) {
+        TypeName primitive = primitive(specialization);
+        TypeVariableName rType = TypeVariableName.get("R");
+        TypeVariableName uType = TypeVariableName.get("U");
+
+        TypeSpec.Builder builder = caseBuilder(leaf.name, self, leaf.type);
+        builder.addMethod(override("kind").returns(model.rootClassName.nestedClass("Kind"))
+                .addStatement("return $T.Kind.$L", model.rootClassName, leaf.constantName()).build());
+        builder.addMethod(override("accept").addTypeVariable(rType).returns(rType)
+                .addParameter(ParameterizedTypeName.get(self.nestedClass("Visitor"), rType), "visitor")
+                .addStatement("return visitor.on$L(value)", leaf.name).build());
+        builder.addMethod(override("orElse").returns(primitive).addParameter(primitive, "other")
+                .addStatement("return other").build());
+        builder.addMethod(override("map").returns(self).addParameter(unaryOperator(specialization), "mapper")
+                .addStatement("return this").build());
+        builder.addMethod(override("flatMap").returns(self).addParameter(function(specialization, self), "mapper")
+                .addStatement("return this").build());
+        builder.addMethod(override("mapToObj").addTypeVariable(uType)
+                .returns(ParameterizedTypeName.get(model.rootClassName, uType))
+                .addParameter(function(specialization, WildcardTypeName.subtypeOf(uType)), "mapper")
+                .addStatement("return $T.wrap(value)", model.rootClassName).build());
+        for (Specialization other : model.specializations) {
+            if (other == specialization) continue;
+            builder.addMethod(override("mapTo" + prefix(other)).returns(className(other))
+                    .addParameter(conversion(specialization, other), "mapper")
+                    .addStatement("return $T.wrap(value)", className(other)).build());
+            builder.addMethod(override("flatMapTo" + prefix(other)).returns(className(other))
+                    .addParameter(function(specialization, className(other)), "mapper")
+                    .addStatement("return $T.wrap(value)", className(other)).build());
+        }
+        builder.addMethod(override("boxed").returns(ParameterizedTypeName.get(model.rootClassName, primitive.box()))
+                .addStatement("return $T.wrap(value)", model.rootClassName).build());
+
+        builder.addMethod(override("equals").returns(boolean.class).addParameter(Object.class, "o")
+                .addStatement("if (this == o) return true")
+                .addStatement("if (!(o instanceof $LCase)) return false", leaf.name)
+                .addStatement("return $T.equals(value, (($LCase) o).value)", Objects.class, leaf.name).build());
+        builder.addMethod(override("hashCode").returns(int.class)
+                .addStatement("return $T.hash(value)", Objects.class).build());
+        builder.addMethod(override("toString").returns(String.class)
+                .addStatement("return value.toString()").build());
+        return builder.build();
+    }
+
+    private static TypeSpec.Builder caseBuilder(String leafName, ClassName self, TypeName valueType) {
+        return TypeSpec.classBuilder(leafName + "Case")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .superclass(self)
+                .addField(valueType, "value", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(valueType, "value")
+                        .addStatement("this.value = value")
+                        .build());
+    }
+
+    private TypeName leafType(Leaf leaf, TypeName typeArgument) {
+        return leaf == genericLeaf ? ParameterizedTypeName.get(ClassName.get(leaf.element), typeArgument) : leaf.type;
+    }
+
+    private static MethodSpec.Builder abstractMethod(String name) {
+        return MethodSpec.methodBuilder(name).addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT);
+    }
+
+    private static MethodSpec.Builder override(String name) {
+        return MethodSpec.methodBuilder(name).addModifiers(Modifier.PUBLIC).addAnnotation(Override.class);
+    }
+
+    private static String prefix(Specialization specialization) {
+        switch (specialization) {
+            case INT: return "Int";
+            case LONG: return "Long";
+            case DOUBLE: return "Double";
+            default: throw new AssertionError(specialization);
+        }
+    }
+
+    private static TypeName primitive(Specialization specialization) {
+        switch (specialization) {
+            case INT: return TypeName.INT;
+            case LONG: return TypeName.LONG;
+            case DOUBLE: return TypeName.DOUBLE;
+            default: throw new AssertionError(specialization);
+        }
+    }
+
+    private static TypeName unaryOperator(Specialization specialization) {
+        return ClassName.get(FUNCTION_PACKAGE, prefix(specialization) + "UnaryOperator");
+    }
+
+    private static TypeName function(Specialization specialization, TypeName result) {
+        return ParameterizedTypeName.get(ClassName.get(FUNCTION_PACKAGE, prefix(specialization) + "Function"), result);
+    }
+
+    private static TypeName conversion(Specialization from, Specialization to) {
+        return ClassName.get(FUNCTION_PACKAGE, prefix(from) + "To" + prefix(to) + "Function");
+    }
+}
@@ -0,0 +1,136 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class BulkTest {
+
+    private static JavaFileObject shapeDef(String name, String attributes) {
+        return JavaFileObjects.forSourceString("com.example." + name + "Def",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "\n" +
+            "@Sealed(name=\"" + name + "\"" + attributes + ")\n" +
+            "@Permits(classes={Circle.class, Square.class, Triangle.class})\n" +
+            "public interface " + name + "Def {\n" +
+            "    double area();\n" +
+            "    int sides();\n" +
+            "    boolean round();\n" +
+            "    String label();\n" +
+            "    double scaled(double factor);\n" +
+            "}"
+        );
+    }
+
+    private static JavaFileObject leaf(String name, int sides, String area) {
+        return JavaFileObjects.forSourceString("com.example." + name,
+            "package com.example;\n" +
+            "public final class " + name + " {\n" +
+            "    private final double size;\n" +
+            "    public " + name + "(double size) { this.size = size; }\n" +
+            "    public double area() { return " + area + "; }\n" +
+            "    public int sides() { return " + sides + "; }\n" +
+            "    public boolean round() { return " + (sides == 0) + "; }\n" +
+            "    public String label() { return \"" + name + "\"; }\n" +
+            "    public double scaled(double factor) { return size * factor; }\n" +
+            "}"
+        );
+    }
+
+    private static final JavaFileObject CIRCLE = leaf("Circle", 0, "3 * size * size");
+    private static final JavaFileObject SQUARE = leaf("Square", 4, "size * size");
+    private static final JavaFileObject TRIANGLE = leaf("Triangle", 3, "size * size / 2");
+
+    // Compares every bulk result with the element's own method, on arrays below and above the parallel threshold
+    private static JavaFileObject driver(String root) {
+        return JavaFileObjects.forSourceString("com.example.Driver",
+            ("package com.example;\n" +
+            "public final class Driver {\n" +
+            "    private static ROOT[] shapes(int n) {\n" +
+            "        ROOT[] shapes = new ROOT[n];\n" +
+            "        for (int i = 0; i < n; i++) {\n" +
+            "            int size = i % 7 + 1;\n" +
+            "            shapes[i] = i % 3 == 0 ? ROOT.wrap(new Circle(size))\n" +
+            "                : i % 3 == 1 ? ROOT.wrap(new Square(size)) : ROOT.lazyTriangle(() -> new Triangle(size));\n" +
+            "        }\n" +
+            "        return shapes;\n" +
+            "    }\n" +
+            "    private static int mismatches(ROOT[] in, boolean parallel) {\n" +
+            "        double[] areas = new double[in.length];\n" +
+            "        int[] sides = new int[in.length + 1];\n" +
+            "        boolean[] round = new boolean[in.length];\n" +
+            "        if (parallel) {\n" +
+            "            ROOT.parallelArea(in, areas); ROOT.parallelSides(in, sides); ROOT.parallelRound(in, round);\n" +
+            "        } else {\n" +
+            "            ROOT.area(in, areas); ROOT.sides(in, sides); ROOT.round(in, round);\n" +
+            "        }\n" +
+            "        int mismatches = 0;\n" +
+            "        for (int i = 0; i < in.length; i++) {\n" +
+            "            if (areas[i] != in[i].area() || sides[i] != in[i].sides() || round[i] != in[i].round()) mismatches++;\n" +
+            "        }\n" +
+            "        return mismatches + sides[in.length];\n" +
+            "    }\n" +
+            "    public static String run() {\n" +
+            "        ROOT[] small = shapes(10);\n" +
+            "        ROOT[] large = shapes(100_003);\n" +
+            "        String tooShort;\n" +
+            "        try {\n" +
+            "            ROOT.area(small, new double[9]);\n" +
+            "            tooShort = \"accepted\";\n" +
+            "        } catch (IllegalArgumentException e) {\n" +
+            "            tooShort = e.getMessage();\n" +
+            "        }\n" +
+            "        return mismatches(small, false) + \",\" + mismatches(small, true) + \",\" + mismatches(large, false)\n" +
+            "            + \",\" + mismatches(large, true) + \",\" + tooShort;\n" +
+            "    }\n" +
+            "}").replace("ROOT", root)
+        );
+    }
+
+    @Test
+    public void testBulkMethodsMatchPerElementCalls() throws Throwable {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef("Shape", ""), CIRCLE, SQUARE, TRIANGLE, driver("Shape"));
+
+        assertThat(compilation).succeeded();
+        assertEquals("0,0,0,0,out has 9 elements, in has 10", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testTaggedBulkMethodsMatchPerElementCalls() throws Throwable {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef("TaggedShape", ", tagged=true"), CIRCLE, SQUARE, TRIANGLE, driver("TaggedShape"));
+
+        assertThat(compilation).succeeded();
+        assertEquals("0,0,0,0,out has 9 elements, in has 10", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testOnlyNoArgPrimitiveMethodsGetBulkVariants() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef("Shape", ""), CIRCLE, SQUARE, TRIANGLE);
+
+        assertThat(compilation).succeeded();
+        String source = "com.example.Shape";
+        assertThat(compilation).generatedSourceFile(source).contentsAsUtf8String()
+            .contains("static void area(Shape[] in, double[] out)");
+        assertThat(compilation).generatedSourceFile(source).contentsAsUtf8String()
+            .contains("static void parallelSides(Shape[] in, int[] out)");
+        assertThat(compilation).generatedSourceFile(source).contentsAsUtf8String()
+            .doesNotContain("bulkLabel");
+        assertThat(compilation).generatedSourceFile(source).contentsAsUtf8String()
+            .doesNotContain("bulkScaled");
+    }
+}
@@ -0,0 +1,108 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class CompactModeTest {
+
+    private static final JavaFileObject PET_DEF = JavaFileObjects.forSourceString("com.example.PetDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Pet\", compact=true)\n" +
+        "@Permits(classes={Dog.class, Cat.class})\n" +
+        "public interface PetDef {\n" +
+        "    String name();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject DOG = JavaFileObjects.forSourceString("com.example.Dog",
+        "package com.example;\n" +
+        "public final class Dog {\n" +
+        "    public String name() { return \"dog\"; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CAT = JavaFileObjects.forSourceString("com.example.Cat",
+        "package com.example;\n" +
+        "public final class Cat {\n" +
+        "    public String name() { return \"cat\"; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testCompactModeSkipsStagedMatchers() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(PET_DEF, DOG, CAT);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadNoteContaining("Compact mode: 'Pet' emits 7 nested types instead of 34 (27 fewer).");
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Pet")
+            .contentsAsString(UTF_8)
+            .doesNotContain("MatcherStage0");
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Pet")
+            .contentsAsString(UTF_8)
+            .contains("static <R> Function<Pet, R> asFunction(Visitor<R> visitor)");
+    }
+
+    @Test
+    public void testCompactVisitorDispatch() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.function.Function;\n" +
+            "public final class Driver {\n" +
+            "    private static final Function<Pet, String> SOUND = Pet.asFunction(new Pet.Visitor<String>() {\n" +
+            "        public String onCat(Cat cat) { return \"meow\"; }\n" +
+            "        public String onDog(Dog dog) { return \"woof\"; }\n" +
+            "    });\n" +
+            "    public static String run() {\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        Pet.asConsumer(new Pet.Visitor<Void>() {\n" +
+            "            public Void onCat(Cat cat) { sb.append(cat.name()); return null; }\n" +
+            "            public Void onDog(Dog dog) { sb.append(dog.name()); return null; }\n" +
+            "        }).accept(Pet.wrap(new Cat()));\n" +
+            "        return SOUND.apply(Pet.wrap(new Dog())) + \",\" + sb;\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(PET_DEF, DOG, CAT, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("woof,cat", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testCompactVisitorStaysExhaustive() {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    static final Object SOUND = Pet.asFunction(new Pet.Visitor<String>() {\n" +
+            "        public String onDog(Dog dog) { return \"woof\"; }\n" +
+            "    });\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(PET_DEF, DOG, CAT, driver);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("onCat");
+    }
+}
@@ -0,0 +1,64 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads the class files of a successful {@link Compilation} so tests can exercise generated code at runtime.
+ */
+final class CompiledClasses extends ClassLoader {
+
+    private final Map<String, byte[]> classes = new HashMap<>();
+
+    CompiledClasses(Compilation compilation) {
+        super(CompiledClasses.class.getClassLoader());
+        for (JavaFileObject file : compilation.generatedFiles()) {
+            if (file.getKind() != JavaFileObject.Kind.CLASS) continue;
+            String path = file.toUri().getPath();
+            String binaryName = path.substring(path.indexOf("CLASS_OUTPUT/") + "CLASS_OUTPUT/".length(), path.length() - ".class".length())
+                    .replace('/', '.');
+            classes.put(binaryName, read(file));
+        }
+    }
+
+    /**
+     * Invokes a public static no-arg method, typically a {@code run()} method on a driver class compiled with the test.
+     */
+    static Object invoke(Compilation compilation, String className, String methodName) throws Throwable {
+        try {
+            return new CompiledClasses(compilation).loadClass(className).getMethod(methodName).invoke(null);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    private static byte[] read(JavaFileObject file) {
+        try (InputStream in = file.openInputStream()) {
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
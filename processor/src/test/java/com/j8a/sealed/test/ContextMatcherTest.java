@@ -0,0 +1,139 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class ContextMatcherTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\")\n" +
+        "@Permits(classes={Circle.class, Square.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    double area();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    public double area() { return 3.0; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    public double area() { return 4.0; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testContextVisitorGeneration() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Shape")
+            .contentsAsString(UTF_8)
+            .contains("R onCircle(Circle circle, C context);");
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Shape")
+            .contentsAsString(UTF_8)
+            .contains("<C, R> R accept(Visitor2<C, R> visitor, C context);");
+    }
+
+    @Test
+    public void testStaticContextMatchers() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.function.BiConsumer;\n" +
+            "import java.util.function.BiFunction;\n" +
+            "public final class Driver {\n" +
+            "    private static final BiFunction<Shape, Double, Double> SCALED = Shape.returning(Double.class, Double.class)\n" +
+            "        .onCircle((circle, factor) -> circle.area() * factor)\n" +
+            "        .onSquare((square, factor) -> square.area() * factor)\n" +
+            "        .asBiFunction();\n" +
+            "    private static final BiConsumer<Shape, StringBuilder> NAME = Shape.match(StringBuilder.class)\n" +
+            "        .onCircle((circle, out) -> out.append(\"circle;\"))\n" +
+            "        .onSquare((square, out) -> out.append(\"square;\"))\n" +
+            "        .asBiConsumer();\n" +
+            "    public static String run() {\n" +
+            "        StringBuilder out = new StringBuilder();\n" +
+            "        Shape circle = Shape.wrap(new Circle());\n" +
+            "        Shape square = Shape.lazySquare(Square::new);\n" +
+            "        NAME.accept(circle, out);\n" +
+            "        NAME.accept(square, out);\n" +
+            "        out.append(SCALED.apply(circle, 2.0)).append(';').append(SCALED.apply(square, 0.5));\n" +
+            "        return out.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("circle;square;6.0;2.0", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testGenericContextMatcher() throws Throwable {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\")\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.function.BiFunction;\n" +
+            "public final class Driver {\n" +
+            "    private static final BiFunction<Result<Integer>, Integer, Integer> OR_DEFAULT = Result.classOfValue(Integer.class)\n" +
+            "        .returning(Integer.class, Integer.class)\n" +
+            "        .onFailure((failure, fallback) -> fallback)\n" +
+            "        .onSuccess((ok, fallback) -> ok.get())\n" +
+            "        .asBiFunction();\n" +
+            "    public static String run() {\n" +
+            "        return OR_DEFAULT.apply(Result.wrap(new Success<>(7)), -1) + \",\" + OR_DEFAULT.apply(Result.<Integer>wrap(new Failure()), -1);\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("7,-1", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class DynamicWrapTest {
+
+    private static final JavaFileObject ANIMAL_DEF = JavaFileObjects.forSourceString("com.example.AnimalDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Animal\")\n" +
+        "@Permits(classes={Dog.class, Cat.class}, strict=false)\n" +
+        "public interface AnimalDef {\n" +
+        "    String sound();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject DOG = JavaFileObjects.forSourceString("com.example.Dog",
+        "package com.example;\n" +
+        "public class Dog {\n" +
+        "    public String sound() { return \"woof\"; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject PUPPY = JavaFileObjects.forSourceString("com.example.Puppy",
+        "package com.example;\n" +
+        "public class Puppy extends Dog {\n" +
+        "    @Override public String sound() { return \"yip\"; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CAT = JavaFileObjects.forSourceString("com.example.Cat",
+        "package com.example;\n" +
+        "public final class Cat {\n" +
+        "    public String sound() { return \"meow\"; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testWrapAnyResolvesLeavesAndSubclasses() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Object[] inputs = {new Cat(), new Puppy(), new Dog(), \"text\"};\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        for (Object input : inputs) {\n" +
+            "            sb.append(Animal.tryWrap(input).map(a -> a.kind() + \":\" + a.sound()).orElse(\"none\")).append(',');\n" +
+            "        }\n" +
+            "        Animal cat = Animal.wrapAny(new Cat());\n" +
+            "        sb.append(Animal.wrapAny(cat) == cat).append(',').append(Animal.Kind.of(Puppy.class).type().getSimpleName());\n" +
+            "        try {\n" +
+            "            Animal.wrapAny(42);\n" +
+            "        } catch (IllegalArgumentException e) {\n" +
+            "            sb.append(',').append(e.getMessage());\n" +
+            "        }\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(ANIMAL_DEF, DOG, PUPPY, CAT, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("CAT:meow,DOG:yip,DOG:woof,none,true,Dog,Not a permitted class of Animal: java.lang.Integer",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testWrapAnyLiftsIntoNestedHierarchy() throws Throwable {
+        JavaFileObject zooDef = JavaFileObjects.forSourceString("com.example.ZooDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Zoo\")\n" +
+            "@Permits(classes={AnimalDef.class, Keeper.class})\n" +
+            "public interface ZooDef {}"
+        );
+        JavaFileObject keeper = JavaFileObjects.forSourceString("com.example.Keeper",
+            "package com.example;\n" +
+            "public final class Keeper {}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Zoo zoo = Zoo.wrapAny(new Puppy());\n" +
+            "        return zoo.kind() + \",\" + zoo.leafKind() + \",\" + Zoo.wrapAny(new Keeper()).kind();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(ANIMAL_DEF, DOG, PUPPY, CAT, zooDef, keeper, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("ANIMAL,DOG,KEEPER", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
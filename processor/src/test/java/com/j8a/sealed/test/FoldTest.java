@@ -0,0 +1,270 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class FoldTest {
+
+    private static final JavaFileObject EXPR_DEF = JavaFileObjects.forSourceString("com.example.ExprDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Expr\")\n" +
+        "@Permits(classes={Num.class, Add.class, Call.class})\n" +
+        "public interface ExprDef {}"
+    );
+    private static final JavaFileObject NUM = JavaFileObjects.forSourceString("com.example.Num",
+        "package com.example;\n" +
+        "public final class Num {\n" +
+        "    private final int value;\n" +
+        "    public Num(int value) { this.value = value; }\n" +
+        "    public int value() { return value; }\n" +
+        "}"
+    );
+    private static final JavaFileObject ADD = JavaFileObjects.forSourceString("com.example.Add",
+        "package com.example;\n" +
+        "public final class Add {\n" +
+        "    private final Expr left;\n" +
+        "    private final Expr right;\n" +
+        "    public Add(Expr left, Expr right) { this.left = left; this.right = right; }\n" +
+        "    public Expr left() { return left; }\n" +
+        "    public Expr right() { return right; }\n" +
+        "}"
+    );
+    private static final JavaFileObject CALL = JavaFileObjects.forSourceString("com.example.Call",
+        "package com.example;\n" +
+        "import java.util.List;\n" +
+        "public final class Call {\n" +
+        "    private final String name;\n" +
+        "    private final List<Expr> args;\n" +
+        "    public Call(String name, List<Expr> args) { this.name = name; this.args = args; }\n" +
+        "    public String name() { return name; }\n" +
+        "    public List<Expr> args() { return args; }\n" +
+        "}"
+    );
+
+    private static final String SHOW =
+        "    static final Expr.Algebra<String> SHOW = new Expr.Algebra<String>() {\n" +
+        "        public String onNum(Num num) { return String.valueOf(num.value()); }\n" +
+        "        public String onAdd(Add add, String left, String right) { return \"(\" + left + \"+\" + right + \")\"; }\n" +
+        "        public String onCall(Call call, java.util.List<String> args) { return call.name() + args; }\n" +
+        "    };\n";
+
+    private static Compilation compile(JavaFileObject driver) {
+        return javac()
+            .withProcessors(new SealedProcessor())
+            .compile(EXPR_DEF, NUM, ADD, CALL, driver);
+    }
+
+    @Test
+    public void testFoldCombinesChildrenBottomUp() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Arrays;\n" +
+            "public final class Driver {\n" +
+            SHOW +
+            "    public static String run() {\n" +
+            "        Expr call = Expr.wrap(new Call(\"max\", Arrays.asList(Expr.wrap(new Num(1)), Expr.lazyNum(() -> new Num(2)))));\n" +
+            "        Expr expr = Expr.wrap(new Add(call, Expr.wrap(new Add(Expr.wrap(new Num(3)), Expr.wrap(new Num(4))))));\n" +
+            "        Expr empty = Expr.wrap(new Call(\"now\", Arrays.asList()));\n" +
+            "        return expr.fold(SHOW) + \" \" + empty.fold(SHOW) + \" \" + Expr.wrap(new Num(5)).fold(SHOW);\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("(max[1, 2]+(3+4)) now[] 5", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testDeepTreeDoesNotOverflowTheStack() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Collections;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Expr expr = Expr.wrap(new Num(0));\n" +
+            "        for (int i = 1; i <= 200_000; i++) {\n" +
+            "            expr = i % 2 == 0\n" +
+            "                ? Expr.wrap(new Add(expr, Expr.wrap(new Num(i))))\n" +
+            "                : Expr.wrap(new Call(\"id\", Collections.singletonList(expr)));\n" +
+            "        }\n" +
+            "        long sum = expr.fold(new Expr.Algebra<Long>() {\n" +
+            "            public Long onNum(Num num) { return (long) num.value(); }\n" +
+            "            public Long onAdd(Add add, Long left, Long right) { return left + right; }\n" +
+            "            public Long onCall(Call call, java.util.List<Long> args) { return args.get(0); }\n" +
+            "        });\n" +
+            "        return sum + \" \" + expr.stream().count();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("10000100000 300001", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testNodesAreVisitedInPreOrder() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Arrays;\n" +
+            "import java.util.stream.Collectors;\n" +
+            "public final class Driver {\n" +
+            SHOW +
+            "    public static String run() {\n" +
+            "        Expr expr = Expr.wrap(new Add(\n" +
+            "            Expr.wrap(new Call(\"f\", Arrays.asList(Expr.wrap(new Num(1)), Expr.wrap(new Num(2))))),\n" +
+            "            Expr.wrap(new Num(3))));\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        for (Expr node : expr.nodes()) {\n" +
+            "            sb.append(node.kind()).append(' ');\n" +
+            "        }\n" +
+            "        return sb + expr.stream().map(node -> node.fold(SHOW)).collect(Collectors.joining(\",\"));\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("ADD CALL NUM NUM NUM (f[1, 2]+3),f[1, 2],1,2,3",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testCollectionAccessorIsReadOncePerNode() throws Throwable {
+        JavaFileObject treeDef = JavaFileObjects.forSourceString("com.example.TreeDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Tree\")\n" +
+            "@Permits(classes={Num.class, Branch.class})\n" +
+            "public interface TreeDef {}"
+        );
+        JavaFileObject branch = JavaFileObjects.forSourceString("com.example.Branch",
+            "package com.example;\n" +
+            "import java.util.ArrayList;\n" +
+            "import java.util.List;\n" +
+            "public final class Branch {\n" +
+            "    static int reads;\n" +
+            "    private final List<Tree> children;\n" +
+            "    public Branch(List<Tree> children) { this.children = children; }\n" +
+            "    public List<Tree> children() { reads++; return new ArrayList<>(children); }\n" +
+            "}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Arrays;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Tree leafs = Tree.wrap(new Branch(Arrays.asList(Tree.wrap(new Num(1)), Tree.wrap(new Num(2)))));\n" +
+            "        Tree tree = Tree.wrap(new Branch(Arrays.asList(leafs, Tree.wrap(new Branch(Arrays.asList())))));\n" +
+            "        int sum = tree.fold(new Tree.Algebra<Integer>() {\n" +
+            "            public Integer onNum(Num num) { return num.value(); }\n" +
+            "            public Integer onBranch(Branch b, java.util.List<Integer> children) {\n" +
+            "                return children.stream().mapToInt(Integer::intValue).sum();\n" +
+            "            }\n" +
+            "        });\n" +
+            "        return sum + \" \" + Branch.reads;\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(treeDef, NUM, branch, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("3 3", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testNullChildIsReportedByAccessor() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            SHOW +
+            "    public static String run() {\n" +
+            "        try {\n" +
+            "            Expr.wrap(new Add(Expr.wrap(new Num(1)), null)).fold(SHOW);\n" +
+            "            return \"no exception\";\n" +
+            "        } catch (NullPointerException e) {\n" +
+            "            return e.getMessage();\n" +
+            "        }\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("Add.right() is null", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testTaggedRepresentationFolds() throws Throwable {
+        JavaFileObject exprDef = JavaFileObjects.forSourceString("com.example.ExprDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Expr\", tagged=true)\n" +
+            "@Permits(classes={Num.class, Add.class, Call.class})\n" +
+            "public interface ExprDef {}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Arrays;\n" +
+            "public final class Driver {\n" +
+            SHOW +
+            "    public static String run() {\n" +
+            "        Expr expr = Expr.wrap(new Add(Expr.wrap(new Num(1)), Expr.wrap(new Call(\"g\", Arrays.asList(Expr.wrap(new Num(2)))))));\n" +
+            "        return expr.fold(SHOW) + \" \" + expr.stream().count();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(exprDef, NUM, ADD, CALL, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("(1+g[2]) 4", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testNonRecursiveHierarchyHasNoFold() {
+        JavaFileObject shapeDef = JavaFileObjects.forSourceString("com.example.ShapeDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Shape\")\n" +
+            "@Permits(classes={Circle.class})\n" +
+            "public interface ShapeDef {}"
+        );
+        JavaFileObject circle = JavaFileObjects.forSourceString("com.example.Circle",
+            "package com.example;\n" +
+            "public final class Circle {}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef, circle);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .doesNotContain("Algebra");
+    }
+}
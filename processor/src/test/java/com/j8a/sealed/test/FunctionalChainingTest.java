@@ -9,6 +9,7 @@ import javax.tools.JavaFileObject;
 
 import static com.google.testing.compile.CompilationSubject.assertThat;
 import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class FunctionalChainingTest {
@@ -52,4 +53,103 @@ public class FunctionalChainingTest {
         assertTrue("Should contain map method using flatMap", content.contains("default <U> Result<U> map(Function<? super T, ? extends U> mapper)"));
         assertTrue("map should call flatMap", content.contains("return this.flatMap(val -> Result.wrap(new Success<>(mapper.apply(val))))"));
     }
+
+    @Test
+    public void testStepRunsChainsWithoutGrowingTheStack() throws Throwable {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\")\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.concurrent.atomic.AtomicInteger;\n" +
+            "public class Driver {\n" +
+            "    static Result.Step<Integer> countUp(int remaining, int total) {\n" +
+            "        Result.Step<Integer> here = Result.wrap(new Success<>(total)).step();\n" +
+            "        return remaining == 0 ? here : here.flatMap(v -> countUp(remaining - 1, v + 1));\n" +
+            "    }\n" +
+            "    static String show(Result<Integer> result) {\n" +
+            "        return result.accept(new Result.Visitor<Integer, String>() {\n" +
+            "            @Override public String onSuccess(Success<Integer> val) { return \"success \" + val.get(); }\n" +
+            "            @Override public String onFailure(Failure val) { return \"failure\"; }\n" +
+            "        });\n" +
+            "    }\n" +
+            "    public static String run() {\n" +
+            "        AtomicInteger mapped = new AtomicInteger();\n" +
+            "        Result<Integer> failed = Result.<Integer>wrap(new Failure()).step()\n" +
+            "            .flatMap(v -> { mapped.incrementAndGet(); return Result.wrap(new Success<>(v + 1)).step(); })\n" +
+            "            .map(v -> { mapped.incrementAndGet(); return v * 2; })\n" +
+            "            .run();\n" +
+            "        AtomicInteger forced = new AtomicInteger();\n" +
+            "        Result.Step<Integer> lazy = Result.suspend(() -> { forced.incrementAndGet(); return Result.wrap(new Success<>(20)).step(); })\n" +
+            "            .map(v -> v + 1);\n" +
+            "        int forcedBeforeRun = forced.get();\n" +
+            "        String lazyResult = show(lazy.run());\n" +
+            "        return show(failed) + \", mapped \" + mapped.get()\n" +
+            "            + \"; forced \" + forcedBeforeRun + \" then \" + forced.get() + \", \" + lazyResult\n" +
+            "            + \"; \" + show(countUp(100000, 0).run());\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("failure, mapped 0; forced 0 then 1, success 21; success 100000",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testStepMethodClashFails() {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\")\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {\n" +
+            "    int step();\n" +
+            "}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "    public int step() { return 1; }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {\n" +
+            "    public int step() { return 0; }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Method 'step()' in @Sealed interface 'ResultDef' clashes with the generated method");
+    }
 }
@@ -0,0 +1,109 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class KindUtilitiesTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\")\n" +
+        "@Permits(classes={Circle.class, Square.class, Triangle.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    int size();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    private final int size;\n" +
+        "    public Circle(int size) { this.size = size; }\n" +
+        "    public int size() { return size; }\n" +
+        "    @Override public String toString() { return \"C\" + size; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    private final int size;\n" +
+        "    public Square(int size) { this.size = size; }\n" +
+        "    public int size() { return size; }\n" +
+        "    @Override public String toString() { return \"S\" + size; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject TRIANGLE = JavaFileObjects.forSourceString("com.example.Triangle",
+        "package com.example;\n" +
+        "public final class Triangle {\n" +
+        "    private final int size;\n" +
+        "    public Triangle(int size) { this.size = size; }\n" +
+        "    public int size() { return size; }\n" +
+        "    @Override public String toString() { return \"T\" + size; }\n" +
+        "}"
+    );
+
+    private static final String SHAPES =
+        "        Shape[] shapes = {Shape.wrap(new Triangle(1)), Shape.wrap(new Circle(3)), Shape.wrap(new Square(2)),\n" +
+        "            Shape.lazyCircle(() -> new Circle(1)), Shape.wrap(new Triangle(0)), Shape.wrap(new Circle(2))};\n";
+
+    @Test
+    public void testSortAndGroupByKindAreStable() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Arrays;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            SHAPES +
+            "        Shape[][] groups = Shape.groupByKind(shapes);\n" +
+            "        Shape.sortByKind(shapes);\n" +
+            "        return Arrays.toString(shapes) + \" \" + Arrays.deepToString(groups) + \" \" + groups[Shape.Kind.SQUARE.ordinal()].length;\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, TRIANGLE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("[C3, Lazy(CIRCLE), C2, S2, T1, T0] [[C3, Lazy(CIRCLE), C2], [S2], [T1, T0]] 1",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testComparatorOrdersByKindThenLeaf() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.Arrays;\n" +
+            "import java.util.Comparator;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            SHAPES +
+            "        Arrays.sort(shapes, Shape.comparator(Comparator.comparingInt(Circle::size), null,\n" +
+            "            Comparator.comparingInt(Triangle::size).reversed()));\n" +
+            "        return Arrays.toString(shapes);\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, TRIANGLE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("[C1, C2, C3, S2, T1, T0]", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
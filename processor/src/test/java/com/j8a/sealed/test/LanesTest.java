@@ -0,0 +1,132 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class LanesTest {
+
+    private static JavaFileObject messageDef(String attributes) {
+        return JavaFileObjects.forSourceString("com.example.MessageDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "\n" +
+            "@Sealed(name=\"Message\"" + attributes + ")\n" +
+            "@Permits(classes={Quote.class, Trade.class})\n" +
+            "public interface MessageDef {\n" +
+            "    int producer();\n" +
+            "    long sequence();\n" +
+            "}"
+        );
+    }
+
+    private static JavaFileObject leaf(String name) {
+        return JavaFileObjects.forSourceString("com.example." + name,
+            "package com.example;\n" +
+            "public final class " + name + " {\n" +
+            "    private final int producer;\n" +
+            "    private final long sequence;\n" +
+            "    public " + name + "(int producer, long sequence) { this.producer = producer; this.sequence = sequence; }\n" +
+            "    public int producer() { return producer; }\n" +
+            "    public long sequence() { return sequence; }\n" +
+            "}"
+        );
+    }
+
+    private static Object run(JavaFileObject driver, String attributes) throws Throwable {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(messageDef(attributes), leaf("Quote"), leaf("Trade"), driver);
+
+        assertThat(compilation).succeeded();
+        return CompiledClasses.invoke(compilation, "com.example.Driver", "run");
+    }
+
+    @Test
+    public void testBoundedLanesAndDepthMetrics() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Message.Lanes lanes = new Message.Lanes(3, Message.Lanes.Wait.SPIN);\n" +
+            "        StringBuilder sb = new StringBuilder().append(lanes.capacity()).append(';');\n" +
+            "        for (int i = 0; i < 5; i++) sb.append(lanes.offer(Message.wrap(new Quote(0, i))) ? 'y' : 'n');\n" +
+            "        sb.append(lanes.offer(Message.wrap(new Trade(0, 9))) ? 'y' : 'n').append(';');\n" +
+            "        sb.append(lanes.depth(Message.Kind.QUOTE)).append(',').append(lanes.depth()).append(';');\n" +
+            "        Message.Visitor<Void> log = new Message.Visitor<Void>() {\n" +
+            "            public Void onQuote(Quote quote) { sb.append('q').append(quote.sequence()); return null; }\n" +
+            "            public Void onTrade(Trade trade) { sb.append('t').append(trade.sequence()); return null; }\n" +
+            "        };\n" +
+            "        sb.append(lanes.drain(log, 3)).append(';');\n" +
+            "        sb.append(lanes.drain(log, 3)).append(';').append(lanes.drain(log, 3)).append(';');\n" +
+            "        sb.append(lanes.depth()).append(',').append(lanes.peakDepth(Message.Kind.QUOTE)).append(',')\n" +
+            "          .append(lanes.peakDepth(Message.Kind.TRADE));\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        assertEquals("4;yyyyny;4,5;q0q1q2t94;q31;0;0,4,1", run(driver, ""));
+    }
+
+    @Test
+    public void testProducersNeverLoseOrReorderPerKind() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    static final int PRODUCERS = 4;\n" +
+            "    static final int PER_PRODUCER = 2_500;\n" +
+            "    public static String run() throws InterruptedException {\n" +
+            "        String result = \"\";\n" +
+            "        for (Message.Lanes.Wait wait : Message.Lanes.Wait.values()) {\n" +
+            "            result += wait + \":\" + exchange(new Message.Lanes(64, wait)) + \" \";\n" +
+            "        }\n" +
+            "        return result.trim();\n" +
+            "    }\n" +
+            "    private static String exchange(Message.Lanes lanes) throws InterruptedException {\n" +
+            "        Thread[] producers = new Thread[PRODUCERS];\n" +
+            "        for (int p = 0; p < PRODUCERS; p++) {\n" +
+            "            int producer = p;\n" +
+            "            producers[p] = new Thread(() -> {\n" +
+            "                try {\n" +
+            "                    for (long i = 0; i < PER_PRODUCER; i++) {\n" +
+            "                        lanes.put(i % 3 == 0 ? Message.wrap(new Trade(producer, i)) : Message.wrap(new Quote(producer, i)));\n" +
+            "                    }\n" +
+            "                } catch (InterruptedException e) {\n" +
+            "                    Thread.currentThread().interrupt();\n" +
+            "                }\n" +
+            "            });\n" +
+            "            producers[p].start();\n" +
+            "        }\n" +
+            "        long[][] last = new long[2][PRODUCERS];\n" +
+            "        for (long[] row : last) java.util.Arrays.fill(row, -1);\n" +
+            "        int[] outOfOrder = new int[1];\n" +
+            "        Message.Visitor<Void> check = new Message.Visitor<Void>() {\n" +
+            "            public Void onQuote(Quote quote) { see(0, quote.producer(), quote.sequence()); return null; }\n" +
+            "            public Void onTrade(Trade trade) { see(1, trade.producer(), trade.sequence()); return null; }\n" +
+            "            private void see(int kind, int producer, long sequence) {\n" +
+            "                if (sequence <= last[kind][producer]) outOfOrder[0]++;\n" +
+            "                last[kind][producer] = sequence;\n" +
+            "            }\n" +
+            "        };\n" +
+            "        long drained = 0;\n" +
+            "        while (drained < (long) PRODUCERS * PER_PRODUCER) {\n" +
+            "            drained += lanes.awaitDrain(check, 16);\n" +
+            "        }\n" +
+            "        for (Thread producer : producers) producer.join();\n" +
+            "        return drained + \",\" + outOfOrder[0] + \",\" + lanes.depth() + \",\" + (lanes.peakDepth(Message.Kind.QUOTE) <= 64);\n" +
+            "    }\n" +
+            "}"
+        );
+
+        assertEquals("SPIN:10000,0,0,true YIELD:10000,0,0,true PARK:10000,0,0,true", run(driver, ", tagged=true"));
+    }
+}
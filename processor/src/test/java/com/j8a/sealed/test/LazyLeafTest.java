@@ -0,0 +1,124 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class LazyLeafTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\")\n" +
+        "@Permits(classes={Circle.class, Square.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    double area();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    public double area() { return 3.0; }\n" +
+        "    @Override public boolean equals(Object o) { return o instanceof Circle; }\n" +
+        "    @Override public int hashCode() { return 1; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    public double area() { return 4.0; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testLazyFactoryGeneration() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Shape")
+            .contentsAsString(UTF_8)
+            .contains("static Shape lazyCircle(Supplier<? extends Circle> supplier)");
+    }
+
+    @Test
+    public void testSupplierRunsOnceOnFirstDispatch() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.concurrent.atomic.AtomicInteger;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        AtomicInteger calls = new AtomicInteger();\n" +
+            "        Shape lazy = Shape.lazyCircle(() -> { calls.incrementAndGet(); return new Circle(); });\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        sb.append(lazy.kind()).append(',').append(lazy).append(',').append(calls.get());\n" +
+            "        Shape.Visitor<String> names = new Shape.Visitor<String>() {\n" +
+            "            public String onCircle(Circle circle) { return \"circle\"; }\n" +
+            "            public String onSquare(Square square) { return \"square\"; }\n" +
+            "        };\n" +
+            "        sb.append(',').append(lazy.accept(names)).append(',').append(lazy.accept(names));\n" +
+            "        sb.append(',').append(lazy.area()).append(',').append(calls.get());\n" +
+            "        Shape eager = Shape.wrap(new Circle());\n" +
+            "        sb.append(',').append(eager.equals(lazy)).append(',').append(lazy.equals(eager));\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("CIRCLE,Lazy(CIRCLE),0,circle,circle,3.0,1,true,true",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testConcurrentFirstDispatchMaterializesOnce() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.concurrent.CountDownLatch;\n" +
+            "import java.util.concurrent.atomic.AtomicInteger;\n" +
+            "public final class Driver {\n" +
+            "    public static Integer run() throws InterruptedException {\n" +
+            "        AtomicInteger calls = new AtomicInteger();\n" +
+            "        Shape lazy = Shape.lazySquare(() -> { calls.incrementAndGet(); return new Square(); });\n" +
+            "        CountDownLatch start = new CountDownLatch(1);\n" +
+            "        Thread[] threads = new Thread[8];\n" +
+            "        for (int i = 0; i < threads.length; i++) {\n" +
+            "            threads[i] = new Thread(() -> {\n" +
+            "                try { start.await(); } catch (InterruptedException e) { return; }\n" +
+            "                lazy.area();\n" +
+            "            });\n" +
+            "            threads[i].start();\n" +
+            "        }\n" +
+            "        start.countDown();\n" +
+            "        for (Thread thread : threads) thread.join();\n" +
+            "        return calls.get();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals(1, CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
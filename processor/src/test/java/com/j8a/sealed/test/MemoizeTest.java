@@ -0,0 +1,163 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class MemoizeTest {
+
+    private static JavaFileObject shapeDef(String name, String attributes) {
+        return JavaFileObjects.forSourceString("com.example." + name + "Def",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Memoize;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import java.util.List;\n" +
+            "\n" +
+            "@Sealed(name=\"" + name + "\"" + attributes + ")\n" +
+            "@Permits(classes={Circle.class, Square.class})\n" +
+            "public interface " + name + "Def {\n" +
+            "    @Memoize double area();\n" +
+            "    @Memoize long serializedSize();\n" +
+            "    @Memoize boolean round();\n" +
+            "    @Memoize List<String> canonicalKey();\n" +
+            "    int sides();\n" +
+            "}"
+        );
+    }
+
+    // Counts the calls of every memoized method; results include the zero and null a cache must not confuse with unset
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "import java.util.Collections;\n" +
+        "import java.util.List;\n" +
+        "public final class Circle {\n" +
+        "    public int calls;\n" +
+        "    public double area() { calls++; return -0.0; }\n" +
+        "    public long serializedSize() { calls++; return 0; }\n" +
+        "    public boolean round() { calls++; return true; }\n" +
+        "    public List<String> canonicalKey() { calls++; return Collections.singletonList(\"circle\"); }\n" +
+        "    public int sides() { calls++; return 0; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "import java.util.List;\n" +
+        "public final class Square {\n" +
+        "    public int calls;\n" +
+        "    public double area() { calls++; return 0.0; }\n" +
+        "    public long serializedSize() { calls++; return 16; }\n" +
+        "    public boolean round() { calls++; return false; }\n" +
+        "    public List<String> canonicalKey() { calls++; return null; }\n" +
+        "    public int sides() { calls++; return 4; }\n" +
+        "}"
+    );
+
+    private static final String DRIVER_BODY =
+        "    private static String calls(ROOT shape) {\n" +
+        "        StringBuilder sb = new StringBuilder();\n" +
+        "        for (int i = 0; i < 3; i++) {\n" +
+        "            sb.append(1 / shape.area()).append(',').append(shape.serializedSize()).append(',')\n" +
+        "              .append(shape.round()).append(',').append(shape.canonicalKey()).append(',').append(shape.sides()).append(';');\n" +
+        "        }\n" +
+        "        return sb.toString();\n" +
+        "    }\n" +
+        "    public static String run() {\n" +
+        "        Circle circle = new Circle();\n" +
+        "        Square square = new Square();\n" +
+        "        return calls(ROOT.wrap(circle)) + circle.calls + '|' + calls(ROOT.wrap(square)) + square.calls;\n" +
+        "    }\n";
+
+    private static JavaFileObject driver(String root) {
+        return JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            DRIVER_BODY.replace("ROOT", root) +
+            "}"
+        );
+    }
+
+    // Circle: 4 memoized calls once each plus 3 sides() calls. Square: the null key is recomputed every time.
+    private static final String EXPECTED =
+        "-Infinity,0,true,[circle],0;-Infinity,0,true,[circle],0;-Infinity,0,true,[circle],0;7|"
+        + "Infinity,16,false,null,4;Infinity,16,false,null,4;Infinity,16,false,null,4;9";
+
+    @Test
+    public void testWrapperCallsMemoizedMethodsOnce() throws Throwable {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef("Shape", ""), CIRCLE, SQUARE, driver("Shape"));
+
+        assertThat(compilation).succeeded();
+        assertEquals(EXPECTED, CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testTaggedWrapperCallsMemoizedMethodsOnce() throws Throwable {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef("TaggedShape", ", tagged=true"), CIRCLE, SQUARE, driver("TaggedShape"));
+
+        assertThat(compilation).succeeded();
+        assertEquals(EXPECTED, CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testLongAndDoubleMemosAreVolatile() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef("Shape", ""), CIRCLE, SQUARE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("private volatile double areaMemo;");
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("private volatile long serializedSizeMemo;");
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("private boolean roundMemo;");
+    }
+
+    @Test
+    public void testMemoizedMethodWithParametersIsRejected() {
+        JavaFileObject def = JavaFileObjects.forSourceString("com.example.PetDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Memoize;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "@Sealed(name=\"Pet\")\n" +
+            "@Permits(classes={Dog.class})\n" +
+            "public interface PetDef {\n" +
+            "    @Memoize int age(int year);\n" +
+            "}"
+        );
+        JavaFileObject dog = JavaFileObjects.forSourceString("com.example.Dog",
+            "package com.example;\n" +
+            "public final class Dog { public int age(int year) { return year; } }"
+        );
+
+        Compilation compilation = javac().withProcessors(new SealedProcessor()).compile(def, dog);
+
+        assertThat(compilation).hadErrorContaining("@Memoize method 'age(int)' in 'PetDef' takes parameters.");
+    }
+
+    @Test
+    public void testMemoizeOutsideAnInterfaceIsRejected() {
+        JavaFileObject dog = JavaFileObjects.forSourceString("com.example.Dog",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Memoize;\n" +
+            "public final class Dog { @Memoize public int age() { return 3; } }"
+        );
+
+        Compilation compilation = javac().withProcessors(new SealedProcessor()).compile(dog);
+
+        assertThat(compilation).hadErrorContaining("A @Memoize annotation can only be used on an abstract method");
+    }
+}
@@ -0,0 +1,167 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class MemoizedMatcherTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\")\n" +
+        "@Permits(classes={Circle.class, Square.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    int size();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    private final int size;\n" +
+        "    public Circle(int size) { this.size = size; }\n" +
+        "    public int size() { return size; }\n" +
+        "    @Override public boolean equals(Object o) { return o instanceof Circle && ((Circle) o).size == size; }\n" +
+        "    @Override public int hashCode() { return size; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    private final int size;\n" +
+        "    public Square(int size) { this.size = size; }\n" +
+        "    public int size() { return size; }\n" +
+        "    @Override public boolean equals(Object o) { return o instanceof Square && ((Square) o).size == size; }\n" +
+        "    @Override public int hashCode() { return size; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testMemoizedFunctionCachesAndEvictsLeastRecentlyUsed() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    static int calls;\n" +
+            "\n" +
+            "    public static String run() {\n" +
+            "        Shape.MemoizedFunction<String> describe = Shape.returning(String.class)\n" +
+            "            .onCircle(c -> { calls++; return \"c\" + c.size(); })\n" +
+            "            .onSquare(s -> { calls++; return null; })\n" +
+            "            .asMemoizedFunction(2);\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        sb.append(describe.apply(Shape.wrap(new Circle(1))));\n" +
+            "        sb.append(describe.apply(Shape.lazyCircle(() -> new Circle(1))));\n" +
+            "        sb.append(describe.apply(Shape.wrap(new Square(2))));\n" +
+            "        sb.append(describe.apply(Shape.wrap(new Square(2))));\n" +
+            "        describe.apply(Shape.wrap(new Circle(3)));\n" +
+            "        describe.apply(Shape.wrap(new Circle(1)));\n" +
+            "        sb.append(' ').append(calls).append(' ').append(describe.hitCount()).append('/').append(describe.missCount())\n" +
+            "            .append(' ').append(describe.size()).append(' ').append(describe.hitRate());\n" +
+            "        describe.clear();\n" +
+            "        sb.append(' ').append(describe.size());\n" +
+            "        try {\n" +
+            "            Shape.returning(String.class).onCircle(c -> \"\").onSquare(s -> \"\").asMemoizedFunction(0);\n" +
+            "        } catch (IllegalArgumentException e) {\n" +
+            "            sb.append(' ').append(e.getMessage());\n" +
+            "        }\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("c1c1nullnull 4 2/4 2 0.3333333333333333 0 maxEntries must be positive: 0",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testMemoizedFunctionSkipsKindsThatAreNotListed() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    static int calls;\n" +
+            "\n" +
+            "    public static String run() {\n" +
+            "        Shape.MemoizedFunction<Integer> area = Shape.returning(Integer.class)\n" +
+            "            .onCircle(c -> { calls++; return 3 * c.size() * c.size(); })\n" +
+            "            .onSquare(s -> { calls++; return s.size() * s.size(); })\n" +
+            "            .asMemoizedFunction(100, Shape.Kind.CIRCLE);\n" +
+            "        int total = 0;\n" +
+            "        for (int i = 0; i < 10; i++) {\n" +
+            "            total += area.apply(Shape.wrap(new Circle(i % 2))) + area.apply(Shape.wrap(new Square(1)));\n" +
+            "        }\n" +
+            "        return total + \" \" + calls + \" \" + area.hitCount() + \"/\" + area.missCount() + \" \" + area.size();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("25 12 8/2 2", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testGenericMemoizedFunctionOnClassOfValue() throws Throwable {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\")\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "    @Override public boolean equals(Object o) { return o instanceof Success && ((Success<?>) o).value.equals(value); }\n" +
+            "    @Override public int hashCode() { return value.hashCode(); }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Result.MemoizedFunction<String, Integer> length = Result.classOfValue(String.class)\n" +
+            "            .returning(Integer.class)\n" +
+            "            .onFailure(f -> -1)\n" +
+            "            .onSuccess(s -> s.get().length())\n" +
+            "            .asMemoizedFunction(16);\n" +
+            "        int total = length.apply(Result.wrap(new Success<>(\"four\"))) + length.apply(Result.wrap(new Success<>(\"four\")));\n" +
+            "        return total + \" \" + length.hitRate();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("8 0.5", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
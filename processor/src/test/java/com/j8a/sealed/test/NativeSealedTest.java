@@ -0,0 +1,146 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class NativeSealedTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\")\n" +
+        "@Permits(classes={Circle.class, Square.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    int size();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    public int size() { return 1; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    public int size() { return 2; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testRootIsNativelySealedOnJava17() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        java.util.function.Function<Shape, String> name = Shape.returning(String.class)\n" +
+            "            .onCircle(c -> \"circle\")\n" +
+            "            .onSquare(s -> \"square\")\n" +
+            "            .asFunction();\n" +
+            "        return name.apply(Shape.wrap(new Circle())) + \" \" + name.apply(Shape.lazySquare(Square::new))\n" +
+            "            + \" \" + Shape.class.isSealed();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("--release", "17", "-Aj8a.sealed.native=true")
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("public sealed interface Shape extends ShapeDef {");
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("abstract sealed class Wrapper<V> implements Shape {");
+        // Pattern matching in switch is final only from Java 21, so matchers keep visitor dispatch
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .doesNotContain("switch (root)");
+        assertEquals("circle square true", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testMatchersSwitchOnPatternsOnJava21() throws Throwable {
+        assumeTrue("Needs a JDK 21 compiler", SourceVersion.latest().ordinal() >= 21);
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        java.util.function.Function<Shape, String> name = Shape.returning(String.class)\n" +
+            "            .onCircle(c -> \"circle\")\n" +
+            "            .onSquare(s -> \"square\")\n" +
+            "            .asFunction();\n" +
+            "        java.util.function.Consumer<Shape> append = Shape.match()\n" +
+            "            .onCircle(c -> sb.append(c.size()))\n" +
+            "            .onSquare(s -> sb.append(s.size()))\n" +
+            "            .asConsumer();\n" +
+            "        append.accept(Shape.wrap(new Circle()));\n" +
+            "        append.accept(Shape.lazySquare(Square::new));\n" +
+            "        return name.apply(Shape.wrap(new Circle())) + \" \" + name.apply(Shape.lazySquare(Square::new)) + \" \" + sb;\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("--release", "21", "-Aj8a.sealed.native=true")
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, driver);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("return switch (root) {");
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("case CircleWrapper w -> onCircle.accept(w.value);");
+        assertEquals("circle square 12", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testForeignImplementationIsRejected() {
+        JavaFileObject rogue = JavaFileObjects.forSourceString("com.example.Rogue",
+            "package com.example;\n" +
+            "public final class Rogue implements Shape {\n" +
+            "    public int size() { return 0; }\n" +
+            "    public <R> R accept(Visitor<R> visitor) { return null; }\n" +
+            "    public <C, R> R accept(Visitor2<C, R> visitor, C context) { return null; }\n" +
+            "    public Kind kind() { return Kind.CIRCLE; }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("--release", "17", "-Aj8a.sealed.native=true")
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, rogue);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("sealed");
+    }
+
+    @Test
+    public void testOptionIsIgnoredBelowJava17() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("--release", "8", "-Aj8a.sealed.native=true")
+            .compile(SHAPE_DEF, CIRCLE, SQUARE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadWarningContaining(
+            "Ignoring -Aj8a.sealed.native: sealed types need source version 17 or later, but this compilation targets RELEASE_8.");
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("public interface Shape extends ShapeDef {");
+    }
+}
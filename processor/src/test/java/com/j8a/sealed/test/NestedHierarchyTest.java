@@ -0,0 +1,164 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class NestedHierarchyTest {
+
+    private static final JavaFileObject EVENT_DEF = JavaFileObjects.forSourceString("com.example.EventDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Event\")\n" +
+        "@Permits(classes={OrderEventDef.class, Heartbeat.class})\n" +
+        "public interface EventDef {\n" +
+        "    long timestamp();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject ORDER_EVENT_DEF = JavaFileObjects.forSourceString("com.example.OrderEventDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"OrderEvent\")\n" +
+        "@Permits(classes={OrderPlaced.class, OrderCancelled.class})\n" +
+        "public interface OrderEventDef {\n" +
+        "    long timestamp();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject ORDER_PLACED = JavaFileObjects.forSourceString("com.example.OrderPlaced",
+        "package com.example;\n" +
+        "public final class OrderPlaced {\n" +
+        "    public long timestamp() { return 1L; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject ORDER_CANCELLED = JavaFileObjects.forSourceString("com.example.OrderCancelled",
+        "package com.example;\n" +
+        "public final class OrderCancelled {\n" +
+        "    public long timestamp() { return 2L; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject HEARTBEAT = JavaFileObjects.forSourceString("com.example.Heartbeat",
+        "package com.example;\n" +
+        "public final class Heartbeat {\n" +
+        "    public long timestamp() { return 3L; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testFlattenedDispatchGeneration() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(EVENT_DEF, ORDER_EVENT_DEF, ORDER_PLACED, ORDER_CANCELLED, HEARTBEAT);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Event")
+            .contentsAsString(UTF_8)
+            .contains("interface LeafVisitor<R> extends OrderEvent.Visitor<R>");
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Event")
+            .contentsAsString(UTF_8)
+            .contains("static Event wrap(OrderPlaced s)");
+    }
+
+    @Test
+    public void testFlattenedDispatchAtRuntime() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Event.LeafVisitor<String> names = new Event.LeafVisitor<String>() {\n" +
+            "            public String onHeartbeat(Heartbeat heartbeat) { return \"heartbeat\"; }\n" +
+            "            public String onOrderCancelled(OrderCancelled cancelled) { return \"cancelled\"; }\n" +
+            "            public String onOrderPlaced(OrderPlaced placed) { return \"placed\"; }\n" +
+            "        };\n" +
+            "        Event placed = Event.wrap(new OrderPlaced());\n" +
+            "        Event heartbeat = Event.wrap(new Heartbeat());\n" +
+            "        String intermediate = placed.accept(new Event.Visitor<String>() {\n" +
+            "            public String onHeartbeat(Heartbeat heartbeat) { return \"heartbeat\"; }\n" +
+            "            public String onOrderEvent(OrderEvent order) { return \"order\"; }\n" +
+            "        });\n" +
+            "        return placed.acceptLeaf(names) + \",\" + heartbeat.acceptLeaf(names) + \",\" + intermediate\n" +
+            "            + \",\" + placed.kind() + \",\" + placed.leafKind() + \",\" + heartbeat.leafKind() + \",\" + placed.timestamp();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(EVENT_DEF, ORDER_EVENT_DEF, ORDER_PLACED, ORDER_CANCELLED, HEARTBEAT, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("placed,heartbeat,order,ORDER_EVENT,ORDER_PLACED,HEARTBEAT,1",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testCyclicNestingFails() {
+        JavaFileObject a = JavaFileObjects.forSourceString("com.example.ADef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"A\")\n" +
+            "@Permits(classes={BDef.class, Heartbeat.class})\n" +
+            "public interface ADef {}"
+        );
+        JavaFileObject b = JavaFileObjects.forSourceString("com.example.BDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"B\")\n" +
+            "@Permits(classes={ADef.class})\n" +
+            "public interface BDef {}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(a, b, HEARTBEAT);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Cyclic @Sealed nesting");
+    }
+
+    @Test
+    public void testKindMethodClashFails() {
+        JavaFileObject blueprint = JavaFileObjects.forSourceString("com.example.PingDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Ping\")\n" +
+            "@Permits(classes={Pong.class})\n" +
+            "public interface PingDef {\n" +
+            "    String kind();\n" +
+            "}"
+        );
+        JavaFileObject pong = JavaFileObjects.forSourceString("com.example.Pong",
+            "package com.example;\n" +
+            "public final class Pong {\n" +
+            "    public String kind() { return \"pong\"; }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(blueprint, pong);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Method 'kind()' in @Sealed interface 'PingDef' clashes with the generated method");
+    }
+}
@@ -0,0 +1,128 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class OffHeapArenaTest {
+
+    private static final JavaFileObject MARKET_DEF = JavaFileObjects.forSourceString("com.example.MarketDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Market\", offHeap=true)\n" +
+        "@Permits(classes={Tick.class, Halt.class})\n" +
+        "public interface MarketDef {\n" +
+        "    long time();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject TICK = JavaFileObjects.forSourceString("com.example.Tick",
+        "package com.example;\n" +
+        "public final class Tick {\n" +
+        "    private final long time;\n" +
+        "    private final double price;\n" +
+        "    private final int size;\n" +
+        "    public Tick(long time, double price, int size) { this.time = time; this.price = price; this.size = size; }\n" +
+        "    public long time() { return time; }\n" +
+        "    public double price() { return price; }\n" +
+        "    public int size() { return size; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject HALT = JavaFileObjects.forSourceString("com.example.Halt",
+        "package com.example;\n" +
+        "public final class Halt {\n" +
+        "    private final long time;\n" +
+        "    private final boolean resumable;\n" +
+        "    public Halt(long time, boolean resumable) { this.time = time; this.resumable = resumable; }\n" +
+        "    public long time() { return time; }\n" +
+        "    public boolean resumable() { return resumable; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testArenaStoresAndVisitsValuesOffHeap() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    static final Market.Arena.Visitor<String> DESCRIBE = new Market.Arena.Visitor<String>() {\n" +
+            "        @Override public String onHalt(Market.Arena.HaltView halt) { return halt.toString(); }\n" +
+            "        @Override public String onTick(Market.Arena.TickView tick) { return \"notional=\" + tick.price() * tick.size(); }\n" +
+            "    };\n" +
+            "\n" +
+            "    public static String run() {\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        try (Market.Arena arena = new Market.Arena(2, 5)) {\n" +
+            "            arena.add(new Tick(1, 2.5, 4));\n" +
+            "            arena.add(Market.wrap(new Halt(2, true)));\n" +
+            "            arena.add(Market.lazyTick(() -> new Tick(3, 10, 1)));\n" +
+            "            for (long i = 0; i < arena.size(); i++) {\n" +
+            "                sb.append(arena.kind(i)).append(' ').append(arena.accept(i, DESCRIBE)).append(' ')\n" +
+            "                    .append(arena.get(i).time()).append(',');\n" +
+            "            }\n" +
+            "            sb.append(arena.capacity()).append(',');\n" +
+            "            arena.add(new Halt(4, false));\n" +
+            "            arena.add(new Halt(5, false));\n" +
+            "            try {\n" +
+            "                arena.add(new Halt(6, false));\n" +
+            "            } catch (IllegalStateException e) {\n" +
+            "                sb.append(e.getMessage()).append(',');\n" +
+            "            }\n" +
+            "            try {\n" +
+            "                arena.kind(5);\n" +
+            "            } catch (IndexOutOfBoundsException e) {\n" +
+            "                sb.append(e.getMessage()).append(',');\n" +
+            "            }\n" +
+            "            arena.close();\n" +
+            "            try {\n" +
+            "                arena.get(0);\n" +
+            "            } catch (IllegalStateException e) {\n" +
+            "                sb.append(e.getMessage());\n" +
+            "            }\n" +
+            "        }\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(MARKET_DEF, TICK, HALT, driver);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadNoteContaining("Off-heap arena: 'Market' values take 21 bytes each.");
+        assertEquals("TICK notional=10.0 1,HALT HaltView[time=2, resumable=true] 2,TICK notional=10.0 3,4,"
+                + "Arena is limited to 5 records,Index 5 out of bounds for size 5,Arena is closed",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testArenaRejectsLeafWithoutPrimitiveConstructor() {
+        JavaFileObject halt = JavaFileObjects.forSourceString("com.example.Halt",
+            "package com.example;\n" +
+            "public final class Halt {\n" +
+            "    private final String reason;\n" +
+            "    public Halt(String reason) { this.reason = reason; }\n" +
+            "    public String reason() { return reason; }\n" +
+            "    public long time() { return 0; }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(MARKET_DEF, TICK, halt);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining(
+            "Off-heap arenas require a public constructor with primitive parameters, each readable through a public accessor of the same name: Halt");
+    }
+}
@@ -0,0 +1,185 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PairMatcherTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\", pairs=true)\n" +
+        "@Permits(classes={Circle.class, Square.class, Triangle.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    int size();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    public int size() { return 1; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    public int size() { return 2; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject TRIANGLE = JavaFileObjects.forSourceString("com.example.Triangle",
+        "package com.example;\n" +
+        "public final class Triangle {\n" +
+        "    public int size() { return 3; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testPairMatcherCoversEveryCombination() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.function.BiFunction;\n" +
+            "public final class Driver {\n" +
+            "    static final BiFunction<Shape, Shape, String> COLLIDE = Shape.returning2(String.class)\n" +
+            "        .onCircleAny((c, other) -> \"c*\" + other.size())\n" +
+            "        .onSquareCircle((s, c) -> \"sc\")\n" +
+            "        .onSquareSquare((s1, s2) -> \"ss\")\n" +
+            "        .onSquareTriangle((s, t) -> \"st\")\n" +
+            "        .onTriangleAny((t, other) -> \"t*\" + other.kind())\n" +
+            "        .asBiFunction();\n" +
+            "\n" +
+            "    public static String run() {\n" +
+            "        Shape[] shapes = {Shape.wrap(new Circle()), Shape.lazySquare(Square::new), Shape.wrapAny(new Triangle())};\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        for (Shape a : shapes) {\n" +
+            "            for (Shape b : shapes) {\n" +
+            "                sb.append(COLLIDE.apply(a, b)).append(' ');\n" +
+            "            }\n" +
+            "        }\n" +
+            "        return sb.toString().trim();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, TRIANGLE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("c*1 c*2 c*3 sc ss st t*CIRCLE t*SQUARE t*TRIANGLE",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testPairMatchersNeedOptIn() {
+        JavaFileObject shapeDef = JavaFileObjects.forSourceString("com.example.ShapeDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Shape\")\n" +
+            "@Permits(classes={Circle.class, Square.class, Triangle.class})\n" +
+            "public interface ShapeDef {\n" +
+            "    int size();\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef, CIRCLE, SQUARE, TRIANGLE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .doesNotContain("Matcher2");
+        assertTrue(compilation.notes().stream().noneMatch(note -> note.getMessage(null).contains("Pair matchers")));
+    }
+
+    @Test
+    public void testPairConsumerMatcher() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        java.util.function.BiConsumer<Shape, Shape> log = Shape.match2()\n" +
+            "            .onCircleAny((c, other) -> sb.append(\"C\").append(other.size()))\n" +
+            "            .onSquareAny((s, other) -> sb.append(\"S\").append(other.size()))\n" +
+            "            .onTriangleCircle((t, c) -> sb.append(\"TC\"))\n" +
+            "            .onTriangleSquare((t, s) -> sb.append(\"TS\"))\n" +
+            "            .onTriangleTriangle((t1, t2) -> sb.append(\"TT\").append(t1 == t2))\n" +
+            "            .asBiConsumer();\n" +
+            "        Triangle triangle = new Triangle();\n" +
+            "        log.accept(Shape.wrap(new Square()), Shape.wrap(triangle));\n" +
+            "        log.accept(Shape.wrap(triangle), Shape.wrap(new Circle()));\n" +
+            "        log.accept(Shape.wrap(triangle), Shape.wrap(triangle));\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, TRIANGLE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("S3TCTTtrue", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testGenericPairMatcherOnClassOfValue() throws Throwable {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\", pairs=true)\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static Integer run() {\n" +
+            "        java.util.function.BiFunction<Result<Integer>, Result<Integer>, Integer> sum = Result.classOfValue(Integer.class)\n" +
+            "            .returning2(Integer.class)\n" +
+            "            .onFailureAny((f, other) -> -1)\n" +
+            "            .onSuccessFailure((s, f) -> -1)\n" +
+            "            .onSuccessSuccess((a, b) -> a.get() + b.get())\n" +
+            "            .asBiFunction();\n" +
+            "        return sum.apply(Result.wrap(new Success<>(40)), Result.wrap(new Success<>(2)))\n" +
+            "            + sum.apply(Result.wrap(new Failure()), Result.wrap(new Success<>(1))) + 1;\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals(42, CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
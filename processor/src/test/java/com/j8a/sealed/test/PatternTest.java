@@ -0,0 +1,266 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class PatternTest {
+
+    private static final JavaFileObject REQUEST_DEF = JavaFileObjects.forSourceString("com.example.RequestDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Request\")\n" +
+        "@Permits(classes={Order.class, Ping.class})\n" +
+        "public interface RequestDef {}"
+    );
+    private static final JavaFileObject PAYMENT_DEF = JavaFileObjects.forSourceString("com.example.PaymentDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Payment\")\n" +
+        "@Permits(classes={Card.class, Cash.class})\n" +
+        "public interface PaymentDef {}"
+    );
+    private static final JavaFileObject ORDER = JavaFileObjects.forSourceString("com.example.Order",
+        "package com.example;\n" +
+        "public final class Order {\n" +
+        "    private final Payment payment;\n" +
+        "    private final int amount;\n" +
+        "    public Order(Payment payment, int amount) { this.payment = payment; this.amount = amount; }\n" +
+        "    public Payment payment() { return payment; }\n" +
+        "    public int amount() { return amount; }\n" +
+        "}"
+    );
+    private static final JavaFileObject PING = JavaFileObjects.forSourceString("com.example.Ping",
+        "package com.example;\n" +
+        "public final class Ping {}"
+    );
+    private static final JavaFileObject CARD = JavaFileObjects.forSourceString("com.example.Card",
+        "package com.example;\n" +
+        "public final class Card {\n" +
+        "    private final boolean corporate;\n" +
+        "    public Card(boolean corporate) { this.corporate = corporate; }\n" +
+        "    public boolean corporate() { return corporate; }\n" +
+        "}"
+    );
+    private static final JavaFileObject CASH = JavaFileObjects.forSourceString("com.example.Cash",
+        "package com.example;\n" +
+        "public final class Cash {}"
+    );
+
+    private static Compilation compile(JavaFileObject driver) {
+        return javac()
+            .withProcessors(new SealedProcessor())
+            .compile(REQUEST_DEF, PAYMENT_DEF, ORDER, PING, CARD, CASH, driver);
+    }
+
+    @Test
+    public void testNestedPatternsAndGuardsPickTheFirstMatchingCase() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Request.Decision<String> route = Request.cases(String.class)\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.card().where(Card::corporate)), o -> \"corporate\")\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.card()).where(o -> o.amount() > 1000), o -> \"review\" + o.amount())\n" +
+            "            .when(Request.Pattern.order(), o -> \"accept\")\n" +
+            "            .when(Request.Pattern.any(), r -> \"other\" + r.kind())\n" +
+            "            .build();\n" +
+            "        Request[] requests = {\n" +
+            "            Request.wrap(new Order(Payment.wrap(new Card(true)), 5)),\n" +
+            "            Request.wrap(new Order(Payment.wrap(new Card(false)), 5000)),\n" +
+            "            Request.wrap(new Order(Payment.wrap(new Card(false)), 5)),\n" +
+            "            Request.wrap(new Order(Payment.lazyCash(Cash::new), 5000)),\n" +
+            "            Request.wrap(new Order(null, 5000)),\n" +
+            "            Request.lazyPing(Ping::new)};\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        for (Request request : requests) {\n" +
+            "            sb.append(route.apply(request)).append(' ');\n" +
+            "        }\n" +
+            "        return sb.toString().trim();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("corporate review5000 accept accept accept otherPING",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testDiscriminatorsAreReadOncePerMatch() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.concurrent.atomic.AtomicInteger;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        AtomicInteger guards = new AtomicInteger();\n" +
+            "        Request.Decision<Integer> decision = Request.cases(Integer.class)\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.cash()).where(o -> guards.incrementAndGet() < 0), o -> 1)\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.card()), o -> 2)\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.cash()), o -> 3)\n" +
+            "            .when(Request.Pattern.ping(), p -> 4)\n" +
+            "            .build();\n" +
+            "        AtomicInteger kinds = new AtomicInteger();\n" +
+            "        Payment cash = Payment.lazyCash(() -> { kinds.incrementAndGet(); return new Cash(); });\n" +
+            "        Request card = Request.wrap(new Order(Payment.wrap(new Card(false)), 1));\n" +
+            "        return decision.apply(Request.wrap(new Order(cash, 1))) + \"\" + decision.apply(card)\n" +
+            "            + \" guards=\" + guards + \" materialized=\" + kinds;\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        // The card order never reaches the cash guard, and kind() of a lazy leaf does not materialize it
+        assertEquals("32 guards=1 materialized=0", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testBuildReportsUnreachableAndOverlappingCases() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        String overlaps = Request.cases(String.class)\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.card()), o -> \"card\")\n" +
+            "            .when(Request.Pattern.order(), o -> \"order\")\n" +
+            "            .when(Request.Pattern.ping(), p -> \"ping\")\n" +
+            "            .build()\n" +
+            "            .overlaps().toString();\n" +
+            "        try {\n" +
+            "            Request.cases(String.class)\n" +
+            "                .when(Request.Pattern.order().payment(Payment.Pattern.card()), o -> \"card\")\n" +
+            "                .when(Request.Pattern.order().payment(Payment.Pattern.cash()), o -> \"cash\")\n" +
+            "                .when(Request.Pattern.order().payment(Payment.Pattern.card().where(Card::corporate)), o -> \"corporate\")\n" +
+            "                .when(Request.Pattern.order(), o -> \"order\")\n" +
+            "                .build();\n" +
+            "            return \"built\";\n" +
+            "        } catch (IllegalStateException e) {\n" +
+            "            return overlaps + \" \" + e.getMessage();\n" +
+            "        }\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("[case 1 order() overlaps case 0 order().payment(card())] "
+                + "Unreachable: case 2 order().payment(card().where(..))",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testNoMatchingCaseThrows() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Request.Decision<String> decision = Request.cases(String.class)\n" +
+            "            .when(Request.Pattern.order().payment(Payment.Pattern.card()), o -> \"card\")\n" +
+            "            .build();\n" +
+            "        try {\n" +
+            "            decision.apply(Request.wrap(new Ping()));\n" +
+            "            return \"matched\";\n" +
+            "        } catch (IllegalArgumentException e) {\n" +
+            "            return e.getMessage().substring(0, \"No case matches\".length());\n" +
+            "        }\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = compile(driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("No case matches", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testGenericRootHasNoPatterns() {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\")\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Result").contentsAsUtf8String()
+            .doesNotContain("class Pattern");
+    }
+
+    @Test
+    public void testSubPatternsSkipRootsWithoutPattern() {
+        JavaFileObject filterDef = JavaFileObjects.forSourceString("com.example.FilterDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Filter\")\n" +
+            "@Permits(classes={Any.class, Exact.class})\n" +
+            "public interface FilterDef {}"
+        );
+        JavaFileObject any = JavaFileObjects.forSourceString("com.example.Any",
+            "package com.example;\n" +
+            "public final class Any {}"
+        );
+        JavaFileObject exact = JavaFileObjects.forSourceString("com.example.Exact",
+            "package com.example;\n" +
+            "public final class Exact {}"
+        );
+        JavaFileObject ruleDef = JavaFileObjects.forSourceString("com.example.RuleDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Rule\")\n" +
+            "@Permits(classes={Allow.class, Deny.class})\n" +
+            "public interface RuleDef {}"
+        );
+        JavaFileObject allow = JavaFileObjects.forSourceString("com.example.Allow",
+            "package com.example;\n" +
+            "public final class Allow {\n" +
+            "    public Filter filter() { return Filter.wrap(new Any()); }\n" +
+            "}"
+        );
+        JavaFileObject deny = JavaFileObjects.forSourceString("com.example.Deny",
+            "package com.example;\n" +
+            "public final class Deny {}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(filterDef, any, exact, ruleDef, allow, deny);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadNoteContaining("Patterns skipped for 'Filter': 'any()' would clash with a member of Pattern.");
+        assertThat(compilation).generatedSourceFile("com.example.Rule").contentsAsUtf8String()
+            .doesNotContain("Filter.Pattern");
+    }
+}
@@ -0,0 +1,112 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class PrimitiveSpecializationTest {
+
+    private static final JavaFileObject RESULT_DEF = JavaFileObjects.forSourceString("com.example.ResultDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "import com.j8a.sealed.annotations.Specialization;\n" +
+        "\n" +
+        "@Sealed(name=\"Result\", specializations={Specialization.INT, Specialization.LONG, Specialization.DOUBLE})\n" +
+        "@Permits(classes={Success.class, Failure.class})\n" +
+        "public interface ResultDef<T> {}"
+    );
+
+    private static final JavaFileObject SUCCESS = JavaFileObjects.forSourceString("com.example.Success",
+        "package com.example;\n" +
+        "public final class Success<T> {\n" +
+        "    private final T value;\n" +
+        "    public Success(T value) { this.value = value; }\n" +
+        "    public T get() { return value; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject FAILURE = JavaFileObjects.forSourceString("com.example.Failure",
+        "package com.example;\n" +
+        "public final class Failure {\n" +
+        "    @Override public String toString() { return \"Failure\"; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testSpecializationsGenerated() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(RESULT_DEF, SUCCESS, FAILURE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation)
+            .generatedSourceFile("com.example.IntResult")
+            .contentsAsString(UTF_8)
+            .contains("public abstract IntResult map(IntUnaryOperator mapper);");
+        assertThat(compilation)
+            .generatedSourceFile("com.example.IntResult")
+            .contentsAsString(UTF_8)
+            .contains("public abstract LongResult mapToLong(IntToLongFunction mapper);");
+        assertThat(compilation)
+            .generatedSourceFile("com.example.Result")
+            .contentsAsString(UTF_8)
+            .contains("default DoubleResult mapToDouble(ToDoubleFunction<? super T> mapper)");
+    }
+
+    @Test
+    public void testPrimitivePipeline() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        IntResult length = Result.wrap(new Success<>(\"abcd\")).mapToInt(String::length);\n" +
+            "        DoubleResult half = length.map(i -> i * 10).mapToDouble(i -> i / 2.0);\n" +
+            "        LongResult failed = IntResult.wrap(new Failure()).map(i -> i + 1).mapToLong(i -> i);\n" +
+            "        Result<Integer> boxed = length.flatMap(i -> IntResult.wrap(i + 1)).boxed();\n" +
+            "        String visited = half.accept(new DoubleResult.Visitor<String>() {\n" +
+            "            public String onFailure(Failure failure) { return \"failure\"; }\n" +
+            "            public String onSuccess(double value) { return \"ok \" + value; }\n" +
+            "        });\n" +
+            "        return half + \",\" + failed.orElse(-1L) + \",\" + failed.kind() + \",\" + IntResult.from(boxed).orElse(0)\n" +
+            "            + \",\" + visited + \",\" + IntResult.wrap(3).equals(IntResult.wrap(3));\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(RESULT_DEF, SUCCESS, FAILURE, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("Success(20.0),-1,FAILURE,5,ok 20.0,true", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testSpecializationRequiresGenericRoot() {
+        JavaFileObject blueprint = JavaFileObjects.forSourceString("com.example.PetDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "import com.j8a.sealed.annotations.Specialization;\n" +
+            "@Sealed(name=\"Pet\", specializations=Specialization.INT)\n" +
+            "@Permits(classes={Failure.class})\n" +
+            "public interface PetDef {}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(blueprint, FAILURE);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Primitive specializations require a @Sealed interface with one unbounded type parameter");
+    }
+}
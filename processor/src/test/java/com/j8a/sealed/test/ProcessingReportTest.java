@@ -0,0 +1,109 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+public class ProcessingReportTest {
+
+    private static final JavaFileObject SHAPE_DEF = JavaFileObjects.forSourceString("com.example.ShapeDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Shape\", compact=true)\n" +
+        "@Permits(classes={Circle.class, Square.class})\n" +
+        "public interface ShapeDef {\n" +
+        "    int size();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CIRCLE = JavaFileObjects.forSourceString("com.example.Circle",
+        "package com.example;\n" +
+        "public final class Circle {\n" +
+        "    public int size() { return 1; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject SQUARE = JavaFileObjects.forSourceString("com.example.Square",
+        "package com.example;\n" +
+        "public final class Square {\n" +
+        "    public int size() { return 2; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testReportDescribesEachHierarchy() throws IOException {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("-Aj8a.sealed.report=true")
+            .compile(SHAPE_DEF, CIRCLE, SQUARE);
+
+        assertThat(compilation).succeeded();
+        String report = compilation.generatedFile(StandardLocation.CLASS_OUTPUT, "META-INF/j8a-sealed/report.json")
+            .get().getCharContent(true).toString();
+        assertThat(report).contains("\"root\": \"com.example.Shape\",\n      \"valid\": true,\n      \"leaves\": 2,");
+        assertThat(report).containsMatch("\"validationMillis\": \\d+\\.\\d{3},\n      \"generationMillis\": \\d+\\.\\d{3},");
+        assertThat(report).containsMatch("\"types\": \\d+,\n      \"methods\": \\d+,\n      \"sourceBytes\": \\d+,");
+        assertThat(report).contains("{\"name\": \"map/flatMap\", \"generated\": false, \"reason\": \"root is not generic\"}");
+        assertThat(report).contains("{\"name\": \"comparator\", \"generated\": true}");
+        assertThat(report).contains("{\"name\": \"pair matchers\", \"generated\": false, \"reason\": \"compact mode\"}");
+    }
+
+    @Test
+    public void testReportGivesReasonForSkippedMap() throws IOException {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\")\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value, int attempts) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("-Aj8a.sealed.report=true")
+            .compile(SHAPE_DEF, CIRCLE, SQUARE, resultDef, success, failure);
+
+        assertThat(compilation).succeeded();
+        String report = compilation.generatedFile(StandardLocation.CLASS_OUTPUT, "META-INF/j8a-sealed/report.json")
+            .get().getCharContent(true).toString();
+        assertThat(report).contains("\"root\": \"com.example.Shape\"");
+        assertThat(report).contains("\"root\": \"com.example.Result\"");
+        assertThat(report).contains("{\"name\": \"map/flatMap\", \"generated\": false, "
+            + "\"reason\": \"Success lacks a public accessor returning the type parameter or a public constructor accepting it\"}");
+        assertThat(report).contains("{\"name\": \"staged matchers\", \"generated\": true}");
+    }
+
+    @Test
+    public void testNoReportWithoutOption() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(SHAPE_DEF, CIRCLE, SQUARE);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation.generatedFile(StandardLocation.CLASS_OUTPUT, "META-INF/j8a-sealed/report.json").isPresent()).isFalse();
+    }
+}
@@ -0,0 +1,171 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class ProfileGuidedTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private static final JavaFileObject ANIMAL_DEF = JavaFileObjects.forSourceString("com.example.AnimalDef",
+        "package com.example;\n" +
+        "import com.j8a.sealed.annotations.Sealed;\n" +
+        "import com.j8a.sealed.annotations.Permits;\n" +
+        "\n" +
+        "@Sealed(name=\"Animal\")\n" +
+        "@Permits(classes={Dog.class, Cat.class, Bird.class}, strict=false)\n" +
+        "public interface AnimalDef {\n" +
+        "    String sound();\n" +
+        "}"
+    );
+
+    private static final JavaFileObject DOG = JavaFileObjects.forSourceString("com.example.Dog",
+        "package com.example;\n" +
+        "public class Dog {\n" +
+        "    public String sound() { return \"woof\"; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject PUPPY = JavaFileObjects.forSourceString("com.example.Puppy",
+        "package com.example;\n" +
+        "public class Puppy extends Dog {\n" +
+        "    @Override public String sound() { return \"yip\"; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CAT = JavaFileObjects.forSourceString("com.example.Cat",
+        "package com.example;\n" +
+        "public final class Cat {\n" +
+        "    public String sound() { return \"meow\"; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject BIRD = JavaFileObjects.forSourceString("com.example.Bird",
+        "package com.example;\n" +
+        "public final class Bird {\n" +
+        "    public String sound() { return \"tweet\"; }\n" +
+        "}"
+    );
+
+    @Test
+    public void testInstrumentedBuildWritesProfile() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() throws java.io.IOException {\n" +
+            "        java.util.function.Function<Animal, String> sound = Animal.returning(String.class)\n" +
+            "            .onBird(Bird::sound).onCat(Cat::sound).onDog(Dog::sound).asFunction();\n" +
+            "        for (int i = 0; i < 3; i++) sound.apply(Animal.wrap(new Dog()));\n" +
+            "        sound.apply(Animal.wrapAny(new Cat()));\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        Animal.Profile.writeTo(sb);\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("-Aj8a.sealed.instrument=true")
+            .compile(ANIMAL_DEF, DOG, CAT, BIRD, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("com.example.Animal.BIRD=0\ncom.example.Animal.CAT=1\ncom.example.Animal.DOG=3\n",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testProfileAddsFastPathsForHotLeaves() throws Throwable {
+        File profile = temp.newFile("animal.profile");
+        Files.write(profile.toPath(), Arrays.asList(
+            "# recorded by Animal.Profile.writeTo",
+            "com.example.Animal.DOG=700",
+            "com.example.Animal.CAT=250",
+            "com.example.Animal.BIRD=40",
+            "com.example.Animal.DOG=10",
+            "com.example.Animal.FISH=5"), StandardCharsets.UTF_8);
+
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        java.util.function.Function<Animal, String> sound = Animal.returning(String.class)\n" +
+            "            .onBird(b -> \"bird:\" + b.sound()).onCat(c -> \"cat:\" + c.sound()).onDog(d -> \"dog:\" + d.sound())\n" +
+            "            .asFunction();\n" +
+            "        java.util.function.BiFunction<Animal, String, String> tagged = Animal.returning(String.class, String.class)\n" +
+            "            .onBird((b, tag) -> tag + b.sound()).onCat((c, tag) -> tag + c.sound()).onDog((d, tag) -> tag + d.sound())\n" +
+            "            .asBiFunction();\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        for (Object input : new Object[] {new Dog(), new Puppy(), new Cat(), new Bird()}) {\n" +
+            "            Animal animal = Animal.wrapAny(input);\n" +
+            "            sb.append(sound.apply(animal)).append('/').append(tagged.apply(animal, \"#\")).append(',');\n" +
+            "        }\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("-Aj8a.sealed.profile=" + profile.getAbsolutePath())
+            .compile(ANIMAL_DEF, DOG, PUPPY, CAT, BIRD, driver);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadNoteContaining("Profile: 'Animal' dispatches Dog (71.0%), Cat (25.0%) on a fast path.");
+        assertThat(compilation).hadWarningContaining("Leaf profile entry 'com.example.Animal.FISH' does not match a kind of Animal.");
+        assertThat(compilation).generatedSourceFile("com.example.Animal").contentsAsUtf8String()
+            .contains("if (value.getClass() == Dog.class) return new DogWrapper((Dog) value);");
+        assertEquals("dog:woof/#woof,dog:yip/#yip,cat:meow/#meow,bird:tweet/#tweet,",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testProfileMatchesRootInDefaultPackage() throws Throwable {
+        File profile = temp.newFile("pet.profile");
+        Files.write(profile.toPath(), Arrays.asList("Pet.HOUND=900", "Pet.TABBY=100"), StandardCharsets.UTF_8);
+        JavaFileObject petDef = JavaFileObjects.forSourceString("PetDef",
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Pet\")\n" +
+            "@Permits(classes={Hound.class, Tabby.class})\n" +
+            "public interface PetDef {}"
+        );
+        JavaFileObject hound = JavaFileObjects.forSourceString("Hound", "public final class Hound {}");
+        JavaFileObject tabby = JavaFileObjects.forSourceString("Tabby", "public final class Tabby {}");
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("-Aj8a.sealed.profile=" + profile.getAbsolutePath())
+            .compile(petDef, hound, tabby);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadNoteContaining("Profile: 'Pet' dispatches Hound (90.0%)");
+        assertEquals(0, compilation.warnings().size());
+    }
+
+    @Test
+    public void testUnreadableProfileFails() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .withOptions("-Aj8a.sealed.profile=" + new File(temp.getRoot(), "missing.profile").getAbsolutePath())
+            .compile(ANIMAL_DEF, DOG, CAT, BIRD);
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Cannot read leaf profile");
+    }
+}
@@ -0,0 +1,190 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class RouterTest {
+
+    private static JavaFileObject eventDef(String attributes) {
+        return JavaFileObjects.forSourceString("com.example.EventDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "\n" +
+            "@Sealed(name=\"Event\"" + attributes + ")\n" +
+            "@Permits(classes={Placed.class, Cancelled.class})\n" +
+            "public interface EventDef {\n" +
+            "    long id();\n" +
+            "}"
+        );
+    }
+
+    private static final JavaFileObject PLACED = JavaFileObjects.forSourceString("com.example.Placed",
+        "package com.example;\n" +
+        "public final class Placed {\n" +
+        "    private final long id;\n" +
+        "    public Placed(long id) { this.id = id; }\n" +
+        "    public long id() { return id; }\n" +
+        "}"
+    );
+
+    private static final JavaFileObject CANCELLED = JavaFileObjects.forSourceString("com.example.Cancelled",
+        "package com.example;\n" +
+        "public final class Cancelled {\n" +
+        "    private final long id;\n" +
+        "    public Cancelled(long id) { this.id = id; }\n" +
+        "    public long id() { return id; }\n" +
+        "}"
+    );
+
+    private static Object run(JavaFileObject driver, String attributes) throws Throwable {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(eventDef(attributes), PLACED, CANCELLED, driver);
+
+        assertThat(compilation).succeeded();
+        return CompiledClasses.invoke(compilation, "com.example.Driver", "run");
+    }
+
+    @Test
+    public void testSynchronousDeliveryPerKind() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.function.Consumer;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        Consumer<Placed> first = placed -> sb.append(\"first:\").append(placed.id()).append(' ');\n" +
+            "        Consumer<Object> any = value -> sb.append(\"any:\").append(value.getClass().getSimpleName()).append(' ');\n" +
+            "        Event.Router router = Event.Router.synchronous().onPlaced(first).onPlaced(any).onCancelled(any);\n" +
+            "        int placed = router.publish(Event.wrap(new Placed(1)));\n" +
+            "        int cancelled = router.publish(Event.lazyCancelled(() -> new Cancelled(2)));\n" +
+            "        boolean removed = router.removePlaced(first);\n" +
+            "        boolean again = router.removePlaced(first);\n" +
+            "        router.publish(Event.wrap(new Placed(3)));\n" +
+            "        return sb.toString() + placed + cancelled + removed + again + router.handlerCount(Event.Kind.PLACED);\n" +
+            "    }\n" +
+            "}"
+        );
+
+        assertEquals("first:1 any:Placed any:Cancelled any:Placed 21truefalse1", run(driver, ""));
+    }
+
+    @Test
+    public void testConcurrentRegistrationKeepsEveryHandler() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.concurrent.atomic.AtomicInteger;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() throws InterruptedException {\n" +
+            "        Event.Router router = Event.Router.synchronous();\n" +
+            "        AtomicInteger calls = new AtomicInteger();\n" +
+            "        Thread[] threads = new Thread[8];\n" +
+            "        for (int t = 0; t < threads.length; t++) {\n" +
+            "            threads[t] = new Thread(() -> {\n" +
+            "                for (int i = 0; i < 500; i++) {\n" +
+            "                    router.onPlaced(placed -> calls.incrementAndGet());\n" +
+            "                    router.publish(Event.wrap(new Placed(i)));\n" +
+            "                }\n" +
+            "            });\n" +
+            "            threads[t].start();\n" +
+            "        }\n" +
+            "        for (Thread thread : threads) thread.join();\n" +
+            "        calls.set(0);\n" +
+            "        router.publish(Event.wrap(new Placed(0)));\n" +
+            "        return router.handlerCount(Event.Kind.PLACED) + \",\" + calls.get() + \",\" + router.handlerCount(Event.Kind.CANCELLED);\n" +
+            "    }\n" +
+            "}"
+        );
+
+        assertEquals("4000,4000,0", run(driver, ""));
+    }
+
+    @Test
+    public void testOrderedDeliveryKeepsPublishOrderPerKind() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.ArrayList;\n" +
+            "import java.util.List;\n" +
+            "import java.util.concurrent.ExecutorService;\n" +
+            "import java.util.concurrent.Executors;\n" +
+            "import java.util.concurrent.TimeUnit;\n" +
+            "import java.util.concurrent.atomic.AtomicInteger;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() throws InterruptedException {\n" +
+            "        AtomicInteger failures = new AtomicInteger();\n" +
+            "        ExecutorService pool = Executors.newFixedThreadPool(4, task -> {\n" +
+            "            Thread thread = new Thread(task);\n" +
+            "            thread.setUncaughtExceptionHandler((t, e) -> failures.incrementAndGet());\n" +
+            "            return thread;\n" +
+            "        });\n" +
+            "        List<Long> placed = new ArrayList<>();\n" +
+            "        List<Long> cancelled = new ArrayList<>();\n" +
+            "        Event.Router router = Event.Router.orderedPerKind(pool)\n" +
+            "            .onPlaced(value -> placed.add(value.id()))\n" +
+            "            .onCancelled(value -> { cancelled.add(value.id()); throw new IllegalStateException(\"ignored\"); });\n" +
+            "        for (long i = 0; i < 20_000; i++) {\n" +
+            "            router.publish(i % 2 == 0 ? Event.wrap(new Placed(i)) : Event.wrap(new Cancelled(i)));\n" +
+            "        }\n" +
+            "        pool.shutdown();\n" +
+            "        pool.awaitTermination(30, TimeUnit.SECONDS);\n" +
+            "        // Each list is only touched by its lane's single task at a time\n" +
+            "        int outOfOrder = 0;\n" +
+            "        for (int i = 1; i < placed.size(); i++) if (placed.get(i) < placed.get(i - 1)) outOfOrder++;\n" +
+            "        for (int i = 1; i < cancelled.size(); i++) if (cancelled.get(i) < cancelled.get(i - 1)) outOfOrder++;\n" +
+            "        return placed.size() + \",\" + cancelled.size() + \",\" + outOfOrder + \",\" + failures.get();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        assertEquals("10000,10000,0,10000", run(driver, ", tagged=true"));
+    }
+
+    @Test
+    public void testExecutorDeliveryRunsEveryHandler() throws Throwable {
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "import java.util.concurrent.ExecutorService;\n" +
+            "import java.util.concurrent.Executors;\n" +
+            "import java.util.concurrent.TimeUnit;\n" +
+            "import java.util.concurrent.atomic.LongAdder;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() throws InterruptedException {\n" +
+            "        ExecutorService pool = Executors.newFixedThreadPool(4);\n" +
+            "        LongAdder sum = new LongAdder();\n" +
+            "        Event.Router router = Event.Router.onExecutor(pool)\n" +
+            "            .onPlaced(value -> sum.add(value.id()))\n" +
+            "            .onPlaced(value -> sum.add(1));\n" +
+            "        int delivered = 0;\n" +
+            "        for (long i = 0; i < 1_000; i++) {\n" +
+            "            delivered += router.publish(Event.wrap(new Placed(i)));\n" +
+            "            delivered += router.publish(Event.wrap(new Cancelled(i)));\n" +
+            "        }\n" +
+            "        pool.shutdown();\n" +
+            "        pool.awaitTermination(30, TimeUnit.SECONDS);\n" +
+            "        return delivered + \",\" + sum.sum();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        assertEquals("2000,500500", run(driver, ""));
+    }
+
+    @Test
+    public void testCompactRootsHaveNoRouter() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(eventDef(", compact=true"), PLACED, CANCELLED);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Event").contentsAsUtf8String().doesNotContain("class Router");
+    }
+}
@@ -0,0 +1,128 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.assertEquals;
+
+public class TaggedRepresentationTest {
+
+    @Test
+    public void testTaggedWrapperDispatchesEveryOperation() throws Throwable {
+        JavaFileObject shapeDef = JavaFileObjects.forSourceString("com.example.ShapeDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "\n" +
+            "@Sealed(name=\"Shape\", tagged=true)\n" +
+            "@Permits(classes={Circle.class, Square.class})\n" +
+            "public interface ShapeDef {\n" +
+            "    int size();\n" +
+            "    void describe(StringBuilder out);\n" +
+            "}"
+        );
+        JavaFileObject circle = JavaFileObjects.forSourceString("com.example.Circle",
+            "package com.example;\n" +
+            "public final class Circle {\n" +
+            "    public int size() { return 1; }\n" +
+            "    public void describe(StringBuilder out) { out.append(\"circle\"); }\n" +
+            "    @Override public boolean equals(Object o) { return o instanceof Circle; }\n" +
+            "    @Override public int hashCode() { return 1; }\n" +
+            "}"
+        );
+        JavaFileObject square = JavaFileObjects.forSourceString("com.example.Square",
+            "package com.example;\n" +
+            "public final class Square {\n" +
+            "    public int size() { return 2; }\n" +
+            "    public void describe(StringBuilder out) { out.append(\"square\"); }\n" +
+            "}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Shape[] shapes = {Shape.wrap(new Circle()), Shape.wrapAny(new Square()), Shape.lazyCircle(Circle::new)};\n" +
+            "        java.util.function.Function<Shape, String> name = Shape.returning(String.class)\n" +
+            "            .onCircle(c -> \"c\")\n" +
+            "            .onSquare(s -> \"s\")\n" +
+            "            .asFunction();\n" +
+            "        StringBuilder sb = new StringBuilder();\n" +
+            "        for (Shape shape : shapes) {\n" +
+            "            sb.append(name.apply(shape)).append(shape.kind()).append(shape.size());\n" +
+            "            shape.describe(sb);\n" +
+            "            sb.append(' ');\n" +
+            "        }\n" +
+            "        sb.append(shapes[0].equals(shapes[2])).append(shapes[2].equals(shapes[0])).append(shapes[0].equals(shapes[1]))\n" +
+            "            .append(' ').append(shapes[0].getClass() == shapes[1].getClass());\n" +
+            "        return sb.toString();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(shapeDef, circle, square, driver);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .contains("final class Wrapper implements Shape {");
+        assertThat(compilation).generatedSourceFile("com.example.Shape").contentsAsUtf8String()
+            .doesNotContain("CircleWrapper");
+        assertEquals("cCIRCLE1circle sSQUARE2square cCIRCLE1circle truetruefalse true",
+            CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+
+    @Test
+    public void testTaggedGenericRootKeepsMapAndFlatMap() throws Throwable {
+        JavaFileObject resultDef = JavaFileObjects.forSourceString("com.example.ResultDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "@Sealed(name=\"Result\", tagged=true)\n" +
+            "@Permits(classes={Success.class, Failure.class})\n" +
+            "public interface ResultDef<T> {}"
+        );
+        JavaFileObject success = JavaFileObjects.forSourceString("com.example.Success",
+            "package com.example;\n" +
+            "public final class Success<T> {\n" +
+            "    private final T value;\n" +
+            "    public Success(T value) { this.value = value; }\n" +
+            "    public T get() { return value; }\n" +
+            "}"
+        );
+        JavaFileObject failure = JavaFileObjects.forSourceString("com.example.Failure",
+            "package com.example;\n" +
+            "public final class Failure {\n" +
+            "    @Override public String toString() { return \"failure\"; }\n" +
+            "}"
+        );
+        JavaFileObject driver = JavaFileObjects.forSourceString("com.example.Driver",
+            "package com.example;\n" +
+            "public final class Driver {\n" +
+            "    public static String run() {\n" +
+            "        Result<Integer> length = Result.wrap(new Success<>(\" four \"))\n" +
+            "            .map(String::trim)\n" +
+            "            .flatMap(s -> Result.wrap(new Success<>(s.length())));\n" +
+            "        Result<Integer> failed = Result.<String>wrap(new Failure()).map(String::length);\n" +
+            "        return Result.classOfValue(Integer.class).returning(String.class)\n" +
+            "            .onFailure(f -> f.toString())\n" +
+            "            .onSuccess(s -> \"ok\" + s.get())\n" +
+            "            .asFunction().apply(length) + \" \" + failed.kind();\n" +
+            "    }\n" +
+            "}"
+        );
+
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(resultDef, success, failure, driver);
+
+        assertThat(compilation).succeeded();
+        assertEquals("ok4 FAILURE", CompiledClasses.invoke(compilation, "com.example.Driver", "run"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.j8a.sealed.test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.j8a.sealed.processor.SealedProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+public class WideHierarchyTest {
+
+    private static final int LEAVES = 200;
+    private static final int METHODS = 30;
+
+    @Test
+    public void testWideHierarchyCompiles() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(wideHierarchy(-1));
+
+        assertThat(compilation).succeeded();
+    }
+
+    @Test
+    public void testWideHierarchyReportsMissingMethodOnSingleLeaf() {
+        Compilation compilation = javac()
+            .withProcessors(new SealedProcessor())
+            .compile(wideHierarchy(150));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorCount(1);
+        assertThat(compilation).hadErrorContaining("Permitted class 'Leaf150' is missing method 'm29(int, java.lang.String)' defined in @Sealed interface 'WideDef'");
+    }
+
+    /**
+     * Builds a blueprint with {@link #METHODS} methods and {@link #LEAVES} permitted classes. The leaf at
+     * {@code brokenLeaf} omits the last blueprint method.
+     */
+    private static List<JavaFileObject> wideHierarchy(int brokenLeaf) {
+        List<JavaFileObject> sources = new ArrayList<>();
+
+        StringBuilder permits = new StringBuilder();
+        StringBuilder methods = new StringBuilder();
+        for (int i = 0; i < LEAVES; i++) {
+            if (i > 0) permits.append(", ");
+            permits.append("Leaf").append(i).append(".class");
+        }
+        for (int m = 0; m < METHODS; m++) {
+            methods.append("    String m").append(m).append("(int a, String b);\n");
+        }
+
+        sources.add(JavaFileObjects.forSourceString("com.example.WideDef",
+            "package com.example;\n" +
+            "import com.j8a.sealed.annotations.Sealed;\n" +
+            "import com.j8a.sealed.annotations.Permits;\n" +
+            "\n" +
+            "@Sealed(name=\"Wide\")\n" +
+            "@Permits(classes={" + permits + "})\n" +
+            "public interface WideDef {\n" +
+            methods +
+            "}"
+        ));
+
+        for (int i = 0; i < LEAVES; i++) {
+            StringBuilder body = new StringBuilder();
+            int implemented = i == brokenLeaf ? METHODS - 1 : METHODS;
+            for (int m = 0; m < implemented; m++) {
+                body.append("    public String m").append(m).append("(int a, String b) { return b; }\n");
+                // Same-name overloads must not be mistaken for the blueprint signature
+                body.append("    public String m").append(m).append("(long a) { return null; }\n");
+            }
+            sources.add(JavaFileObjects.forSourceString("com.example.Leaf" + i,
+                "package com.example;\n" +
+                "public final class Leaf" + i + " {\n" +
+                body +
+                "}"
+            ));
+        }
+        return sources;
+    }
+}